@@ -117,6 +117,26 @@ public interface Binding<T> {
      */
     Binding<T> unshared();
 
+    /**
+     * Configure the binding so that a shared instance is used, as with {@link #shared()}, but
+     * is not instantiated until it is first used.  Injection points that declare an interface type
+     * receive a proxy that instantiates the component on its first method invocation.
+     *
+     * @return A newly configured binding
+     * @see CachePolicy#LAZY_MEMOIZE
+     */
+    Binding<T> lazy();
+
+    /**
+     * Configure the binding to use a particular cache policy.  {@link #shared()},
+     * {@link #unshared()} and {@link #lazy()} are shortcuts for common policies.
+     *
+     * @param policy The cache policy for satisfactions created by this binding.
+     * @return A newly configured binding
+     * @since 0.11
+     */
+    Binding<T> withCachePolicy(@Nonnull CachePolicy policy);
+
     /**
      * Configure the binding so that its results are 'fixed'.  Fixed results will not be rewritten
      * by the dependency solver in rewrite mode.
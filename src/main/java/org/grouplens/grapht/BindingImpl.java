@@ -124,6 +124,17 @@ class BindingImpl<T> implements Binding<T> {
         return new BindingImpl<T>(context, sourceType, excludeTypes, qualifier, CachePolicy.NEW_INSTANCE, fixed);
     }
 
+    @Override
+    public Binding<T> lazy() {
+        return new BindingImpl<T>(context, sourceType, excludeTypes, qualifier, CachePolicy.LAZY_MEMOIZE, fixed);
+    }
+
+    @Override
+    public Binding<T> withCachePolicy(@Nonnull CachePolicy policy) {
+        Preconditions.notNull("cache policy", policy);
+        return new BindingImpl<T>(context, sourceType, excludeTypes, qualifier, policy, fixed);
+    }
+
     @Override
     public Binding<T> fixed() {
         return new BindingImpl<T>(context, sourceType, excludeTypes, qualifier, cachePolicy, true);
@@ -19,6 +19,10 @@
  */
 package org.grouplens.grapht;
 
+/**
+ * Policies for caching component instances.  When a chain of bindings specifies multiple policies,
+ * the one declared last in this enumeration wins.
+ */
 public enum CachePolicy {
     /**
      * Either MEMOIZE or NEW_INSTANCE may be used.
@@ -29,6 +33,73 @@ public enum CachePolicy {
      * dependency graph.
      */
     MEMOIZE,
+    /**
+     * Memoize like {@link #MEMOIZE}, but defer instantiation until the component is actually
+     * used.  Dependencies on this component that are declared with an interface type receive a
+     * lightweight proxy; the component is instantiated on the first method invocation on the proxy.
+     * Dependencies declared with a class type, and direct requests to the injector, instantiate
+     * the component immediately.
+     *
+     * <p>The proxy's {@code equals} and {@code hashCode} use its identity and, like
+     * {@code toString}, do not instantiate the component.  If the component cannot be built on
+     * first use, the invoked method throws {@link LazyInstantiationException}.</p>
+     *
+     * @since 0.11
+     */
+    LAZY_MEMOIZE,
+    /**
+     * Memoize instances through a soft reference.  The instance may be reclaimed by the garbage
+     * collector under memory pressure once nothing else uses it, in which case a new instance is
+     * created on demand.  Components that depend on a soft-memoized component and are themselves
+     * memoized keep their instance alive.
+     *
+     * <p>An instance's lifecycle manager is torn down once the instance is reclaimed, or when the
+     * container's lifecycle manager is closed.  An instance that needs teardown itself (it is
+     * {@link AutoCloseable} or has a {@link javax.annotation.PreDestroy} method) is held by its
+     * lifecycle manager, so it is not reclaimed before its container is closed.</p>
+     *
+     * @since 0.11
+     */
+    SOFT_MEMOIZE,
+    /**
+     * Memoize instances for a limited time.  Once an instance is older than its container's
+     * time-to-live, it is rebuilt in the background; the old instance continues to be used until
+     * the new one is ready, and is then torn down.
+     *
+     * <p>Components that depend on an expiring component and are themselves memoized will keep
+     * using the old instance after it has been torn down; inject such components into
+     * non-memoized components or through providers.</p>
+     *
+     * @see InjectionContainer#create(CachePolicy, LifecycleManager, long, java.util.concurrent.TimeUnit, java.util.concurrent.Executor)
+     * @since 0.11
+     */
+    EXPIRING_MEMOIZE,
+    /**
+     * Memoize like {@link #MEMOIZE}, and also store the instance in its container's
+     * {@linkplain PersistentInstanceCache persistent cache}.  When a later container resolves a
+     * structurally identical component graph, with the same classes, it loads the stored instance
+     * instead of constructing the component.  The component's implementation must be
+     * {@link java.io.Serializable}, as must any instances and providers bound in its graph.
+     * Without a persistent cache, or if the component cannot be stored, it is memoized only in
+     * memory.
+     *
+     * @see InjectionContainerBuilder#setPersistentCache(PersistentInstanceCache)
+     * @since 0.11
+     */
+    PERSISTENT_MEMOIZE,
+    /**
+     * Share instances within an {@linkplain InjectionScope injection scope}, such as a single
+     * request.  Each scope gets its own instance, which is torn down when the scope is closed;
+     * instantiating a scoped component outside of a scope is an error.
+     *
+     * <p>Memoized components that depend on a scoped component capture the instance from the
+     * scope in which they were first instantiated; depend on scoped components from other scoped
+     * or non-memoized components.</p>
+     *
+     * @see InjectionContainer#enterScope()
+     * @since 0.11
+     */
+    SCOPED,
     /**
      * Injectors must create new instances at every request if possible,
      * effectively no caching.
@@ -0,0 +1,309 @@
+/*
+ * Grapht, an open source dependency injector.
+ * Copyright 2014-2015 various contributors (see CONTRIBUTORS.txt)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.grapht;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.*;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import org.grouplens.grapht.reflect.Desire;
+import org.grouplens.grapht.reflect.Satisfaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Instantiator implementing the {@link CachePolicy#SOFT_MEMOIZE} and
+ * {@link CachePolicy#EXPIRING_MEMOIZE} policies.  Each instance is built with its own lifecycle
+ * manager, so it can be torn down independently when it is replaced; the instantiator itself is
+ * registered with the container's lifecycle manager to tear down the current instance when the
+ * container is closed.
+ *
+ * @since 0.11
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+abstract class EvictableInstantiator implements Instantiator, AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(EvictableInstantiator.class);
+
+    final Satisfaction satisfaction;
+    final Map<Desire, Instantiator> dependencies;
+    final boolean manageLifecycle;
+
+    private EvictableInstantiator(Satisfaction sat, Map<Desire, Instantiator> deps,
+                                  boolean manage) {
+        satisfaction = sat;
+        dependencies = deps;
+        manageLifecycle = manage;
+    }
+
+    /**
+     * Create an instantiator that holds its instance with a soft reference.
+     * @param sat The satisfaction to instantiate.
+     * @param deps The satisfaction's dependencies.
+     * @param mgr The container's lifecycle manager.
+     * @return The instantiator.
+     */
+    static EvictableInstantiator soft(Satisfaction sat, Map<Desire, Instantiator> deps,
+                                      @Nullable LifecycleManager mgr) {
+        EvictableInstantiator inst = new Soft(sat, deps, mgr != null);
+        if (mgr != null) {
+            mgr.registerComponent(inst);
+        }
+        return inst;
+    }
+
+    /**
+     * Create an instantiator that refreshes its instance after a time-to-live.
+     * @param sat The satisfaction to instantiate.
+     * @param deps The satisfaction's dependencies.
+     * @param mgr The container's lifecycle manager.
+     * @param ttl The time-to-live.
+     * @param unit The time unit of {@code ttl}.
+     * @param executor The executor for background refreshes.
+     * @return The instantiator.
+     */
+    static EvictableInstantiator expiring(Satisfaction sat, Map<Desire, Instantiator> deps,
+                                          @Nullable LifecycleManager mgr,
+                                          long ttl, TimeUnit unit, Executor executor) {
+        EvictableInstantiator inst = new Expiring(sat, deps, mgr != null, ttl, unit, executor);
+        if (mgr != null) {
+            mgr.registerComponent(inst);
+        }
+        return inst;
+    }
+
+    @Override
+    public Class getType() {
+        return satisfaction.getErasedType();
+    }
+
+    /**
+     * Tear down the current instance, if there is one.  A later call to {@link #instantiate()}
+     * will create a new instance.
+     */
+    @Override
+    public abstract void close();
+
+    @Override
+    public String toString() {
+        return "evictable instantiator for " + satisfaction;
+    }
+
+    /**
+     * Build a new instance.
+     * @return The instance and the lifecycle manager that tears it down.
+     */
+    Entry build() throws ConstructionException {
+        logger.debug("instantiating {}", satisfaction);
+        LifecycleManager mgr = manageLifecycle ? new LifecycleManager() : null;
+        Object instance = satisfaction.makeInstantiator(dependencies, mgr).instantiate();
+        return new Entry(instance, mgr);
+    }
+
+    static void tearDown(@Nullable LifecycleManager mgr, Object what, Object why) {
+        if (mgr != null) {
+            logger.debug("tearing down {} ({})", what, why);
+            try {
+                mgr.close();
+            } catch (RuntimeException e) {
+                logger.error("error tearing down " + what, e);
+            }
+        }
+    }
+
+    /**
+     * A cached instance along with the lifecycle manager that tears it down.
+     */
+    static class Entry {
+        @Nullable
+        private final Object instance;
+        @Nullable
+        private final LifecycleManager manager;
+
+        public Entry(@Nullable Object inst, @Nullable LifecycleManager mgr) {
+            instance = inst;
+            manager = mgr;
+        }
+    }
+
+    /**
+     * Soft-referenced instances.  Only the instance is softly reachable; its lifecycle manager is
+     * held strongly by its reference, so the garbage collector clears the reference only once
+     * nothing else uses the instance, and the cleared reference is then torn down.  An instance
+     * with teardown actions of its own is held by its lifecycle manager, so it stays in memory
+     * until the container is closed.
+     */
+    static class Soft extends EvictableInstantiator {
+        // stands in for null instances, so they are not rebuilt on every request
+        private static final Object NULL_INSTANCE = new Object();
+
+        private final ReferenceQueue<Object> queue = new ReferenceQueue<Object>();
+        // references whose instances have not yet been torn down
+        private final Set<InstanceRef> live = Sets.newIdentityHashSet();
+        @Nullable
+        private InstanceRef current;
+
+        Soft(Satisfaction sat, Map<Desire, Instantiator> deps, boolean manage) {
+            super(sat, deps, manage);
+        }
+
+        @Override
+        public Object instantiate() throws ConstructionException {
+            tearDown(reclaimed());
+            synchronized (this) {
+                Object instance = current == null ? null : current.get();
+                if (instance == null) {
+                    Entry entry = build();
+                    instance = entry.instance == null ? NULL_INSTANCE : entry.instance;
+                    current = new InstanceRef(instance, entry.manager, queue);
+                    if (entry.manager != null) {
+                        live.add(current);
+                    }
+                }
+                return instance == NULL_INSTANCE ? null : instance;
+            }
+        }
+
+        @Override
+        public void close() {
+            List<InstanceRef> refs;
+            synchronized (this) {
+                refs = Lists.newArrayList(live);
+                live.clear();
+                current = null;
+            }
+            tearDown(refs);
+        }
+
+        /**
+         * Clear and enqueue the reference to the current instance, as the garbage collector
+         * does when it reclaims the instance.  Used by tests, which cannot rely on the collector
+         * to clear soft references.
+         */
+        synchronized void reclaim() {
+            if (current != null) {
+                current.clear();
+                current.enqueue();
+            }
+        }
+
+        /**
+         * Collect the references the garbage collector has cleared.
+         */
+        private synchronized List<InstanceRef> reclaimed() {
+            List<InstanceRef> refs = Lists.newArrayList();
+            Reference<?> ref;
+            while ((ref = queue.poll()) != null) {
+                InstanceRef iref = (InstanceRef) ref;
+                if (live.remove(iref)) {
+                    refs.add(iref);
+                }
+            }
+            return refs;
+        }
+
+        // tears down outside the lock, as teardown runs component code
+        private void tearDown(List<InstanceRef> refs) {
+            for (InstanceRef ref: refs) {
+                Object instance = ref.get();
+                tearDown(ref.manager, instance == null ? "reclaimed " + satisfaction : instance,
+                         instance == null ? "reclaimed" : "closed");
+            }
+        }
+    }
+
+    private static class InstanceRef extends SoftReference<Object> {
+        @Nullable
+        private final LifecycleManager manager;
+
+        InstanceRef(Object instance, @Nullable LifecycleManager mgr, ReferenceQueue<Object> queue) {
+            super(instance, queue);
+            manager = mgr;
+        }
+    }
+
+    /**
+     * Instances refreshed after a time-to-live.
+     */
+    private static class Expiring extends EvictableInstantiator {
+        private static final Object KEY = new Object();
+        private final LoadingCache<Object, Entry> cache;
+
+        Expiring(Satisfaction sat, Map<Desire, Instantiator> deps, boolean manage,
+                 long ttl, TimeUnit unit, Executor executor) {
+            super(sat, deps, manage);
+            CacheLoader<Object, Entry> loader = new CacheLoader<Object, Entry>() {
+                @Override
+                public Entry load(Object key) throws ConstructionException {
+                    return build();
+                }
+            };
+            cache = CacheBuilder.newBuilder()
+                                .refreshAfterWrite(ttl, unit)
+                                .removalListener(new Teardown())
+                                .build(CacheLoader.asyncReloading(loader, executor));
+        }
+
+        @Override
+        public Object instantiate() throws ConstructionException {
+            try {
+                return cache.get(KEY).instance;
+            } catch (ExecutionException e) {
+                throw propagate(e.getCause());
+            } catch (UncheckedExecutionException e) {
+                throw propagate(e.getCause());
+            } catch (ExecutionError e) {
+                throw propagate(e.getCause());
+            }
+        }
+
+        private ConstructionException propagate(Throwable th) throws ConstructionException {
+            Throwables.propagateIfPossible(th, ConstructionException.class);
+            throw new ConstructionException(getType(), "Unexpected instantiation exception", th);
+        }
+
+        @Override
+        public void close() {
+            cache.invalidateAll();
+        }
+    }
+
+    private static class Teardown implements RemovalListener<Object, Entry> {
+        @Override
+        public void onRemoval(RemovalNotification<Object, Entry> notification) {
+            Entry entry = notification.getValue();
+            if (entry != null) {
+                tearDown(entry.manager, entry.instance, notification.getCause());
+            }
+        }
+    }
+}
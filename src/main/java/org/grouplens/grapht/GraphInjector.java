@@ -0,0 +1,234 @@
+/*
+ * Grapht, an open source dependency injector.
+ * Copyright 2014-2015 various contributors (see CONTRIBUTORS.txt)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.grapht;
+
+import com.google.common.base.Function;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.SetMultimap;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import org.apache.commons.lang3.tuple.Pair;
+import org.grouplens.grapht.graph.DAGEdge;
+import org.grouplens.grapht.graph.DAGNode;
+import org.grouplens.grapht.graph.FrozenGraph;
+import org.grouplens.grapht.reflect.InjectionPoint;
+import org.grouplens.grapht.solver.DependencySolver;
+import org.grouplens.grapht.util.Preconditions;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.lang.annotation.Annotation;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * An injector that instantiates components from a precomputed dependency graph, without a
+ * dependency solver.  The graph is typically resolved ahead of time, such as by a
+ * {@link DependencySolver} at build time, and then {@linkplain org.grouplens.grapht.io loaded}
+ * when the application starts.
+ *
+ * <p>The injector can only supply the components requested by the root node's outgoing edges;
+ * each is looked up by its qualifier and type in constant time.  Requests for any other
+ * component fail with a {@link ResolutionException}.  The graph is {@linkplain FrozenGraph frozen}
+ * when the injector is created, so the injector does not keep the original graph's nodes and
+ * edges, and instantiates components by node index.</p>
+ *
+ * @since 0.11
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+@ThreadSafe
+public class GraphInjector implements Injector {
+    private final FrozenGraph<Component, Dependency> graph;
+    private final Map<Pair<Annotation, Class<?>>, Integer> roots;
+    private final InjectionContainer container;
+
+    private GraphInjector(FrozenGraph<Component, Dependency> g, InjectionContainer ctr) {
+        graph = g;
+        container = ctr;
+
+        Map<Pair<Annotation, Class<?>>, Integer> index = Maps.newHashMap();
+        int root = graph.getRoot();
+        for (int e = graph.getEdgeStart(root); e < graph.getEdgeEnd(root); e++) {
+            InjectionPoint ip = graph.getEdgeLabel(e).getInitialDesire().getInjectionPoint();
+            Pair<Annotation, Class<?>> key = makeKey(ip.getQualifier(), ip.getErasedType());
+            // nullable and non-nullable requests for a component resolve to the same node
+            if (!index.containsKey(key)) {
+                index.put(key, graph.getEdgeTarget(e));
+            }
+        }
+        roots = ImmutableMap.copyOf(index);
+    }
+
+    /**
+     * Create an injector from a precomputed graph.
+     *
+     * @param root The root node of the graph, such as the graph of a {@link DependencySolver}.
+     * @param backEdges The back edges of the graph, such as the
+     *                  {@linkplain DependencySolver#getBackEdges() solver's back edges}.
+     * @param container The injection container to instantiate components.  The injector is
+     *                  closed by closing the container's lifecycle manager, if it has one.
+     * @return The injector.
+     */
+    public static GraphInjector create(@Nonnull DAGNode<Component, Dependency> root,
+                                       @Nonnull SetMultimap<DAGNode<Component, Dependency>, DAGEdge<Component, Dependency>> backEdges,
+                                       @Nonnull InjectionContainer container) {
+        Preconditions.notNull("root", root);
+        Preconditions.notNull("back edges", backEdges);
+        Preconditions.notNull("container", container);
+        return new GraphInjector(FrozenGraph.freeze(root, backEdges), container);
+    }
+
+    /**
+     * Create an injector from a frozen graph.
+     *
+     * @param graph The frozen graph, including its back edges.
+     * @param container The injection container to instantiate components.
+     * @return The injector.
+     */
+    public static GraphInjector create(@Nonnull FrozenGraph<Component, Dependency> graph,
+                                       @Nonnull InjectionContainer container) {
+        Preconditions.notNull("graph", graph);
+        Preconditions.notNull("container", container);
+        return new GraphInjector(graph, container);
+    }
+
+    /**
+     * Create an injector from the current graph of a dependency solver.  Later changes to the
+     * solver do not affect the injector.
+     *
+     * @param solver The dependency solver.
+     * @param container The injection container to instantiate components.
+     * @return The injector.
+     */
+    public static GraphInjector create(@Nonnull DependencySolver solver,
+                                       @Nonnull InjectionContainer container) {
+        Preconditions.notNull("solver", solver);
+        synchronized (solver) {
+            return create(solver.getGraph(), solver.getBackEdges(), container);
+        }
+    }
+
+    private static Pair<Annotation, Class<?>> makeKey(@Nullable Annotation qualifier, Class<?> type) {
+        return Pair.<Annotation, Class<?>>of(qualifier, type);
+    }
+
+    /**
+     * Get the graph backing this injector.
+     * @return The injector's frozen graph, including its back edges.
+     */
+    public FrozenGraph<Component, Dependency> getGraph() {
+        return graph;
+    }
+
+    /**
+     * Query whether this injector can supply a component.
+     * @param qualifier The qualifier, or {@code null} for an unqualified component.
+     * @param type The component type.
+     * @return {@code true} if the graph contains a root edge for the component.
+     */
+    public boolean hasComponent(@Nullable Annotation qualifier, Class<?> type) {
+        return roots.containsKey(makeKey(qualifier, type));
+    }
+
+    @Nullable
+    private Integer findNode(@Nullable Annotation qualifier, Class<?> type) {
+        return roots.get(makeKey(qualifier, type));
+    }
+
+    private int getNode(@Nullable Annotation qualifier, Class<?> type) throws ResolutionException {
+        Integer node = findNode(qualifier, type);
+        if (node == null) {
+            String name = qualifier == null ? type.getName() : qualifier + " " + type.getName();
+            throw new ResolutionException("no component for " + name + " in precomputed graph");
+        }
+        return node;
+    }
+
+    @Nonnull
+    @Override
+    public <T> T getInstance(Class<T> type) throws InjectionException {
+        return getInstance(null, type);
+    }
+
+    @Nonnull
+    @Override
+    public <T> T getInstance(Annotation qualifier, Class<T> type) throws InjectionException {
+        Object obj = container.makeInstantiator(graph, getNode(qualifier, type)).instantiate();
+        if (obj == null) {
+            throw new ResolutionException("component " + type.getName() + " is null in precomputed graph");
+        }
+        return type.cast(obj);
+    }
+
+    @Nullable
+    @Override
+    public <T> T tryGetInstance(Annotation qualifier, Class<T> type) throws InjectionException {
+        Integer node = findNode(qualifier, type);
+        if (node == null) {
+            return null;
+        }
+        return type.cast(container.makeInstantiator(graph, node).instantiate());
+    }
+
+    @Nonnull
+    @Override
+    public <T> ListenableFuture<T> getInstanceAsync(Class<T> type, Executor executor) {
+        return getInstanceAsync(null, type, executor);
+    }
+
+    @Nonnull
+    @Override
+    public <T> ListenableFuture<T> getInstanceAsync(Annotation qualifier, final Class<T> type,
+                                                   Executor executor) {
+        int node;
+        try {
+            node = getNode(qualifier, type);
+        } catch (ResolutionException e) {
+            return Futures.immediateFailedFuture(e);
+        }
+        return Futures.transform(container.instantiateAsync(graph, node, executor),
+                                 new Function<Object, T>() {
+                                     @Override
+                                     public T apply(@Nullable Object input) {
+                                         return type.cast(input);
+                                     }
+                                 });
+    }
+
+    /**
+     * Enter a new injection scope on the current thread.
+     *
+     * @return The scope, which must be closed to exit it.
+     * @see InjectionContainer#enterScope()
+     */
+    public InjectionScope enterScope() {
+        return container.enterScope();
+    }
+
+    @Override
+    public void close() {
+        LifecycleManager manager = container.getLifecycleManager();
+        if (manager != null) {
+            manager.close();
+        }
+    }
+}
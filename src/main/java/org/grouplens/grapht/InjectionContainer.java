@@ -19,16 +19,29 @@
  */
 package org.grouplens.grapht;
 
-import com.google.common.base.Function;
+import com.google.common.base.Functions;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
 import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.MapMaker;
 import com.google.common.collect.Maps;
 import com.google.common.collect.SetMultimap;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.commons.lang3.reflect.MethodUtils;
 import org.grouplens.grapht.graph.DAGEdge;
 import org.grouplens.grapht.graph.DAGNode;
+import org.grouplens.grapht.graph.FrozenGraph;
 import org.grouplens.grapht.reflect.Desire;
+import org.grouplens.grapht.reflect.Satisfaction;
+import org.grouplens.grapht.solver.ProviderBindingFunction;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -36,11 +49,22 @@ import javax.annotation.Nullable;
 import javax.annotation.PreDestroy;
 import java.lang.reflect.Method;
 import java.util.*;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * Container for dependency-injected components.  A container is the scope of memoization, so
  * components with a cache policy of {@link CachePolicy#MEMOIZE} will share an instance so long
- * as they are instantiated by the same instantiator.
+ * as they are instantiated by the same instantiator.  The container also configures the
+ * time-to-live of {@link CachePolicy#EXPIRING_MEMOIZE} components, and tracks the active
+ * {@linkplain InjectionScope scope} of each thread for {@link CachePolicy#SCOPED} components.
+ * Containers created with a {@link SharedComponentCache} share memoized components with other
+ * containers using the same cache, and containers created with a
+ * {@link PersistentInstanceCache} load {@link CachePolicy#PERSISTENT_MEMOIZE} components from
+ * it.
  *
  * @since 0.9
  * @author <a href="http://www.grouplens.org">GroupLens Research</a>
@@ -48,9 +72,29 @@ import java.util.*;
 public class InjectionContainer {
     private static final Logger logger = LoggerFactory.getLogger(InjectionContainer.class);
 
+    /**
+     * The default time-to-live for {@link CachePolicy#EXPIRING_MEMOIZE} components, in minutes.
+     */
+    public static final long DEFAULT_TIME_TO_LIVE_MINUTES = 60;
+
+    private static final Executor DEFAULT_REFRESH_EXECUTOR =
+            Executors.newCachedThreadPool(new ThreadFactoryBuilder().setDaemon(true)
+                                                                    .setNameFormat("grapht-refresh-%d")
+                                                                    .build());
+
     private final CachePolicy defaultCachePolicy;
-    private final Map<DAGNode<Component, Dependency>, Instantiator> providerCache;
+    private final ConcurrentMap<DAGNode<Component, Dependency>, Instantiator> providerCache;
     private final LifecycleManager manager;
+    private final long timeToLive;
+    private final TimeUnit timeToLiveUnit;
+    private final Executor refreshExecutor;
+    private final ThreadLocal<InjectionScope> currentScope = new ThreadLocal<InjectionScope>();
+    @Nullable
+    private final SharedComponentCache sharedCache;
+    private final ConcurrentMap<DAGNode<Component, Dependency>, Boolean> shareable;
+    @Nullable
+    private final PersistentInstanceCache persistentCache;
+    private final ConcurrentMap<FrozenGraph<Component, Dependency>, FrozenInstantiators> frozenCache;
 
     /**
      * Create a new instantiator with a default policy of {@code MEMOIZE}.
@@ -66,7 +110,7 @@ public class InjectionContainer {
      * @return The instantiator.
      */
     public static InjectionContainer create(CachePolicy dft) {
-        return new InjectionContainer(dft, null);
+        return create(dft, null);
     }
 
     /**
@@ -76,13 +120,72 @@ public class InjectionContainer {
      * @return The instantiator.
      */
     public static InjectionContainer create(CachePolicy dft, LifecycleManager mgr) {
-        return new InjectionContainer(dft, mgr);
+        return create(dft, mgr, DEFAULT_TIME_TO_LIVE_MINUTES, TimeUnit.MINUTES, null);
+    }
+
+    /**
+     * Create a new instantiator with a custom expiration configuration.
+     * @param dft The default cache policy.
+     * @param mgr The lifecycle manager.
+     * @param ttl The time-to-live for {@link CachePolicy#EXPIRING_MEMOIZE} components.
+     * @param unit The time unit of {@code ttl}.
+     * @param executor The executor used to refresh expired components in the background, or
+     *                 {@code null} to use a shared pool of daemon threads.
+     * @return The instantiator.
+     * @since 0.11
+     */
+    public static InjectionContainer create(CachePolicy dft, LifecycleManager mgr,
+                                            long ttl, TimeUnit unit, @Nullable Executor executor) {
+        return create(dft, mgr, ttl, unit, executor, null);
+    }
+
+    /**
+     * Create a new instantiator that shares memoized components with other containers.
+     * @param dft The default cache policy.
+     * @param mgr The lifecycle manager.  Closing it releases the container's references to
+     *            shared components.
+     * @param ttl The time-to-live for {@link CachePolicy#EXPIRING_MEMOIZE} components.
+     * @param unit The time unit of {@code ttl}.
+     * @param executor The executor used to refresh expired components in the background, or
+     *                 {@code null} to use a shared pool of daemon threads.
+     * @param shared The cache of components shared between containers, or {@code null} to not
+     *               share components.
+     * @return The instantiator.
+     * @since 0.11
+     */
+    public static InjectionContainer create(CachePolicy dft, LifecycleManager mgr,
+                                            long ttl, TimeUnit unit, @Nullable Executor executor,
+                                            @Nullable SharedComponentCache shared) {
+        return newBuilder().setDefaultPolicy(dft)
+                           .setLifecycleManager(mgr)
+                           .setTimeToLive(ttl, unit)
+                           .setRefreshExecutor(executor)
+                           .setSharedComponentCache(shared)
+                           .build();
+    }
+
+    /**
+     * Create a new injection container builder.
+     * @return A builder for configuring an injection container.
+     * @since 0.11
+     */
+    public static InjectionContainerBuilder newBuilder() {
+        return new InjectionContainerBuilder();
     }
 
-    private InjectionContainer(CachePolicy dft, LifecycleManager mgr) {
-        defaultCachePolicy = dft;
-        providerCache = new WeakHashMap<DAGNode<Component, Dependency>, Instantiator>();
-        manager = mgr;
+    InjectionContainer(InjectionContainerBuilder bld) {
+        defaultCachePolicy = bld.getDefaultPolicy();
+        // weak keys are compared by identity, which is how graph nodes compare anyway
+        providerCache = new MapMaker().weakKeys().makeMap();
+        manager = bld.getLifecycleManager();
+        timeToLive = bld.getTimeToLive();
+        timeToLiveUnit = bld.getTimeToLiveUnit();
+        Executor executor = bld.getRefreshExecutor();
+        refreshExecutor = executor == null ? DEFAULT_REFRESH_EXECUTOR : executor;
+        sharedCache = bld.getSharedComponentCache();
+        shareable = sharedCache == null ? null : new MapMaker().weakKeys().<DAGNode<Component, Dependency>, Boolean>makeMap();
+        persistentCache = bld.getPersistentCache();
+        frozenCache = new MapMaker().weakKeys().makeMap();
     }
 
     /**
@@ -109,42 +212,279 @@ public class InjectionContainer {
      */
     public Instantiator makeInstantiator(DAGNode<Component, Dependency> node,
                                          SetMultimap<DAGNode<Component, Dependency>, DAGEdge<Component, Dependency>> backEdges) {
-        Instantiator cached;
-        synchronized (providerCache) {
-            cached = providerCache.get(node);
-        }
+        Instantiator cached = providerCache.get(node);
         if (cached == null) {
             logger.debug("Node has not been memoized, instantiating: {}", node.getLabel());
 
             Map<Desire, Instantiator> depMap = makeDependencyMap(node, backEdges);
+            boolean share = sharedCache != null
+                    && getCachePolicy(node.getLabel()).equals(CachePolicy.MEMOIZE)
+                    && isShareable(node, backEdges);
+            cached = makePolicyInstantiator(node.getLabel(), depMap, share,
+                                            Suppliers.ofInstance(node));
+            Instantiator prior = providerCache.putIfAbsent(node, cached);
+            if (prior != null) {
+                logger.debug("two threads built instantiator for {}, discarding 2nd build", node);
+                cached = prior;
+            }
+        }
+        return cached;
+    }
+
+    /**
+     * Get a provider that, when invoked, will return an instance of the component represented
+     * by a node of a frozen graph.  Instantiators are cached per graph in an array indexed by
+     * node, and dependencies are looked up by node index, so instantiating from a frozen graph
+     * does not hash or compare graph nodes.
+     *
+     * @param graph The frozen graph, including its back edges.
+     * @param node The index of the node to instantiate.
+     * @return A provider to instantiate {@code node}.
+     * @since 0.11
+     */
+    public Instantiator makeInstantiator(FrozenGraph<Component, Dependency> graph, int node) {
+        FrozenInstantiators insts = getFrozenInstantiators(graph);
+        Instantiator cached = insts.instantiators.get(node);
+        if (cached == null) {
+            Component comp = graph.getLabel(node);
+            logger.debug("Node has not been memoized, instantiating: {}", comp);
+
+            Map<Desire, Instantiator> depMap = makeDependencyMap(graph, node);
+            boolean share = insts.shareable != null && insts.shareable[node];
+            cached = makePolicyInstantiator(comp, depMap, share, new ThawNode(graph, node));
+            if (!insts.instantiators.compareAndSet(node, null, cached)) {
+                logger.debug("two threads built instantiator for {}, discarding 2nd build", comp);
+                cached = insts.instantiators.get(node);
+            }
+        }
+        return cached;
+    }
+
+    /**
+     * Make the instantiator implementing a component's cache policy.
+     *
+     * @param comp The component.
+     * @param depMap The component's dependencies.
+     * @param share Whether the component can be instantiated from the shared component cache.
+     * @param graph The component's graph, for the shared and persistent caches.
+     * @return The instantiator.
+     */
+    private Instantiator makePolicyInstantiator(Component comp, Map<Desire, Instantiator> depMap,
+                                                boolean share,
+                                                Supplier<DAGNode<Component, Dependency>> graph) {
+        Satisfaction sat = comp.getSatisfaction();
+        CachePolicy policy = getCachePolicy(comp);
+        switch (policy) {
+        case MEMOIZE:
+            if (share) {
+                assert sharedCache != null;
+                return sharedCache.makeInstantiator(graph.get(), defaultCachePolicy, manager);
+            }
+            // fall through: not shared, so memoize locally
+        case LAZY_MEMOIZE:
+            // enforce memoization on providers for MEMOIZE policy
+            // lazy nodes are proxied by the dependency lookup of their dependents
+            return Instantiators.memoize(sat.makeInstantiator(depMap, manager));
+        case SOFT_MEMOIZE:
+            return EvictableInstantiator.soft(sat, depMap, manager);
+        case EXPIRING_MEMOIZE:
+            return EvictableInstantiator.expiring(sat, depMap, manager,
+                                                  timeToLive, timeToLiveUnit, refreshExecutor);
+        case PERSISTENT_MEMOIZE:
+            if (persistentCache != null) {
+                return persistentCache.makeInstantiator(graph.get(), defaultCachePolicy, depMap, manager);
+            } else {
+                return Instantiators.memoize(sat.makeInstantiator(depMap, manager));
+            }
+        case SCOPED:
+            return new ScopedInstantiator(this, sat, depMap);
+        default:
+            // Satisfaction.makeInstantiator() returns providers that are expected
+            // to create new instances with each invocation
+            assert policy.equals(CachePolicy.NEW_INSTANCE);
+            return sat.makeInstantiator(depMap, manager);
+        }
+    }
 
-            Instantiator raw = node.getLabel().getSatisfaction().makeInstantiator(depMap, manager);
+    /**
+     * Asynchronously instantiate the component represented by a graph.  Shared (memoized)
+     * components in the graph are instantiated on {@code executor} as soon as their own
+     * dependencies are ready, so independent subtrees are built concurrently; the root is then
+     * instantiated with the shared components already available.
+     *
+     * <p>Lazy and scoped components are not instantiated ahead of time; scoped components use
+     * the scope active on the executor's thread.  Components that synchronous instantiation
+     * would not build right away, those reachable only through an injected provider or a lazy
+     * proxy, are not instantiated at all.</p>
+     *
+     * @param node The graph.
+     * @param backEdges A multimap of back edges for cyclic dependencies.
+     * @param executor The executor to instantiate components.
+     * @return A future for the instance of the graph's root component.
+     * @since 0.11
+     */
+    public ListenableFuture<Object> instantiateAsync(DAGNode<Component, Dependency> node,
+                                                     SetMultimap<DAGNode<Component, Dependency>, DAGEdge<Component, Dependency>> backEdges,
+                                                     Executor executor) {
+        List<DAGNode<Component, Dependency>> sorted = node.getSortedNodes();
+        // find the nodes built with the root, stopping at providers and lazy proxies; the
+        // reverse of the sorted order has dependents first
+        Set<DAGNode<Component, Dependency>> eager = Sets.newHashSet();
+        eager.add(node);
+        for (DAGNode<Component, Dependency> n: Lists.reverse(sorted)) {
+            if (eager.contains(n)) {
+                for (DAGEdge<Component, Dependency> e: n.getOutgoingEdges()) {
+                    if (!isDeferredEdge(n.getLabel(), e.getLabel(), e.getTail().getLabel())) {
+                        eager.add(e.getTail());
+                    }
+                }
+            }
+        }
 
-            CachePolicy policy = node.getLabel().getCachePolicy();
-            if (policy.equals(CachePolicy.NO_PREFERENCE)) {
-                policy = defaultCachePolicy;
+        Map<DAGNode<Component, Dependency>, ListenableFuture<Object>> futures = Maps.newHashMap();
+        // sorted nodes have dependencies first, so every dependency's future is already present
+        for (DAGNode<Component, Dependency> n: sorted) {
+            if (!eager.contains(n)) {
+                continue;
             }
-            if (policy.equals(CachePolicy.MEMOIZE)) {
-                // enforce memoization on providers for MEMOIZE policy
-                cached = Instantiators.memoize(raw);
+            List<ListenableFuture<Object>> deps = Lists.newArrayList();
+            for (DAGNode<Component, Dependency> dep: n.getAdjacentNodes()) {
+                if (eager.contains(dep)) {
+                    deps.add(futures.get(dep));
+                }
+            }
+            ListenableFuture<List<Object>> ready = Futures.allAsList(deps);
+            ListenableFuture<Object> result;
+            if (n == node || isPrebuilt(n.getLabel())) {
+                result = Futures.transform(ready, new AsyncBuild(makeInstantiator(n, backEdges)), executor);
             } else {
-                // Satisfaction.makeInstantiator() returns providers that are expected
-                // to create new instances with each invocation
-                assert policy.equals(CachePolicy.NEW_INSTANCE);
-                cached = raw;
-            }
-            synchronized (providerCache) {
-                if (!providerCache.containsKey(node)) {
-                    providerCache.put(node, cached);
-                } else {
-                    logger.debug("two threads built instantiator for {}, discarding 2nd build", node);
-                    cached = providerCache.get(node);
+                // components that are not shared just wait for their dependencies
+                result = Futures.<List<Object>,Object>transform(ready, Functions.constant(null));
+            }
+            futures.put(n, result);
+        }
+        return futures.get(node);
+    }
+
+    /**
+     * Asynchronously instantiate the component represented by a node of a frozen graph.
+     *
+     * @param graph The frozen graph, including its back edges.
+     * @param node The index of the node to instantiate.
+     * @param executor The executor to instantiate components.
+     * @return A future for the instance of the component.
+     * @see #instantiateAsync(DAGNode, SetMultimap, Executor)
+     * @since 0.11
+     */
+    public ListenableFuture<Object> instantiateAsync(FrozenGraph<Component, Dependency> graph, int node,
+                                                     Executor executor) {
+        // forward edges point to lower indexes, so a reverse scan finds the nodes built with
+        // the root, stopping at providers and lazy proxies
+        boolean[] reachable = new boolean[node + 1];
+        reachable[node] = true;
+        for (int i = node; i >= 0; i--) {
+            if (reachable[i]) {
+                for (int e = graph.getEdgeStart(i); e < graph.getBackEdgeStart(i); e++) {
+                    int target = graph.getEdgeTarget(e);
+                    if (!isDeferredEdge(graph.getLabel(i), graph.getEdgeLabel(e), graph.getLabel(target))) {
+                        reachable[target] = true;
+                    }
                 }
             }
         }
-        return cached;
+
+        List<ListenableFuture<Object>> futures =
+                Lists.newArrayList(Collections.<ListenableFuture<Object>>nCopies(node + 1, null));
+        for (int i = 0; i <= node; i++) {
+            if (!reachable[i]) {
+                continue;
+            }
+            List<ListenableFuture<Object>> deps = Lists.newArrayList();
+            for (int e = graph.getEdgeStart(i); e < graph.getBackEdgeStart(i); e++) {
+                int target = graph.getEdgeTarget(e);
+                if (reachable[target]) {
+                    deps.add(futures.get(target));
+                }
+            }
+            ListenableFuture<List<Object>> ready = Futures.allAsList(deps);
+            ListenableFuture<Object> result;
+            if (i == node || isPrebuilt(graph.getLabel(i))) {
+                result = Futures.transform(ready, new AsyncBuild(makeInstantiator(graph, i)), executor);
+            } else {
+                result = Futures.<List<Object>,Object>transform(ready, Functions.constant(null));
+            }
+            futures.set(i, result);
+        }
+        return futures.get(node);
+    }
+
+    /**
+     * Query whether a component is instantiated ahead of its dependents by
+     * {@link #instantiateAsync(DAGNode, SetMultimap, Executor)}.
+     */
+    private boolean isPrebuilt(Component comp) {
+        switch (getCachePolicy(comp)) {
+        case MEMOIZE:
+        case SOFT_MEMOIZE:
+        case EXPIRING_MEMOIZE:
+        case PERSISTENT_MEMOIZE:
+            return true;
+        default:
+            return false;
+        }
     }
 
+    /**
+     * Query whether instantiating a component leaves a dependency to be instantiated later: the
+     * component is an injected provider, or the dependency is injected through a lazy proxy.
+     */
+    private boolean isDeferredEdge(Component head, Dependency dep, Component tail) {
+        return ProviderBindingFunction.isProviderInjection(head.getSatisfaction())
+                || isLazyProxied(dep.getInitialDesire(), tail);
+    }
+
+    /**
+     * Query whether a component can be instantiated from the shared component cache: all
+     * components in its graph must be memoized or new-instance, with no back edges.
+     */
+    private boolean isShareable(DAGNode<Component, Dependency> node,
+                                SetMultimap<DAGNode<Component, Dependency>, DAGEdge<Component, Dependency>> backEdges) {
+        Boolean known = shareable.get(node);
+        if (known != null) {
+            return known;
+        }
+        // sorted nodes have dependencies first, so their results are available
+        for (DAGNode<Component, Dependency> n: node.getSortedNodes()) {
+            if (shareable.containsKey(n)) {
+                continue;
+            }
+            boolean ok = SharedComponentCache.isSharedPolicy(getCachePolicy(n.getLabel()))
+                    && !backEdges.containsKey(n);
+            for (DAGNode<Component, Dependency> dep: n.getAdjacentNodes()) {
+                ok &= shareable.get(dep);
+            }
+            shareable.put(n, ok);
+        }
+        return shareable.get(node);
+    }
+
+    /**
+     * Get the effective cache policy for a component, applying the container's default policy.
+     */
+    private CachePolicy getCachePolicy(Component comp) {
+        CachePolicy policy = comp.getCachePolicy();
+        if (policy.equals(CachePolicy.NO_PREFERENCE)) {
+            policy = defaultCachePolicy;
+        }
+        return policy;
+    }
+
+    /**
+     * Build the dependency map for a node.  The desire-to-node index is computed once here, so
+     * looking up a dependency is a hash lookup followed by a (usually cached) instantiator lookup.
+     * Instantiators for the dependencies are still created lazily, as back edges may make the
+     * graph cyclic.
+     */
     private Map<Desire, Instantiator> makeDependencyMap(DAGNode<Component, Dependency> node, SetMultimap<DAGNode<Component, Dependency>, DAGEdge<Component, Dependency>> backEdges) {
         Set<DAGEdge<Component,Dependency>> edges = node.getOutgoingEdges();
         if (backEdges.containsKey(node)) {
@@ -154,11 +494,62 @@ public class InjectionContainer {
                        .build();
         }
 
-        ImmutableSet.Builder<Desire> desires = ImmutableSet.builder();
+        Map<Desire, DAGNode<Component, Dependency>> targets = Maps.newLinkedHashMap();
         for (DAGEdge<Component,Dependency> edge: edges) {
-            desires.add(edge.getLabel().getInitialDesire());
+            Desire desire = edge.getLabel().getInitialDesire();
+            // if two edges share a desire, the first one wins
+            if (!targets.containsKey(desire)) {
+                targets.put(desire, edge.getTail());
+            }
+        }
+        return Maps.transformEntries(ImmutableMap.copyOf(targets), new DepLookup(backEdges));
+    }
+
+    /**
+     * Build the dependency map for a node of a frozen graph.
+     */
+    private Map<Desire, Instantiator> makeDependencyMap(FrozenGraph<Component, Dependency> graph, int node) {
+        Map<Desire, Integer> targets = Maps.newLinkedHashMap();
+        for (int e = graph.getEdgeStart(node); e < graph.getEdgeEnd(node); e++) {
+            Desire desire = graph.getEdgeLabel(e).getInitialDesire();
+            // if two edges share a desire, the first one wins
+            if (!targets.containsKey(desire)) {
+                targets.put(desire, graph.getEdgeTarget(e));
+            }
+        }
+        return Maps.transformEntries(ImmutableMap.copyOf(targets), new FrozenDepLookup(graph));
+    }
+
+    /**
+     * Get the instantiator cache for a frozen graph.
+     */
+    private FrozenInstantiators getFrozenInstantiators(FrozenGraph<Component, Dependency> graph) {
+        FrozenInstantiators insts = frozenCache.get(graph);
+        if (insts == null) {
+            insts = new FrozenInstantiators(graph);
+            FrozenInstantiators prior = frozenCache.putIfAbsent(graph, insts);
+            if (prior != null) {
+                insts = prior;
+            }
         }
-        return Maps.asMap(desires.build(), new DepLookup(edges, backEdges));
+        return insts;
+    }
+
+    /**
+     * Wrap the instantiator of a dependency in a lazy proxy if the dependency's component is
+     * {@link CachePolicy#LAZY_MEMOIZE} and it is injected as an interface.
+     */
+    private Instantiator wrapLazy(@Nullable Desire desire, Component comp, Instantiator inst) {
+        if (desire != null && isLazyProxied(desire, comp)) {
+            return Instantiators.lazyProxy(desire.getInjectionPoint().getErasedType(), inst);
+        }
+        return inst;
+    }
+
+    private boolean isLazyProxied(Desire desire, Component comp) {
+        return getCachePolicy(comp).equals(CachePolicy.LAZY_MEMOIZE)
+                && !comp.getSatisfaction().hasInstance()
+                && desire.getInjectionPoint().getErasedType().isInterface();
     }
 
     /**
@@ -171,32 +562,149 @@ public class InjectionContainer {
     }
 
     /**
-     * Function to look up a desire in a set of dependency edges.
+     * Enter a new scope on the current thread.  Until the scope is closed, {@link CachePolicy#SCOPED}
+     * components instantiated by this container on this thread are shared within the scope.
+     *
+     * @return The new scope, which the caller must close to exit it.
+     * @since 0.11
+     */
+    public InjectionScope enterScope() {
+        InjectionScope scope = new InjectionScope(this, currentScope.get(), manager != null);
+        currentScope.set(scope);
+        return scope;
+    }
+
+    /**
+     * Get the scope that is active on the current thread.
+     * @return The current scope, or {@code null} if no scope is active.
+     * @since 0.11
      */
-    private class DepLookup implements Function<Desire,Instantiator> {
-        private final Set<DAGEdge<Component, Dependency>> edges;
+    @Nullable
+    public InjectionScope getCurrentScope() {
+        return currentScope.get();
+    }
+
+    /**
+     * Exit a scope, re-activating its enclosing scope.
+     * @param scope The scope to exit.
+     */
+    void exitScope(InjectionScope scope) {
+        if (currentScope.get() != scope) {
+            throw new IllegalStateException("scopes must be exited in the reverse order they were entered");
+        }
+        InjectionScope prev = scope.getPrevious();
+        if (prev == null) {
+            currentScope.remove();
+        } else {
+            currentScope.set(prev);
+        }
+    }
+
+    /**
+     * Function to instantiate a node once its dependencies are ready.
+     */
+    private static class AsyncBuild implements AsyncFunction<List<Object>, Object> {
+        private final Instantiator instantiator;
+
+        public AsyncBuild(Instantiator inst) {
+            instantiator = inst;
+        }
+
+        @Override
+        public ListenableFuture<Object> apply(@Nullable List<Object> input) throws ConstructionException {
+            return Futures.immediateFuture(instantiator.instantiate());
+        }
+    }
+
+    /**
+     * Function to look up the instantiator for a dependency's target node.
+     */
+    private class DepLookup implements Maps.EntryTransformer<Desire,DAGNode<Component,Dependency>,Instantiator> {
         private final SetMultimap<DAGNode<Component, Dependency>, DAGEdge<Component, Dependency>> backEdges;
 
         /**
          * Construct a depenency lookup funciton.
-         * @param edges The set of edges to consult.
          * @param backEdges The back edge map (to pass to {@link #makeInstantiator(DAGNode,SetMultimap)}).
          */
-        public DepLookup(Set<DAGEdge<Component,Dependency>> edges,
-                         SetMultimap<DAGNode<Component, Dependency>, DAGEdge<Component, Dependency>> backEdges) {
-            this.edges = edges;
+        public DepLookup(SetMultimap<DAGNode<Component, Dependency>, DAGEdge<Component, Dependency>> backEdges) {
             this.backEdges = backEdges;
         }
 
-        @Nullable
         @Override
-        public Instantiator apply(@Nullable Desire input) {
-            for (DAGEdge<Component,Dependency> edge: edges) {
-                if (edge.getLabel().getInitialDesire().equals(input)) {
-                    return makeInstantiator(edge.getTail(), backEdges);
+        public Instantiator transformEntry(@Nullable Desire desire, @Nullable DAGNode<Component, Dependency> node) {
+            if (node == null) {
+                return null;
+            }
+            return wrapLazy(desire, node.getLabel(), makeInstantiator(node, backEdges));
+        }
+    }
+
+    /**
+     * Function to look up the instantiator for a dependency's target node in a frozen graph.
+     */
+    private class FrozenDepLookup implements Maps.EntryTransformer<Desire,Integer,Instantiator> {
+        private final FrozenGraph<Component, Dependency> graph;
+
+        public FrozenDepLookup(FrozenGraph<Component, Dependency> graph) {
+            this.graph = graph;
+        }
+
+        @Override
+        public Instantiator transformEntry(@Nullable Desire desire, @Nullable Integer node) {
+            if (node == null) {
+                return null;
+            }
+            return wrapLazy(desire, graph.getLabel(node), makeInstantiator(graph, node));
+        }
+    }
+
+    /**
+     * The instantiators of a frozen graph's nodes, indexed by node.
+     */
+    private class FrozenInstantiators {
+        final AtomicReferenceArray<Instantiator> instantiators;
+        /**
+         * Whether each node can be instantiated from the shared component cache, or {@code null}
+         * if the container has no shared cache.
+         */
+        @Nullable
+        final boolean[] shareable;
+
+        public FrozenInstantiators(FrozenGraph<Component, Dependency> graph) {
+            int n = graph.size();
+            instantiators = new AtomicReferenceArray<Instantiator>(n);
+            if (sharedCache == null) {
+                shareable = null;
+            } else {
+                // forward edges point to lower indexes, so dependencies are computed first
+                shareable = new boolean[n];
+                for (int i = 0; i < n; i++) {
+                    boolean ok = SharedComponentCache.isSharedPolicy(getCachePolicy(graph.getLabel(i)))
+                            && graph.getBackEdgeStart(i) == graph.getEdgeEnd(i);
+                    for (int e = graph.getEdgeStart(i); ok && e < graph.getBackEdgeStart(i); e++) {
+                        ok = shareable[graph.getEdgeTarget(e)];
+                    }
+                    shareable[i] = ok;
                 }
             }
-            return null;
+        }
+    }
+
+    /**
+     * Supplier rebuilding the graph of a frozen node, for caches that key components by graph.
+     */
+    private static class ThawNode implements Supplier<DAGNode<Component, Dependency>> {
+        private final FrozenGraph<Component, Dependency> graph;
+        private final int node;
+
+        public ThawNode(FrozenGraph<Component, Dependency> graph, int node) {
+            this.graph = graph;
+            this.node = node;
+        }
+
+        @Override
+        public DAGNode<Component, Dependency> get() {
+            return graph.toNode(node);
         }
     }
 }
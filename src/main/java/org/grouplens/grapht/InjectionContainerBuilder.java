@@ -0,0 +1,151 @@
+/*
+ * Grapht, an open source dependency injector.
+ * Copyright 2014-2015 various contributors (see CONTRIBUTORS.txt)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.grapht;
+
+import com.google.common.base.Preconditions;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A builder for {@link InjectionContainer}s.
+ *
+ * @see InjectionContainer#newBuilder()
+ * @since 0.11
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+public class InjectionContainerBuilder {
+    private CachePolicy defaultPolicy = CachePolicy.MEMOIZE;
+    private LifecycleManager lifecycleManager;
+    private long timeToLive = InjectionContainer.DEFAULT_TIME_TO_LIVE_MINUTES;
+    private TimeUnit timeToLiveUnit = TimeUnit.MINUTES;
+    private Executor refreshExecutor;
+    private SharedComponentCache sharedComponentCache;
+    private PersistentInstanceCache persistentCache;
+
+    InjectionContainerBuilder() {}
+
+    /**
+     * Set the default cache policy, used for components with no policy preference.
+     * @param policy The default cache policy.  The default is {@link CachePolicy#MEMOIZE}.
+     * @return The builder (for chaining).
+     */
+    public InjectionContainerBuilder setDefaultPolicy(CachePolicy policy) {
+        Preconditions.checkNotNull(policy, "default policy");
+        defaultPolicy = policy;
+        return this;
+    }
+
+    /**
+     * Set the lifecycle manager that tears down the container's components.
+     * @param mgr The lifecycle manager, or {@code null} (the default) to not manage component
+     *            lifecycles.
+     * @return The builder (for chaining).
+     */
+    public InjectionContainerBuilder setLifecycleManager(@Nullable LifecycleManager mgr) {
+        lifecycleManager = mgr;
+        return this;
+    }
+
+    /**
+     * Set the time-to-live for {@link CachePolicy#EXPIRING_MEMOIZE} components.
+     * @param ttl The time-to-live.  The default is
+     *            {@value InjectionContainer#DEFAULT_TIME_TO_LIVE_MINUTES} minutes.
+     * @param unit The time unit of {@code ttl}.
+     * @return The builder (for chaining).
+     */
+    public InjectionContainerBuilder setTimeToLive(long ttl, TimeUnit unit) {
+        Preconditions.checkArgument(ttl > 0, "time-to-live must be positive");
+        Preconditions.checkNotNull(unit, "time unit");
+        timeToLive = ttl;
+        timeToLiveUnit = unit;
+        return this;
+    }
+
+    /**
+     * Set the executor used to refresh expired components in the background.
+     * @param executor The executor, or {@code null} (the default) to use a shared pool of
+     *                 daemon threads.
+     * @return The builder (for chaining).
+     */
+    public InjectionContainerBuilder setRefreshExecutor(@Nullable Executor executor) {
+        refreshExecutor = executor;
+        return this;
+    }
+
+    /**
+     * Set the cache of memoized components shared with other containers.
+     * @param cache The shared component cache, or {@code null} (the default) to not share
+     *              components.
+     * @return The builder (for chaining).
+     */
+    public InjectionContainerBuilder setSharedComponentCache(@Nullable SharedComponentCache cache) {
+        sharedComponentCache = cache;
+        return this;
+    }
+
+    /**
+     * Set the persistent cache for {@link CachePolicy#PERSISTENT_MEMOIZE} components.
+     * @param cache The persistent instance cache, or {@code null} (the default) to memoize such
+     *              components only in memory.
+     * @return The builder (for chaining).
+     */
+    public InjectionContainerBuilder setPersistentCache(@Nullable PersistentInstanceCache cache) {
+        persistentCache = cache;
+        return this;
+    }
+
+    CachePolicy getDefaultPolicy() {
+        return defaultPolicy;
+    }
+
+    LifecycleManager getLifecycleManager() {
+        return lifecycleManager;
+    }
+
+    long getTimeToLive() {
+        return timeToLive;
+    }
+
+    TimeUnit getTimeToLiveUnit() {
+        return timeToLiveUnit;
+    }
+
+    Executor getRefreshExecutor() {
+        return refreshExecutor;
+    }
+
+    SharedComponentCache getSharedComponentCache() {
+        return sharedComponentCache;
+    }
+
+    PersistentInstanceCache getPersistentCache() {
+        return persistentCache;
+    }
+
+    /**
+     * Build the injection container.
+     * @return The injection container.
+     */
+    public InjectionContainer build() {
+        return new InjectionContainer(this);
+    }
+}
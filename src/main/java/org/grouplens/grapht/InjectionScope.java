@@ -0,0 +1,127 @@
+/*
+ * Grapht, an open source dependency injector.
+ * Copyright 2014-2015 various contributors (see CONTRIBUTORS.txt)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.grapht;
+
+import javax.annotation.Nullable;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * A scope for {@link CachePolicy#SCOPED} components, such as a single request.  Scoped
+ * components are shared by all injections performed on the thread that entered the scope while it
+ * is active, and are torn down when the scope is closed.  Scopes are cheap: entering a scope only
+ * allocates the scope object, and its instance table is allocated on the first scoped injection.
+ *
+ * <p>Scopes nest; closing a scope re-activates the scope that was active when it was entered.
+ * A scope must be closed on the thread that entered it.</p>
+ *
+ * @see InjectionContainer#enterScope()
+ * @since 0.11
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+public class InjectionScope implements AutoCloseable {
+    private final InjectionContainer container;
+    @Nullable
+    private final InjectionScope previous;
+    private final Thread thread;
+    private final boolean manageLifecycle;
+    private Map<Object, Object> instances;
+    private LifecycleManager manager;
+    private boolean closed;
+
+    InjectionScope(InjectionContainer ctr, @Nullable InjectionScope prev, boolean manage) {
+        container = ctr;
+        previous = prev;
+        thread = Thread.currentThread();
+        manageLifecycle = manage;
+    }
+
+    /**
+     * Get the scope that was active when this scope was entered.
+     * @return The enclosing scope, or {@code null} if this is an outermost scope.
+     */
+    @Nullable
+    public InjectionScope getPrevious() {
+        return previous;
+    }
+
+    /**
+     * Get the instance of a scoped component, instantiating it if it has not been used in this
+     * scope yet.
+     *
+     * @param key The key identifying the component (its memoizing instantiator).
+     * @param factory The factory for new instances.
+     * @return The scoped instance.
+     */
+    Object getInstance(Object key, ScopedFactory factory) throws ConstructionException {
+        if (closed) {
+            throw new IllegalStateException("scope is closed");
+        }
+        if (instances == null) {
+            instances = new IdentityHashMap<Object, Object>();
+        } else if (instances.containsKey(key)) {
+            return instances.get(key);
+        }
+        if (manageLifecycle && manager == null) {
+            manager = new LifecycleManager();
+        }
+        Object instance = factory.create(manager);
+        instances.put(key, instance);
+        return instance;
+    }
+
+    /**
+     * Exit the scope, restoring the previously active scope and tearing down the scoped
+     * instances.
+     *
+     * @throws IllegalStateException if the scope is being closed on a different thread than the
+     *                               one that entered it, or while a scope nested in it is still
+     *                               open.  The scope is left open, so it can be closed again once
+     *                               the nested scope is closed.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        if (Thread.currentThread() != thread) {
+            throw new IllegalStateException("scope must be closed by the thread that entered it");
+        }
+        // check the nesting before marking the scope closed, so a failed close can be retried
+        container.exitScope(this);
+        closed = true;
+        instances = null;
+        if (manager != null) {
+            manager.close();
+        }
+    }
+
+    /**
+     * Interface for creating instances of scoped components.
+     */
+    interface ScopedFactory {
+        /**
+         * Create a new instance.
+         * @param mgr The scope's lifecycle manager.
+         * @return The new instance.
+         */
+        Object create(@Nullable LifecycleManager mgr) throws ConstructionException;
+    }
+}
@@ -19,11 +19,14 @@
  */
 package org.grouplens.grapht;
 
+import com.google.common.util.concurrent.ListenableFuture;
+
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.inject.Qualifier;
 import java.io.Closeable;
 import java.lang.annotation.Annotation;
+import java.util.concurrent.Executor;
 
 /**
  * <p>
@@ -88,6 +91,34 @@ public interface Injector extends AutoCloseable {
     @Nullable
     <T> T tryGetInstance(Annotation qualifier, Class<T> type) throws InjectionException;
 
+    /**
+     * Asynchronously get an instance of T.  Resolution and instantiation run on
+     * {@code executor}, and independent shared dependencies may be instantiated concurrently.
+     * Errors, including {@link ConstructionException}, are reported through the future.
+     *
+     * @param <T> The object type being created
+     * @param type The class type
+     * @param executor The executor to resolve and instantiate the component.
+     * @return A future that completes with an instance of type T.
+     * @since 0.11
+     */
+    @Nonnull
+    <T> ListenableFuture<T> getInstanceAsync(Class<T> type, Executor executor);
+
+    /**
+     * Asynchronously get an instance of T with the given {@link Qualifier} annotation.
+     *
+     * @param <T> The object type
+     * @param qualifier The qualifier on of the returned instance
+     * @param type The class type
+     * @param executor The executor to resolve and instantiate the component.
+     * @return A future that completes with an instance of type T.
+     * @see #getInstanceAsync(Class, Executor)
+     * @since 0.11
+     */
+    @Nonnull
+    <T> ListenableFuture<T> getInstanceAsync(Annotation qualifier, Class<T> type, Executor executor);
+
     /**
      * Close the injector, shutting down any instantiated components that require shutdown.
      */
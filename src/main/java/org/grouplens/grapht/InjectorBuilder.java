@@ -23,12 +23,16 @@ import org.grouplens.grapht.BindingFunctionBuilder.RuleSet;
 import org.grouplens.grapht.solver.BindingFunction;
 import org.grouplens.grapht.solver.DefaultDesireBindingFunction;
 import org.grouplens.grapht.solver.DefaultInjector;
+import org.grouplens.grapht.solver.DependencySolver;
 import org.grouplens.grapht.solver.ProviderBindingFunction;
+import org.grouplens.grapht.solver.SubgraphCache;
 import org.grouplens.grapht.context.ContextPattern;
 import org.grouplens.grapht.util.ClassLoaders;
 import org.grouplens.grapht.util.Types;
 
+import javax.annotation.Nullable;
 import java.lang.annotation.Annotation;
+import java.util.concurrent.TimeUnit;
 
 /**
  * <p>
@@ -48,6 +52,11 @@ public class InjectorBuilder extends AbstractContext {
     private final BindingFunctionBuilder builder;
     private CachePolicy cachePolicy;
     private boolean enableProviderInjection;
+    private long timeToLive = InjectionContainer.DEFAULT_TIME_TO_LIVE_MINUTES;
+    private TimeUnit timeToLiveUnit = TimeUnit.MINUTES;
+    private SubgraphCache subgraphCache;
+    private SharedComponentCache sharedComponentCache;
+    private PersistentInstanceCache persistentCache;
 
     /**
      * Create a new injector builder.
@@ -117,6 +126,68 @@ public class InjectorBuilder extends AbstractContext {
         return this;
     }
     
+    /**
+     * Set the time-to-live of {@link CachePolicy#EXPIRING_MEMOIZE} components in injectors
+     * created by this builder.
+     *
+     * @param ttl The time-to-live.
+     * @param unit The time unit of {@code ttl}.
+     * @return This builder
+     * @throws IllegalArgumentException if {@code ttl} is not positive
+     * @since 0.11
+     */
+    public InjectorBuilder setTimeToLive(long ttl, TimeUnit unit) {
+        if (ttl <= 0) {
+            throw new IllegalArgumentException("time-to-live must be positive");
+        }
+        timeToLive = ttl;
+        timeToLiveUnit = unit;
+        return this;
+    }
+
+    /**
+     * Set the subgraph cache used to resolve the dependencies of injectors created by this
+     * builder.  Injectors whose bindings differ only in a few types can share a cache, created with
+     * {@link SubgraphCache#create()}, to reuse the resolutions those bindings do not affect.
+     *
+     * @param cache The subgraph cache, or {@code null} (the default) to disable subgraph caching.
+     * @return This builder
+     * @since 0.11
+     */
+    public InjectorBuilder setSubgraphCache(@Nullable SubgraphCache cache) {
+        subgraphCache = cache;
+        return this;
+    }
+
+    /**
+     * Set the cache of memoized components shared by injectors created by this builder and
+     * any other injectors using the same cache.  Closing an injector releases its references to
+     * shared components.
+     *
+     * @param cache The shared component cache, or {@code null} (the default) to not share
+     *              components.
+     * @return This builder
+     * @since 0.11
+     */
+    public InjectorBuilder setSharedComponentCache(@Nullable SharedComponentCache cache) {
+        sharedComponentCache = cache;
+        return this;
+    }
+
+    /**
+     * Set the persistent cache for {@link CachePolicy#PERSISTENT_MEMOIZE} components of
+     * injectors created by this builder.
+     *
+     * @param cache The persistent instance cache, or {@code null} (the default) to memoize
+     *              persistent components only in memory.
+     * @return This builder
+     * @since 0.11
+     */
+    public InjectorBuilder setPersistentCache(@Nullable PersistentInstanceCache cache) {
+        persistentCache = cache;
+        return this;
+    }
+
     /**
      * Set whether or not to enable provider injection support in the built
      * Injectors.
@@ -205,6 +276,19 @@ public class InjectorBuilder extends AbstractContext {
             };
         }
         
-        return new DefaultInjector(cachePolicy, 100, functions);
+        InjectionContainer container =
+                InjectionContainer.newBuilder()
+                                  .setDefaultPolicy(cachePolicy)
+                                  .setLifecycleManager(new LifecycleManager())
+                                  .setTimeToLive(timeToLive, timeToLiveUnit)
+                                  .setSharedComponentCache(sharedComponentCache)
+                                  .setPersistentCache(persistentCache)
+                                  .build();
+        DependencySolver solver = DependencySolver.newBuilder()
+                                                  .addBindingFunctions(functions)
+                                                  .setMaxDepth(100)
+                                                  .setSubgraphCache(subgraphCache)
+                                                  .build();
+        return new DefaultInjector(container, solver);
     }
 }
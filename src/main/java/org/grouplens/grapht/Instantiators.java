@@ -27,7 +27,11 @@ import org.grouplens.grapht.util.Types;
 import javax.inject.Provider;
 import org.slf4j.LoggerFactory;
 import org.slf4j.Logger;
-import org.grouplens.grapht.util.LogContext;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 
 /**
  * Utilities and methods for building and working with {@link org.grouplens.grapht.Instantiator}s.
@@ -113,6 +117,25 @@ public final class Instantiators {
         Preconditions.checkNotNull(instantiator, "instantiator");
         return new MemoizingInstantiator(instantiator);
     }
+
+    /**
+     * Create an instantiator that defers to another instantiator lazily.  The resulting
+     * instantiator returns a proxy implementing {@code type}; the first method invoked on the proxy
+     * instantiates the delegate (exactly once, even with concurrent invocations), and all method
+     * invocations are forwarded to the resulting instance.
+     *
+     * @param type The interface type of the proxy.
+     * @param instantiator The instantiator to defer to.  It must not return {@code null}.
+     * @return An instantiator returning lazy proxies for {@code instantiator}.
+     * @since 0.11
+     */
+    public static Instantiator lazyProxy(Class<?> type, Instantiator instantiator) {
+        Preconditions.checkNotNull(type, "type");
+        Preconditions.checkNotNull(instantiator, "instantiator");
+        Preconditions.checkArgument(type.isInterface(), "lazy proxy type must be an interface");
+        return new LazyProxyInstantiator(type, instantiator);
+    }
+
     private static final class InstanceInstantiator implements Instantiator {
         private final Object instance;
         private final Class<?> type;
@@ -205,6 +228,87 @@ public final class Instantiators {
         }
     }
 
+    private static class LazyProxyInstantiator implements Instantiator {
+        private final Class<?> type;
+        private final Instantiator delegate;
+
+        public LazyProxyInstantiator(Class<?> type, Instantiator inst) {
+            this.type = type;
+            delegate = inst;
+        }
+
+        @Override
+        public Object instantiate() throws ConstructionException {
+            return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+                                          new LazyInvocationHandler(type, delegate));
+        }
+
+        @Override
+        public Class getType() {
+            return type;
+        }
+    }
+
+    private static class LazyInvocationHandler implements InvocationHandler {
+        private final Class<?> type;
+        private final Instantiator delegate;
+        private volatile Object target;
+
+        public LazyInvocationHandler(Class<?> type, Instantiator inst) {
+            this.type = type;
+            delegate = inst;
+        }
+
+        private Object getTarget() {
+            Object t = target;
+            if (t == null) {
+                synchronized (this) {
+                    t = target;
+                    if (t == null) {
+                        logger.debug("instantiating lazy {}", type);
+                        try {
+                            t = delegate.instantiate();
+                        } catch (ConstructionException ex) {
+                            throw new LazyInstantiationException(type, ex);
+                        }
+                        if (t == null) {
+                            throw new NullPointerException("lazy " + type.getName() + " instantiated to null");
+                        }
+                        target = t;
+                    }
+                }
+            }
+            return t;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getDeclaringClass().equals(Object.class)) {
+                // equals, hashCode and toString must not instantiate the target
+                String name = method.getName();
+                if (name.equals("equals")) {
+                    return proxy == args[0];
+                } else if (name.equals("hashCode")) {
+                    return System.identityHashCode(proxy);
+                } else if (name.equals("toString")) {
+                    Object t = target;
+                    return t == null ? toString() : t.toString();
+                }
+            }
+            Object t = getTarget();
+            try {
+                return method.invoke(t, args);
+            } catch (InvocationTargetException ex) {
+                throw ex.getCause();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "lazy " + type.getName() + " for " + delegate;
+        }
+    }
+
     private static class InstantiatorProvider implements TypedProvider {
         private final Instantiator instantiator;
 
@@ -0,0 +1,47 @@
+/*
+ * Grapht, an open source dependency injector.
+ * Copyright 2014-2015 various contributors (see CONTRIBUTORS.txt)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.grapht;
+
+/**
+ * Thrown when a lazily-instantiated component cannot be built on its first use.  Lazy
+ * components are proxies whose methods cannot throw checked exceptions, so the
+ * {@link ConstructionException} is wrapped in this exception.
+ *
+ * @see CachePolicy#LAZY_MEMOIZE
+ * @since 0.11
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+public class LazyInstantiationException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final Class<?> type;
+
+    public LazyInstantiationException(Class<?> type, Throwable cause) {
+        super("error instantiating lazy " + type.getName(), cause);
+        this.type = type;
+    }
+
+    /**
+     * @return The type of the lazy component that could not be instantiated.
+     */
+    public Class<?> getType() {
+        return type;
+    }
+}
@@ -21,11 +21,10 @@ package org.grouplens.grapht;
 
 import com.google.common.base.Throwables;
 import com.google.common.util.concurrent.UncheckedExecutionException;
-import org.apache.commons.lang3.reflect.MethodUtils;
+import org.grouplens.grapht.util.InjectionIndex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.annotation.PreDestroy;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.Deque;
@@ -41,7 +40,7 @@ public class LifecycleManager implements AutoCloseable {
      *
      * @param instance The component to register.
      */
-    public void registerComponent(Object instance) {
+    public synchronized void registerComponent(Object instance) {
         if (instance == null) {
             return;
         }
@@ -49,7 +48,7 @@ public class LifecycleManager implements AutoCloseable {
         if (instance instanceof AutoCloseable) {
             actions.add(new CloseAction((AutoCloseable) instance));
         }
-        for (Method m: MethodUtils.getMethodsListWithAnnotation(instance.getClass(), PreDestroy.class)) {
+        for (Method m: InjectionIndex.getPreDestroyMethods(instance.getClass())) {
             actions.add(new PreDestroyAction(instance, m));
         }
     }
@@ -58,7 +57,7 @@ public class LifecycleManager implements AutoCloseable {
      * Close the lifecycle manager, shutting down all components it manages.
      */
     @Override
-    public void close() {
+    public synchronized void close() {
         Throwable error = null;
         while (!actions.isEmpty()) {
             TeardownAction action = actions.removeFirst();
@@ -0,0 +1,561 @@
+/*
+ * Grapht, an open source dependency injector.
+ * Copyright 2014-2015 various contributors (see CONTRIBUTORS.txt)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.grapht;
+
+import com.google.common.base.Charsets;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.Maps;
+import com.google.common.hash.Funnels;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import org.apache.commons.lang3.ClassUtils;
+import org.grouplens.grapht.graph.DAGEdge;
+import org.grouplens.grapht.graph.DAGNode;
+import org.grouplens.grapht.reflect.Desire;
+import org.grouplens.grapht.reflect.InjectionPoint;
+import org.grouplens.grapht.reflect.SatisfactionVisitor;
+import org.grouplens.grapht.reflect.internal.ConstructorParameterInjectionPoint;
+import org.grouplens.grapht.reflect.internal.SetterInjectionPoint;
+import org.grouplens.grapht.util.ClassProxy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import javax.inject.Provider;
+import java.io.*;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.*;
+
+/**
+ * A directory of serialized {@link CachePolicy#PERSISTENT_MEMOIZE} component instances, so that
+ * expensive components built by one process can be loaded by later ones.
+ *
+ * <p>Instances are stored under a digest of their component graph: each component's
+ * satisfaction (including the checksum of its class, as computed by {@link ClassProxy}, and the
+ * serialized form of any bound instance or provider), its effective cache policy, and its
+ * dependencies' injection points and digests.  A graph containing instances or providers that
+ * are not serializable has no digest, and its component is memoized only in memory.</p>
+ *
+ * <p>Instances are written to a temporary file and renamed into place, so concurrent readers,
+ * including other processes, never see partial files.  When the stored instances exceed the
+ * cache's maximum size, the least recently used are deleted.</p>
+ *
+ * @see InjectionContainerBuilder#setPersistentCache(PersistentInstanceCache)
+ * @since 0.11
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+public class PersistentInstanceCache {
+    private static final Logger logger = LoggerFactory.getLogger(PersistentInstanceCache.class);
+    private static final String SUFFIX = ".ser";
+
+    private final File directory;
+    private final long maxSize;
+
+    private long hitCount;
+    private long missCount;
+    private long storeCount;
+    private long evictionCount;
+
+    private PersistentInstanceCache(File dir, long max) {
+        directory = dir;
+        maxSize = max;
+    }
+
+    /**
+     * Create a persistent instance cache.
+     * @param dir The cache directory.  It is created if it does not exist.
+     * @param maxSize The maximum total size of the stored instances, in bytes.
+     * @return The persistent instance cache.
+     * @throws IOException if the directory cannot be created.
+     */
+    public static PersistentInstanceCache create(File dir, long maxSize) throws IOException {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maximum size must be positive");
+        }
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("cannot create cache directory " + dir);
+        }
+        return new PersistentInstanceCache(dir, maxSize);
+    }
+
+    /**
+     * Get the cache directory.
+     * @return The directory containing the stored instances.
+     */
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Get the maximum size of the cache.
+     * @return The maximum total size of the stored instances, in bytes.
+     */
+    public long getMaximumSize() {
+        return maxSize;
+    }
+
+    /**
+     * Get the current size of the cache.
+     * @return The total size of the stored instances, in bytes.
+     */
+    public long getSize() {
+        long size = 0;
+        for (File file: listEntries()) {
+            size += file.length();
+        }
+        return size;
+    }
+
+    /**
+     * Get the statistics of this cache.  Hits and misses count instance lookups; a load is an
+     * instance stored after being built, and an eviction is a stored instance deleted to keep the
+     * cache within its maximum size.
+     *
+     * @return The cache statistics.
+     */
+    public synchronized CacheStats getStats() {
+        return new CacheStats(hitCount, missCount, storeCount, 0, 0, evictionCount);
+    }
+
+    /**
+     * Delete all stored instances.
+     */
+    public synchronized void clear() {
+        for (File file: listEntries()) {
+            delete(file);
+        }
+    }
+
+    /**
+     * Make an instantiator for a persistent component.  If the component graph cannot be
+     * digested, the instantiator just memoizes the component.
+     *
+     * @param node The component graph.
+     * @param dft The container's default cache policy.
+     * @param deps The component's dependencies.
+     * @param mgr The container's lifecycle manager.
+     * @return The instantiator.
+     */
+    Instantiator makeInstantiator(DAGNode<Component, Dependency> node, CachePolicy dft,
+                                  Map<Desire, Instantiator> deps, @Nullable LifecycleManager mgr) {
+        Instantiator build = node.getLabel().getSatisfaction().makeInstantiator(deps, mgr);
+        String key = digest(node, dft);
+        if (key == null) {
+            logger.warn("cannot persist {}: graph contains unserializable objects", node.getLabel());
+            return Instantiators.memoize(build);
+        }
+        return Instantiators.memoize(new PersistentInstantiator(key, build, mgr));
+    }
+
+    /**
+     * Compute the digest of a component graph.
+     *
+     * @param node The component graph.
+     * @param dft The default cache policy, for components with no preference.
+     * @return The hexadecimal digest, or {@code null} if the graph contains instances or
+     *         providers that cannot be serialized.
+     */
+    @Nullable
+    static String digest(DAGNode<Component, Dependency> node, CachePolicy dft) {
+        Map<DAGNode<Component, Dependency>, HashCode> digests = Maps.newHashMap();
+        // sorted nodes have dependencies first, so their digests are available
+        for (DAGNode<Component, Dependency> n: node.getSortedNodes()) {
+            Component label = n.getLabel();
+            String sat = label.getSatisfaction().visit(new SatisfactionDescriber());
+            if (sat == null) {
+                return null;
+            }
+            CachePolicy policy = label.getCachePolicy();
+            if (policy.equals(CachePolicy.NO_PREFERENCE)) {
+                policy = dft;
+            }
+            // if two edges share a desire, the first one wins, as in the container
+            Map<Desire, HashCode> deps = Maps.newLinkedHashMap();
+            for (DAGEdge<Component, Dependency> edge: n.getOutgoingEdges()) {
+                Desire desire = edge.getLabel().getInitialDesire();
+                if (!deps.containsKey(desire)) {
+                    deps.put(desire, digests.get(edge.getTail()));
+                }
+            }
+            SortedMap<String, HashCode> sorted = new TreeMap<String, HashCode>();
+            for (Map.Entry<Desire, HashCode> e: deps.entrySet()) {
+                sorted.put(describe(e.getKey()), e.getValue());
+            }
+
+            Hasher hasher = Hashing.sha1().newHasher();
+            putString(hasher, label.getSatisfaction().getErasedType().getName());
+            putString(hasher, sat);
+            putString(hasher, policy.name());
+            hasher.putInt(sorted.size());
+            for (Map.Entry<String, HashCode> e: sorted.entrySet()) {
+                putString(hasher, e.getKey());
+                hasher.putBytes(e.getValue().asBytes());
+            }
+            digests.put(n, hasher.hash());
+        }
+        return digests.get(node).toString();
+    }
+
+    private static void putString(Hasher hasher, String str) {
+        hasher.putInt(str.length());
+        hasher.putString(str, Charsets.UTF_8);
+    }
+
+    /**
+     * Describe a desire's injection point in a form that is stable between processes.
+     */
+    private static String describe(Desire desire) {
+        InjectionPoint ip = desire.getInjectionPoint();
+        StringBuilder sb = new StringBuilder();
+        sb.append(ip.getClass().getName())
+          .append(' ').append(desire.getDesiredType().getName())
+          .append(' ').append(ip.getErasedType().getName())
+          .append(' ').append(ip.getMember())
+          .append(' ').append(ip.isNullable());
+        if (ip instanceof ConstructorParameterInjectionPoint) {
+            sb.append(" #").append(((ConstructorParameterInjectionPoint) ip).getParameterIndex());
+        } else if (ip instanceof SetterInjectionPoint) {
+            sb.append(" #").append(((SetterInjectionPoint) ip).getParameterIndex());
+        }
+        Annotation qual = ip.getQualifier();
+        if (qual != null) {
+            sb.append(" @").append(qual.annotationType().getName());
+            // attributes in name order, as annotation implementations may order them differently
+            Method[] attrs = qual.annotationType().getDeclaredMethods();
+            SortedMap<String, String> values = new TreeMap<String, String>();
+            for (Method attr: attrs) {
+                try {
+                    attr.setAccessible(true);
+                    values.put(attr.getName(), Arrays.deepToString(new Object[]{attr.invoke(qual)}));
+                } catch (IllegalAccessException e) {
+                    throw new IllegalStateException("cannot read attribute " + attr, e);
+                } catch (InvocationTargetException e) {
+                    throw new IllegalStateException("cannot read attribute " + attr, e);
+                }
+            }
+            sb.append(values);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Describe a satisfaction in a form that is stable between processes, or {@code null} if it
+     * cannot be described.
+     */
+    private static class SatisfactionDescriber implements SatisfactionVisitor<String> {
+        @Override
+        public String visitNull() {
+            return "null";
+        }
+
+        @Override
+        public String visitClass(Class<?> clazz) {
+            return "class " + ClassProxy.checksumOf(clazz);
+        }
+
+        @Override
+        public String visitInstance(Object instance) {
+            return describeObject("instance", instance);
+        }
+
+        @Override
+        public String visitProviderClass(Class<? extends Provider<?>> pclass) {
+            return "provider class " + pclass.getName() + " " + ClassProxy.checksumOf(pclass);
+        }
+
+        @Override
+        public String visitProviderInstance(Provider<?> provider) {
+            return describeObject("provider", provider);
+        }
+
+        @Nullable
+        private String describeObject(String kind, Object obj) {
+            if (!(obj instanceof Serializable)) {
+                return null;
+            }
+            Hasher hasher = Hashing.sha1().newHasher();
+            try {
+                serialize(obj, Funnels.asOutputStream(hasher));
+            } catch (IOException e) {
+                logger.debug("cannot serialize {}: {}", obj, e);
+                return null;
+            }
+            return kind + " " + obj.getClass().getName() + " " + ClassProxy.checksumOf(obj.getClass())
+                    + " " + hasher.hash();
+        }
+    }
+
+    private static void serialize(Object obj, OutputStream stream) throws IOException {
+        ObjectOutputStream out = new ObjectOutputStream(stream);
+        try {
+            out.writeObject(obj);
+        } finally {
+            out.close();
+        }
+    }
+
+    private File getFile(String key) {
+        return new File(directory, key + SUFFIX);
+    }
+
+    private File[] listEntries() {
+        File[] files = directory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith(SUFFIX);
+            }
+        });
+        return files == null ? new File[0] : files;
+    }
+
+    private static void delete(File file) {
+        if (!file.delete() && file.exists()) {
+            logger.warn("cannot delete {}", file);
+        }
+    }
+
+    /**
+     * Load a stored instance.
+     * @return The instance, or {@code null} if there is no usable stored instance.
+     */
+    @Nullable
+    private Object load(String key, Class<?> type) {
+        File file = getFile(key);
+        Object obj = null;
+        if (file.exists()) {
+            try {
+                InputStream in = new BufferedInputStream(new FileInputStream(file));
+                try {
+                    obj = new LoaderObjectInputStream(in, type.getClassLoader()).readObject();
+                } finally {
+                    in.close();
+                }
+                if (!type.isInstance(obj)) {
+                    logger.warn("{} does not contain a {}", file, type);
+                    obj = null;
+                }
+            } catch (FileNotFoundException e) {
+                // evicted by another thread or process
+                obj = null;
+            } catch (IOException e) {
+                logger.warn("cannot read " + file, e);
+                obj = null;
+            } catch (ClassNotFoundException e) {
+                logger.warn("cannot read " + file, e);
+                obj = null;
+            }
+            if (obj == null) {
+                delete(file);
+            } else {
+                // record the use for least-recently-used eviction
+                if (!file.setLastModified(System.currentTimeMillis())) {
+                    logger.debug("cannot touch {}", file);
+                }
+            }
+        }
+        synchronized (this) {
+            if (obj == null) {
+                missCount += 1;
+            } else {
+                hitCount += 1;
+            }
+        }
+        return obj;
+    }
+
+    /**
+     * Store an instance, replacing any previously stored under the same key.
+     */
+    private void store(String key, Object instance) {
+        if (!(instance instanceof Serializable)) {
+            logger.warn("cannot persist {}: not serializable", instance);
+            return;
+        }
+        File file = getFile(key);
+        File tmp = null;
+        try {
+            tmp = File.createTempFile(key, ".tmp", directory);
+            OutputStream out = new FileOutputStream(tmp);
+            try {
+                serialize(instance, new LimitedOutputStream(new BufferedOutputStream(out), maxSize));
+            } catch (TooLargeException e) {
+                logger.warn("{} is larger than the persistent cache", instance);
+                return;
+            } finally {
+                // closing the object stream may fail before it closes the file
+                out.close();
+            }
+            synchronized (this) {
+                if (!tmp.renameTo(file)) {
+                    // some platforms cannot rename over an existing file
+                    delete(file);
+                    if (!tmp.renameTo(file)) {
+                        throw new IOException("cannot rename " + tmp + " to " + file);
+                    }
+                }
+                tmp = null;
+                storeCount += 1;
+                evict(file);
+            }
+        } catch (IOException e) {
+            logger.warn("cannot persist " + instance, e);
+        } finally {
+            if (tmp != null) {
+                delete(tmp);
+            }
+        }
+    }
+
+    /**
+     * Delete least-recently-used instances until the cache is within its maximum size.
+     * @param keep A file that must not be deleted.
+     */
+    private synchronized void evict(File keep) {
+        File[] files = listEntries();
+        long size = 0;
+        for (File file: files) {
+            size += file.length();
+        }
+        if (size <= maxSize) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File f1, File f2) {
+                long m1 = f1.lastModified();
+                long m2 = f2.lastModified();
+                return m1 < m2 ? -1 : m1 > m2 ? 1 : 0;
+            }
+        });
+        for (File file: files) {
+            if (size <= maxSize) {
+                break;
+            }
+            if (!file.equals(keep)) {
+                long len = file.length();
+                logger.debug("evicting {}", file);
+                delete(file);
+                size -= len;
+                evictionCount += 1;
+            }
+        }
+    }
+
+    /**
+     * Instantiator that loads a stored instance if there is one, and otherwise builds and stores
+     * the instance.
+     */
+    private class PersistentInstantiator implements Instantiator {
+        private final String key;
+        private final Instantiator delegate;
+        @Nullable
+        private final LifecycleManager manager;
+
+        public PersistentInstantiator(String key, Instantiator delegate,
+                                      @Nullable LifecycleManager mgr) {
+            this.key = key;
+            this.delegate = delegate;
+            manager = mgr;
+        }
+
+        @Override
+        public Object instantiate() throws ConstructionException {
+            Object obj = load(key, getType());
+            if (obj != null) {
+                logger.debug("loaded {} from persistent cache", obj);
+                if (manager != null) {
+                    manager.registerComponent(obj);
+                }
+                return obj;
+            }
+            obj = delegate.instantiate();
+            if (obj != null) {
+                store(key, obj);
+            }
+            return obj;
+        }
+
+        @Override
+        public Class getType() {
+            return delegate.getType();
+        }
+    }
+
+    /**
+     * Output stream that fails once more than a limited number of bytes are written to it, so
+     * an instance too large for the cache is not written out in full.
+     */
+    private static class LimitedOutputStream extends FilterOutputStream {
+        private final long limit;
+        private long count;
+
+        public LimitedOutputStream(OutputStream out, long limit) {
+            super(out);
+            this.limit = limit;
+        }
+
+        private void count(long n) throws TooLargeException {
+            count += n;
+            if (count > limit) {
+                throw new TooLargeException();
+            }
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            count(1);
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            count(len);
+            out.write(b, off, len);
+        }
+    }
+
+    private static class TooLargeException extends IOException {
+        private static final long serialVersionUID = 1L;
+    }
+
+    /**
+     * Object input stream that resolves classes with a particular class loader.
+     */
+    private static class LoaderObjectInputStream extends ObjectInputStream {
+        private final ClassLoader loader;
+
+        public LoaderObjectInputStream(InputStream in, @Nullable ClassLoader cl) throws IOException {
+            super(in);
+            loader = cl;
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            try {
+                return ClassUtils.getClass(loader, desc.getName(), false);
+            } catch (ClassNotFoundException e) {
+                return super.resolveClass(desc);
+            }
+        }
+    }
+}
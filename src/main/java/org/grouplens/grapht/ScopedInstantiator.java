@@ -0,0 +1,69 @@
+/*
+ * Grapht, an open source dependency injector.
+ * Copyright 2014-2015 various contributors (see CONTRIBUTORS.txt)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.grapht;
+
+import org.grouplens.grapht.reflect.Desire;
+import org.grouplens.grapht.reflect.Satisfaction;
+
+import javax.annotation.Nullable;
+import java.util.Map;
+
+/**
+ * Instantiator implementing the {@link CachePolicy#SCOPED} policy by looking up the instance in
+ * the container's active scope.
+ *
+ * @since 0.11
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+class ScopedInstantiator implements Instantiator, InjectionScope.ScopedFactory {
+    private final InjectionContainer container;
+    private final Satisfaction satisfaction;
+    private final Map<Desire, Instantiator> dependencies;
+
+    ScopedInstantiator(InjectionContainer ctr, Satisfaction sat, Map<Desire, Instantiator> deps) {
+        container = ctr;
+        satisfaction = sat;
+        dependencies = deps;
+    }
+
+    @Override
+    public Object instantiate() throws ConstructionException {
+        InjectionScope scope = container.getCurrentScope();
+        if (scope == null) {
+            throw new ConstructionException(getType(), "no active injection scope for scoped component", null);
+        }
+        return scope.getInstance(this, this);
+    }
+
+    @Override
+    public Object create(@Nullable LifecycleManager mgr) throws ConstructionException {
+        return satisfaction.makeInstantiator(dependencies, mgr).instantiate();
+    }
+
+    @Override
+    public Class getType() {
+        return satisfaction.getErasedType();
+    }
+
+    @Override
+    public String toString() {
+        return "scoped instantiator for " + satisfaction;
+    }
+}
@@ -0,0 +1,498 @@
+/*
+ * Grapht, an open source dependency injector.
+ * Copyright 2014-2015 various contributors (see CONTRIBUTORS.txt)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.grapht;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import com.google.common.collect.MapMaker;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.SettableFuture;
+import org.grouplens.grapht.graph.DAGEdge;
+import org.grouplens.grapht.graph.DAGNode;
+import org.grouplens.grapht.reflect.Desire;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A cache of {@link CachePolicy#MEMOIZE} component instances shared between injection
+ * containers.  Containers configured with the same shared cache use a single instance for
+ * structurally identical components: components with equal satisfactions and effective cache
+ * policies, whose dependencies are in turn structurally identical.
+ *
+ * <p>Only components whose whole dependency graph is memoized or new-instance (after applying
+ * the container's default policy) and has no back edges are shared; other components are
+ * instantiated by each container as usual.  A shared component is built with its own lifecycle
+ * manager, and its memoized dependencies are shared as well.</p>
+ *
+ * <p>Shared instances are reference-counted: each container that uses an instance holds a
+ * reference until its lifecycle manager is closed, and each shared component holds references
+ * to its shared dependencies.  When the last reference is released the instance is torn down,
+ * or, if the cache retains idle instances, kept for reuse until it is evicted.  Containers
+ * without a lifecycle manager never release their references.</p>
+ *
+ * @see InjectorBuilder#setSharedComponentCache(SharedComponentCache)
+ * @since 0.11
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+public class SharedComponentCache {
+    private static final Logger logger = LoggerFactory.getLogger(SharedComponentCache.class);
+
+    private final Interner<NodeKey> interner = Interners.newWeakInterner();
+    private final Map<CachePolicy, ConcurrentMap<DAGNode<Component, Dependency>, NodeKey>> keys;
+    private final Map<NodeKey, Entry> live = Maps.newHashMap();
+    private final Cache<NodeKey, Entry> idle;
+    /**
+     * Instances evicted from the idle cache, to be torn down once the cache's lock is released.
+     */
+    private final Queue<Entry> evicted = new ConcurrentLinkedQueue<Entry>();
+    private final boolean retainIdle;
+
+    private long hitCount;
+    private long missCount;
+    private long loadSuccessCount;
+    private long loadExceptionCount;
+    private long totalLoadTime;
+    private long evictionCount;
+
+    private SharedComponentCache(long maxIdle, long idleTime, TimeUnit unit) {
+        keys = new EnumMap<CachePolicy, ConcurrentMap<DAGNode<Component, Dependency>, NodeKey>>(CachePolicy.class);
+        for (CachePolicy policy: CachePolicy.values()) {
+            // weak keys are compared by identity, which is how graph nodes compare anyway
+            keys.put(policy, new MapMaker().weakKeys().<DAGNode<Component, Dependency>, NodeKey>makeMap());
+        }
+        retainIdle = maxIdle > 0;
+        idle = CacheBuilder.newBuilder()
+                           .maximumSize(maxIdle)
+                           .expireAfterWrite(idleTime, unit)
+                           .removalListener(new IdleEviction())
+                           .build();
+    }
+
+    /**
+     * Create a shared component cache that tears down instances as soon as they are no longer
+     * used by any container.
+     *
+     * @return The shared component cache.
+     */
+    public static SharedComponentCache create() {
+        return new SharedComponentCache(0, 1, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Create a shared component cache that retains unused instances for reuse.
+     *
+     * @param maxIdle The maximum number of unused instances to retain; the least recently
+     *                released are evicted first.
+     * @param idleTime How long to retain an unused instance.
+     * @param unit The time unit of {@code idleTime}.
+     * @return The shared component cache.
+     */
+    public static SharedComponentCache create(long maxIdle, long idleTime, TimeUnit unit) {
+        if (maxIdle < 0) {
+            throw new IllegalArgumentException("maximum idle count cannot be negative");
+        }
+        if (idleTime <= 0) {
+            throw new IllegalArgumentException("idle time must be positive");
+        }
+        return new SharedComponentCache(maxIdle, idleTime, unit);
+    }
+
+    /**
+     * Get the statistics of this cache.  A hit is a request served by an existing (live or
+     * idle) instance, a load is the construction of a new instance, and an eviction is the
+     * teardown of an instance.
+     *
+     * @return The cache statistics.
+     */
+    public synchronized CacheStats getStats() {
+        return new CacheStats(hitCount, missCount, loadSuccessCount, loadExceptionCount,
+                              totalLoadTime, evictionCount);
+    }
+
+    /**
+     * Get the number of instances in use by at least one container or shared component.
+     * @return The number of live instances.
+     */
+    public synchronized int getLiveCount() {
+        return live.size();
+    }
+
+    /**
+     * Get the number of unused instances retained for reuse.
+     * @return The number of idle instances.
+     */
+    public long getIdleCount() {
+        idle.cleanUp();
+        tearDownEvicted();
+        return idle.size();
+    }
+
+    /**
+     * Tear down all idle instances.  This includes shared dependencies that become idle when
+     * the instances using them are torn down.
+     */
+    public void evictIdle() {
+        while (!idle.asMap().isEmpty()) {
+            for (NodeKey key: ImmutableList.copyOf(idle.asMap().keySet())) {
+                Entry entry = idle.asMap().remove(key);
+                if (entry != null) {
+                    tearDown(entry);
+                }
+            }
+            tearDownEvicted();
+        }
+    }
+
+    /**
+     * Query whether a component is shared, given its container's default policy.
+     */
+    static boolean isSharedPolicy(CachePolicy policy) {
+        return policy.equals(CachePolicy.MEMOIZE) || policy.equals(CachePolicy.NEW_INSTANCE);
+    }
+
+    private static CachePolicy getCachePolicy(Component comp, CachePolicy dft) {
+        CachePolicy policy = comp.getCachePolicy();
+        return policy.equals(CachePolicy.NO_PREFERENCE) ? dft : policy;
+    }
+
+    /**
+     * Get an instantiator for a shared component.  The instantiator acquires the shared instance
+     * the first time it is invoked, and releases it when {@code mgr} is closed.
+     *
+     * @param node The component's graph, whose nodes must all have shared policies.
+     * @param dft The container's default policy.
+     * @param mgr The container's lifecycle manager, or {@code null} to never release the
+     *            instance.
+     * @return An instantiator returning the shared instance.
+     */
+    Instantiator makeInstantiator(DAGNode<Component, Dependency> node, CachePolicy dft,
+                                  @Nullable LifecycleManager mgr) {
+        return Instantiators.memoize(new SharedInstantiator(node, dft, mgr));
+    }
+
+    /**
+     * Acquire a reference to a shared instance, building it if necessary.
+     */
+    private Handle acquire(DAGNode<Component, Dependency> node, CachePolicy dft) throws ConstructionException {
+        NodeKey key = getKey(node, dft);
+        Entry entry;
+        boolean build = false;
+        synchronized (this) {
+            idle.cleanUp();
+            entry = live.get(key);
+            if (entry == null) {
+                entry = idle.asMap().remove(key);
+                if (entry != null) {
+                    live.put(key, entry);
+                }
+            }
+            if (entry == null) {
+                entry = new Entry(key);
+                live.put(key, entry);
+                build = true;
+                missCount += 1;
+            } else {
+                hitCount += 1;
+            }
+            entry.references += 1;
+        }
+        tearDownEvicted();
+
+        if (build) {
+            logger.debug("building shared instance of {}", node.getLabel());
+            long start = System.nanoTime();
+            try {
+                Object instance = node.getLabel()
+                                      .getSatisfaction()
+                                      .makeInstantiator(makeDependencyMap(node, dft, entry.manager),
+                                                        entry.manager)
+                                      .instantiate();
+                synchronized (this) {
+                    loadSuccessCount += 1;
+                    totalLoadTime += System.nanoTime() - start;
+                }
+                entry.instance.set(instance);
+            } catch (Throwable th) {
+                synchronized (this) {
+                    loadExceptionCount += 1;
+                    totalLoadTime += System.nanoTime() - start;
+                    live.remove(key);
+                }
+                entry.instance.setException(th);
+                closeQuietly(entry);
+            }
+        }
+
+        try {
+            entry.instance.get();
+        } catch (ExecutionException e) {
+            release(entry);
+            Throwables.propagateIfPossible(e.getCause(), ConstructionException.class);
+            throw new ConstructionException(node.getLabel().getSatisfaction().getErasedType(),
+                                            "error building shared instance", e.getCause());
+        } catch (InterruptedException e) {
+            release(entry);
+            Thread.currentThread().interrupt();
+            throw new ConstructionException(node.getLabel().getSatisfaction().getErasedType(),
+                                            "interrupted waiting for shared instance", e);
+        }
+        return new Handle(entry);
+    }
+
+    /**
+     * Release a reference to a shared instance.
+     */
+    private void release(Entry entry) {
+        boolean tearDown = false;
+        synchronized (this) {
+            entry.references -= 1;
+            if (entry.references == 0 && live.get(entry.key) == entry) {
+                live.remove(entry.key);
+                if (retainIdle && entry.instance.isDone()) {
+                    idle.put(entry.key, entry);
+                } else {
+                    tearDown = true;
+                }
+            }
+        }
+        tearDownEvicted();
+        if (tearDown) {
+            tearDown(entry);
+        }
+    }
+
+    /**
+     * Tear down the instances evicted from the idle cache.  The cache runs its removal listener
+     * on whichever thread touches it, often while this object's lock is held, so the listener
+     * only queues evicted instances; this must be called after releasing the lock.
+     */
+    private void tearDownEvicted() {
+        Entry entry;
+        while ((entry = evicted.poll()) != null) {
+            tearDown(entry);
+        }
+    }
+
+    private void tearDown(Entry entry) {
+        logger.debug("tearing down shared instance {}", entry.key.component);
+        synchronized (this) {
+            evictionCount += 1;
+        }
+        closeQuietly(entry);
+    }
+
+    private static void closeQuietly(Entry entry) {
+        try {
+            entry.manager.close();
+        } catch (RuntimeException e) {
+            logger.error("error tearing down shared instance of " + entry.key.component, e);
+        }
+    }
+
+    /**
+     * Build the dependency map of a shared component.  Memoized dependencies are acquired from
+     * the cache, with their references owned by {@code mgr}; new-instance dependencies are built
+     * directly.  As with {@link InjectionContainer}, if two edges share a desire, the first wins.
+     */
+    private Map<Desire, Instantiator> makeDependencyMap(DAGNode<Component, Dependency> node,
+                                                       final CachePolicy dft,
+                                                       final LifecycleManager mgr) {
+        Map<Desire, Instantiator> deps = Maps.newLinkedHashMap();
+        for (DAGEdge<Component, Dependency> edge: node.getOutgoingEdges()) {
+            Desire desire = edge.getLabel().getInitialDesire();
+            if (deps.containsKey(desire)) {
+                continue;
+            }
+            DAGNode<Component, Dependency> tail = edge.getTail();
+            if (getCachePolicy(tail.getLabel(), dft).equals(CachePolicy.MEMOIZE)) {
+                deps.put(desire, Instantiators.memoize(new SharedInstantiator(tail, dft, mgr)));
+            } else {
+                deps.put(desire, tail.getLabel()
+                                     .getSatisfaction()
+                                     .makeInstantiator(makeDependencyMap(tail, dft, mgr), mgr));
+            }
+        }
+        return ImmutableMap.copyOf(deps);
+    }
+
+    /**
+     * Get the structural key of a node.  Keys are computed once per node and interned, so keys
+     * of dependencies can be compared by identity.
+     */
+    private NodeKey getKey(DAGNode<Component, Dependency> node, CachePolicy dft) {
+        ConcurrentMap<DAGNode<Component, Dependency>, NodeKey> memo = keys.get(dft);
+        NodeKey key = memo.get(node);
+        if (key != null) {
+            return key;
+        }
+        // sorted nodes have dependencies first, so their keys are available
+        for (DAGNode<Component, Dependency> n: node.getSortedNodes()) {
+            if (memo.containsKey(n)) {
+                continue;
+            }
+            Map<Desire, NodeKey> deps = Maps.newLinkedHashMap();
+            for (DAGEdge<Component, Dependency> edge: n.getOutgoingEdges()) {
+                Desire desire = edge.getLabel().getInitialDesire();
+                if (!deps.containsKey(desire)) {
+                    deps.put(desire, memo.get(edge.getTail()));
+                }
+            }
+            Component label = n.getLabel();
+            Component comp = Component.create(label.getSatisfaction(), getCachePolicy(label, dft));
+            memo.put(n, interner.intern(new NodeKey(comp, ImmutableMap.copyOf(deps))));
+        }
+        return memo.get(node);
+    }
+
+    /**
+     * The structural identity of a component.
+     */
+    private static final class NodeKey {
+        private final Component component;
+        private final ImmutableMap<Desire, NodeKey> dependencies;
+        private final int hash;
+
+        public NodeKey(Component comp, ImmutableMap<Desire, NodeKey> deps) {
+            component = comp;
+            dependencies = deps;
+            hash = 31 * comp.hashCode() + deps.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o == this) {
+                return true;
+            } else if (o instanceof NodeKey) {
+                NodeKey ok = (NodeKey) o;
+                return hash == ok.hash && component.equals(ok.component)
+                        && dependencies.equals(ok.dependencies);
+            } else {
+                return false;
+            }
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * A shared instance.  Its references are guarded by the cache's lock.
+     */
+    private static final class Entry {
+        private final NodeKey key;
+        private final LifecycleManager manager = new LifecycleManager();
+        private final SettableFuture<Object> instance = SettableFuture.create();
+        private int references;
+
+        public Entry(NodeKey key) {
+            this.key = key;
+        }
+    }
+
+    /**
+     * A reference to a shared instance, released when closed.
+     */
+    private final class Handle implements AutoCloseable {
+        private final Entry entry;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        public Handle(Entry entry) {
+            this.entry = entry;
+        }
+
+        public Object getInstance() {
+            // the handle is only created once the instance is ready
+            return Futures.getUnchecked(entry.instance);
+        }
+
+        @Override
+        public void close() {
+            if (released.compareAndSet(false, true)) {
+                release(entry);
+            }
+        }
+    }
+
+    /**
+     * Instantiator that acquires a shared instance, with the reference owned by a lifecycle
+     * manager.
+     */
+    private final class SharedInstantiator implements Instantiator {
+        private final DAGNode<Component, Dependency> node;
+        private final CachePolicy defaultPolicy;
+        @Nullable
+        private final LifecycleManager manager;
+
+        public SharedInstantiator(DAGNode<Component, Dependency> node, CachePolicy dft,
+                                  LifecycleManager mgr) {
+            this.node = node;
+            defaultPolicy = dft;
+            manager = mgr;
+        }
+
+        @Override
+        public Object instantiate() throws ConstructionException {
+            Handle handle = acquire(node, defaultPolicy);
+            if (manager != null) {
+                manager.registerComponent(handle);
+            }
+            return handle.getInstance();
+        }
+
+        @Override
+        public Class getType() {
+            return node.getLabel().getSatisfaction().getErasedType();
+        }
+    }
+
+    /**
+     * Queue idle instances for teardown when they are evicted.
+     */
+    private class IdleEviction implements RemovalListener<NodeKey, Entry> {
+        @Override
+        public void onRemoval(RemovalNotification<NodeKey, Entry> notification) {
+            Entry entry = notification.getValue();
+            if (notification.wasEvicted() && entry != null) {
+                evicted.add(entry);
+            }
+        }
+    }
+}
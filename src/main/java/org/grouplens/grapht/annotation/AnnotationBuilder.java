@@ -19,6 +19,11 @@
  */
 package org.grouplens.grapht.annotation;
 
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import org.apache.commons.lang3.ClassUtils;
+import org.grouplens.grapht.util.Preconditions;
+
 import javax.inject.Named;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
@@ -49,12 +54,15 @@ import java.util.Map;
  * forced to provide an actual annotation implementation that can be used to
  * create instances.
  * <p>The proxies returned by this builder are immutable and serializable, like
- * those returned by {@link java.lang.reflect.AnnotatedElement}.
+ * those returned by {@link java.lang.reflect.AnnotatedElement}.  Builders with equal
+ * attribute values return the same proxy instance.
  * 
  * @author <a href="http://grouplens.org">GroupLens Research</a>
  * @param <T> The annotation type created
  */
 public final class AnnotationBuilder<T extends Annotation> {
+    private static final Interner<Annotation> proxyInterner = Interners.newWeakInterner();
+
     private final Map<String, Object> attributes;
     private final Class<T> type;
     
@@ -569,6 +577,24 @@ public final class AnnotationBuilder<T extends Annotation> {
 
 
 
+    /**
+     * Set the attribute to the given value, whose type is checked at runtime.  Primitive values
+     * are passed boxed.  This is useful for copying attributes from another annotation or from
+     * a stored representation.
+     *
+     * @param name The attribute name.
+     * @param value The attribute value.
+     * @return This builder.
+     * @throws IllegalArgumentException if the type does not have the attribute, or the value is
+     *                                  not of the attribute's type.
+     * @since 0.11
+     */
+    public AnnotationBuilder<T> setAttribute(String name, Object value) {
+        Preconditions.notNull("value", value);
+        Class<?> vtype = ClassUtils.wrapperToPrimitive(value.getClass());
+        return set(name, value, vtype == null ? value.getClass() : vtype);
+    }
+
     private AnnotationBuilder<T> set(String name, Object value, Class<?> type) {
         try {
             Method attr = this.type.getMethod(name);
@@ -608,7 +634,8 @@ public final class AnnotationBuilder<T extends Annotation> {
                 }
             }
         }
-        return type.cast(Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { type }, 
-                                                new AnnotationProxy<T>(type, attributes)));
+        Object proxy = Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { type },
+                                              new AnnotationProxy<T>(type, attributes));
+        return type.cast(proxyInterner.intern((Annotation) proxy));
     }
 }
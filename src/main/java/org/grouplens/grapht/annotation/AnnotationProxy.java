@@ -28,6 +28,7 @@ import java.io.*;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.util.Arrays;
 import java.util.Map;
 
@@ -36,18 +37,42 @@ import java.util.Map;
  * contract by delegating to a map of named attribute values.  A new AnnotationProxy instance
  * should be created for each proxy annotation.
  *
+ * <p>The proxy resolves every attribute (including defaults) into a method dispatch table
+ * when it is created, and computes its hash code and string form at most once, so calls on
+ * the annotation do not need to inspect the invoked method or go through reflection.
+ *
  * @see AnnotationBuilder
  */
 class AnnotationProxy<T extends Annotation> implements InvocationHandler, Serializable {
     private static final long serialVersionUID = 1L;
+    private static final Method HASH_CODE;
+    private static final Method EQUALS;
+    private static final Method TO_STRING;
+    private static final Method ANNOTATION_TYPE;
+
+    static {
+        try {
+            HASH_CODE = Object.class.getMethod("hashCode");
+            EQUALS = Object.class.getMethod("equals", Object.class);
+            TO_STRING = Object.class.getMethod("toString");
+            ANNOTATION_TYPE = Annotation.class.getMethod("annotationType");
+        } catch (NoSuchMethodException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
     private final ClassProxy annotationType;
     private final ImmutableMap<String, Object> attributes;
     private transient Class<T> cachedType;
+    private transient ImmutableMap<Method, Object> values;
+    private transient int hash;
+    private transient volatile String stringForm;
 
     public AnnotationProxy(Class<T> type, Map<String, Object> attrs) {
         annotationType = ClassProxy.of(type);
         cachedType = type;
         attributes = ImmutableMap.copyOf(attrs);
+        resolveValues();
     }
 
     /**
@@ -61,6 +86,7 @@ class AnnotationProxy<T extends Annotation> implements InvocationHandler, Serial
         try {
             in.defaultReadObject();
             cachedType = (Class<T>) annotationType.resolve();
+            resolveValues();
         } catch (IOException e) {
             ObjectStreamException ex = new StreamCorruptedException("IO exception");
             ex.initCause(e);
@@ -72,18 +98,45 @@ class AnnotationProxy<T extends Annotation> implements InvocationHandler, Serial
         }
     }
 
+    /**
+     * Build the dispatch table of attribute values and the annotation hash code.
+     */
+    private void resolveValues() {
+        ImmutableMap.Builder<Method, Object> bld = ImmutableMap.builder();
+        int h = 0;
+        for (Method m: cachedType.getDeclaredMethods()) {
+            if (m.getParameterTypes().length != 0) {
+                continue;
+            }
+            Object value = attributes.get(m.getName());
+            if (value == null) {
+                value = m.getDefaultValue();
+            }
+            if (value == null) {
+                // no value for a required attribute; the proxy has no value for it
+                continue;
+            }
+            bld.put(m, value);
+            // the hash code is specified by the Annotation contract
+            h += (127 * m.getName().hashCode()) ^ valueHashCode(value);
+        }
+        values = bld.build();
+        hash = h;
+    }
+
     @Override
     public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
-        if (isHashCode(method)) {
-            return proxyHashCode(proxy);
-        } else if (isEquals(method)) {
+        Object value = values.get(method);
+        if (value != null) {
+            return value.getClass().isArray() ? copyAnnotationValue(value) : value;
+        } else if (method.equals(HASH_CODE)) {
+            return hash;
+        } else if (method.equals(EQUALS)) {
             return proxyEquals(proxy, args[0]);
-        } else if (isAnnotationType(method)) {
-            return proxyAnnotationType();
-        } else if (isToString(method)) {
+        } else if (method.equals(ANNOTATION_TYPE)) {
+            return cachedType;
+        } else if (method.equals(TO_STRING)) {
             return proxyToString(proxy);
-        } else if (attributes.containsKey(method.getName()) && method.getParameterTypes().length == 0) {
-            return copyAnnotationValue(attributes.get(method.getName()));
         } else {
             // fall back to the default
             return copyAnnotationValue(method.getDefaultValue());
@@ -92,42 +145,71 @@ class AnnotationProxy<T extends Annotation> implements InvocationHandler, Serial
         // so we don't have any other cases
     }
 
-    private boolean isEquals(Method m) {
-        return m.getName().equals("equals") && m.getReturnType().equals(boolean.class)
-            && m.getParameterTypes().length == 1 && m.getParameterTypes()[0].equals(Object.class);
-    }
-
-    private boolean isHashCode(Method m) {
-        return m.getName().equals("hashCode") && m.getReturnType().equals(int.class)
-            && m.getParameterTypes().length == 0;
-    }
-
-    private boolean isAnnotationType(Method m) {
-        return m.getName().equals("annotationType") && m.getReturnType().equals(Class.class)
-            && m.getParameterTypes().length == 0;
-    }
-
-    private boolean isToString(Method m) {
-        return m.getName().equals("toString") && m.getReturnType().equals(String.class)
-            && m.getParameterTypes().length == 0;
-    }
-
-    private Class<? extends Annotation> proxyAnnotationType() {
-        return cachedType;
-    }
-
     private String proxyToString(Object o) {
-        return AnnotationUtils.toString((Annotation) o);
-    }
-
-    private int proxyHashCode(Object proxy) {
-        return AnnotationUtils.hashCode((Annotation) proxy);
+        String str = stringForm;
+        if (str == null) {
+            str = AnnotationUtils.toString((Annotation) o);
+            stringForm = str;
+        }
+        return str;
     }
 
     private boolean proxyEquals(Object o1, Object o2) {
+        if (o1 == o2) {
+            return true;
+        } else if (!(o2 instanceof Annotation)) {
+            return false;
+        }
+        if (Proxy.isProxyClass(o2.getClass())) {
+            InvocationHandler h = Proxy.getInvocationHandler(o2);
+            if (h instanceof AnnotationProxy) {
+                AnnotationProxy<?> op = (AnnotationProxy<?>) h;
+                if (op.hash != hash || !op.cachedType.equals(cachedType)
+                        || op.values.size() != values.size()) {
+                    return false;
+                }
+                for (Map.Entry<Method, Object> e: values.entrySet()) {
+                    Object ov = op.values.get(e.getKey());
+                    if (ov == null || !Arrays.deepEquals(new Object[]{e.getValue()}, new Object[]{ov})) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        }
         return AnnotationUtils.equals((Annotation) o1, (Annotation) o2);
     }
 
+    /**
+     * Compute the hash code of an annotation member value, as specified by
+     * {@link Annotation#hashCode()}.
+     * @param o The annotation value.
+     * @return The value's hash code.
+     */
+    static int valueHashCode(Object o) {
+        if (!o.getClass().isArray()) {
+            return o.hashCode();
+        } else if (o instanceof boolean[]) {
+            return Arrays.hashCode((boolean[]) o);
+        } else if (o instanceof byte[]) {
+            return Arrays.hashCode((byte[]) o);
+        } else if (o instanceof short[]) {
+            return Arrays.hashCode((short[]) o);
+        } else if (o instanceof int[]) {
+            return Arrays.hashCode((int[]) o);
+        } else if (o instanceof long[]) {
+            return Arrays.hashCode((long[]) o);
+        } else if (o instanceof char[]) {
+            return Arrays.hashCode((char[]) o);
+        } else if (o instanceof float[]) {
+            return Arrays.hashCode((float[]) o);
+        } else if (o instanceof double[]) {
+            return Arrays.hashCode((double[]) o);
+        } else {
+            return Arrays.hashCode((Object[]) o);
+        }
+    }
+
     /**
      * Safe clone of an object.  If the object is an array, it is copied; otherwise, it is
      * returned as-is.  This object is only applicable to valid annotation value types, which
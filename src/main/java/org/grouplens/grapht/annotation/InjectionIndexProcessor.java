@@ -0,0 +1,382 @@
+/*
+ * Grapht, an open source dependency injector.
+ * Copyright 2014-2015 various contributors (see CONTRIBUTORS.txt)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.grapht.annotation;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.*;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.net.URI;
+import java.util.*;
+
+/**
+ * Annotation processor that writes an index of the injection metadata of the classes it
+ * compiles, for {@link org.grouplens.grapht.util.InjectionIndex}.  Classes are indexed if they
+ * have injectable constructors, fields or methods, lifecycle methods, or default annotations.
+ *
+ * <p>The index is a text file with one block per class:</p>
+ * <pre>
+ * class com.example.Impl
+ * instantiable
+ * defaults
+ * ctor (java.lang.String,int)
+ * field name
+ * method public setFoo(com.example.Foo) inject
+ * </pre>
+ * <p>Types are written as binary names with {@code []} suffixes for arrays.  Every non-static
+ * method of the class is listed, so that overriding can be resolved without reflection.</p>
+ *
+ * <p>The processor also aggregates the per-type defaults files that the build has copied into
+ * the class output into a single {@link org.grouplens.grapht.util.DefaultsIndex}.</p>
+ *
+ * @since 0.11
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+public class InjectionIndexProcessor extends AbstractProcessor {
+    // copies of InjectionIndex's constants, which the compiler inlines
+    private static final String INDEX_PATH = org.grouplens.grapht.util.InjectionIndex.INDEX_PATH;
+    private static final String DEFAULTS_PATH = org.grouplens.grapht.util.DefaultsIndex.DEFAULTS_PATH;
+    private static final String DEFAULTS_INDEX_PATH = org.grouplens.grapht.util.DefaultsIndex.INDEX_PATH;
+
+    private static final String INJECT = "javax.inject.Inject";
+    private static final String POST_CONSTRUCT = "javax.annotation.PostConstruct";
+    private static final String PRE_DESTROY = "javax.annotation.PreDestroy";
+    private static final String[] DEFAULTS = {
+            DefaultImplementation.class.getName(),
+            DefaultProvider.class.getName(),
+            DefaultDouble.class.getName(),
+            DefaultInteger.class.getName(),
+            DefaultBoolean.class.getName(),
+            DefaultString.class.getName(),
+            DefaultNull.class.getName()
+    };
+
+    /**
+     * The index entries, by class name.  Entries are rendered in the round that sees their
+     * classes, since elements should not be kept between rounds.
+     */
+    private final Map<String, String> entries = new TreeMap<String, String>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        Set<String> atypes = new HashSet<String>();
+        atypes.add(INJECT);
+        atypes.add(POST_CONSTRUCT);
+        atypes.add(PRE_DESTROY);
+        atypes.addAll(Arrays.asList(DEFAULTS));
+        return atypes;
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        Elements elements = processingEnv.getElementUtils();
+        for (TypeElement annot: annotations) {
+            for (Element elt: roundEnv.getElementsAnnotatedWith(annot)) {
+                TypeElement type = elt instanceof TypeElement
+                        ? (TypeElement) elt
+                        : (TypeElement) elt.getEnclosingElement();
+                if (isInnerClass(type)) {
+                    // inner class constructors take their outer instance; leave them to reflection
+                    continue;
+                }
+                String name = elements.getBinaryName(type).toString();
+                if (!entries.containsKey(name)) {
+                    StringWriter buf = new StringWriter();
+                    PrintWriter out = new PrintWriter(buf);
+                    writeClass(out, type);
+                    out.flush();
+                    entries.put(name, buf.toString());
+                }
+            }
+        }
+        if (roundEnv.processingOver()) {
+            if (!entries.isEmpty()) {
+                writeIndex();
+            }
+            writeDefaultsIndex();
+        }
+        return false; // let other processors work too
+    }
+
+    private void writeIndex() {
+        Filer filer = processingEnv.getFiler();
+        try {
+            FileObject file = filer.createResource(StandardLocation.CLASS_OUTPUT, "", INDEX_PATH);
+            PrintWriter out = new PrintWriter(new OutputStreamWriter(file.openOutputStream(), "UTF-8"));
+            try {
+                out.println("# Grapht injection index");
+                for (String entry: entries.values()) {
+                    out.print(entry);
+                }
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                                                     "cannot write injection index: " + e);
+        }
+    }
+
+    /**
+     * Aggregate the per-type defaults files in the class output, which the build has copied from
+     * the resources before compiling, into the defaults index.
+     */
+    private void writeDefaultsIndex() {
+        Filer filer = processingEnv.getFiler();
+        File dir;
+        try {
+            // the filer does not open directories, so locate a file in the directory instead
+            FileObject res = filer.getResource(StandardLocation.CLASS_OUTPUT, "",
+                                               DEFAULTS_PATH + "package-info.properties");
+            URI uri = res.toUri();
+            if (!"file".equals(uri.getScheme())) {
+                return;
+            }
+            dir = new File(uri).getParentFile();
+        } catch (IOException e) {
+            return;
+        } catch (IllegalArgumentException e) {
+            return;
+        }
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        Map<String, String> props = new TreeMap<String, String>();
+        try {
+            for (File file: files) {
+                String name = file.getName();
+                if (!name.endsWith(".properties") || !file.isFile()) {
+                    continue;
+                }
+                String type = name.substring(0, name.length() - ".properties".length());
+                Properties typeProps = new Properties();
+                InputStream in = new FileInputStream(file);
+                try {
+                    typeProps.load(in);
+                } finally {
+                    in.close();
+                }
+                for (String key: typeProps.stringPropertyNames()) {
+                    props.put(type + "." + key, typeProps.getProperty(key));
+                }
+            }
+            if (props.isEmpty()) {
+                return;
+            }
+
+            FileObject file = filer.createResource(StandardLocation.CLASS_OUTPUT, "", DEFAULTS_INDEX_PATH);
+            PrintWriter out = new PrintWriter(new OutputStreamWriter(file.openOutputStream(), "ISO-8859-1"));
+            try {
+                out.println("# Grapht defaults index");
+                for (Map.Entry<String, String> e: props.entrySet()) {
+                    out.format("%s=%s%n", escape(e.getKey(), true), escape(e.getValue(), false));
+                }
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                                                     "cannot write defaults index: " + e);
+        }
+    }
+
+    /**
+     * Escape a string for a properties file.
+     */
+    private static String escape(String str, boolean isKey) {
+        StringBuilder sb = new StringBuilder(str.length());
+        for (int i = 0; i < str.length(); i++) {
+            char c = str.charAt(i);
+            if (c == '\\' || c == '=' || c == ':' || c == '#' || c == '!'
+                    || (c == ' ' && (isKey || i == 0))) {
+                sb.append('\\').append(c);
+            } else if (c == '\n') {
+                sb.append("\\n");
+            } else if (c == '\r') {
+                sb.append("\\r");
+            } else if (c == '\t') {
+                sb.append("\\t");
+            } else if (c < 0x20 || c > 0x7e) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private void writeClass(PrintWriter out, TypeElement type) {
+        Elements elements = processingEnv.getElementUtils();
+        out.format("class %s%n", elements.getBinaryName(type));
+        boolean isClass = type.getKind() == ElementKind.CLASS || type.getKind() == ElementKind.ENUM;
+        if (isClass && isInstantiable(type)) {
+            out.println("instantiable");
+        }
+        for (String dft: DEFAULTS) {
+            if (hasAnnotation(type, dft)) {
+                out.println("defaults");
+                break;
+            }
+        }
+        if (!isClass) {
+            return;
+        }
+        List<? extends Element> members = type.getEnclosedElements();
+        for (ExecutableElement ctor: ElementFilter.constructorsIn(members)) {
+            if (hasAnnotation(ctor, INJECT)) {
+                out.format("ctor %s%n", parameters(ctor));
+            }
+        }
+        for (VariableElement field: ElementFilter.fieldsIn(members)) {
+            if (hasAnnotation(field, INJECT) && !field.getModifiers().contains(Modifier.STATIC)) {
+                out.format("field %s%n", field.getSimpleName());
+            }
+        }
+        for (ExecutableElement method: ElementFilter.methodsIn(members)) {
+            if (method.getModifiers().contains(Modifier.STATIC)) {
+                continue;
+            }
+            StringBuilder line = new StringBuilder("method ");
+            line.append(access(method))
+                .append(' ')
+                .append(method.getSimpleName())
+                .append(parameters(method));
+            if (hasAnnotation(method, INJECT)) {
+                line.append(" inject");
+            }
+            if (hasAnnotation(method, POST_CONSTRUCT)) {
+                line.append(" post-construct");
+            }
+            if (hasAnnotation(method, PRE_DESTROY)) {
+                line.append(" pre-destroy");
+            }
+            out.println(line);
+        }
+    }
+
+    /**
+     * Query whether a type is a non-static nested class.
+     */
+    private static boolean isInnerClass(TypeElement type) {
+        return type.getKind() == ElementKind.CLASS
+               && type.getNestingKind() != NestingKind.TOP_LEVEL
+               && !type.getModifiers().contains(Modifier.STATIC);
+    }
+
+    /**
+     * Mirror {@link org.grouplens.grapht.util.Types#isInstantiable(Class)}.
+     */
+    private boolean isInstantiable(TypeElement type) {
+        if (type.getModifiers().contains(Modifier.ABSTRACT)) {
+            return false;
+        }
+        int publicCtors = 0;
+        boolean publicDefault = false;
+        for (ExecutableElement ctor: ElementFilter.constructorsIn(type.getEnclosedElements())) {
+            if (hasAnnotation(ctor, INJECT)) {
+                return true;
+            }
+            if (ctor.getModifiers().contains(Modifier.PUBLIC)) {
+                publicCtors += 1;
+                publicDefault = ctor.getParameters().isEmpty();
+            }
+        }
+        return publicCtors == 1 && publicDefault;
+    }
+
+    private static boolean hasAnnotation(Element elt, String name) {
+        for (AnnotationMirror mirror: elt.getAnnotationMirrors()) {
+            Element atype = mirror.getAnnotationType().asElement();
+            if (atype instanceof TypeElement
+                    && ((TypeElement) atype).getQualifiedName().contentEquals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String access(Element elt) {
+        Set<Modifier> mods = elt.getModifiers();
+        if (mods.contains(Modifier.PUBLIC)) {
+            return "public";
+        } else if (mods.contains(Modifier.PROTECTED)) {
+            return "protected";
+        } else if (mods.contains(Modifier.PRIVATE)) {
+            return "private";
+        } else {
+            return "package";
+        }
+    }
+
+    private String parameters(ExecutableElement exec) {
+        StringBuilder sb = new StringBuilder("(");
+        boolean first = true;
+        for (VariableElement param: exec.getParameters()) {
+            if (!first) {
+                sb.append(',');
+            }
+            first = false;
+            sb.append(typeName(param.asType()));
+        }
+        return sb.append(')').toString();
+    }
+
+    /**
+     * Get the index name of the erasure of a type.
+     */
+    private String typeName(TypeMirror type) {
+        Types types = processingEnv.getTypeUtils();
+        TypeMirror erased = types.erasure(type);
+        if (erased.getKind() == TypeKind.ARRAY) {
+            return typeName(((ArrayType) erased).getComponentType()) + "[]";
+        } else if (erased.getKind() == TypeKind.DECLARED) {
+            TypeElement elt = (TypeElement) ((DeclaredType) erased).asElement();
+            return processingEnv.getElementUtils().getBinaryName(elt).toString();
+        } else {
+            // primitive types are named by their keywords
+            return erased.toString();
+        }
+    }
+}
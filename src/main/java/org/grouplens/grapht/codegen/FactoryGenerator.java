@@ -0,0 +1,518 @@
+/*
+ * Grapht, an open source dependency injector.
+ * Copyright 2014-2015 various contributors (see CONTRIBUTORS.txt)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.grapht.codegen;
+
+import com.google.common.collect.Maps;
+import org.apache.commons.lang3.StringEscapeUtils;
+import org.grouplens.grapht.CachePolicy;
+import org.grouplens.grapht.Component;
+import org.grouplens.grapht.Dependency;
+import org.grouplens.grapht.graph.DAGEdge;
+import org.grouplens.grapht.graph.DAGNode;
+import org.grouplens.grapht.reflect.Desire;
+import org.grouplens.grapht.reflect.InjectionPoint;
+import org.grouplens.grapht.reflect.Satisfaction;
+import org.grouplens.grapht.reflect.SatisfactionVisitor;
+import org.grouplens.grapht.reflect.internal.ConstructorParameterInjectionPoint;
+import org.grouplens.grapht.reflect.internal.FieldInjectionPoint;
+import org.grouplens.grapht.reflect.internal.NoArgumentInjectionPoint;
+import org.grouplens.grapht.reflect.internal.SetterInjectionPoint;
+import org.grouplens.grapht.util.ClassProxy;
+import org.grouplens.grapht.util.InjectionIndex;
+import org.grouplens.grapht.util.Preconditions;
+
+import javax.annotation.processing.Filer;
+import javax.inject.Provider;
+import javax.lang.model.element.Element;
+import javax.tools.JavaFileObject;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.reflect.*;
+import java.util.*;
+
+/**
+ * Generates Java source for a factory that instantiates the components of resolved graphs
+ * directly, with {@code new} and ordinary method calls.  The generated factory uses no
+ * reflection, solver or binding functions at runtime, so it is suitable for fixed production
+ * configurations where startup time matters.
+ *
+ * <p>Each root added with {@link #addRoot(String, DAGNode)} becomes a public method of the
+ * factory.  Shared components are memoized in fields of the factory instance; components with
+ * a {@link CachePolicy#NEW_INSTANCE} policy are created on every use.  The factory also has a
+ * static {@code isUpToDate()} method that compares the checksums of the injected classes with
+ * those seen at generation time; if it returns {@code false}, the classes have changed and the
+ * caller should fall back to a dynamic injector.</p>
+ *
+ * <p>Only graphs whose components can be built from source are supported: class and provider
+ * class satisfactions whose classes, injectable constructors, fields and methods are all public,
+ * null satisfactions, and instance satisfactions holding strings, boxed primitives or enum
+ * constants.  Generated factories do not manage component lifecycles or support cyclic
+ * (back-edge) dependencies or {@link CachePolicy#SCOPED} components.</p>
+ *
+ * <p>The generator can be run as a build step ({@link #writeTo(Appendable)}) or from an
+ * annotation processor ({@link #writeTo(Filer, Element...)}).</p>
+ *
+ * @since 0.11
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+public class FactoryGenerator {
+    private final String packageName;
+    private final String className;
+    private final Map<String, DAGNode<Component, Dependency>> roots = Maps.newLinkedHashMap();
+    private CachePolicy defaultPolicy = CachePolicy.MEMOIZE;
+
+    private FactoryGenerator(String pkg, String name) {
+        packageName = pkg;
+        className = name;
+    }
+
+    /**
+     * Create a new factory generator.
+     * @param qualifiedName The fully-qualified name of the factory class to generate.
+     * @return The generator.
+     */
+    public static FactoryGenerator create(String qualifiedName) {
+        Preconditions.notNull("class name", qualifiedName);
+        int idx = qualifiedName.lastIndexOf('.');
+        if (idx < 0) {
+            return new FactoryGenerator(null, qualifiedName);
+        } else {
+            return new FactoryGenerator(qualifiedName.substring(0, idx),
+                                        qualifiedName.substring(idx + 1));
+        }
+    }
+
+    /**
+     * Get the fully-qualified name of the generated class.
+     * @return The name of the generated class.
+     */
+    public String getQualifiedName() {
+        return packageName == null ? className : packageName + "." + className;
+    }
+
+    /**
+     * Add a root component to the factory.
+     *
+     * @param methodName The name of the factory method that will return the component.
+     * @param node The resolved graph of the component.
+     * @return The generator (for chaining).
+     */
+    public FactoryGenerator addRoot(String methodName, DAGNode<Component, Dependency> node) {
+        Preconditions.notNull("method name", methodName);
+        Preconditions.notNull("graph", node);
+        if (roots.containsKey(methodName)) {
+            throw new IllegalArgumentException("duplicate factory method " + methodName);
+        }
+        roots.put(methodName, node);
+        return this;
+    }
+
+    /**
+     * Set the cache policy for components with {@link CachePolicy#NO_PREFERENCE}.
+     * @param policy The default policy.
+     * @return The generator (for chaining).
+     */
+    public FactoryGenerator setDefaultPolicy(CachePolicy policy) {
+        if (policy.equals(CachePolicy.NO_PREFERENCE)) {
+            throw new IllegalArgumentException("Cannot be NO_PREFERENCE");
+        }
+        defaultPolicy = policy;
+        return this;
+    }
+
+    /**
+     * Generate the factory source.
+     * @return The Java source code of the factory class.
+     * @throws IllegalArgumentException if some component cannot be built from generated code.
+     */
+    public String generate() {
+        StringBuilder sb = new StringBuilder();
+        try {
+            writeTo(sb);
+        } catch (IOException e) {
+            throw new RuntimeException("string builder failed", e);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Write the factory source to a file created by an annotation processor's filer.
+     *
+     * @param filer The filer.
+     * @param originatingElements The elements that caused the factory to be generated.
+     * @throws IOException if there is an error writing the file.
+     * @throws IllegalArgumentException if some component cannot be built from generated code.
+     */
+    public void writeTo(Filer filer, Element... originatingElements) throws IOException {
+        // generate first, so we do not leave a partial file behind
+        String source = generate();
+        JavaFileObject file = filer.createSourceFile(getQualifiedName(), originatingElements);
+        Writer writer = file.openWriter();
+        try {
+            writer.write(source);
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Write the factory source.
+     *
+     * @param out The output to write to.
+     * @throws IOException if there is an error writing the source.
+     * @throws IllegalArgumentException if some component cannot be built from generated code.
+     */
+    public void writeTo(Appendable out) throws IOException {
+        if (roots.isEmpty()) {
+            throw new IllegalStateException("no roots added");
+        }
+        try {
+            new Writing(out).write();
+        } catch (WriteFailure e) {
+            throw (IOException) e.getCause();
+        }
+    }
+
+    /**
+     * Get the source name of a class.
+     */
+    private static String typeName(Class<?> type) {
+        if (type.isArray()) {
+            return typeName(type.getComponentType()) + "[]";
+        }
+        String name = type.getCanonicalName();
+        if (name == null) {
+            throw new IllegalArgumentException(type + " has no canonical name");
+        }
+        return name;
+    }
+
+    private static void checkAccessible(Class<?> type) {
+        if (type.isPrimitive()) {
+            return;
+        } else if (type.isArray()) {
+            checkAccessible(type.getComponentType());
+            return;
+        }
+        for (Class<?> c = type; c != null; c = c.getEnclosingClass()) {
+            if (!Modifier.isPublic(c.getModifiers())) {
+                throw new IllegalArgumentException(type + " is not accessible from generated code");
+            }
+            if (c.getEnclosingClass() != null && !Modifier.isStatic(c.getModifiers())) {
+                throw new IllegalArgumentException(type + " is an inner class");
+            }
+        }
+    }
+
+    private static void checkAccessible(Member member) {
+        if (!Modifier.isPublic(member.getModifiers())) {
+            throw new IllegalArgumentException(member + " is not accessible from generated code");
+        }
+    }
+
+    /**
+     * State for writing one factory class.
+     */
+    private class Writing implements SatisfactionVisitor<Void> {
+        private final Appendable out;
+        private final Map<DAGNode<Component, Dependency>, Integer> ids = Maps.newLinkedHashMap();
+        private final Set<Class<?>> checkedClasses = new LinkedHashSet<Class<?>>();
+        private DAGNode<Component, Dependency> current;
+
+        Writing(Appendable out) {
+            this.out = out;
+        }
+
+        void write() throws IOException {
+            for (DAGNode<Component, Dependency> root: roots.values()) {
+                for (DAGNode<Component, Dependency> node: root.getSortedNodes()) {
+                    if (!ids.containsKey(node)) {
+                        ids.put(node, ids.size());
+                    }
+                }
+            }
+
+            if (packageName != null) {
+                out.append("package ").append(packageName).append(";\n\n");
+            }
+            out.append("/**\n")
+               .append(" * Component factory generated by ")
+               .append(FactoryGenerator.class.getName())
+               .append(". Do not edit.\n")
+               .append(" */\n")
+               .append("@SuppressWarnings({\"unchecked\", \"rawtypes\"})\n")
+               .append("public class ").append(className).append(" {\n");
+
+            for (Map.Entry<DAGNode<Component, Dependency>, Integer> e: ids.entrySet()) {
+                if (isMemoized(e.getKey())) {
+                    out.append("    private ").append(nodeType(e.getKey()))
+                       .append(" c").append(e.getValue().toString()).append(";\n");
+                }
+            }
+            out.append('\n');
+
+            for (Map.Entry<String, DAGNode<Component, Dependency>> root: roots.entrySet()) {
+                out.append("    public synchronized ").append(nodeType(root.getValue()))
+                   .append(' ').append(root.getKey()).append("() {\n")
+                   .append("        return ").append(reference(root.getValue())).append(";\n")
+                   .append("    }\n\n");
+            }
+
+            for (Map.Entry<DAGNode<Component, Dependency>, Integer> e: ids.entrySet()) {
+                writeNode(e.getKey(), e.getValue());
+            }
+
+            writeChecksums();
+            out.append("}\n");
+        }
+
+        private boolean isMemoized(DAGNode<Component, Dependency> node) {
+            CachePolicy policy = node.getLabel().getCachePolicy();
+            if (policy.equals(CachePolicy.NO_PREFERENCE)) {
+                policy = defaultPolicy;
+            }
+            switch (policy) {
+            case NEW_INSTANCE:
+                return false;
+            case SCOPED:
+                throw new IllegalArgumentException("cannot generate scoped component " + node.getLabel());
+            default:
+                // lazy, soft and expiring components are simply memoized
+                return true;
+            }
+        }
+
+        private String nodeType(DAGNode<Component, Dependency> node) {
+            Class<?> type = node.getLabel().getSatisfaction().getErasedType();
+            checkAccessible(type);
+            return typeName(type);
+        }
+
+        private String reference(DAGNode<Component, Dependency> node) {
+            int id = ids.get(node);
+            return (isMemoized(node) ? "get" : "make") + id + "()";
+        }
+
+        private void writeNode(DAGNode<Component, Dependency> node, int id) throws IOException {
+            String type = nodeType(node);
+            if (isMemoized(node)) {
+                out.append("    private ").append(type).append(" get").append(Integer.toString(id)).append("() {\n")
+                   .append("        if (c").append(Integer.toString(id)).append(" == null) {\n")
+                   .append("            c").append(Integer.toString(id))
+                   .append(" = make").append(Integer.toString(id)).append("();\n")
+                   .append("        }\n")
+                   .append("        return c").append(Integer.toString(id)).append(";\n")
+                   .append("    }\n\n");
+            }
+            out.append("    private ").append(type).append(" make").append(Integer.toString(id)).append("() {\n");
+            current = node;
+            node.getLabel().getSatisfaction().visit(this);
+            current = null;
+            out.append("    }\n\n");
+        }
+
+        private void writeChecksums() throws IOException {
+            out.append("    /**\n")
+               .append("     * Check whether the injected classes are unchanged since this factory was generated.\n")
+               .append("     * @return {@code false} if the factory is stale and a dynamic injector should be used.\n")
+               .append("     */\n")
+               .append("    public static boolean isUpToDate() {\n")
+               .append("        return true");
+            for (Class<?> type: checkedClasses) {
+                out.append("\n            && ")
+                   .append(ClassProxy.class.getName()).append(".checksumOf(").append(typeName(type))
+                   .append(".class) == ")
+                   .append(Long.toString(ClassProxy.checksumOf(type))).append("L");
+            }
+            out.append(";\n    }\n");
+        }
+
+        /**
+         * Write statements constructing and injecting an instance of a class into {@code inst}.
+         */
+        private void writeConstruction(Class<?> type) throws IOException {
+            checkAccessible(type);
+            checkedClasses.add(type);
+            Satisfaction sat = current.getLabel().getSatisfaction();
+            Map<Desire, DAGNode<Component, Dependency>> targets = Maps.newHashMap();
+            for (DAGEdge<Component, Dependency> edge: current.getOutgoingEdges()) {
+                targets.put(edge.getLabel().getInitialDesire(), edge.getTail());
+            }
+
+            Constructor<?> ctor = null;
+            SortedMap<Integer, String> ctorArgs = new TreeMap<Integer, String>();
+            List<String> statements = new ArrayList<String>();
+            Map<Method, String[]> setterArgs = new HashMap<Method, String[]>();
+            for (Desire d: sat.getDependencies()) {
+                InjectionPoint ip = d.getInjectionPoint();
+                DAGNode<Component, Dependency> target = targets.get(d);
+                if (target == null && !(ip instanceof NoArgumentInjectionPoint)) {
+                    throw new IllegalArgumentException("unresolved dependency " + d + " (cyclic graphs are unsupported)");
+                }
+                if (ip instanceof ConstructorParameterInjectionPoint) {
+                    ConstructorParameterInjectionPoint cip = (ConstructorParameterInjectionPoint) ip;
+                    ctor = cip.getMember();
+                    ctorArgs.put(cip.getParameterIndex(), reference(target));
+                } else if (ip instanceof FieldInjectionPoint) {
+                    Field field = ((FieldInjectionPoint) ip).getMember();
+                    checkAccessible(field);
+                    statements.add("inst." + field.getName() + " = " + reference(target) + ";");
+                } else if (ip instanceof SetterInjectionPoint) {
+                    SetterInjectionPoint sip = (SetterInjectionPoint) ip;
+                    Method setter = sip.getMember();
+                    checkAccessible(setter);
+                    String[] args = setterArgs.get(setter);
+                    if (args == null) {
+                        args = new String[setter.getParameterTypes().length];
+                        setterArgs.put(setter, args);
+                    }
+                    args[sip.getParameterIndex()] = reference(target);
+                    if (!Arrays.asList(args).contains(null)) {
+                        // invoke setters once all their arguments are available, as ClassInstantiator does
+                        statements.add("inst." + setter.getName() + "(" + join(Arrays.asList(args)) + ");");
+                    }
+                } else if (ip instanceof NoArgumentInjectionPoint) {
+                    Method method = ((NoArgumentInjectionPoint) ip).getMember();
+                    checkAccessible(method);
+                    statements.add("inst." + method.getName() + "();");
+                } else {
+                    throw new IllegalArgumentException("unsupported injection point " + ip);
+                }
+            }
+
+            if (ctor == null) {
+                try {
+                    ctor = type.getDeclaredConstructor();
+                } catch (NoSuchMethodException e) {
+                    throw new IllegalArgumentException(type + " has no default constructor", e);
+                }
+            }
+            checkAccessible(ctor);
+
+            out.append("        ").append(typeName(type)).append(" inst = new ").append(typeName(type))
+               .append("(").append(join(ctorArgs.values())).append(");\n");
+            for (String stmt: statements) {
+                out.append("        ").append(stmt).append('\n');
+            }
+            // the same lookup, and so the same order, as ClassInstantiator
+            for (Method method: InjectionIndex.getPostConstructMethods(type)) {
+                checkAccessible(method);
+                out.append("        inst.").append(method.getName()).append("();\n");
+            }
+        }
+
+        private String join(Collection<String> args) {
+            StringBuilder sb = new StringBuilder();
+            for (String arg: args) {
+                if (sb.length() > 0) {
+                    sb.append(", ");
+                }
+                sb.append(arg);
+            }
+            return sb.toString();
+        }
+
+        private void writeReturn(String expr) {
+            try {
+                out.append("        return ").append(expr).append(";\n");
+            } catch (IOException e) {
+                throw new WriteFailure(e);
+            }
+        }
+
+        @Override
+        public Void visitNull() {
+            writeReturn("null");
+            return null;
+        }
+
+        @Override
+        public Void visitClass(Class<?> clazz) {
+            try {
+                writeConstruction(clazz);
+            } catch (IOException e) {
+                throw new WriteFailure(e);
+            }
+            writeReturn("inst");
+            return null;
+        }
+
+        @Override
+        public Void visitInstance(Object instance) {
+            writeReturn(literal(instance));
+            return null;
+        }
+
+        @Override
+        public Void visitProviderClass(Class<? extends Provider<?>> pclass) {
+            try {
+                writeConstruction(pclass);
+            } catch (IOException e) {
+                throw new WriteFailure(e);
+            }
+            writeReturn("(" + nodeType(current) + ") inst.get()");
+            return null;
+        }
+
+        @Override
+        public Void visitProviderInstance(Provider<?> provider) {
+            throw new IllegalArgumentException("cannot generate code for provider instance " + provider);
+        }
+    }
+
+    /**
+     * Get a source literal for an instance.
+     */
+    private static String literal(Object instance) {
+        if (instance instanceof String) {
+            return "\"" + StringEscapeUtils.escapeJava((String) instance) + "\"";
+        } else if (instance instanceof Boolean) {
+            return "Boolean.valueOf(" + instance + ")";
+        } else if (instance instanceof Character) {
+            return "Character.valueOf((char) " + (int) (Character) instance + ")";
+        } else if (instance instanceof Byte || instance instanceof Short || instance instanceof Integer) {
+            String type = instance.getClass().getSimpleName();
+            return type + ".valueOf((" + (type.equals("Integer") ? "int" : type.toLowerCase()) + ") "
+                    + instance + ")";
+        } else if (instance instanceof Long) {
+            return "Long.valueOf(" + instance + "L)";
+        } else if (instance instanceof Float || instance instanceof Double) {
+            // string round-trips exactly, including NaN and infinities
+            return instance.getClass().getSimpleName() + ".valueOf(\"" + instance + "\")";
+        } else if (instance instanceof Enum) {
+            Enum<?> e = (Enum<?>) instance;
+            checkAccessible(e.getDeclaringClass());
+            return typeName(e.getDeclaringClass()) + "." + e.name();
+        } else {
+            throw new IllegalArgumentException("cannot generate code for instance " + instance);
+        }
+    }
+
+    /**
+     * Unchecked wrapper for output errors raised inside the satisfaction visitor.
+     */
+    private static class WriteFailure extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        WriteFailure(IOException cause) {
+            super(cause);
+        }
+    }
+}
@@ -21,6 +21,7 @@ package org.grouplens.grapht.context;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import org.apache.commons.lang3.tuple.Pair;
 import org.grouplens.grapht.reflect.InjectionPoint;
 import org.grouplens.grapht.reflect.Satisfaction;
@@ -31,6 +32,7 @@ import javax.annotation.Nullable;
 import java.io.Serializable;
 import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 
 /**
  * A regular pattern matching contexts.
@@ -152,16 +154,53 @@ public class ContextPattern implements ContextMatcher, Serializable {
      * @return The new pattern.
      */
     public ContextPattern appendDotStar() {
-        if (!tokenChain.isEmpty()) {
-            Element elem = tokenChain.get(tokenChain.size() - 1);
-            if (elem.getMatcher().equals(ContextElements.matchAny()) && elem.getMultiplicity().equals(Multiplicity.ZERO_OR_MORE)) {
-                return this;
-            }
+        if (!tokenChain.isEmpty() && isDotStar(tokenChain.get(tokenChain.size() - 1))) {
+            return this;
         }
 
         return append(ContextElements.matchAny(), Multiplicity.ZERO_OR_MORE);
     }
 
+    private static boolean isDotStar(Element elem) {
+        return elem.getMatcher().equals(ContextElements.matchAny())
+                && elem.getMultiplicity().equals(Multiplicity.ZERO_OR_MORE);
+    }
+
+    /**
+     * Query whether this pattern matches every context, and matches them all equally.  Bind rules
+     * with such a pattern, such as rules bound in the root context, do not depend on the context.
+     *
+     * @return {@code true} if this pattern is {@code .*}.
+     * @since 0.11
+     */
+    public boolean isUniversal() {
+        return tokenChain.size() == 1 && isDotStar(tokenChain.get(0));
+    }
+
+    /**
+     * Get the types of context element that this pattern's elements match.  A type element
+     * matches context elements whose satisfactions have that type or a subtype; an element
+     * matching the root of the context is reported as {@code void}.
+     *
+     * @return The types matched by the elements of this pattern, or {@code null} if some element
+     *         is neither a type element nor a wildcard, so the types it matches are unknown.
+     * @since 0.11
+     */
+    @Nullable
+    public Set<Class<?>> getMatchedTypes() {
+        ImmutableSet.Builder<Class<?>> types = ImmutableSet.builder();
+        for (Element elem: tokenChain) {
+            ContextElementMatcher matcher = elem.getMatcher();
+            if (matcher instanceof TypeElementMatcher) {
+                Class<?> type = ((TypeElementMatcher) matcher).getMatchedType();
+                types.add(type == null ? Void.TYPE : type);
+            } else if (!matcher.equals(ContextElements.matchAny())) {
+                return null;
+            }
+        }
+        return types.build();
+    }
+
     @Override
     public ContextMatch matches(InjectionContext context) {
         List<MatchElement> result = recursiveMatch(tokenChain, ImmutableList.copyOf(context));
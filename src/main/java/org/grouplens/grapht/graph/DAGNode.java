@@ -27,7 +27,10 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.Immutable;
 import java.io.IOException;
+import java.io.InvalidObjectException;
 import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamException;
 import java.io.Serializable;
 import java.util.*;
 
@@ -138,8 +141,18 @@ public class DAGNode<V,E> implements Serializable {
     }
 
     /**
-     * Override the object reading protocol to make sure caches are instantiated.  This just calls
-     * {@link #initializeCaches()} after doing the default object-reading.
+     * Replace the node with a {@linkplain SerialProxy serialization proxy}, so that serialization
+     * does not recurse through the graph's edges.
+     *
+     * @return The serialization proxy.
+     */
+    private Object writeReplace() {
+        return new SerialProxy<V,E>(this);
+    }
+
+    /**
+     * Read nodes serialized directly, as by versions prior to 0.11.  This makes sure the caches
+     * are instantiated after doing the default object-reading.
      *
      * @param stream The stream to read from.
      * @throws IOException If an I/O exception occurs deserializing the object.
@@ -251,18 +264,28 @@ public class DAGNode<V,E> implements Serializable {
     /**
      * Helper mode for {@link #getSortedNodes()}, via {@link TopologicalSortSupplier}.  This method
      * does a depth-first traversal of the nodes, adding each to the {@code visited} set when it is
-     * left.  This results in {@code visited} being a topological sort.
+     * left.  This results in {@code visited} being a topological sort.  The traversal uses an
+     * explicit stack, so deep graphs do not overflow the call stack.
      *
      * @param visited The set of nodes seen so far.
      */
     private void sortVisit(LinkedHashSet<DAGNode<V,E>> visited) {
-        if (!visited.contains(this)) {
-            for (DAGEdge<V,E> nbr: outgoingEdges) {
-                nbr.getTail().sortVisit(visited);
+        Deque<Pair<DAGNode<V,E>,Iterator<DAGEdge<V,E>>>> stack = new ArrayDeque<Pair<DAGNode<V,E>, Iterator<DAGEdge<V,E>>>>();
+        stack.push(Pair.<DAGNode<V,E>,Iterator<DAGEdge<V,E>>>of(this, outgoingEdges.iterator()));
+        while (!stack.isEmpty()) {
+            Pair<DAGNode<V,E>,Iterator<DAGEdge<V,E>>> top = stack.peek();
+            Iterator<DAGEdge<V,E>> edges = top.getRight();
+            if (edges.hasNext()) {
+                DAGNode<V,E> next = edges.next().getTail();
+                // a node on the stack cannot be reached again, or we have an impossible cycle
+                if (!visited.contains(next)) {
+                    stack.push(Pair.<DAGNode<V,E>,Iterator<DAGEdge<V,E>>>of(next, next.outgoingEdges.iterator()));
+                }
+            } else {
+                stack.pop();
+                assert !visited.contains(top.getLeft());
+                visited.add(top.getLeft());
             }
-            // neighbors won't have added this, or we have an impossible cycle
-            assert !visited.contains(this);
-            visited.add(this);
         }
     }
 
@@ -459,9 +482,11 @@ public class DAGNode<V,E> implements Serializable {
         @Override
         public SetMultimap<DAGNode<V, E>, DAGEdge<V, E>> get() {
             ImmutableSetMultimap.Builder<DAGNode<V,E>,DAGEdge<V,E>> bld = ImmutableSetMultimap.builder();
-            for (DAGEdge<V,E> nbr: outgoingEdges) {
-                bld.put(nbr.getTail(), nbr);
-                bld.putAll(nbr.getTail().getIncomingEdgeMap());
+            // walk the reachable nodes rather than recursing into each neighbor's map
+            for (DAGNode<V,E> node: getSortedNodes()) {
+                for (DAGEdge<V,E> nbr: node.outgoingEdges) {
+                    bld.put(nbr.getTail(), nbr);
+                }
             }
             return bld.build();
         }
@@ -485,4 +510,79 @@ public class DAGNode<V,E> implements Serializable {
             return ImmutableList.copyOf(visited);
         }
     }
+
+    /**
+     * Serialization proxy for nodes.  Each node is written once per stream as its label and its
+     * edges, with the edges' tails referring to the proxies of other nodes; nodes referenced
+     * several times in a stream, even from separately written objects such as edges or back-edge
+     * maps, are therefore read back as the same node.
+     *
+     * <p>To keep the stack depth independent of the depth of the graph, the outermost proxy being
+     * written also writes the nodes reachable from it in topological order, before its own edges.
+     * Each of those nodes' tails has already been written by the time the node is, so they are
+     * written and read as back-references rather than by recursion.</p>
+     *
+     * @param <V> The type of node labels.
+     * @param <E> The type of edge labels.
+     */
+    private static class SerialProxy<V,E> implements Serializable {
+        private static final long serialVersionUID = 2L;
+        // set while writing the nodes reachable from an outermost proxy
+        private static final ThreadLocal<Boolean> writingNodes = new ThreadLocal<Boolean>();
+
+        private final transient DAGNode<V,E> node;
+        @SuppressWarnings("squid:S1948") // serializable warning; node is serializable iff its label type is
+        private final Object label;
+        // Default serialization writes object fields sorted by name, so 'nodes' precedes 'tails'.
+        // The nodes reachable from this one, in topological order, if it is the outermost proxy.
+        private DAGNode<?,?>[] nodes;
+        private final DAGNode<?,?>[] tails;
+        private final Object[] edgeLabels;
+
+        public SerialProxy(DAGNode<V,E> n) {
+            node = n;
+            label = n.label;
+            tails = new DAGNode<?,?>[n.outgoingEdges.size()];
+            edgeLabels = new Object[tails.length];
+            int i = 0;
+            for (DAGEdge<V,E> edge: n.outgoingEdges) {
+                tails[i] = edge.getTail();
+                edgeLabels[i] = edge.getLabel();
+                i++;
+            }
+        }
+
+        private void writeObject(ObjectOutputStream out) throws IOException {
+            if (writingNodes.get() != null) {
+                out.defaultWriteObject();
+                return;
+            }
+            List<DAGNode<V,E>> sorted = node.getSortedNodes();
+            // the node itself is last
+            nodes = sorted.subList(0, sorted.size() - 1).toArray(new DAGNode<?,?>[sorted.size() - 1]);
+            writingNodes.set(Boolean.TRUE);
+            try {
+                out.defaultWriteObject();
+            } finally {
+                writingNodes.remove();
+                nodes = null;
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private Object readResolve() throws ObjectStreamException {
+            if (label == null || tails == null || edgeLabels == null
+                    || tails.length != edgeLabels.length) {
+                throw new InvalidObjectException("inconsistent graph node");
+            }
+            List<Pair<DAGNode<V,E>,E>> edges = new ArrayList<Pair<DAGNode<V, E>, E>>(tails.length);
+            for (int i = 0; i < tails.length; i++) {
+                if (tails[i] == null || edgeLabels[i] == null) {
+                    throw new InvalidObjectException("null edge in graph node");
+                }
+                edges.add(Pair.of((DAGNode<V,E>) tails[i], (E) edgeLabels[i]));
+            }
+            return new DAGNode<V,E>((V) label, edges);
+        }
+    }
 }
@@ -0,0 +1,260 @@
+/*
+ * Grapht, an open source dependency injector.
+ * Copyright 2014-2015 various contributors (see CONTRIBUTORS.txt)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.grapht.graph;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.SetMultimap;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A read-only, compiled form of a DAG with optional back edges.  Nodes are numbered in
+ * topological order, so every (forward) edge points to a node with a lower index, and the edges
+ * are stored in compressed sparse row form: the outgoing edges of node {@code i} are the edge
+ * indexes from {@link #getEdgeStart(int) getEdgeStart(i)} (inclusive) to
+ * {@link #getEdgeEnd(int) getEdgeEnd(i)} (exclusive), with any back edges at the end of that
+ * range, starting at {@link #getBackEdgeStart(int) getBackEdgeStart(i)}.
+ *
+ * <p>A frozen graph uses a few flat arrays rather than a node and edge object per node and
+ * edge, so it is cheaper to keep resident and to traverse than the {@link DAGNode} graph it is
+ * made from.</p>
+ *
+ * @param <V> The type of node (vertex) labels.
+ * @param <E> The type of edge labels.
+ * @since 0.11
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+@Immutable
+public final class FrozenGraph<V,E> {
+    private final Object[] nodeLabels;
+    private final int[] edgeStarts;
+    private final int[] backEdgeStarts;
+    private final int[] edgeTargets;
+    private final Object[] edgeLabels;
+    private final int root;
+
+    private FrozenGraph(Object[] nodes, int[] starts, int[] backStarts,
+                        int[] targets, Object[] labels, int root) {
+        nodeLabels = nodes;
+        edgeStarts = starts;
+        backEdgeStarts = backStarts;
+        edgeTargets = targets;
+        edgeLabels = labels;
+        this.root = root;
+    }
+
+    /**
+     * Freeze a graph.
+     * @param root The root of the graph.
+     * @param <V> The type of node labels.
+     * @param <E> The type of edge labels.
+     * @return The frozen graph.
+     */
+    public static <V,E> FrozenGraph<V,E> freeze(@Nonnull DAGNode<V,E> root) {
+        return freeze(root, ImmutableSetMultimap.<DAGNode<V,E>,DAGEdge<V,E>>of());
+    }
+
+    /**
+     * Freeze a graph with back edges.  Nodes reachable only through back edges are included.
+     *
+     * @param root The root of the graph.
+     * @param backEdges The back edges, keyed by their head nodes.  Back edges from nodes not in
+     *                  the graph are ignored.
+     * @param <V> The type of node labels.
+     * @param <E> The type of edge labels.
+     * @return The frozen graph.
+     */
+    public static <V,E> FrozenGraph<V,E> freeze(@Nonnull DAGNode<V,E> root,
+                                                 @Nonnull SetMultimap<DAGNode<V,E>, DAGEdge<V,E>> backEdges) {
+        Preconditions.checkNotNull(root, "root node");
+        Preconditions.checkNotNull(backEdges, "back edges");
+
+        // sorted nodes put dependencies first, so forward edges point to lower indexes
+        List<DAGNode<V,E>> nodes = Lists.newArrayList(root.getSortedNodes());
+        Map<DAGNode<V,E>, Integer> index = Maps.newHashMap();
+        for (DAGNode<V,E> node: nodes) {
+            index.put(node, index.size());
+        }
+        // add nodes only reachable by back edges, along with their own dependencies
+        int edgeCount = 0;
+        for (int i = 0; i < nodes.size(); i++) {
+            DAGNode<V,E> node = nodes.get(i);
+            edgeCount += node.getOutgoingEdges().size();
+            for (DAGEdge<V,E> edge: backEdges.get(node)) {
+                edgeCount += 1;
+                for (DAGNode<V,E> dep: edge.getTail().getSortedNodes()) {
+                    if (!index.containsKey(dep)) {
+                        index.put(dep, index.size());
+                        nodes.add(dep);
+                    }
+                }
+            }
+        }
+
+        int n = nodes.size();
+        Object[] labels = new Object[n];
+        int[] starts = new int[n + 1];
+        int[] backStarts = new int[n];
+        int[] targets = new int[edgeCount];
+        Object[] elabels = new Object[edgeCount];
+        int e = 0;
+        for (int i = 0; i < n; i++) {
+            DAGNode<V,E> node = nodes.get(i);
+            labels[i] = node.getLabel();
+            starts[i] = e;
+            for (DAGEdge<V,E> edge: node.getOutgoingEdges()) {
+                targets[e] = index.get(edge.getTail());
+                elabels[e] = edge.getLabel();
+                e++;
+            }
+            backStarts[i] = e;
+            for (DAGEdge<V,E> edge: backEdges.get(node)) {
+                targets[e] = index.get(edge.getTail());
+                elabels[e] = edge.getLabel();
+                e++;
+            }
+        }
+        assert e == edgeCount;
+        starts[n] = e;
+        return new FrozenGraph<V,E>(labels, starts, backStarts, targets, elabels, index.get(root));
+    }
+
+    /**
+     * Get the number of nodes in the graph.
+     * @return The number of nodes.
+     */
+    public int size() {
+        return nodeLabels.length;
+    }
+
+    /**
+     * Get the total number of edges in the graph, including back edges.
+     * @return The number of edges.
+     */
+    public int getEdgeCount() {
+        return edgeTargets.length;
+    }
+
+    /**
+     * Get the index of the root node.
+     * @return The root node's index.
+     */
+    public int getRoot() {
+        return root;
+    }
+
+    /**
+     * Get the label of a node.
+     * @param node The node index.
+     * @return The node's label.
+     */
+    @SuppressWarnings("unchecked")
+    public V getLabel(int node) {
+        return (V) nodeLabels[node];
+    }
+
+    /**
+     * Get the index of a node's first outgoing edge.
+     * @param node The node index.
+     * @return The index of the node's first edge.
+     */
+    public int getEdgeStart(int node) {
+        return edgeStarts[node];
+    }
+
+    /**
+     * Get the index of a node's first outgoing back edge.
+     * @param node The node index.
+     * @return The index of the node's first back edge, or {@link #getEdgeEnd(int)} if it has no
+     *         back edges.
+     */
+    public int getBackEdgeStart(int node) {
+        return backEdgeStarts[node];
+    }
+
+    /**
+     * Get the index past a node's last outgoing edge.
+     * @param node The node index.
+     * @return The index past the node's last edge.
+     */
+    public int getEdgeEnd(int node) {
+        return edgeStarts[node + 1];
+    }
+
+    /**
+     * Get the target (tail) of an edge.
+     * @param edge The edge index.
+     * @return The index of the edge's target node.
+     */
+    public int getEdgeTarget(int edge) {
+        return edgeTargets[edge];
+    }
+
+    /**
+     * Get the label of an edge.
+     * @param edge The edge index.
+     * @return The edge's label.
+     */
+    @SuppressWarnings("unchecked")
+    public E getEdgeLabel(int edge) {
+        return (E) edgeLabels[edge];
+    }
+
+    /**
+     * Rebuild the {@link DAGNode} graph rooted at a node.  Back edges are not included.
+     * @param node The node index.
+     * @return A new DAG node with the same labels and (forward) edges as the frozen node.
+     */
+    @SuppressWarnings("unchecked")
+    public DAGNode<V,E> toNode(int node) {
+        DAGNode<V,E>[] built = new DAGNode[node + 1];
+        boolean[] needed = new boolean[node + 1];
+        needed[node] = true;
+        for (int i = node; i >= 0; i--) {
+            if (needed[i]) {
+                for (int e = edgeStarts[i]; e < backEdgeStarts[i]; e++) {
+                    needed[edgeTargets[e]] = true;
+                }
+            }
+        }
+        // dependencies have lower indexes, so build in index order
+        for (int i = 0; i <= node; i++) {
+            if (needed[i]) {
+                DAGNodeBuilder<V,E> bld = DAGNode.newBuilder(getLabel(i));
+                for (int e = edgeStarts[i]; e < backEdgeStarts[i]; e++) {
+                    bld.addEdge(built[edgeTargets[e]], getEdgeLabel(e));
+                }
+                built[i] = bld.build();
+            }
+        }
+        return built[node];
+    }
+
+    @Override
+    public String toString() {
+        return String.format("FrozenGraph(%d nodes, %d edges)", size(), getEdgeCount());
+    }
+}
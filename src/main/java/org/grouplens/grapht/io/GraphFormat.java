@@ -0,0 +1,114 @@
+/*
+ * Grapht, an open source dependency injector.
+ * Copyright 2014-2015 various contributors (see CONTRIBUTORS.txt)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.grapht.io;
+
+/**
+ * Constants for the binary graph format shared by {@link GraphWriter} and {@link GraphReader}.
+ *
+ * <p>A stream starts with a header ({@link #MAGIC} and {@link #VERSION}), followed by a
+ * sequence of records.  A {@link #NODE_RECORD} defines the next node: its component and its
+ * outgoing edges, each edge being the index of a previously-defined tail node and a dependency.
+ * A {@link #GRAPH_RECORD} marks a complete graph by the index of its root node.  Nodes are
+ * written in topological order, so edges only refer to earlier nodes, and nodes shared between
+ * graphs in the same stream are written once.  Names are stored as in
+ * {@link java.io.DataOutput#writeUTF(String)}; string values, which may be longer, are stored as
+ * their UTF-8 byte count (an unsigned variable-length integer) followed by the bytes.</p>
+ *
+ * <p>Classes, annotations, members, injection points, satisfactions, desires, components and
+ * dependencies are interned in per-kind tables.  A reference to a table entry is an unsigned
+ * variable-length integer: {@link #NULL_REF} for {@code null}, {@link #NEW_REF} followed by the
+ * entry's definition for an entry not seen before (it receives the next index once its
+ * definition is complete), or the entry's index plus {@link #REF_OFFSET}.</p>
+ *
+ * <p>A graph store ({@link GraphStoreWriter}, {@link GraphStore}) is a file laid out for random
+ * access.  Its fixed-width header is {@link #STORE_MAGIC}, {@link #STORE_VERSION}, the node
+ * count and the graph count, as 32-bit integers.  It is followed by the node offset table (the
+ * file offset of each node record, plus the end of the last one), the graph index (for each
+ * graph, sorted by id, the file offset of its id and the index of its root node), the node
+ * records and the graph ids.  Each node record holds its edge count and tail node indexes,
+ * followed by its component and edge dependencies encoded with their own tables, and with
+ * names and strings, as above; tail nodes always have lower indexes than their heads.  Ids are
+ * stored as in {@link java.io.DataOutput#writeUTF(String)}.</p>
+ *
+ * @since 0.11
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+final class GraphFormat {
+    private GraphFormat() {}
+
+    static final int MAGIC = 0x47525048; // "GRPH"
+    static final int VERSION = 1;
+
+    static final int STORE_MAGIC = 0x47525354; // "GRST"
+    static final int STORE_VERSION = 1;
+    static final int STORE_HEADER_SIZE = 16;
+    static final int STORE_INDEX_ENTRY_SIZE = 8;
+
+    static final int NODE_RECORD = 1;
+    static final int GRAPH_RECORD = 2;
+
+    static final int NULL_REF = 0;
+    static final int NEW_REF = 1;
+    static final int REF_OFFSET = 2;
+
+    // member kinds
+    static final int CONSTRUCTOR = 0;
+    static final int METHOD = 1;
+    static final int FIELD = 2;
+
+    // injection point kinds
+    static final int SIMPLE_IP = 0;
+    static final int CONSTRUCTOR_PARAM_IP = 1;
+    static final int SETTER_IP = 2;
+    static final int NO_ARGUMENT_IP = 3;
+    static final int FIELD_IP = 4;
+
+    // satisfaction kinds
+    static final int CLASS_SAT = 0;
+    static final int NULL_SAT = 1;
+    static final int INSTANCE_SAT = 2;
+    static final int PROVIDER_CLASS_SAT = 3;
+    static final int PROVIDER_INSTANCE_SAT = 4;
+
+    // desire kinds
+    static final int REFLECTION_DESIRE = 0;
+
+    /**
+     * Kind tag for objects of other types, which are stored with Java serialization.
+     */
+    static final int SERIALIZED = 15;
+
+    // value tags
+    static final int NULL_VALUE = 0;
+    static final int STRING_VALUE = 1;
+    static final int BOOLEAN_VALUE = 2;
+    static final int BYTE_VALUE = 3;
+    static final int SHORT_VALUE = 4;
+    static final int INT_VALUE = 5;
+    static final int LONG_VALUE = 6;
+    static final int CHAR_VALUE = 7;
+    static final int FLOAT_VALUE = 8;
+    static final int DOUBLE_VALUE = 9;
+    static final int CLASS_VALUE = 10;
+    static final int ENUM_VALUE = 11;
+    static final int ANNOTATION_VALUE = 12;
+    static final int ARRAY_VALUE = 13;
+    static final int SERIALIZED_VALUE = 14;
+}
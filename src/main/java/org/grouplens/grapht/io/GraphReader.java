@@ -0,0 +1,631 @@
+/*
+ * Grapht, an open source dependency injector.
+ * Copyright 2014-2015 various contributors (see CONTRIBUTORS.txt)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.grapht.io;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.MoreExecutors;
+import org.apache.commons.lang3.ClassUtils;
+import org.grouplens.grapht.CachePolicy;
+import org.grouplens.grapht.Component;
+import org.grouplens.grapht.Dependency;
+import org.grouplens.grapht.InvalidBindingException;
+import org.grouplens.grapht.annotation.AnnotationBuilder;
+import org.grouplens.grapht.graph.DAGNode;
+import org.grouplens.grapht.graph.DAGNodeBuilder;
+import org.grouplens.grapht.reflect.Desire;
+import org.grouplens.grapht.reflect.Desires;
+import org.grouplens.grapht.reflect.InjectionPoint;
+import org.grouplens.grapht.reflect.Satisfaction;
+import org.grouplens.grapht.reflect.Satisfactions;
+import org.grouplens.grapht.reflect.internal.*;
+import org.grouplens.grapht.solver.DesireChain;
+import org.grouplens.grapht.util.ClassLoaders;
+import org.grouplens.grapht.util.ClassProxy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import javax.inject.Provider;
+import java.io.*;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+
+import static org.grouplens.grapht.io.GraphFormat.*;
+
+/**
+ * Reads graphs written by a {@link GraphWriter}.  Classes are verified against the checksums
+ * recorded when the graph was written, in the same way as {@link ClassProxy}; each class is
+ * verified once per stream, and verification can run in parallel with reading.
+ *
+ * @see GraphWriter
+ * @since 0.11
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+public class GraphReader implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(GraphReader.class);
+
+    private final DataInputStream input;
+    private final ClassLoader classLoader;
+    private final Executor checksumExecutor;
+    private final List<PendingCheck> pendingChecks = Lists.newArrayList();
+    private final List<Class<?>> classes = Lists.newArrayList();
+    private final List<Annotation> annotations = Lists.newArrayList();
+    private final List<Member> members = Lists.newArrayList();
+    private final List<InjectionPoint> injectionPoints = Lists.newArrayList();
+    private final List<Satisfaction> satisfactions = Lists.newArrayList();
+    private final List<Desire> desires = Lists.newArrayList();
+    private final List<Component> components = Lists.newArrayList();
+    private final List<Dependency> dependencies = Lists.newArrayList();
+    private final List<DAGNode<Component, Dependency>> nodes = Lists.newArrayList();
+
+    /**
+     * Create a graph reader using the default class loader.
+     * @param in The input stream.
+     * @throws IOException if there is an error reading the header, or the stream is not a graph stream.
+     */
+    public GraphReader(InputStream in) throws IOException {
+        this(in, ClassLoaders.inferDefault(GraphReader.class));
+    }
+
+    /**
+     * Create a graph reader.
+     * @param in The input stream.
+     * @param loader The class loader to resolve classes.
+     * @throws IOException if there is an error reading the header, or the stream is not a graph stream.
+     */
+    public GraphReader(InputStream in, ClassLoader loader) throws IOException {
+        this(in, loader, MoreExecutors.directExecutor());
+    }
+
+    /**
+     * Create a graph reader that verifies class checksums in parallel.  Checksums of the classes
+     * in a graph are computed on {@code executor} while the rest of the graph is read, and
+     * verified before the graph is returned.
+     *
+     * @param in The input stream.
+     * @param loader The class loader to resolve classes.
+     * @param executor The executor for computing class checksums.
+     * @throws IOException if there is an error reading the header, or the stream is not a graph stream.
+     */
+    public GraphReader(InputStream in, ClassLoader loader, Executor executor) throws IOException {
+        this(in, loader, executor, true);
+    }
+
+    private GraphReader(InputStream in, ClassLoader loader, Executor executor,
+                        boolean header) throws IOException {
+        input = new DataInputStream(in);
+        classLoader = loader;
+        checksumExecutor = executor;
+        if (header) {
+            if (input.readInt() != MAGIC) {
+                throw new StreamCorruptedException("not a graph stream");
+            }
+            int version = readVarInt();
+            if (version != VERSION) {
+                throw new StreamCorruptedException("unsupported graph format version " + version);
+            }
+        }
+    }
+
+    /**
+     * Create a reader for a single record written by {@link GraphWriter#forRecord(OutputStream)}.
+     * The caller reads the record with the package-private {@code read} methods, and must call
+     * {@link #verifyChecksums()} once it is done.
+     *
+     * @param in The input stream.
+     * @param loader The class loader to resolve classes.
+     * @return The reader.
+     */
+    static GraphReader forRecord(InputStream in, ClassLoader loader) throws IOException {
+        return new GraphReader(in, loader, MoreExecutors.directExecutor(), false);
+    }
+
+    /**
+     * Read the next graph from the stream.
+     * @return The root node of the graph, or {@code null} at the end of the stream.
+     * @throws IOException if there is an error reading the graph.
+     */
+    @Nullable
+    public DAGNode<Component, Dependency> readGraph() throws IOException {
+        while (true) {
+            int record = input.read();
+            switch (record) {
+            case -1:
+                return null;
+            case NODE_RECORD:
+                readNode();
+                break;
+            case GRAPH_RECORD:
+                DAGNode<Component, Dependency> root = getNode(readVarInt());
+                verifyChecksums();
+                return root;
+            default:
+                throw new StreamCorruptedException("invalid record type " + record);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+
+    private void readNode() throws IOException {
+        DAGNodeBuilder<Component, Dependency> bld = DAGNode.newBuilder(readComponent());
+        int nedges = readVarInt();
+        for (int i = 0; i < nedges; i++) {
+            DAGNode<Component, Dependency> tail = getNode(readVarInt());
+            bld.addEdge(tail, readDependency());
+        }
+        nodes.add(bld.build());
+    }
+
+    private DAGNode<Component, Dependency> getNode(int id) throws StreamCorruptedException {
+        if (id < 0 || id >= nodes.size()) {
+            throw new StreamCorruptedException("invalid node reference " + id);
+        }
+        return nodes.get(id);
+    }
+
+    int readVarInt() throws IOException {
+        int value = 0;
+        int shift = 0;
+        int b;
+        do {
+            if (shift > 28) {
+                throw new StreamCorruptedException("variable-length integer too long");
+            }
+            b = input.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private String readString() throws IOException {
+        byte[] bytes = new byte[readVarInt()];
+        input.readFully(bytes);
+        return new String(bytes, Charsets.UTF_8);
+    }
+
+    /**
+     * Read a table reference.
+     * @return The referenced index, {@link GraphFormat#NULL_REF} - {@link GraphFormat#REF_OFFSET}
+     * for null, or {@link GraphFormat#NEW_REF} - {@link GraphFormat#REF_OFFSET} for a new entry.
+     */
+    private int readRef(List<?> table) throws IOException {
+        int ref = readVarInt() - REF_OFFSET;
+        if (ref >= table.size()) {
+            throw new StreamCorruptedException("invalid table reference " + ref);
+        }
+        return ref;
+    }
+
+    private static final int NULL = NULL_REF - REF_OFFSET;
+    private static final int NEW = NEW_REF - REF_OFFSET;
+
+    private Class<?> readClass() throws IOException {
+        int ref = readRef(classes);
+        if (ref == NULL) {
+            return null;
+        } else if (ref != NEW) {
+            return classes.get(ref);
+        }
+        String name = input.readUTF();
+        long checksum = input.readLong();
+        Class<?> cls;
+        try {
+            cls = name.equals("void") ? Void.TYPE : ClassUtils.getClass(classLoader, name);
+        } catch (ClassNotFoundException e) {
+            throw invalid("cannot resolve class " + name, e);
+        }
+        pendingChecks.add(new PendingCheck(cls, checksum,
+                                           ClassProxy.checksumAsync(cls, checksumExecutor)));
+        classes.add(cls);
+        return cls;
+    }
+
+    /**
+     * Verify the checksums of the classes read since the last verification.
+     * @throws InvalidObjectException if a class has changed since the graph was written.
+     */
+    void verifyChecksums() throws IOException {
+        try {
+            for (PendingCheck check: pendingChecks) {
+                long actual;
+                try {
+                    actual = check.actual.get();
+                } catch (ExecutionException e) {
+                    throw invalid("cannot checksum " + check.type, e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("interrupted verifying " + check.type);
+                }
+                if (actual != check.expected) {
+                    if (ClassProxy.isSerializationPermissive()) {
+                        logger.warn("checksum mismatch for {}", check.type);
+                    } else {
+                        throw new InvalidObjectException("checksum mismatch for " + check.type.getName());
+                    }
+                }
+            }
+        } finally {
+            pendingChecks.clear();
+        }
+    }
+
+    Component readComponent() throws IOException {
+        int ref = readRef(components);
+        if (ref == NULL) {
+            return null;
+        } else if (ref != NEW) {
+            return components.get(ref);
+        }
+        Satisfaction sat = readSatisfaction();
+        CachePolicy policy;
+        try {
+            policy = CachePolicy.valueOf(input.readUTF());
+        } catch (IllegalArgumentException e) {
+            throw invalid("invalid cache policy", e);
+        }
+        Component comp = Component.create(sat, policy);
+        components.add(comp);
+        return comp;
+    }
+
+    Dependency readDependency() throws IOException {
+        int ref = readRef(dependencies);
+        if (ref == NULL) {
+            return null;
+        } else if (ref != NEW) {
+            return dependencies.get(ref);
+        }
+        UUID key = new UUID(input.readLong(), input.readLong());
+        int n = readVarInt();
+        List<Desire> chain = Lists.newArrayListWithCapacity(n);
+        for (int i = 0; i < n; i++) {
+            chain.add(readDesire());
+        }
+        EnumSet<Dependency.Flag> flags = Dependency.Flag.emptySet();
+        int nflags = readVarInt();
+        for (int i = 0; i < nflags; i++) {
+            try {
+                flags.add(Dependency.Flag.valueOf(input.readUTF()));
+            } catch (IllegalArgumentException e) {
+                throw invalid("invalid dependency flag", e);
+            }
+        }
+        Dependency dep = Dependency.create(DesireChain.create(key, chain), flags);
+        dependencies.add(dep);
+        return dep;
+    }
+
+    private Desire readDesire() throws IOException {
+        int ref = readRef(desires);
+        if (ref == NULL) {
+            return null;
+        } else if (ref != NEW) {
+            return desires.get(ref);
+        }
+        Desire desire;
+        int kind = input.readUnsignedByte();
+        switch (kind) {
+        case REFLECTION_DESIRE:
+            Class<?> type = readClass();
+            InjectionPoint ip = readInjectionPoint();
+            Satisfaction sat = readSatisfaction();
+            try {
+                desire = ReflectionDesire.intern(new ReflectionDesire(type, ip, sat));
+            } catch (InvalidBindingException e) {
+                throw invalid("invalid binding", e);
+            }
+            break;
+        case SERIALIZED:
+            desire = readSerialized(Desire.class);
+            break;
+        default:
+            throw new StreamCorruptedException("invalid desire kind " + kind);
+        }
+        desires.add(desire);
+        return desire;
+    }
+
+    private InjectionPoint readInjectionPoint() throws IOException {
+        int ref = readRef(injectionPoints);
+        if (ref == NULL) {
+            return null;
+        } else if (ref != NEW) {
+            return injectionPoints.get(ref);
+        }
+        InjectionPoint ip;
+        int kind = input.readUnsignedByte();
+        switch (kind) {
+        case SIMPLE_IP:
+            Annotation qual = readAnnotation();
+            Class<?> type = readClass();
+            ip = Desires.createInjectionPoint(qual, type, input.readBoolean());
+            break;
+        case CONSTRUCTOR_PARAM_IP:
+            ip = new ConstructorParameterInjectionPoint(readMember(Constructor.class), readVarInt());
+            break;
+        case SETTER_IP:
+            ip = new SetterInjectionPoint(readMember(Method.class), readVarInt());
+            break;
+        case NO_ARGUMENT_IP:
+            ip = new NoArgumentInjectionPoint(readMember(Method.class));
+            break;
+        case FIELD_IP:
+            ip = new FieldInjectionPoint(readMember(Field.class));
+            break;
+        case SERIALIZED:
+            ip = readSerialized(InjectionPoint.class);
+            break;
+        default:
+            throw new StreamCorruptedException("invalid injection point kind " + kind);
+        }
+        injectionPoints.add(ip);
+        return ip;
+    }
+
+    private <M extends Member> M readMember(Class<M> type) throws IOException {
+        int ref = readRef(members);
+        Member member;
+        if (ref == NULL) {
+            throw new StreamCorruptedException("missing member");
+        } else if (ref != NEW) {
+            member = members.get(ref);
+        } else {
+            int kind = input.readUnsignedByte();
+            Class<?> owner = readClass();
+            String name = kind == CONSTRUCTOR ? null : input.readUTF();
+            try {
+                switch (kind) {
+                case CONSTRUCTOR:
+                    member = owner.getDeclaredConstructor(readParameterTypes());
+                    break;
+                case METHOD:
+                    member = owner.getDeclaredMethod(name, readParameterTypes());
+                    break;
+                case FIELD:
+                    member = owner.getDeclaredField(name);
+                    break;
+                default:
+                    throw new StreamCorruptedException("invalid member kind " + kind);
+                }
+            } catch (NoSuchMethodException e) {
+                throw invalid("cannot resolve member of " + owner, e);
+            } catch (NoSuchFieldException e) {
+                throw invalid("cannot resolve field " + name + " of " + owner, e);
+            }
+            members.add(member);
+        }
+        if (!type.isInstance(member)) {
+            throw new StreamCorruptedException("expected " + type.getSimpleName() + ", found " + member);
+        }
+        return type.cast(member);
+    }
+
+    private Class<?>[] readParameterTypes() throws IOException {
+        Class<?>[] params = new Class<?>[readVarInt()];
+        for (int i = 0; i < params.length; i++) {
+            params[i] = readClass();
+        }
+        return params;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Satisfaction readSatisfaction() throws IOException {
+        int ref = readRef(satisfactions);
+        if (ref == NULL) {
+            return null;
+        } else if (ref != NEW) {
+            return satisfactions.get(ref);
+        }
+        Satisfaction sat;
+        int kind = input.readUnsignedByte();
+        switch (kind) {
+        case CLASS_SAT:
+            sat = Satisfactions.type(readClass());
+            break;
+        case NULL_SAT:
+            sat = Satisfactions.nullOfType(readClass());
+            break;
+        case INSTANCE_SAT:
+            sat = Satisfactions.instance(readValue());
+            break;
+        case PROVIDER_CLASS_SAT:
+            sat = Satisfactions.providerType((Class<? extends Provider<?>>) readClass());
+            break;
+        case PROVIDER_INSTANCE_SAT:
+            Object provider = readValue();
+            if (!(provider instanceof Provider)) {
+                throw new InvalidObjectException(provider + " is not a provider");
+            }
+            sat = Satisfactions.providerInstance((Provider<?>) provider);
+            break;
+        case SERIALIZED:
+            sat = readSerialized(Satisfaction.class);
+            break;
+        default:
+            throw new StreamCorruptedException("invalid satisfaction kind " + kind);
+        }
+        satisfactions.add(sat);
+        return sat;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Annotation readAnnotation() throws IOException {
+        int ref = readRef(annotations);
+        if (ref == NULL) {
+            return null;
+        } else if (ref != NEW) {
+            return annotations.get(ref);
+        }
+        Class<?> type = readClass();
+        if (!type.isAnnotation()) {
+            throw new InvalidObjectException(type + " is not an annotation type");
+        }
+        AnnotationBuilder<?> bld = new AnnotationBuilder(type);
+        int nattrs = readVarInt();
+        for (int i = 0; i < nattrs; i++) {
+            String name = input.readUTF();
+            Object value = readValue();
+            try {
+                bld.setAttribute(name, value);
+            } catch (IllegalArgumentException e) {
+                throw invalid("invalid attribute " + name + " of " + type, e);
+            }
+        }
+        Annotation annot = bld.build();
+        annotations.add(annot);
+        return annot;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Object readValue() throws IOException {
+        int tag = input.readUnsignedByte();
+        switch (tag) {
+        case NULL_VALUE:
+            return null;
+        case STRING_VALUE:
+            return readString();
+        case BOOLEAN_VALUE:
+            return input.readBoolean();
+        case BYTE_VALUE:
+            return input.readByte();
+        case SHORT_VALUE:
+            return input.readShort();
+        case INT_VALUE:
+            return input.readInt();
+        case LONG_VALUE:
+            return input.readLong();
+        case CHAR_VALUE:
+            return input.readChar();
+        case FLOAT_VALUE:
+            return input.readFloat();
+        case DOUBLE_VALUE:
+            return input.readDouble();
+        case CLASS_VALUE:
+            return readClass();
+        case ENUM_VALUE: {
+            Class type = readClass();
+            String name = input.readUTF();
+            if (!type.isEnum()) {
+                throw new InvalidObjectException(type + " is not an enum");
+            }
+            try {
+                return Enum.valueOf(type, name);
+            } catch (IllegalArgumentException e) {
+                throw invalid("invalid constant " + name + " of " + type, e);
+            }
+        }
+        case ANNOTATION_VALUE:
+            return readAnnotation();
+        case ARRAY_VALUE: {
+            Class<?> type = readClass();
+            int n = readVarInt();
+            Object array = Array.newInstance(type, n);
+            for (int i = 0; i < n; i++) {
+                try {
+                    Array.set(array, i, readValue());
+                } catch (IllegalArgumentException e) {
+                    throw invalid("invalid element for array of " + type, e);
+                }
+            }
+            return array;
+        }
+        case SERIALIZED_VALUE:
+            return readSerialized(Object.class);
+        default:
+            throw new StreamCorruptedException("invalid value tag " + tag);
+        }
+    }
+
+    private <T> T readSerialized(Class<T> type) throws IOException {
+        byte[] bytes = new byte[readVarInt()];
+        input.readFully(bytes);
+        ObjectInputStream ois = new LoaderObjectInputStream(new ByteArrayInputStream(bytes), classLoader);
+        Object obj;
+        try {
+            obj = ois.readObject();
+        } catch (ClassNotFoundException e) {
+            throw invalid("cannot resolve serialized class", e);
+        } finally {
+            ois.close();
+        }
+        if (!type.isInstance(obj)) {
+            throw new InvalidObjectException("expected " + type.getSimpleName() + ", found " + obj);
+        }
+        return type.cast(obj);
+    }
+
+    private static InvalidObjectException invalid(String message, Throwable cause) {
+        InvalidObjectException ex = new InvalidObjectException(message);
+        ex.initCause(cause);
+        return ex;
+    }
+
+    /**
+     * A class whose checksum is still being verified.
+     */
+    private static class PendingCheck {
+        private final Class<?> type;
+        private final long expected;
+        private final Future<Long> actual;
+
+        public PendingCheck(Class<?> type, long expected, Future<Long> actual) {
+            this.type = type;
+            this.expected = expected;
+            this.actual = actual;
+        }
+    }
+
+    /**
+     * Object input stream that resolves classes with a particular class loader.
+     */
+    private static class LoaderObjectInputStream extends ObjectInputStream {
+        private final ClassLoader loader;
+
+        public LoaderObjectInputStream(InputStream in, ClassLoader cl) throws IOException {
+            super(in);
+            loader = cl;
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            try {
+                return ClassUtils.getClass(loader, desc.getName(), false);
+            } catch (ClassNotFoundException e) {
+                return super.resolveClass(desc);
+            }
+        }
+    }
+}
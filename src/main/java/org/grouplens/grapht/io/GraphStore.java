@@ -0,0 +1,313 @@
+/*
+ * Grapht, an open source dependency injector.
+ * Copyright 2014-2015 various contributors (see CONTRIBUTORS.txt)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.grapht.io;
+
+import org.grouplens.grapht.Component;
+import org.grouplens.grapht.Dependency;
+import org.grouplens.grapht.graph.DAGNode;
+import org.grouplens.grapht.graph.DAGNodeBuilder;
+import org.grouplens.grapht.util.ClassLoaders;
+import org.grouplens.grapht.util.Preconditions;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.BitSet;
+import java.util.Deque;
+
+import static org.grouplens.grapht.io.GraphFormat.*;
+
+/**
+ * A read-only store of graphs written by {@link GraphStoreWriter}, read through a memory-mapped
+ * buffer.  Opening a store only validates its header; looking up a graph searches the sorted
+ * index in place, and loading it decodes only the nodes reachable from its root.  Nodes are
+ * materialized at most once, so graphs loaded from the same store share the nodes they have in
+ * common.
+ *
+ * <p>Stores are safe to use from multiple threads.</p>
+ *
+ * @see GraphStoreWriter
+ * @since 0.11
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+public class GraphStore implements Closeable {
+    private final ClassLoader classLoader;
+    private final int nodeCount;
+    private final int graphCount;
+    private final int indexOffset;
+    private ByteBuffer buffer;
+    private DAGNode<Component, Dependency>[] nodes;
+
+    @SuppressWarnings("unchecked")
+    private GraphStore(ByteBuffer buf, ClassLoader loader) throws IOException {
+        buffer = buf;
+        classLoader = loader;
+        try {
+            if (buf.getInt(0) != STORE_MAGIC) {
+                throw new StreamCorruptedException("not a graph store");
+            }
+            int version = buf.getInt(4);
+            if (version != STORE_VERSION) {
+                throw new StreamCorruptedException("unsupported graph store version " + version);
+            }
+            nodeCount = buf.getInt(8);
+            graphCount = buf.getInt(12);
+        } catch (IndexOutOfBoundsException e) {
+            throw new StreamCorruptedException("truncated graph store header");
+        }
+        long index = STORE_HEADER_SIZE + 4L * (nodeCount + 1);
+        if (nodeCount < 0 || graphCount < 0
+                || index + (long) STORE_INDEX_ENTRY_SIZE * graphCount > buf.limit()) {
+            throw new StreamCorruptedException("truncated graph store tables");
+        }
+        indexOffset = (int) index;
+        nodes = new DAGNode[nodeCount];
+    }
+
+    /**
+     * Open a graph store using the default class loader.
+     * @param file The store file.
+     * @return The graph store.
+     * @throws IOException if there is an error mapping the file, or it is not a graph store.
+     */
+    public static GraphStore open(File file) throws IOException {
+        return open(file, ClassLoaders.inferDefault(GraphStore.class));
+    }
+
+    /**
+     * Open a graph store.
+     * @param file The store file.
+     * @param loader The class loader to resolve classes.
+     * @return The graph store.
+     * @throws IOException if there is an error mapping the file, or it is not a graph store.
+     */
+    public static GraphStore open(File file, ClassLoader loader) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        MappedByteBuffer buf;
+        try {
+            FileChannel channel = raf.getChannel();
+            // the mapping remains valid after the channel is closed
+            buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            raf.close();
+        }
+        return new GraphStore(buf, loader);
+    }
+
+    /**
+     * Create a graph store over a buffer containing a store, such as one written to memory with
+     * {@link GraphStoreWriter#write(OutputStream)}.
+     *
+     * @param buf The buffer.  Its contents must not be modified while the store is in use.
+     * @param loader The class loader to resolve classes.
+     * @return The graph store.
+     * @throws IOException if the buffer does not contain a graph store.
+     */
+    public static GraphStore wrap(ByteBuffer buf, ClassLoader loader) throws IOException {
+        return new GraphStore(buf.slice(), loader);
+    }
+
+    /**
+     * Get the number of graphs in the store.
+     * @return The number of graphs.
+     */
+    public int size() {
+        return graphCount;
+    }
+
+    /**
+     * Query whether the store contains a graph.
+     * @param id The graph id.
+     * @return {@code true} if the store has a graph with id {@code id}.
+     * @throws IOException if there is an error reading the index.
+     */
+    public synchronized boolean containsGraph(@Nonnull String id) throws IOException {
+        return findRoot(id) >= 0;
+    }
+
+    /**
+     * Load a graph from the store.
+     * @param id The graph id.
+     * @return The root node of the graph, or {@code null} if the store has no such graph.
+     * @throws IOException if there is an error reading the graph, or a class has changed since
+     *                     it was written.
+     */
+    @Nullable
+    public synchronized DAGNode<Component, Dependency> getGraph(@Nonnull String id) throws IOException {
+        int root = findRoot(id);
+        return root < 0 ? null : materialize(root);
+    }
+
+    /**
+     * Close the store, releasing its buffer and materialized nodes.  Graphs already loaded
+     * remain usable.
+     */
+    @Override
+    public synchronized void close() {
+        buffer = null;
+        nodes = null;
+    }
+
+    private ByteBuffer getBuffer() {
+        if (buffer == null) {
+            throw new IllegalStateException("graph store is closed");
+        }
+        return buffer;
+    }
+
+    /**
+     * Binary search the index for a graph id.
+     * @return The root node index, or -1 if the graph is not found.
+     */
+    private int findRoot(String id) throws IOException {
+        Preconditions.notNull("graph id", id);
+        ByteBuffer buf = getBuffer();
+        int lo = 0;
+        int hi = graphCount - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int entry = indexOffset + mid * STORE_INDEX_ENTRY_SIZE;
+            int cmp = readKey(buf, buf.getInt(entry)).compareTo(id);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return checkNode(buf.getInt(entry + 4));
+            }
+        }
+        return -1;
+    }
+
+    private static String readKey(ByteBuffer buf, int offset) throws IOException {
+        return new DataInputStream(new ByteBufferInputStream(positioned(buf, offset))).readUTF();
+    }
+
+    private int checkNode(int id) throws StreamCorruptedException {
+        if (id < 0 || id >= nodeCount) {
+            throw new StreamCorruptedException("invalid node reference " + id);
+        }
+        return id;
+    }
+
+    /**
+     * Materialize a node and any of its reachable nodes not yet materialized.  Tails always
+     * have lower indexes than their heads, so decoding the needed nodes in index order
+     * guarantees that each node's tails are available when it is decoded.
+     */
+    private DAGNode<Component, Dependency> materialize(int root) throws IOException {
+        if (nodes[root] != null) {
+            return nodes[root];
+        }
+        ByteBuffer buf = getBuffer();
+        BitSet needed = new BitSet();
+        Deque<Integer> work = new ArrayDeque<Integer>();
+        needed.set(root);
+        work.push(root);
+        while (!work.isEmpty()) {
+            int id = work.pop();
+            GraphReader reader = openNode(buf, id);
+            int nedges = reader.readVarInt();
+            for (int i = 0; i < nedges; i++) {
+                int tail = checkNode(reader.readVarInt());
+                if (tail >= id) {
+                    throw new StreamCorruptedException("node " + id + " refers forward to " + tail);
+                }
+                if (nodes[tail] == null && !needed.get(tail)) {
+                    needed.set(tail);
+                    work.push(tail);
+                }
+            }
+        }
+
+        for (int id = needed.nextSetBit(0); id >= 0; id = needed.nextSetBit(id + 1)) {
+            GraphReader reader = openNode(buf, id);
+            int[] tails = new int[reader.readVarInt()];
+            for (int i = 0; i < tails.length; i++) {
+                tails[i] = reader.readVarInt();
+            }
+            DAGNodeBuilder<Component, Dependency> bld = DAGNode.newBuilder(reader.readComponent());
+            for (int tail: tails) {
+                bld.addEdge(nodes[tail], reader.readDependency());
+            }
+            reader.verifyChecksums();
+            nodes[id] = bld.build();
+        }
+        return nodes[root];
+    }
+
+    private GraphReader openNode(ByteBuffer buf, int id) throws IOException {
+        int pos = STORE_HEADER_SIZE + 4 * id;
+        int start = buf.getInt(pos);
+        int end = buf.getInt(pos + 4);
+        if (start < indexOffset || end < start || end > buf.limit()) {
+            throw new StreamCorruptedException("invalid offset for node " + id);
+        }
+        ByteBuffer record = positioned(buf, start);
+        record.limit(end);
+        return GraphReader.forRecord(new ByteBufferInputStream(record), classLoader);
+    }
+
+    private static ByteBuffer positioned(ByteBuffer buf, int offset) throws StreamCorruptedException {
+        if (offset < 0 || offset > buf.limit()) {
+            throw new StreamCorruptedException("invalid offset " + offset);
+        }
+        ByteBuffer dup = buf.duplicate();
+        dup.position(offset);
+        return dup;
+    }
+
+    /**
+     * Input stream reading the remaining contents of a buffer.
+     */
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        public ByteBufferInputStream(ByteBuffer buf) {
+            buffer = buf;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int off, int len) {
+            if (len == 0) {
+                return 0;
+            } else if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(bytes, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Grapht, an open source dependency injector.
+ * Copyright 2014-2015 various contributors (see CONTRIBUTORS.txt)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.grapht.io;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.grouplens.grapht.Component;
+import org.grouplens.grapht.Dependency;
+import org.grouplens.grapht.graph.DAGEdge;
+import org.grouplens.grapht.graph.DAGNode;
+import org.grouplens.grapht.util.Preconditions;
+
+import javax.annotation.Nonnull;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+import static org.grouplens.grapht.io.GraphFormat.*;
+
+/**
+ * Builds a {@link GraphStore} file from a collection of graphs, each identified by a string id.
+ * Nodes are stored once in a table shared by all graphs; nodes shared between graphs, and
+ * nodes whose components, edges and dependencies encode identically, are stored once.
+ *
+ * @see GraphStore
+ * @since 0.11
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+public class GraphStoreWriter {
+    private final SortedMap<String, Integer> roots = Maps.newTreeMap();
+    private final List<byte[]> records = Lists.newArrayList();
+    private final Map<ByteBuffer, Integer> recordIds = Maps.newHashMap();
+    private final Map<DAGNode<Component, Dependency>, Integer> nodeIds =
+            new IdentityHashMap<DAGNode<Component, Dependency>, Integer>();
+
+    /**
+     * Add a graph to the store.  Its nodes are encoded immediately.
+     *
+     * @param id The graph's id.
+     * @param root The root node of the graph.
+     * @return The writer (for chaining).
+     * @throws IllegalArgumentException if a graph with the same id has already been added.
+     * @throws IOException if there is an error encoding the graph.
+     */
+    public GraphStoreWriter addGraph(@Nonnull String id,
+                                     @Nonnull DAGNode<Component, Dependency> root) throws IOException {
+        Preconditions.notNull("graph id", id);
+        Preconditions.notNull("root node", root);
+        if (roots.containsKey(id)) {
+            throw new IllegalArgumentException("duplicate graph id " + id);
+        }
+        for (DAGNode<Component, Dependency> node: root.getSortedNodes()) {
+            if (!nodeIds.containsKey(node)) {
+                nodeIds.put(node, intern(encodeNode(node)));
+            }
+        }
+        roots.put(id, nodeIds.get(root));
+        return this;
+    }
+
+    /**
+     * Get the number of distinct nodes added so far.
+     * @return The number of node records the store will contain.
+     */
+    public int getNodeCount() {
+        return records.size();
+    }
+
+    /**
+     * Write the store to a file.
+     * @param file The file to write.
+     * @throws IOException if there is an error writing the file.
+     */
+    public void write(File file) throws IOException {
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+        try {
+            write(out);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Write the store to an output stream.
+     * @param out The output stream.  It is not closed.
+     * @throws IOException if there is an error writing the store.
+     */
+    public void write(OutputStream out) throws IOException {
+        DataOutputStream output = new DataOutputStream(out);
+        List<byte[]> keys = Lists.newArrayListWithCapacity(roots.size());
+        for (String id: roots.keySet()) {
+            ByteArrayOutputStream buf = new ByteArrayOutputStream();
+            new DataOutputStream(buf).writeUTF(id);
+            keys.add(buf.toByteArray());
+        }
+
+        long offset = STORE_HEADER_SIZE + 4L * (records.size() + 1)
+                + (long) STORE_INDEX_ENTRY_SIZE * roots.size();
+        output.writeInt(STORE_MAGIC);
+        output.writeInt(STORE_VERSION);
+        output.writeInt(records.size());
+        output.writeInt(roots.size());
+        for (byte[] record: records) {
+            output.writeInt(checkOffset(offset));
+            offset += record.length;
+        }
+        output.writeInt(checkOffset(offset));
+        int k = 0;
+        for (Integer root: roots.values()) {
+            output.writeInt(checkOffset(offset));
+            output.writeInt(root);
+            offset += keys.get(k).length;
+            k++;
+        }
+        checkOffset(offset);
+        for (byte[] record: records) {
+            output.write(record);
+        }
+        for (byte[] key: keys) {
+            output.write(key);
+        }
+        output.flush();
+    }
+
+    /**
+     * Check that an offset fits in a store file, which must be mappable in a single buffer.
+     */
+    private static int checkOffset(long offset) throws IOException {
+        if (offset > Integer.MAX_VALUE) {
+            throw new IOException("graph store exceeds maximum size");
+        }
+        return (int) offset;
+    }
+
+    private byte[] encodeNode(DAGNode<Component, Dependency> node) throws IOException {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        GraphWriter writer = GraphWriter.forRecord(buf);
+        writer.writeVarInt(node.getOutgoingEdges().size());
+        for (DAGEdge<Component, Dependency> edge: node.getOutgoingEdges()) {
+            Integer tail = nodeIds.get(edge.getTail());
+            // topological order guarantees that the tail has been encoded
+            assert tail != null;
+            writer.writeVarInt(tail);
+        }
+        writer.writeComponent(node.getLabel());
+        for (DAGEdge<Component, Dependency> edge: node.getOutgoingEdges()) {
+            writer.writeDependency(edge.getLabel());
+        }
+        writer.close();
+        return buf.toByteArray();
+    }
+
+    /**
+     * Get the id of a node record, adding it if no identical record has been added.
+     */
+    private int intern(byte[] record) {
+        ByteBuffer key = ByteBuffer.wrap(record);
+        Integer id = recordIds.get(key);
+        if (id == null) {
+            id = records.size();
+            records.add(record);
+            recordIds.put(key, id);
+        }
+        return id;
+    }
+}
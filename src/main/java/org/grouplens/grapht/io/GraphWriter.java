@@ -0,0 +1,420 @@
+/*
+ * Grapht, an open source dependency injector.
+ * Copyright 2014-2015 various contributors (see CONTRIBUTORS.txt)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.grapht.io;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Maps;
+import org.grouplens.grapht.Component;
+import org.grouplens.grapht.Dependency;
+import org.grouplens.grapht.graph.DAGEdge;
+import org.grouplens.grapht.graph.DAGNode;
+import org.grouplens.grapht.reflect.Desire;
+import org.grouplens.grapht.reflect.InjectionPoint;
+import org.grouplens.grapht.reflect.Satisfaction;
+import org.grouplens.grapht.reflect.internal.*;
+import org.grouplens.grapht.solver.DesireChain;
+import org.grouplens.grapht.util.ClassProxy;
+
+import java.io.*;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.*;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.grouplens.grapht.io.GraphFormat.*;
+
+/**
+ * Writes resolved graphs in a compact binary format, as an alternative to Java serialization.
+ * Classes, qualifiers, injection points, satisfactions and other graph labels are interned, so
+ * each is written once per stream no matter how many desire chains or graphs refer to it, and
+ * nodes are written once in topological order with edges as integer references.  Several
+ * graphs can be written to the same stream, sharing their tables and common nodes.
+ *
+ * <p>Satisfactions, injection points and desires of types the format does not know, along with
+ * instance values other than strings, primitives, classes, enums and annotations, are embedded
+ * with Java serialization.</p>
+ *
+ * @see GraphReader
+ * @since 0.11
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+public class GraphWriter implements Closeable, Flushable {
+    private final DataOutputStream output;
+    private final Map<Class<?>, Integer> classes = Maps.newHashMap();
+    private final Map<Annotation, Integer> annotations = Maps.newHashMap();
+    private final Map<Member, Integer> members = Maps.newHashMap();
+    private final Map<InjectionPoint, Integer> injectionPoints = Maps.newHashMap();
+    private final Map<Satisfaction, Integer> satisfactions = Maps.newHashMap();
+    private final Map<Desire, Integer> desires = Maps.newHashMap();
+    private final Map<Component, Integer> components = Maps.newHashMap();
+    // dependencies are compared by identity, since chain equality ignores the chain key
+    private final Map<Dependency, Integer> dependencies = new IdentityHashMap<Dependency, Integer>();
+    private final Map<DAGNode<Component, Dependency>, Integer> nodes =
+            new IdentityHashMap<DAGNode<Component, Dependency>, Integer>();
+
+    /**
+     * Create a graph writer and write the stream header.
+     * @param out The output stream.
+     * @throws IOException if there is an error writing the header.
+     */
+    public GraphWriter(OutputStream out) throws IOException {
+        this(out, true);
+    }
+
+    private GraphWriter(OutputStream out, boolean header) throws IOException {
+        output = new DataOutputStream(out);
+        if (header) {
+            output.writeInt(MAGIC);
+            writeVarInt(VERSION);
+        }
+    }
+
+    /**
+     * Create a writer for a single self-contained record, with no stream header.  The record's
+     * contents are written with the package-private {@code write} methods.
+     *
+     * @param out The output stream.
+     * @return The writer.
+     * @see GraphReader#forRecord(InputStream, ClassLoader)
+     */
+    static GraphWriter forRecord(OutputStream out) throws IOException {
+        return new GraphWriter(out, false);
+    }
+
+    /**
+     * Write a graph to the stream.  Nodes already written by an earlier call are not written
+     * again.
+     *
+     * @param root The root node of the graph.
+     * @throws IOException if there is an error writing the graph.
+     */
+    public void writeGraph(DAGNode<Component, Dependency> root) throws IOException {
+        for (DAGNode<Component, Dependency> node: root.getSortedNodes()) {
+            if (nodes.containsKey(node)) {
+                continue;
+            }
+            output.writeByte(NODE_RECORD);
+            writeComponent(node.getLabel());
+            writeVarInt(node.getOutgoingEdges().size());
+            for (DAGEdge<Component, Dependency> edge: node.getOutgoingEdges()) {
+                Integer tail = nodes.get(edge.getTail());
+                // topological order guarantees that the tail has been written
+                assert tail != null;
+                writeVarInt(tail);
+                writeDependency(edge.getLabel());
+            }
+            nodes.put(node, nodes.size());
+        }
+        output.writeByte(GRAPH_RECORD);
+        writeVarInt(nodes.get(root));
+    }
+
+    @Override
+    public void flush() throws IOException {
+        output.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        output.close();
+    }
+
+    void writeVarInt(int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            output.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        output.writeByte(value);
+    }
+
+    /**
+     * Write a string of any length as its UTF-8 byte count and bytes.  Names are written with
+     * {@link DataOutput#writeUTF(String)}, but its 64KB limit is too small for values.
+     */
+    private void writeString(String str) throws IOException {
+        byte[] bytes = str.getBytes(Charsets.UTF_8);
+        writeVarInt(bytes.length);
+        output.write(bytes);
+    }
+
+    /**
+     * Write a reference to a table entry.
+     * @return {@code true} if the entry is new and its definition must be written next.
+     */
+    private <T> boolean writeRef(Map<T, Integer> table, T obj) throws IOException {
+        if (obj == null) {
+            writeVarInt(NULL_REF);
+            return false;
+        }
+        Integer id = table.get(obj);
+        if (id == null) {
+            writeVarInt(NEW_REF);
+            return true;
+        } else {
+            writeVarInt(id + REF_OFFSET);
+            return false;
+        }
+    }
+
+    /**
+     * Add an entry to a table once its definition has been written.
+     */
+    private static <T> void define(Map<T, Integer> table, T obj) {
+        assert !table.containsKey(obj);
+        table.put(obj, table.size());
+    }
+
+    private void writeClass(Class<?> type) throws IOException {
+        if (writeRef(classes, type)) {
+            output.writeUTF(type.getName());
+            output.writeLong(ClassProxy.checksumOf(type));
+            define(classes, type);
+        }
+    }
+
+    void writeComponent(Component comp) throws IOException {
+        if (writeRef(components, comp)) {
+            writeSatisfaction(comp.getSatisfaction());
+            output.writeUTF(comp.getCachePolicy().name());
+            define(components, comp);
+        }
+    }
+
+    void writeDependency(Dependency dep) throws IOException {
+        if (writeRef(dependencies, dep)) {
+            DesireChain chain = dep.getDesireChain();
+            // chain keys are currently always UUIDs
+            UUID key = (UUID) chain.getKey();
+            output.writeLong(key.getMostSignificantBits());
+            output.writeLong(key.getLeastSignificantBits());
+            writeVarInt(chain.size());
+            for (Desire d: chain) {
+                writeDesire(d);
+            }
+            writeVarInt(dep.getFlags().size());
+            for (Dependency.Flag flag: dep.getFlags()) {
+                output.writeUTF(flag.name());
+            }
+            define(dependencies, dep);
+        }
+    }
+
+    private void writeDesire(Desire desire) throws IOException {
+        if (writeRef(desires, desire)) {
+            if (desire.getClass().equals(ReflectionDesire.class)) {
+                output.writeByte(REFLECTION_DESIRE);
+                writeClass(desire.getDesiredType());
+                writeInjectionPoint(desire.getInjectionPoint());
+                writeSatisfaction(desire.getSatisfaction());
+            } else {
+                output.writeByte(SERIALIZED);
+                writeSerialized(desire);
+            }
+            define(desires, desire);
+        }
+    }
+
+    private void writeInjectionPoint(InjectionPoint ip) throws IOException {
+        if (writeRef(injectionPoints, ip)) {
+            Class<?> type = ip.getClass();
+            if (type.equals(SimpleInjectionPoint.class)) {
+                output.writeByte(SIMPLE_IP);
+                writeAnnotation(ip.getQualifier());
+                writeClass(ip.getErasedType());
+                output.writeBoolean(ip.isNullable());
+            } else if (type.equals(ConstructorParameterInjectionPoint.class)) {
+                ConstructorParameterInjectionPoint cpip = (ConstructorParameterInjectionPoint) ip;
+                output.writeByte(CONSTRUCTOR_PARAM_IP);
+                writeMember(cpip.getMember());
+                writeVarInt(cpip.getParameterIndex());
+            } else if (type.equals(SetterInjectionPoint.class)) {
+                SetterInjectionPoint sip = (SetterInjectionPoint) ip;
+                output.writeByte(SETTER_IP);
+                writeMember(sip.getMember());
+                writeVarInt(sip.getParameterIndex());
+            } else if (type.equals(NoArgumentInjectionPoint.class)) {
+                output.writeByte(NO_ARGUMENT_IP);
+                writeMember(((NoArgumentInjectionPoint) ip).getMember());
+            } else if (type.equals(FieldInjectionPoint.class)) {
+                output.writeByte(FIELD_IP);
+                writeMember(((FieldInjectionPoint) ip).getMember());
+            } else {
+                output.writeByte(SERIALIZED);
+                writeSerialized(ip);
+            }
+            define(injectionPoints, ip);
+        }
+    }
+
+    private void writeMember(Member member) throws IOException {
+        if (writeRef(members, member)) {
+            Class<?>[] params;
+            if (member instanceof Constructor) {
+                output.writeByte(CONSTRUCTOR);
+                writeClass(member.getDeclaringClass());
+                params = ((Constructor<?>) member).getParameterTypes();
+            } else if (member instanceof Method) {
+                output.writeByte(METHOD);
+                writeClass(member.getDeclaringClass());
+                output.writeUTF(member.getName());
+                params = ((Method) member).getParameterTypes();
+            } else {
+                output.writeByte(FIELD);
+                writeClass(member.getDeclaringClass());
+                output.writeUTF(member.getName());
+                params = null;
+            }
+            if (params != null) {
+                writeVarInt(params.length);
+                for (Class<?> param: params) {
+                    writeClass(param);
+                }
+            }
+            define(members, member);
+        }
+    }
+
+    private void writeSatisfaction(Satisfaction sat) throws IOException {
+        if (writeRef(satisfactions, sat)) {
+            Class<?> type = sat.getClass();
+            if (type.equals(ClassSatisfaction.class)) {
+                output.writeByte(CLASS_SAT);
+                writeClass(sat.getErasedType());
+            } else if (type.equals(NullSatisfaction.class)) {
+                output.writeByte(NULL_SAT);
+                writeClass(sat.getErasedType());
+            } else if (type.equals(InstanceSatisfaction.class)) {
+                output.writeByte(INSTANCE_SAT);
+                writeValue(((InstanceSatisfaction) sat).getInstance());
+            } else if (type.equals(ProviderClassSatisfaction.class)) {
+                output.writeByte(PROVIDER_CLASS_SAT);
+                writeClass(((ProviderClassSatisfaction) sat).getProviderType());
+            } else if (type.equals(ProviderInstanceSatisfaction.class)) {
+                output.writeByte(PROVIDER_INSTANCE_SAT);
+                writeValue(((ProviderInstanceSatisfaction) sat).getProvider());
+            } else {
+                output.writeByte(SERIALIZED);
+                writeSerialized(sat);
+            }
+            define(satisfactions, sat);
+        }
+    }
+
+    private void writeAnnotation(Annotation annot) throws IOException {
+        if (writeRef(annotations, annot)) {
+            Class<? extends Annotation> type = annot.annotationType();
+            writeClass(type);
+            Method[] attrs = type.getDeclaredMethods();
+            writeVarInt(attrs.length);
+            for (Method attr: attrs) {
+                Object value;
+                try {
+                    attr.setAccessible(true);
+                    value = attr.invoke(annot);
+                } catch (IllegalAccessException e) {
+                    throw new NotSerializableException("cannot access attribute " + attr);
+                } catch (InvocationTargetException e) {
+                    IOException ex = new NotSerializableException("cannot read attribute " + attr);
+                    ex.initCause(e);
+                    throw ex;
+                }
+                output.writeUTF(attr.getName());
+                writeValue(value);
+            }
+            define(annotations, annot);
+        }
+    }
+
+    private void writeValue(Object value) throws IOException {
+        if (value == null) {
+            output.writeByte(NULL_VALUE);
+        } else if (value instanceof String) {
+            output.writeByte(STRING_VALUE);
+            writeString((String) value);
+        } else if (value instanceof Boolean) {
+            output.writeByte(BOOLEAN_VALUE);
+            output.writeBoolean((Boolean) value);
+        } else if (value instanceof Byte) {
+            output.writeByte(BYTE_VALUE);
+            output.writeByte((Byte) value);
+        } else if (value instanceof Short) {
+            output.writeByte(SHORT_VALUE);
+            output.writeShort((Short) value);
+        } else if (value instanceof Integer) {
+            output.writeByte(INT_VALUE);
+            output.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            output.writeByte(LONG_VALUE);
+            output.writeLong((Long) value);
+        } else if (value instanceof Character) {
+            output.writeByte(CHAR_VALUE);
+            output.writeChar((Character) value);
+        } else if (value instanceof Float) {
+            output.writeByte(FLOAT_VALUE);
+            output.writeFloat((Float) value);
+        } else if (value instanceof Double) {
+            output.writeByte(DOUBLE_VALUE);
+            output.writeDouble((Double) value);
+        } else if (value instanceof Class) {
+            output.writeByte(CLASS_VALUE);
+            writeClass((Class<?>) value);
+        } else if (value instanceof Enum) {
+            Enum<?> e = (Enum<?>) value;
+            output.writeByte(ENUM_VALUE);
+            writeClass(e.getDeclaringClass());
+            output.writeUTF(e.name());
+        } else if (value instanceof Annotation) {
+            output.writeByte(ANNOTATION_VALUE);
+            writeAnnotation((Annotation) value);
+        } else if (value.getClass().isArray() && isValueType(value.getClass().getComponentType())) {
+            output.writeByte(ARRAY_VALUE);
+            writeClass(value.getClass().getComponentType());
+            int n = Array.getLength(value);
+            writeVarInt(n);
+            for (int i = 0; i < n; i++) {
+                writeValue(Array.get(value, i));
+            }
+        } else {
+            output.writeByte(SERIALIZED_VALUE);
+            writeSerialized(value);
+        }
+    }
+
+    /**
+     * Query whether arrays of a type can be stored element-by-element.
+     */
+    private static boolean isValueType(Class<?> type) {
+        return type.isPrimitive() || type.equals(String.class) || type.equals(Class.class)
+                || type.isEnum() || type.isAnnotation();
+    }
+
+    private void writeSerialized(Object obj) throws IOException {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        ObjectOutputStream oos = new ObjectOutputStream(buf);
+        try {
+            oos.writeObject(obj);
+        } finally {
+            oos.close();
+        }
+        writeVarInt(buf.size());
+        buf.writeTo(output);
+    }
+}
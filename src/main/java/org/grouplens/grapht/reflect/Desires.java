@@ -39,7 +39,7 @@ public final class Desires {
      * @return The desire.
      */
     public static Desire create(@Nullable Annotation qualifier, Class<?> type, boolean nullable) {
-        return new ReflectionDesire(createInjectionPoint(qualifier, type, nullable));
+        return ReflectionDesire.intern(new ReflectionDesire(createInjectionPoint(qualifier, type, nullable)));
     }
 
     public static InjectionPoint createInjectionPoint(@Nullable Annotation qualifier, Class<?> type, boolean nullable) {
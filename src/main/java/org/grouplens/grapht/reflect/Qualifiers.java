@@ -19,6 +19,9 @@
  */
 package org.grouplens.grapht.reflect;
 
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
 import com.google.common.collect.Sets;
 import org.grouplens.grapht.annotation.AliasFor;
 import org.grouplens.grapht.annotation.AllowUnqualifiedMatch;
@@ -45,6 +48,22 @@ public final class Qualifiers {
     private static final Logger logger = LoggerFactory.getLogger(Qualifiers.class);
     private Qualifiers() { }
 
+    /**
+     * Cache of each annotation type's qualifier traits.  Keys are weak so annotation types can be
+     * unloaded with their class loaders; values refer to their alias targets, so they are soft to
+     * let the keys be collected under memory pressure.
+     */
+    private static final LoadingCache<Class<? extends Annotation>, Traits> traitCache =
+            CacheBuilder.newBuilder()
+                        .weakKeys()
+                        .softValues()
+                        .build(new CacheLoader<Class<? extends Annotation>, Traits>() {
+                            @Override
+                            public Traits load(Class<? extends Annotation> key) {
+                                return Traits.scan(key);
+                            }
+                        });
+
     /**
      * Return true or false whether or not the annotation type represents a
      * {@link Qualifier}
@@ -54,12 +73,12 @@ public final class Qualifiers {
      * @throws NullPointerException if the type is null
      */
     public static boolean isQualifier(Class<? extends Annotation> type) {
-        return type.getAnnotation(javax.inject.Qualifier.class) != null;
+        return traits(type).qualifier;
     }
 
     /**
      * Resolve qualifier aliases, returning the target qualifier.  Aliases are resolved
-     * recursively.
+     * recursively.  Resolutions are cached per annotation type.
      *
      * @param type The annotation type.
      * @return The annotation type for which this type is an alias, or {@code type} if it is not an
@@ -70,23 +89,11 @@ public final class Qualifiers {
     @Nonnull
     public static Class<? extends Annotation> resolveAliases(@Nonnull Class<? extends Annotation> type) {
         Preconditions.notNull("qualifier type", type);
-        Set<Class<? extends Annotation>> seen = Sets.newHashSet();
-        seen.add(type);
-        Class<? extends Annotation> result = type;
-        AliasFor alias;
-        while ((alias = result.getAnnotation(AliasFor.class)) != null) {
-            if (result.getDeclaredMethods().length > 0) {
-                throw new IllegalArgumentException("aliased qualifier cannot have parameters");
-            }
-            result = alias.value();
-            if (!result.isAnnotationPresent(Qualifier.class)) {
-                throw new IllegalArgumentException("alias target " + type + " is not a qualifier");
-            }
-            if (!seen.add(result)) {
-                throw new IllegalArgumentException("Circular alias reference starting with " + type);
-            }
-        }
-        return result;
+        return traits(type).getTarget();
+    }
+
+    private static Traits traits(Class<? extends Annotation> type) {
+        return traitCache.getUnchecked(type);
     }
 
     /**
@@ -132,7 +139,7 @@ public final class Qualifiers {
     public static QualifierMatcher match(Annotation annot) {
         if (annot == null) {
             return matchNone();
-        } else if (annot.annotationType().getDeclaredMethods().length == 0) {
+        } else if (traits(annot.annotationType()).nullary) {
             logger.debug("using type matcher for nullary annotation {}", annot);
             // Instances of the same nullary annotation are all equal to each other, so just do
             // type checking.  This makes aliasing work with annotation value matchers, b/c we
@@ -151,6 +158,56 @@ public final class Qualifiers {
         MATCH_DEFAULT
     }
 
+    /**
+     * The qualifier-related properties of an annotation type.
+     */
+    private static final class Traits {
+        private final boolean qualifier;
+        private final boolean allowUnqualified;
+        private final boolean nullary;
+        private final Class<? extends Annotation> target;
+        private final String aliasError;
+
+        private Traits(boolean qual, boolean unqual, boolean nul,
+                       Class<? extends Annotation> tgt, String err) {
+            qualifier = qual;
+            allowUnqualified = unqual;
+            nullary = nul;
+            target = tgt;
+            aliasError = err;
+        }
+
+        static Traits scan(Class<? extends Annotation> type) {
+            boolean qual = type.isAnnotationPresent(Qualifier.class);
+            boolean unqual = type.isAnnotationPresent(AllowUnqualifiedMatch.class);
+            boolean nul = type.getDeclaredMethods().length == 0;
+            Set<Class<? extends Annotation>> seen = Sets.newHashSet();
+            seen.add(type);
+            Class<? extends Annotation> result = type;
+            AliasFor alias;
+            while ((alias = result.getAnnotation(AliasFor.class)) != null) {
+                if (result.getDeclaredMethods().length > 0) {
+                    return new Traits(qual, unqual, nul, null, "aliased qualifier cannot have parameters");
+                }
+                result = alias.value();
+                if (!result.isAnnotationPresent(Qualifier.class)) {
+                    return new Traits(qual, unqual, nul, null, "alias target " + type + " is not a qualifier");
+                }
+                if (!seen.add(result)) {
+                    return new Traits(qual, unqual, nul, null, "Circular alias reference starting with " + type);
+                }
+            }
+            return new Traits(qual, unqual, nul, result, null);
+        }
+
+        Class<? extends Annotation> getTarget() {
+            if (target == null) {
+                throw new IllegalArgumentException(aliasError);
+            }
+            return target;
+        }
+    }
+
     private abstract static class AbstractMatcher implements QualifierMatcher {
         private static final long serialVersionUID = 1L;
         private final DefaultMatcherPriority priority;
@@ -194,8 +251,7 @@ public final class Qualifiers {
             if (q == null) {
                 return true;
             } else {
-                Class<? extends Annotation> atype = q.annotationType();
-                return atype.isAnnotationPresent(AllowUnqualifiedMatch.class);
+                return traits(q.annotationType()).allowUnqualified;
             }
         }
 
@@ -296,9 +352,10 @@ public final class Qualifiers {
             Class<? extends Annotation> qtype = (q == null ? null : q.annotationType());
             if (qtype == null) {
                 return false;
+            } else if (qtype == type || qtype == actual) {
+                return true;
             } else {
-                Class<? extends Annotation> qact = resolveAliases(qtype);
-                return actual.equals(qact);
+                return actual.equals(traits(qtype).getTarget());
             }
         }
         
@@ -372,7 +429,7 @@ public final class Qualifiers {
         
         @Override
         public boolean apply(Annotation q) {
-            return annotation.equals(q);
+            return annotation == q || annotation.equals(q);
         }
         
         @Override
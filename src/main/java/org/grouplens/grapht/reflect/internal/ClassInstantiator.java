@@ -20,19 +20,18 @@
  */
 package org.grouplens.grapht.reflect.internal;
 
-import org.apache.commons.lang3.reflect.MethodUtils;
 import org.grouplens.grapht.ConstructionException;
 import org.grouplens.grapht.Instantiator;
 import org.grouplens.grapht.LifecycleManager;
 import org.grouplens.grapht.NullDependencyException;
 import org.grouplens.grapht.reflect.Desire;
 import org.grouplens.grapht.reflect.InjectionPoint;
+import org.grouplens.grapht.util.InjectionIndex;
 import org.grouplens.grapht.util.LogContext;
 import org.grouplens.grapht.util.Preconditions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.annotation.PostConstruct;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
@@ -87,7 +86,6 @@ public class ClassInstantiator implements Instantiator {
         Constructor<?> ctor = getConstructor();
         LogContext globalLogContext = LogContext.create();
         Object instance = null;
-        Method[] methods;
 
         try {
             // create the instance that we are injecting
@@ -140,8 +138,7 @@ public class ClassInstantiator implements Instantiator {
             manager.registerComponent(instance);
         }
 
-        methods = MethodUtils.getMethodsWithAnnotation(type, PostConstruct.class);
-        for(Method method:methods){
+        for (Method method: InjectionIndex.getPostConstructMethods(type)) {
             method.setAccessible(true);
             try {
                 method.invoke(instance);
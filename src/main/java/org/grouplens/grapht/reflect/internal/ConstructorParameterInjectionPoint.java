@@ -47,6 +47,11 @@ public class ConstructorParameterInjectionPoint implements InjectionPoint, Seria
     private final transient Constructor<?> constructor;
     private final transient int paramIndex;
     private final transient AnnotationHelper annotations;
+    // reflection clones its arrays on every call, so resolve the parameter's metadata once
+    private final transient Type type;
+    private final transient Class<?> erasedType;
+    private final transient boolean nullable;
+    private final transient int hash;
 
     /**
      * Create a ConstructorParameterInjectionPoint that wraps the given parameter index for the
@@ -64,7 +69,12 @@ public class ConstructorParameterInjectionPoint implements InjectionPoint, Seria
 
         constructor = ctor;
         paramIndex = pIndex;
-        annotations = new AnnotationHelper(ctor.getParameterAnnotations()[pIndex]);
+        Annotation[] paramAnnotations = ctor.getParameterAnnotations()[pIndex];
+        annotations = new AnnotationHelper(paramAnnotations);
+        type = Types.box(ctor.getGenericParameterTypes()[pIndex]);
+        erasedType = Types.box(ctor.getParameterTypes()[pIndex]);
+        nullable = Types.hasNullableAnnotation(paramAnnotations);
+        hash = constructor.hashCode() ^ (37 * 17 * paramIndex);
     }
 
     /**
@@ -85,17 +95,17 @@ public class ConstructorParameterInjectionPoint implements InjectionPoint, Seria
 
     @Override
     public boolean isNullable() {
-        return Types.hasNullableAnnotation(constructor.getParameterAnnotations()[paramIndex]);
+        return nullable;
     }
 
     @Override
     public Type getType() {
-        return Types.box(constructor.getGenericParameterTypes()[paramIndex]);
+        return type;
     }
 
     @Override
     public Class<?> getErasedType() {
-        return Types.box(constructor.getParameterTypes()[paramIndex]);
+        return erasedType;
     }
 
     @Nullable
@@ -118,16 +128,19 @@ public class ConstructorParameterInjectionPoint implements InjectionPoint, Seria
 
     @Override
     public boolean equals(Object o) {
+        if (o == this) {
+            return true;
+        }
         if (!(o instanceof ConstructorParameterInjectionPoint)) {
             return false;
         }
         ConstructorParameterInjectionPoint cp = (ConstructorParameterInjectionPoint) o;
-        return cp.constructor.equals(constructor) && cp.paramIndex == paramIndex;
+        return cp.hash == hash && cp.paramIndex == paramIndex && cp.constructor.equals(constructor);
     }
 
     @Override
     public int hashCode() {
-        return constructor.hashCode() ^ (37 * 17 * paramIndex);
+        return hash;
     }
 
     @Override
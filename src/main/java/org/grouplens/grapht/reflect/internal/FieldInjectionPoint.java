@@ -44,6 +44,11 @@ public final class FieldInjectionPoint implements InjectionPoint, Serializable {
     // transient because we use a serialization proxy
     private final transient Field field;
     private final transient AnnotationHelper annotations;
+    // resolve the field's metadata once, rather than on every query
+    private final transient Type type;
+    private final transient Class<?> erasedType;
+    private final transient boolean nullable;
+    private final transient int hash;
 
     /**
      * Create an injection point wrapping the given field
@@ -54,17 +59,22 @@ public final class FieldInjectionPoint implements InjectionPoint, Serializable {
     public FieldInjectionPoint(@Nonnull Field field) {
         Preconditions.notNull("field", field);
         this.field = field;
-        annotations = new AnnotationHelper(field.getAnnotations());
+        Annotation[] fieldAnnotations = field.getAnnotations();
+        annotations = new AnnotationHelper(fieldAnnotations);
+        type = Types.box(field.getGenericType());
+        erasedType = Types.box(field.getType());
+        nullable = Types.hasNullableAnnotation(fieldAnnotations);
+        hash = field.hashCode();
     }
 
     @Override
     public Type getType() {
-        return Types.box(field.getGenericType());
+        return type;
     }
 
     @Override
     public Class<?> getErasedType() {
-        return Types.box(field.getType());
+        return erasedType;
     }
 
     @Nullable
@@ -92,20 +102,24 @@ public final class FieldInjectionPoint implements InjectionPoint, Serializable {
 
     @Override
     public boolean isNullable() {
-        return Types.hasNullableAnnotation(field.getAnnotations());
+        return nullable;
     }
 
     @Override
     public boolean equals(Object o) {
+        if (o == this) {
+            return true;
+        }
         if (!(o instanceof FieldInjectionPoint)) {
             return false;
         }
-        return ((FieldInjectionPoint) o).field.equals(field);
+        FieldInjectionPoint p = (FieldInjectionPoint) o;
+        return p.hash == hash && p.field.equals(field);
     }
 
     @Override
     public int hashCode() {
-        return field.hashCode();
+        return hash;
     }
 
     @Override
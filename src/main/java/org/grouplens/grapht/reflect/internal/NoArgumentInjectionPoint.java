@@ -38,6 +38,7 @@ import java.util.Collections;
 public class NoArgumentInjectionPoint implements InjectionPoint, Serializable {
     private static final long serialVersionUID = -1L;
     private final transient Method method;
+    private final transient int hash;
 
     /**
      * Create a NoArgumentInjectionPoint that wraps the given no-argument
@@ -52,6 +53,7 @@ public class NoArgumentInjectionPoint implements InjectionPoint, Serializable {
         }
 
         this.method = method;
+        hash = method.hashCode();
     }
 
     /**
@@ -96,16 +98,19 @@ public class NoArgumentInjectionPoint implements InjectionPoint, Serializable {
 
     @Override
     public boolean equals(Object o) {
+        if (o == this) {
+            return true;
+        }
         if (!(o instanceof NoArgumentInjectionPoint)) {
             return false;
         }
         NoArgumentInjectionPoint p = (NoArgumentInjectionPoint) o;
-        return p.method.equals(method) && p.method == method;
+        return p.hash == hash && p.method.equals(method);
     }
 
     @Override
     public int hashCode() {
-        return method.hashCode();
+        return hash;
     }
 
     @Override
@@ -45,6 +45,7 @@ import java.util.Map;
 public class ProviderClassSatisfaction implements Satisfaction, Serializable {
     private static final long serialVersionUID = -1L;
     private final transient Class<? extends Provider<?>> providerType;
+    private transient volatile Class<?> providedType;
 
     /**
      * Create a ProviderClassSatisfaction that wraps a given provider type.
@@ -87,12 +88,18 @@ public class ProviderClassSatisfaction implements Satisfaction, Serializable {
 
     @Override
     public Type getType() {
-        return Types.getProvidedType(providerType);
+        return getErasedType();
     }
 
     @Override
     public Class<?> getErasedType() {
-        return Types.erase(getType());
+        // the provided type is inferred on first use, as inference fails for generic providers
+        Class<?> type = providedType;
+        if (type == null) {
+            type = Types.getProvidedType(providerType);
+            providedType = type;
+        }
+        return type;
     }
 
     @Override
@@ -19,12 +19,20 @@
  */
 package org.grouplens.grapht.reflect.internal;
 
+import com.google.common.base.Throwables;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import org.grouplens.grapht.InvalidBindingException;
 import org.grouplens.grapht.reflect.Desire;
 import org.grouplens.grapht.reflect.InjectionPoint;
 import org.grouplens.grapht.reflect.Satisfaction;
 import org.grouplens.grapht.util.ClassProxy;
+import org.grouplens.grapht.util.InjectionIndex;
 import org.grouplens.grapht.util.Preconditions;
 import org.grouplens.grapht.util.Types;
 
@@ -46,28 +54,84 @@ import java.util.*;
 public class ReflectionDesire implements Desire, Serializable {
     private static final long serialVersionUID = -1L;
 
+    /**
+     * Cache of each class's dependency desires.  Keys are weak so classes can be unloaded; values
+     * refer to their classes through their injection points, so they are soft to let the keys
+     * be collected under memory pressure.
+     */
+    private static final LoadingCache<Class<?>, List<Desire>> desireCache =
+            CacheBuilder.newBuilder()
+                        .weakKeys()
+                        .softValues()
+                        .build(new CacheLoader<Class<?>, List<Desire>>() {
+                            @Override
+                            public List<Desire> load(Class<?> key) {
+                                return scanDesires(key);
+                            }
+                        });
+
+    /**
+     * Canonical desires and injection points.  Desires are hash keys throughout the solver and
+     * its graphs, so sharing one instance per desire makes most comparisons identity checks.
+     */
+    private static final Interner<ReflectionDesire> desireInterner = Interners.newWeakInterner();
+    private static final Interner<InjectionPoint> pointInterner = Interners.newWeakInterner();
+
+    /**
+     * Get the canonical instance of a desire.  Desires created by Grapht are canonical; equal
+     * desires created with the constructors can be replaced with their canonical instances.
+     *
+     * @param desire The desire.
+     * @return The canonical desire equal to {@code desire}.
+     * @since 0.11
+     */
+    public static ReflectionDesire intern(ReflectionDesire desire) {
+        return desireInterner.intern(desire);
+    }
+
     /**
      * Return a list of desires that must satisfied in order to instantiate the
-     * given type.
+     * given type.  Each class is scanned once, and its desires are cached.
      *
      * @param type The class type whose dependencies will be queried
      * @return The dependency desires for the given type
      * @throws NullPointerException if the type is null
      */
     public static List<Desire> getDesires(Class<?> type) {
+        Preconditions.notNull("type", type);
+        try {
+            return desireCache.getUnchecked(type);
+        } catch (UncheckedExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+
+    /**
+     * Scan a class for its dependency desires.
+     *
+     * @param type The class type whose dependencies will be queried
+     * @return The dependency desires for the given type
+     */
+    private static List<Desire> scanDesires(Class<?> type) {
         List<Desire> desires = Lists.newArrayList();
 
-        boolean ctorFound = false;
-        for (Constructor<?> ctor: type.getDeclaredConstructors()) {
-            if (ctor.getAnnotation(Inject.class) != null) {
-                if (!ctorFound) {
-                    ctorFound = true;
-                    for (int i = 0; i < ctor.getParameterTypes().length; i++) {
-                        desires.add(new ReflectionDesire(new ConstructorParameterInjectionPoint(ctor, i)));
+        InjectionIndex.ClassEntry entry = InjectionIndex.lookup(type);
+        List<Desire> ctorDesires = entry == null ? null : getIndexedConstructorDesires(type, entry);
+        if (ctorDesires != null) {
+            desires.addAll(ctorDesires);
+        } else {
+            boolean ctorFound = false;
+            for (Constructor<?> ctor: type.getDeclaredConstructors()) {
+                if (ctor.getAnnotation(Inject.class) != null) {
+                    if (!ctorFound) {
+                        ctorFound = true;
+                        for (int i = 0; i < ctor.getParameterTypes().length; i++) {
+                            desires.add(intern(new ReflectionDesire(new ConstructorParameterInjectionPoint(ctor, i))));
+                        }
+                    } else {
+                        // at the moment there can only be one injectable constructor
+                        throw new InvalidBindingException(type, "More than one constructor with @Inject is not allowed");
                     }
-                } else {
-                    // at the moment there can only be one injectable constructor
-                    throw new InvalidBindingException(type, "More than one constructor with @Inject is not allowed");
                 }
             }
         }
@@ -80,31 +144,10 @@ public class ReflectionDesire implements Desire, Serializable {
         // Must also keep track of methods overridden in the subtypes.
         Set<Signature> visitedMethods = new HashSet<Signature>();
         while(type != null) {
-            for (Method m: type.getDeclaredMethods()) {
-                Signature s = new Signature(m);
-                if (!visitedMethods.contains(s) && m.getAnnotation(Inject.class) != null
-                    && !Modifier.isStatic(m.getModifiers())) {
-                    // have not seen this signature, and its an injection point
-                    if (m.getParameterTypes().length > 0) {
-                        for (int i = 0; i < m.getParameterTypes().length; i++) {
-                            groupDesires.add(new ReflectionDesire(new SetterInjectionPoint(m, i)));
-                        }
-                    } else {
-                        // hack to invoke no-argument injectable methods required by JSR 330
-                        groupDesires.add(new ReflectionDesire(new NoArgumentInjectionPoint(m)));
-                    }
-                }
-                // always add signature, because a subclass without @Inject
-                // overrides any @Inject on the superclass's method declaration
-                visitedMethods.add(s);
-            }
-            for (Field f: type.getDeclaredFields()) {
-                if (f.getAnnotation(Inject.class) != null && !Modifier.isStatic(f.getModifiers())) {
-                    // have not seen this field
-                    groupDesires.add(new ReflectionDesire(new FieldInjectionPoint(f)));
-                }
+            entry = InjectionIndex.lookup(type);
+            if (entry == null || !addIndexedMemberDesires(type, entry, visitedMethods, groupDesires)) {
+                addMemberDesires(type, visitedMethods, groupDesires);
             }
-            
             type = type.getSuperclass();
         }
         
@@ -115,10 +158,131 @@ public class ReflectionDesire implements Desire, Serializable {
         
         return Collections.unmodifiableList(desires);
     }
+
+    /**
+     * Scan the methods and fields declared by a class for injection points.
+     */
+    private static void addMemberDesires(Class<?> type, Set<Signature> visitedMethods,
+                                         List<Desire> groupDesires) {
+        for (Method m: type.getDeclaredMethods()) {
+            if (m.isBridge()) {
+                // bridges have the erased signatures of the methods they bridge to
+                continue;
+            }
+            Signature s = new Signature(m);
+            if (!visitedMethods.contains(s) && m.getAnnotation(Inject.class) != null
+                && !Modifier.isStatic(m.getModifiers())) {
+                // have not seen this signature, and its an injection point
+                addMethodDesires(m, groupDesires);
+            }
+            // always add signature, because a subclass without @Inject
+            // overrides any @Inject on the superclass's method declaration
+            visitedMethods.add(s);
+        }
+        for (Field f: type.getDeclaredFields()) {
+            if (f.getAnnotation(Inject.class) != null && !Modifier.isStatic(f.getModifiers())) {
+                // have not seen this field
+                groupDesires.add(intern(new ReflectionDesire(new FieldInjectionPoint(f))));
+            }
+        }
+    }
+
+    private static void addMethodDesires(Method m, List<Desire> groupDesires) {
+        if (m.getParameterTypes().length > 0) {
+            for (int i = 0; i < m.getParameterTypes().length; i++) {
+                groupDesires.add(intern(new ReflectionDesire(new SetterInjectionPoint(m, i))));
+            }
+        } else {
+            // hack to invoke no-argument injectable methods required by JSR 330
+            groupDesires.add(intern(new ReflectionDesire(new NoArgumentInjectionPoint(m))));
+        }
+    }
+
+    /**
+     * Get the constructor desires of a class from its injection index entry.
+     * @return The desires, or {@code null} if the entry does not match the class.
+     */
+    private static List<Desire> getIndexedConstructorDesires(Class<?> type, InjectionIndex.ClassEntry entry) {
+        List<List<String>> ctors = entry.getInjectConstructors();
+        if (ctors.size() > 1) {
+            // at the moment there can only be one injectable constructor
+            throw new InvalidBindingException(type, "More than one constructor with @Inject is not allowed");
+        }
+        List<Desire> desires = Lists.newArrayList();
+        if (ctors.isEmpty()) {
+            // make sure a stale entry is not hiding an injectable constructor
+            for (Constructor<?> ctor: type.getDeclaredConstructors()) {
+                if (ctor.getAnnotation(Inject.class) != null) {
+                    return null;
+                }
+            }
+            return desires;
+        }
+        Constructor<?> ctor;
+        try {
+            ctor = type.getDeclaredConstructor(InjectionIndex.resolveTypes(type, ctors.get(0)));
+        } catch (NoSuchMethodException e) {
+            return null;
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+        if (ctor.getAnnotation(Inject.class) == null) {
+            return null;
+        }
+        for (int i = 0; i < ctor.getParameterTypes().length; i++) {
+            desires.add(intern(new ReflectionDesire(new ConstructorParameterInjectionPoint(ctor, i))));
+        }
+        return desires;
+    }
+
+    /**
+     * Add the method and field desires of a class from its injection index entry.  Only the
+     * injectable members are looked up with reflection.
+     *
+     * @return {@code true} if the desires were added, or {@code false} if the entry does not
+     *         match the class (in which case nothing is added).
+     */
+    private static boolean addIndexedMemberDesires(Class<?> type, InjectionIndex.ClassEntry entry,
+                                                   Set<Signature> visitedMethods,
+                                                   List<Desire> groupDesires) {
+        List<Desire> found = Lists.newArrayList();
+        Set<Signature> visited = new HashSet<Signature>();
+        try {
+            for (InjectionIndex.MethodEntry me: entry.getMethods()) {
+                Signature s = new Signature(type, me);
+                if (!visitedMethods.contains(s) && me.hasFlag(InjectionIndex.INJECT)) {
+                    Method m = type.getDeclaredMethod(me.getName(),
+                                                      InjectionIndex.resolveTypes(type, me.getParameterTypes()));
+                    if (m.getAnnotation(Inject.class) == null) {
+                        return false;
+                    }
+                    addMethodDesires(m, found);
+                }
+                visited.add(s);
+            }
+            for (String name: entry.getInjectFields()) {
+                Field f = type.getDeclaredField(name);
+                if (f.getAnnotation(Inject.class) == null) {
+                    return false;
+                }
+                found.add(intern(new ReflectionDesire(new FieldInjectionPoint(f))));
+            }
+        } catch (NoSuchMethodException e) {
+            return false;
+        } catch (NoSuchFieldException e) {
+            return false;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+        visitedMethods.addAll(visited);
+        groupDesires.addAll(found);
+        return true;
+    }
     
     private final transient Class<?> desiredType;
     private final transient InjectionPoint injectPoint;
     private final transient Satisfaction satisfaction;
+    private transient volatile int hashCode;
 
     /**
      * Create a ReflectionDesire that immediately wraps the given
@@ -174,7 +338,7 @@ public class ReflectionDesire implements Desire, Serializable {
         }
 
         this.desiredType = desiredType;
-        this.injectPoint = injectPoint;
+        this.injectPoint = pointInterner.intern(injectPoint);
         this.satisfaction = satisfaction;
     }
 
@@ -200,28 +364,36 @@ public class ReflectionDesire implements Desire, Serializable {
     
     @Override
     public Desire restrict(Class<?> type) {
-        return new ReflectionDesire(type, injectPoint, null);
+        return intern(new ReflectionDesire(type, injectPoint, null));
     }
     
     @Override
     public Desire restrict(Satisfaction satis) {
-        return new ReflectionDesire(satis.getErasedType(), injectPoint, satis);
+        return intern(new ReflectionDesire(satis.getErasedType(), injectPoint, satis));
     }
 
     @Override
     public boolean equals(Object o) {
+        if (o == this) {
+            return true;
+        }
         if (!(o instanceof ReflectionDesire)) {
             return false;
         }
         ReflectionDesire r = (ReflectionDesire) o;
-        return (r.desiredType.equals(desiredType) && 
-                r.injectPoint.equals(injectPoint) && 
+        // injection points are canonical, so usually identical if equal
+        return (r.hashCode() == hashCode() &&
+                r.desiredType.equals(desiredType) &&
+                (r.injectPoint == injectPoint || r.injectPoint.equals(injectPoint)) &&
                 (r.satisfaction == null ? satisfaction == null : r.satisfaction.equals(satisfaction)));
     }
 
     @Override
     public int hashCode() {
-        return desiredType.hashCode() ^ injectPoint.hashCode() ^ (satisfaction == null ? 0 : satisfaction.hashCode());
+        if (hashCode == 0) {
+            hashCode = desiredType.hashCode() ^ injectPoint.hashCode() ^ (satisfaction == null ? 0 : satisfaction.hashCode());
+        }
+        return hashCode;
     }
 
     @Override
@@ -253,9 +425,9 @@ public class ReflectionDesire implements Desire, Serializable {
         @SuppressWarnings("unchecked")
         private Object readResolve() throws ObjectStreamException {
             try {
-                return new ReflectionDesire(desiredType.resolve(),
-                                            injectionPoint,
-                                            satisfaction);
+                return intern(new ReflectionDesire(desiredType.resolve(),
+                                                   injectionPoint,
+                                                   satisfaction));
             } catch (ClassNotFoundException e) {
                 InvalidObjectException ex = new InvalidObjectException("cannot resolve " + desiredType);
                 ex.initCause(e);
@@ -276,28 +448,45 @@ public class ReflectionDesire implements Desire, Serializable {
      */
     public static class Signature {
         private final String name;
-        private final Type[] args;
+        private final List<String> args;
         
         public Signature(Method m) {
+            name = mangle(m.getName(), m.getModifiers(), m.getDeclaringClass());
+            List<String> types = Lists.newArrayList();
+            for (Class<?> type: m.getParameterTypes()) {
+                types.add(InjectionIndex.typeName(type));
+            }
+            args = types;
+        }
+
+        /**
+         * Create the signature of a method from the injection index.
+         * @param type The class declaring the method.
+         * @param method The method's index entry.
+         */
+        public Signature(Class<?> type, InjectionIndex.MethodEntry method) {
+            name = mangle(method.getName(), method.getModifiers(), type);
+            args = method.getParameterTypes();
+        }
+
+        private static String mangle(String name, int mods, Class<?> type) {
             // FIXME Make it clearer what this code is supposed to do
-            int mods = m.getModifiers();
             if (Modifier.isPublic(mods) || Modifier.isProtected(mods)) {
                 // method overrides depends solely on method name
-                name = m.getName();
+                return name;
             } else if (Modifier.isPrivate(mods)) {
                 // method overrides depend on method name and class name
-                name = m.getName() + m.getDeclaringClass().getCanonicalName();
+                return name + type.getCanonicalName();
             } else {
                 // method overrides depend on method name and package,
                 // since it is package-private
-                Package pkg = m.getDeclaringClass().getPackage();
+                Package pkg = type.getPackage();
                 if (pkg != null) {
-                    name = m.getName() + pkg.getName();
+                    return name + pkg.getName();
                 } else {
-                    name = m.getName();
+                    return name;
                 }
             }
-            args = m.getGenericParameterTypes();
         }
         
         @Override
@@ -306,12 +495,12 @@ public class ReflectionDesire implements Desire, Serializable {
                 return false;
             }
             Signature s = (Signature) o;
-            return s.name.equals(name) && Arrays.equals(args, s.args);
+            return s.name.equals(name) && args.equals(s.args);
         }
         
         @Override
         public int hashCode() {
-            return (name.hashCode() ^ Arrays.hashCode(args));
+            return (name.hashCode() ^ args.hashCode());
         }
     }
 }
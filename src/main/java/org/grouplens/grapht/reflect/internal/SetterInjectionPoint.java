@@ -46,6 +46,11 @@ public class SetterInjectionPoint implements InjectionPoint, Serializable {
     private final transient Method setter;
     private final transient int parameter;
     private final transient AnnotationHelper annotations;
+    // reflection clones its arrays on every call, so resolve the parameter's metadata once
+    private final transient Type type;
+    private final transient Class<?> erasedType;
+    private final transient boolean nullable;
+    private final transient int hash;
 
     /**
      * Create a SetterInjectionPoint that wraps the given setter method.
@@ -57,9 +62,16 @@ public class SetterInjectionPoint implements InjectionPoint, Serializable {
         Preconditions.notNull("setter method", setter);
         Preconditions.inRange(parameter, 0, setter.getParameterTypes().length);
 
-        this.annotations = new AnnotationHelper(setter.getParameterAnnotations()[parameter]);
+        Annotation[] paramAnnotations = setter.getParameterAnnotations()[parameter];
+        this.annotations = new AnnotationHelper(paramAnnotations);
         this.setter = setter;
         this.parameter = parameter;
+        type = Types.box(setter.getGenericParameterTypes()[parameter]);
+        erasedType = Types.box(setter.getParameterTypes()[parameter]);
+        // we'll check both setter and parameter annotations
+        nullable = Types.hasNullableAnnotation(setter.getAnnotations()) ||
+                   Types.hasNullableAnnotation(paramAnnotations);
+        hash = setter.hashCode() ^ (37 * 17 * parameter);
     }
 
     /**
@@ -80,19 +92,17 @@ public class SetterInjectionPoint implements InjectionPoint, Serializable {
 
     @Override
     public boolean isNullable() {
-        // we'll check both setter and parameter annotations
-        return Types.hasNullableAnnotation(setter.getAnnotations()) ||
-               Types.hasNullableAnnotation(setter.getParameterAnnotations()[parameter]);
+        return nullable;
     }
 
     @Override
     public Type getType() {
-        return Types.box(setter.getGenericParameterTypes()[parameter]);
+        return type;
     }
 
     @Override
     public Class<?> getErasedType() {
-        return Types.box(setter.getParameterTypes()[parameter]);
+        return erasedType;
     }
 
     @Nullable
@@ -115,16 +125,19 @@ public class SetterInjectionPoint implements InjectionPoint, Serializable {
 
     @Override
     public boolean equals(Object o) {
+        if (o == this) {
+            return true;
+        }
         if (!(o instanceof SetterInjectionPoint)) {
             return false;
         }
         SetterInjectionPoint p = (SetterInjectionPoint) o;
-        return p.setter.equals(setter) && p.parameter == parameter;
+        return p.hash == hash && p.parameter == parameter && p.setter.equals(setter);
     }
 
     @Override
     public int hashCode() {
-        return setter.hashCode() ^ (37 * 17 * parameter);
+        return hash;
     }
 
     @Override
@@ -49,6 +49,7 @@ public final class SimpleInjectionPoint implements InjectionPoint, Serializable
     private final transient Annotation qualifier;
     private final transient Class<?> type;
     private final transient boolean nullable;
+    private transient volatile int hashCode;
 
     public SimpleInjectionPoint(@Nullable Annotation qualifier, Class<?> type, boolean nullable) {
         Preconditions.notNull("type", type);
@@ -100,15 +101,24 @@ public final class SimpleInjectionPoint implements InjectionPoint, Serializable
 
     @Override
     public int hashCode() {
-        return new HashCodeBuilder().append(type).append(qualifier).toHashCode();
+        if (hashCode == 0) {
+            hashCode = new HashCodeBuilder().append(type).append(qualifier).toHashCode();
+        }
+        return hashCode;
     }
 
     @Override
     public boolean equals(Object o) {
+        if (o == this) {
+            return true;
+        }
         if (!(o instanceof SimpleInjectionPoint)) {
             return false;
         }
         SimpleInjectionPoint p = (SimpleInjectionPoint) o;
+        if (p.hashCode() != hashCode()) {
+            return false;
+        }
         EqualsBuilder eqb = new EqualsBuilder();
         return eqb.append(type, p.type)
                   .append(qualifier, p.qualifier)
@@ -122,6 +122,16 @@ final class BindRuleImpl implements BindRule, Serializable {
         Preconditions.isAssignable(this.depType, this.implType);
     }
 
+    /**
+     * Get the rule's dependency type.  The rule only matches desires for exactly this type.
+     *
+     * @return The type of dependency matched by this bind rule.
+     * @since 0.11
+     */
+    public Class<?> getDependencyType() {
+        return depType;
+    }
+
     /**
      * Get the rule's qualifier matcher.
      *
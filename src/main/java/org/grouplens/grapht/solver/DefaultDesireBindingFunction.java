@@ -26,6 +26,8 @@ import org.grouplens.grapht.reflect.Desire;
 import org.grouplens.grapht.reflect.Qualifiers;
 import org.grouplens.grapht.reflect.Satisfaction;
 import org.grouplens.grapht.reflect.Satisfactions;
+import org.grouplens.grapht.util.DefaultsIndex;
+import org.grouplens.grapht.util.InjectionIndex;
 import org.grouplens.grapht.util.Preconditions;
 import org.grouplens.grapht.util.Types;
 import org.slf4j.Logger;
@@ -38,7 +40,6 @@ import java.lang.annotation.Annotation;
 import java.net.URL;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.Properties;
 
 /**
  * A binding function that looks for {@link DefaultImplementation} or
@@ -49,7 +50,6 @@ import java.util.Properties;
  * @author <a href="http://grouplens.org">GroupLens Research</a>
  */
 public class DefaultDesireBindingFunction implements BindingFunction {
-    private static final String META_INF_DEFAULTS = "META-INF/grapht/defaults/";
     private final Logger logger = LoggerFactory.getLogger(DefaultDesireBindingFunction.class);
     private final ClassLoader classLoader;
 
@@ -125,6 +125,9 @@ public class DefaultDesireBindingFunction implements BindingFunction {
      */
     private BindingResult getDefaultValue(Desire desire, Class<?> type) {
         // FIXME Check whether the annotation type is actually relevant for the desire
+        if (!mayHaveDefaults(type)) {
+            return null;
+        }
         BindingResult.Builder bld = null;
         DefaultDouble dfltDouble = type.getAnnotation(DefaultDouble.class);
         if (dfltDouble != null) {
@@ -159,6 +162,9 @@ public class DefaultDesireBindingFunction implements BindingFunction {
      * @return A binding result, or {@code null} if no usable annotations are present.
      */
     private BindingResult getAnnotatedDefault(Desire desire, Class<?> type) {
+        if (!mayHaveDefaults(type)) {
+            return null;
+        }
         DefaultProvider provider = type.getAnnotation(DefaultProvider.class);
         BindingResult.Builder brb = null;
         if (provider != null) {
@@ -196,6 +202,16 @@ public class DefaultDesireBindingFunction implements BindingFunction {
         return brb != null ? brb.build() : null;
     }
 
+    /**
+     * Query whether a type may have default annotations.  Types in the injection index are known
+     * to have them or not, so they need not be checked one by one; the index saying a type has
+     * none is only trusted if the type has no annotations at all, in case its entry is stale.
+     */
+    private static boolean mayHaveDefaults(Class<?> type) {
+        InjectionIndex.ClassEntry entry = InjectionIndex.lookup(type);
+        return entry == null || entry.hasDefaults() || type.getAnnotations().length > 0;
+    }
+
     @SuppressWarnings("unchecked")
     private BindingResult getMetaInfDefault(Desire desire, Class<?> type) throws ResolutionException {
         synchronized (metaInfCache) {
@@ -206,30 +222,10 @@ public class DefaultDesireBindingFunction implements BindingFunction {
 
         BindingResult.Builder builder = BindingResult.newBuilder();
         boolean found = false;
-        String resourceName = META_INF_DEFAULTS + type.getCanonicalName() + ".properties";
-        logger.debug("searching for defaults in {}", resourceName);
-        URL url = classLoader.getResource(resourceName);
+        Map<String, String> props = findMetaInfDefault(type);
 
-        if (url != null) {
-            Properties props;
-            InputStream istr = null;
-            try {
-                istr = url.openStream();
-                props = new Properties();
-                props.load(istr);
-            } catch (IOException e) {
-                throw new ResolutionException("error reading " + resourceName, e);
-            } finally {
-                try {
-                    if (istr != null) {
-                        istr.close();
-                    }
-                } catch (IOException e) {
-                    logger.error("error closing {}: {}", resourceName, e);
-                }
-            }
-
-            String providerName = props.getProperty("provider");
+        if (props != null) {
+            String providerName = props.get("provider");
             if (providerName != null) {
                 try {
                     logger.debug("found provider {} for {}", providerName, type);
@@ -246,7 +242,7 @@ public class DefaultDesireBindingFunction implements BindingFunction {
                 }
             }
 
-            String implName = props.getProperty("implementation");
+            String implName = props.get("implementation");
             if (implName != null) {
                 try {
                     logger.debug("found implementation {} for {}", implName, type);
@@ -262,14 +258,15 @@ public class DefaultDesireBindingFunction implements BindingFunction {
                 }
             }
 
-            String skip = props.getProperty("skipIfUnusable");
+            String skip = props.get("skipIfUnusable");
             if (skip != null && skip.trim().toLowerCase().equals("true")) {
                 builder.addFlag(BindingFlag.SKIPPABLE);
             }
 
             if (found) {
-                String policy = props.getProperty("cachePolicy", "NO_PREFERENCE");
-                builder.setCachePolicy(CachePolicy.valueOf(policy));
+                String policy = props.get("cachePolicy");
+                builder.setCachePolicy(policy == null ? CachePolicy.NO_PREFERENCE
+                                               : CachePolicy.valueOf(policy));
             }
         }
 
@@ -279,4 +276,66 @@ public class DefaultDesireBindingFunction implements BindingFunction {
         }
         return result;
     }
+
+    /**
+     * Find the META-INF default properties of a type.  The defaults index of the class loader
+     * answers this without searching the class path, unless some module's defaults could not be
+     * indexed.
+     *
+     * @param type The type.
+     * @return The type's default properties, or {@code null} if it has none.
+     */
+    private Map<String, String> findMetaInfDefault(Class<?> type) throws ResolutionException {
+        String name = type.getCanonicalName();
+        if (name == null) {
+            return null;
+        }
+        DefaultsIndex index = DefaultsIndex.forClassLoader(classLoader);
+        Map<String, String> props = index.getDefaults(name);
+        if (props != null || index.isComplete()) {
+            return props;
+        }
+
+        String resourceName = DefaultsIndex.DEFAULTS_PATH + name + ".properties";
+        logger.debug("searching for defaults in {}", resourceName);
+        URL url = classLoader.getResource(resourceName);
+        if (url == null) {
+            return null;
+        }
+        InputStream istr = null;
+        try {
+            istr = url.openStream();
+            return DefaultsIndex.load(istr);
+        } catch (IOException e) {
+            throw new ResolutionException("error reading " + resourceName, e);
+        } finally {
+            try {
+                if (istr != null) {
+                    istr.close();
+                }
+            } catch (IOException e) {
+                logger.error("error closing {}: {}", resourceName, e);
+            }
+        }
+    }
+
+    /**
+     * Default binding functions are equal if they use the same class loader, as they then
+     * produce the same bindings.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (o == this) {
+            return true;
+        } else if (o != null && o.getClass().equals(getClass())) {
+            return classLoader.equals(((DefaultDesireBindingFunction) o).classLoader);
+        } else {
+            return false;
+        }
+    }
+
+    @Override
+    public int hashCode() {
+        return classLoader.hashCode();
+    }
 }
@@ -19,7 +19,12 @@
  */
 package org.grouplens.grapht.solver;
 
+import com.google.common.base.Function;
 import com.google.common.base.Predicate;
+import com.google.common.collect.SetMultimap;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
 import org.grouplens.grapht.*;
 import org.grouplens.grapht.graph.DAGEdge;
 import org.grouplens.grapht.graph.DAGNode;
@@ -32,6 +37,8 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.ThreadSafe;
 import java.lang.annotation.Annotation;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
 
 /**
  * <p>
@@ -114,6 +121,39 @@ public class DefaultInjector implements Injector {
         manager = new LifecycleManager();
         instantiator = InjectionContainer.create(defaultPolicy, manager);
     }
+
+    /**
+     * Create a new DefaultInjector that instantiates components with an existing container.
+     * The injector is closed by closing the container's lifecycle manager, if it has one.
+     *
+     * @param container The injection container, which implements cache policies.
+     * @param maxDepth The maximum depth of the dependency hierarchy
+     * @param functions The BindingFunctions to use, ordered with highest
+     *            priority functions first
+     * @throws IllegalArgumentException if maxDepth is less than 1
+     * @since 0.11
+     */
+    public DefaultInjector(InjectionContainer container, int maxDepth, BindingFunction... functions) {
+        this(container, DependencySolver.newBuilder()
+                                        .addBindingFunctions(functions)
+                                        .setMaxDepth(maxDepth)
+                                        .build());
+    }
+
+    /**
+     * Create a new DefaultInjector that resolves components with an existing solver and
+     * instantiates them with an existing container.
+     *
+     * @param container The injection container, which implements cache policies.
+     * @param solver The dependency solver.  Its graph should not be modified other than by the
+     *               injector.
+     * @since 0.11
+     */
+    public DefaultInjector(InjectionContainer container, DependencySolver solver) {
+        this.solver = solver;
+        manager = container.getLifecycleManager();
+        instantiator = container;
+    }
     
     /**
      * @return The DependencySolver backing this injector
@@ -144,32 +184,91 @@ public class DefaultInjector implements Injector {
         return type.cast(obj);
     }
 
+    @Nonnull
+    @Override
+    public <T> ListenableFuture<T> getInstanceAsync(Class<T> type, Executor executor) {
+        return getInstanceAsync(null, type, executor);
+    }
+
+    @Nonnull
+    @Override
+    public <T> ListenableFuture<T> getInstanceAsync(Annotation qualifier, final Class<T> type,
+                                                   final Executor executor) {
+        final Desire desire = Desires.create(qualifier, type, false);
+        ListenableFutureTask<ListenableFuture<Object>> task =
+                ListenableFutureTask.create(new Callable<ListenableFuture<Object>>() {
+                    @Override
+                    public ListenableFuture<Object> call() throws InjectionException {
+                        DAGNode<Component, Dependency> node;
+                        SetMultimap<DAGNode<Component, Dependency>, DAGEdge<Component, Dependency>> backEdges;
+                        // resolution still requires exclusive access to the solver
+                        synchronized (DefaultInjector.this) {
+                            node = resolve(desire);
+                            backEdges = solver.getBackEdges();
+                        }
+                        return instantiator.instantiateAsync(node, backEdges, executor);
+                    }
+                });
+        executor.execute(task);
+        return Futures.transform(Futures.dereference(task), new Function<Object, T>() {
+            @Override
+            public T apply(@Nullable Object input) {
+                assert input != null;
+                return type.cast(input);
+            }
+        });
+    }
+
     private Object getInstance(Desire desire) throws InjectionException {
         // All Provider cache access, graph resolution, etc. occur
         // within this exclusive lock so we know everything is thread safe
         // albeit in a non-optimal way.
         synchronized(this) {
-            Predicate<Dependency> pred = Dependency.hasInitialDesire(desire);
-
-            // check if the desire is already in the graph
-            DAGEdge<Component, Dependency> resolved =
-                    solver.getGraph().getOutgoingEdgeWithLabel(pred);
-
-            // The edge is only non-null if instantiate() has been called before,
-            // it may be present in the graph at a deeper node. If that's the case
-            // it will be properly merged after regenerating the graph at the root context.
-            if (resolved == null) {
-                logger.info("Must resolve desire: {}", desire);
-                solver.resolve(desire);
-                resolved = solver.getGraph().getOutgoingEdgeWithLabel(pred);
-            }
-
-            // Check if the provider for the resolved node is in our cache
-            DAGNode<Component, Dependency> resolvedNode = resolved.getTail();
+            DAGNode<Component, Dependency> resolvedNode = resolve(desire);
             return instantiator.makeInstantiator(resolvedNode, solver.getBackEdges()).instantiate();
         }
     }
 
+    /**
+     * Resolve a desire to its node in the solver's graph.  The caller must hold the lock on this
+     * injector.
+     *
+     * @param desire The desire to resolve.
+     * @return The resolved node.
+     * @throws ResolutionException if the desire cannot be resolved.
+     */
+    private DAGNode<Component, Dependency> resolve(Desire desire) throws ResolutionException {
+        Predicate<Dependency> pred = Dependency.hasInitialDesire(desire);
+
+        // check if the desire is already in the graph
+        DAGEdge<Component, Dependency> resolved =
+                solver.getGraph().getOutgoingEdgeWithLabel(pred);
+
+        // The edge is only non-null if instantiate() has been called before,
+        // it may be present in the graph at a deeper node. If that's the case
+        // it will be properly merged after regenerating the graph at the root context.
+        if (resolved == null) {
+            logger.info("Must resolve desire: {}", desire);
+            solver.resolve(desire);
+            resolved = solver.getGraph().getOutgoingEdgeWithLabel(pred);
+        }
+
+        return resolved.getTail();
+    }
+
+    /**
+     * Enter a new injection scope on the current thread.  The resolved graph and shared
+     * components are reused; only {@link CachePolicy#SCOPED} components are instantiated
+     * per scope.
+     *
+     * @return The scope, which must be closed to exit it.
+     * @see InjectionContainer#enterScope()
+     * @since 0.11
+     */
+    public InjectionScope enterScope() {
+        return instantiator.enterScope();
+    }
+
     @Override
     public void close() {
         if (manager != null) {
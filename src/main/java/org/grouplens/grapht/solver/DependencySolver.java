@@ -19,6 +19,7 @@
  */
 package org.grouplens.grapht.solver;
 
+import com.google.common.base.Function;
 import com.google.common.base.Functions;
 import com.google.common.base.Predicate;
 import com.google.common.collect.*;
@@ -27,17 +28,20 @@ import org.grouplens.grapht.CachePolicy;
 import org.grouplens.grapht.Component;
 import org.grouplens.grapht.Dependency;
 import org.grouplens.grapht.ResolutionException;
+import org.grouplens.grapht.context.ContextMatcher;
 import org.grouplens.grapht.graph.DAGEdge;
 import org.grouplens.grapht.graph.DAGNode;
 import org.grouplens.grapht.graph.DAGNodeBuilder;
 import org.grouplens.grapht.graph.MergePool;
 import org.grouplens.grapht.reflect.Desire;
+import org.grouplens.grapht.reflect.InjectionPoint;
 import org.grouplens.grapht.reflect.Satisfaction;
 import org.grouplens.grapht.reflect.internal.NullSatisfaction;
 import org.grouplens.grapht.util.Preconditions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import java.util.*;
 
 /**
@@ -86,6 +90,43 @@ public class DependencySolver {
     private final List<BindingFunction> functions;
     private final List<BindingFunction> triggerFunctions;
     
+    @Nullable
+    private final SubgraphCache subgraphCache;
+    private final Object cacheSignature;
+    private final List<ListMultimap<Class<?>, Pair<ContextMatcher, BindRule>>> typedRules;
+    private final List<RuleBasedBindingFunction> ruleFunctions;
+    /**
+     * Whether the binding functions other than rule-based ones ignore the context, so subgraphs
+     * of types whose rules are context-free can be shared between contexts.
+     */
+    private final boolean contextIndependent;
+    private final Map<Class<?>, Object> ruleSignatures = Maps.newHashMap();
+    private final Function<Class<?>, Object> ruleSignatureFunction = new Function<Class<?>, Object>() {
+        @Override
+        public Object apply(Class<?> type) {
+            return getRuleSignature(type);
+        }
+    };
+    private final Deque<Recording> recordings = new ArrayDeque<Recording>();
+    /**
+     * The types of context element that the binding functions can look at, or {@code null} if
+     * they may look at any element.  Resolutions of a desire can only differ between contexts that
+     * differ in elements of these types.
+     */
+    @Nullable
+    private final Set<Class<?>> failureContextTypes;
+    /**
+     * Desires that failed to resolve during the current resolution, keyed by the parts of their
+     * contexts that the binding functions can look at, so later branches do not retry them.
+     * Cleared when each call to {@link #resolve(Desire)} or {@link #rewrite(DAGNode)} finishes, so
+     * that failures are not held, or reused, between calls.
+     *
+     * @see #getFailureKey(Desire, InjectionContext)
+     */
+    private final Map<Pair<Desire, Object>, FailedAttempt> failedAttempts = Maps.newHashMap();
+    // the size of the deepest context reached by the current attempt
+    private int reachedDepth;
+
     private DAGNode<Component,Dependency> graph;
     private SetMultimap<DAGNode<Component,Dependency>, DAGEdge<Component,Dependency>> backEdges;
     private MergePool<Component,Dependency> mergePool;
@@ -97,12 +138,14 @@ public class DependencySolver {
      * @param bindFunctions The binding functions that control desire bindings
      * @param maxDepth A maximum depth of the graph before it's determined that
      *            a cycle exists
+     * @param cache The subgraph cache, or {@code null} to resolve every subgraph
      * @throws IllegalArgumentException if maxDepth is less than 1
      * @throws NullPointerException if bindFunctions is null
      */
     DependencySolver(List<BindingFunction> bindFunctions,
                      List<BindingFunction> triggers,
-                     CachePolicy defaultPolicy, int maxDepth) {
+                     CachePolicy defaultPolicy, int maxDepth,
+                     @Nullable SubgraphCache cache) {
         Preconditions.notNull("bindFunctions", bindFunctions);
         Preconditions.notNull("defaultPolicy", defaultPolicy);
         if (maxDepth <= 0) {
@@ -118,6 +161,71 @@ public class DependencySolver {
         backEdges = HashMultimap.create();
         mergePool = MergePool.create();
 
+        // the built-in functions only look at the desires, not the context
+        Set<Class<?>> ctxTypes = Sets.newHashSet();
+        for (BindingFunction fn: functions) {
+            Set<Class<?>> fnTypes = null;
+            if (fn.getClass().equals(RuleBasedBindingFunction.class)) {
+                fnTypes = ((RuleBasedBindingFunction) fn).getContextTypes();
+            } else if (fn.getClass().equals(DefaultDesireBindingFunction.class)
+                       || fn.getClass().equals(ProviderBindingFunction.class)) {
+                fnTypes = Collections.emptySet();
+            }
+            if (fnTypes == null) {
+                ctxTypes = null;
+                break;
+            }
+            ctxTypes.addAll(fnTypes);
+        }
+        failureContextTypes = ctxTypes == null ? null : ImmutableSet.copyOf(ctxTypes);
+
+        subgraphCache = cache;
+        if (cache != null) {
+            // rules for specific types are checked per cached subgraph; everything else
+            // must match for any subgraph to be reused
+            ImmutableList.Builder<Object> sig = ImmutableList.builder();
+            ImmutableList.Builder<ListMultimap<Class<?>, Pair<ContextMatcher, BindRule>>> typed =
+                    ImmutableList.builder();
+            ImmutableList.Builder<RuleBasedBindingFunction> ruleFns = ImmutableList.builder();
+            boolean independent = true;
+            for (BindingFunction fn: functions) {
+                if (fn.getClass().equals(RuleBasedBindingFunction.class)) {
+                    ruleFns.add((RuleBasedBindingFunction) fn);
+                    ImmutableListMultimap.Builder<Class<?>, Pair<ContextMatcher, BindRule>> byType =
+                            ImmutableListMultimap.builder();
+                    ImmutableMultiset.Builder<Pair<ContextMatcher, BindRule>> untyped =
+                            ImmutableMultiset.builder();
+                    for (Map.Entry<ContextMatcher, BindRule> e:
+                            ((RuleBasedBindingFunction) fn).getRules().entries()) {
+                        Pair<ContextMatcher, BindRule> rule = Pair.of(e.getKey(), e.getValue());
+                        if (e.getValue() instanceof BindRuleImpl) {
+                            byType.put(((BindRuleImpl) e.getValue()).getDependencyType(), rule);
+                        } else {
+                            untyped.add(rule);
+                        }
+                    }
+                    typed.add(byType.build());
+                    sig.add(Pair.of(RuleBasedBindingFunction.class, untyped.build()));
+                } else {
+                    sig.add(fn);
+                    // the built-in functions only look at the desires, not the context
+                    independent &= fn.getClass().equals(DefaultDesireBindingFunction.class)
+                            || fn.getClass().equals(ProviderBindingFunction.class);
+                }
+            }
+            sig.add(defaultPolicy);
+            sig.add(maxDepth);
+            cacheSignature = sig.build();
+            typedRules = typed.build();
+            ruleFunctions = ruleFns.build();
+            contextIndependent = independent;
+        } else {
+            cacheSignature = null;
+            typedRules = null;
+            ruleFunctions = null;
+            contextIndependent = false;
+        }
+
         logger.info("DependencySolver created, max depth: {}", maxDepth);
     }
 
@@ -185,7 +293,15 @@ public class DependencySolver {
      */
     public synchronized void resolve(Desire desire) throws ResolutionException {
         logger.info("Resolving desire: {}", desire);
+        try {
+            resolveDeferred(desire);
+        } finally {
+            // failures are only valid for the bindings of this call
+            failedAttempts.clear();
+        }
+    }
 
+    private void resolveDeferred(Desire desire) throws ResolutionException {
         Queue<Deferral> deferralQueue = new ArrayDeque<Deferral>();
 
         // before any deferred nodes are processed, we use a synthetic root
@@ -200,7 +316,7 @@ public class DependencySolver {
 
             if (current.node.getLabel().equals(ROOT_SATISFACTION)) {
                 Pair<DAGNode<Component, Dependency>, Dependency> rootNode =
-                        resolveFully(desire, current.context, deferralQueue);
+                        resolveOrFail(desire, current.context, deferralQueue);
                 // add this to the global graph
                 graph = DAGNode.copyBuilder(graph)
                                .addEdge(mergePool.merge(rootNode.getLeft()),
@@ -214,7 +330,7 @@ public class DependencySolver {
                     logger.debug("Attempting to resolve deferred dependency {} of {}", d, sat);
                     // resolve the dependency
                     Pair<DAGNode<Component, Dependency>, Dependency> result =
-                            resolveFully(d, current.context, deferralQueue);
+                            resolveOrFail(d, current.context, deferralQueue);
                     // merge it in
                     DAGNode<Component, Dependency> merged = mergePool.merge(result.getLeft());
                     // now see if there's a real cycle
@@ -281,12 +397,20 @@ public class DependencySolver {
      * @param graph The graph to rewrite.
      * @return A rewritten version of the graph.
      */
-    public DAGNode<Component,Dependency> rewrite(DAGNode<Component,Dependency> graph) throws ResolutionException {
+    public synchronized DAGNode<Component,Dependency> rewrite(DAGNode<Component,Dependency> graph) throws ResolutionException {
         if (!graph.getLabel().getSatisfaction().getErasedType().equals(Void.TYPE)) {
             throw new IllegalArgumentException("only full dependency graphs can be rewritten");
         }
 
         logger.debug("rewriting graph with {} nodes", graph.getReachableNodes().size());
+        try {
+            return rewriteGraph(graph);
+        } finally {
+            failedAttempts.clear();
+        }
+    }
+
+    private DAGNode<Component,Dependency> rewriteGraph(DAGNode<Component,Dependency> graph) throws ResolutionException {
         // We proceed in three stages.
         Map<DAGEdge<Component, Dependency>, DAGEdge<Component,Dependency>> replacementSubtrees =
                 Maps.newHashMap();
@@ -328,7 +452,7 @@ public class DependencySolver {
                     if (result != null) {
                         // resolve the node
                         // we could reuse the resolution, but perf savings isn't worth complexity
-                        repl = resolveFully(desire, context, null);
+                        repl = resolveOrFail(desire, context, null);
                         break;
                     }
                 }
@@ -356,15 +480,165 @@ public class DependencySolver {
     }
 
     /**
-     * Resolve a desire and its dependencies, inserting them into the graph.
+     * Resolve a desire and its dependencies, reporting failure with an exception.
+     *
+     * @see #resolveFully(Desire, InjectionContext, Queue)
+     * @throws ResolutionException if there is an error resolving the nodes.
+     */
+    private Pair<DAGNode<Component,Dependency>,Dependency>
+    resolveOrFail(Desire desire, InjectionContext context, Queue<Deferral> deferQueue) throws ResolutionException {
+        Outcome result = resolveFully(desire, context, deferQueue);
+        if (result.failure != null) {
+            throw result.failure.toException();
+        }
+        return Pair.of(result.node, result.dependency);
+    }
+
+    /**
+     * Resolve a desire and its dependencies, inserting them into the graph.  If the solver has a
+     * subgraph cache, a cached subgraph is used if one matches, and a newly-resolved subgraph is
+     * added to the cache.  Unresolvable desires are returned as failures rather than thrown, so
+     * callers can backtrack cheaply; failures are remembered for the rest of the resolution.
      *
      * @param desire The desire to resolve.
      * @param context The context of {@code parent}.
      * @param deferQueue The queue of node deferrals.
-     * @throws ResolutionException if there is an error resolving the nodes.
+     * @return The resolved node and dependency, or the failure to resolve them.
+     * @throws ResolutionException if there is an unrecoverable error resolving the nodes.
      */
-    private Pair<DAGNode<Component,Dependency>,Dependency>
-    resolveFully(Desire desire, InjectionContext context, Queue<Deferral> deferQueue) throws ResolutionException {
+    private Outcome resolveFully(Desire desire, InjectionContext context,
+                                 Queue<Deferral> deferQueue) throws ResolutionException {
+        Pair<Desire, Object> attempt = getFailureKey(desire, context);
+        Recording parent = recordings.peek();
+        FailedAttempt failed = failedAttempts.get(attempt);
+        // retrying the failure here must not have reached the maximum depth
+        if (failed != null && context.size() + failed.height <= maxDepth) {
+            logger.debug("{} already failed to resolve", desire);
+            if (parent != null && failed.recording != null) {
+                parent.include(failed.recording);
+            }
+            reachedDepth = Math.max(reachedDepth, context.size() + failed.height);
+            return Outcome.failed(failed.failure.relocate(failed.context, context));
+        }
+
+        int outerDepth = reachedDepth;
+        reachedDepth = context.size();
+        if (subgraphCache == null) {
+            Outcome result = resolveUncached(desire, context, deferQueue);
+            if (result.failure != null) {
+                failedAttempts.put(attempt, new FailedAttempt(context, result.failure,
+                                                              reachedDepth - context.size(), null));
+            }
+            reachedDepth = Math.max(outerDepth, reachedDepth);
+            return result;
+        }
+
+        SubgraphCache.Key key = new SubgraphCache.Key(cacheSignature, desire, context);
+        SubgraphCache.Key shared = contextIndependent ? key.withoutContext() : null;
+        // a subgraph shared between contexts must also fit within the maximum depth here
+        SubgraphCache.Entry hit = subgraphCache.lookup(key, shared, maxDepth - context.size() + 1,
+                                                       ruleSignatureFunction);
+        if (hit != null) {
+            logger.debug("reusing cached subgraph for {}", desire);
+            if (parent != null) {
+                Iterables.addAll(parent.types, hit.getTypes());
+                parent.height = Math.max(parent.height, hit.getHeight() + 1);
+            }
+            reachedDepth = Math.max(outerDepth, context.size() + hit.getHeight() - 1);
+            return Outcome.of(hit.getNode(), hit.getDependency());
+        }
+
+        Recording rec = new Recording();
+        recordings.push(rec);
+        Outcome result;
+        try {
+            result = resolveUncached(desire, context, deferQueue);
+        } finally {
+            recordings.pop();
+            // the parent depends on this resolution even if it failed, as it may backtrack
+            if (parent != null) {
+                parent.include(rec);
+            }
+        }
+        if (result.failure != null) {
+            failedAttempts.put(attempt, new FailedAttempt(context, result.failure,
+                                                          reachedDepth - context.size(), rec));
+        } else if (!rec.deferred) {
+            SubgraphCache.Entry entry =
+                    new SubgraphCache.Entry(result.node, result.dependency,
+                                            Maps.toMap(rec.types, ruleSignatureFunction),
+                                            rec.height);
+            if (shared != null && isContextFree(rec.types)) {
+                logger.debug("sharing subgraph for {} between contexts", desire);
+                subgraphCache.store(shared, entry);
+            } else {
+                subgraphCache.store(key, entry);
+            }
+        }
+        reachedDepth = Math.max(outerDepth, reachedDepth);
+        return result;
+    }
+
+    /**
+     * Get the key under which a failure to resolve a desire is remembered.  Context elements
+     * whose types the binding functions cannot look at are replaced with {@code null}, so the
+     * failure is reused in contexts that only differ in those elements.  If the binding functions
+     * look at no context elements at all, the failure is reused in any context.
+     */
+    private Pair<Desire, Object> getFailureKey(Desire desire, InjectionContext context) {
+        if (failureContextTypes == null) {
+            return Pair.<Desire, Object>of(desire, context);
+        } else if (failureContextTypes.isEmpty()) {
+            return Pair.<Desire, Object>of(desire, null);
+        }
+        List<Pair<Satisfaction, InjectionPoint>> elements =
+                new ArrayList<Pair<Satisfaction, InjectionPoint>>(context.size());
+        for (Pair<Satisfaction, InjectionPoint> elt: context) {
+            Satisfaction sat = elt.getLeft();
+            // keep elements of a matched type, and synthetic ones, as the root is
+            boolean matched = sat == null || sat.getErasedType() == null;
+            for (Iterator<Class<?>> it = failureContextTypes.iterator(); !matched && it.hasNext();) {
+                Class<?> type = it.next();
+                matched = type.isAssignableFrom(sat.getErasedType());
+            }
+            elements.add(matched ? elt : null);
+        }
+        return Pair.<Desire, Object>of(desire, elements);
+    }
+
+    /**
+     * Query whether the rule-based binding functions bind all of some types independently of the
+     * context.
+     */
+    private boolean isContextFree(Iterable<Class<?>> types) {
+        for (Class<?> type: types) {
+            for (RuleBasedBindingFunction fn: ruleFunctions) {
+                if (!fn.isContextFree(type)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get the rules that this solver's rule-based binding functions have for a type.
+     */
+    private Object getRuleSignature(Class<?> type) {
+        Object sig = ruleSignatures.get(type);
+        if (sig == null) {
+            ImmutableList.Builder<Object> bld = ImmutableList.builder();
+            for (ListMultimap<Class<?>, Pair<ContextMatcher, BindRule>> rules: typedRules) {
+                bld.add(ImmutableMultiset.copyOf(rules.get(type)));
+            }
+            sig = bld.build();
+            ruleSignatures.put(type, sig);
+        }
+        return sig;
+    }
+
+    private Outcome resolveUncached(Desire desire, InjectionContext context,
+                                    Queue<Deferral> deferQueue) throws ResolutionException {
         // check context depth against max to detect likely dependency cycles
         if (context.size() > maxDepth) {
             throw new CyclicDependencyException(desire, "Maximum context depth of " + maxDepth + " was reached");
@@ -372,6 +646,9 @@ public class DependencySolver {
         
         // resolve the current node
         Resolution result = resolve(desire, context);
+        if (result.satisfaction == null) {
+            return Outcome.failed(new Failure(result.desires, context, null));
+        }
 
         InjectionContext newContext = context.extend(result.satisfaction, desire.getInjectionPoint());
 
@@ -379,18 +656,21 @@ public class DependencySolver {
         if (result.deferDependencies) {
             // extend node onto deferred queue and skip its dependencies for now
             logger.debug("Deferring dependencies of {}", result.satisfaction);
+            if (!recordings.isEmpty()) {
+                recordings.peek().deferred = true;
+            }
             node = DAGNode.singleton(result.makeSatisfaction());
             // FIXME Deferred and skippable bindings do not interact well
             deferQueue.add(new Deferral(node, newContext));
-            return Pair.of(node, result.makeDependency());
+            return Outcome.of(node, result.makeDependency());
         } else {
             return resolveDepsAndMakeNode(deferQueue, result, newContext);
         }
     }
 
-    private Pair<DAGNode<Component, Dependency>,Dependency> resolveDepsAndMakeNode(Queue<Deferral> deferQueue,
-                                                                                   Resolution result,
-                                                                                   InjectionContext newContext) throws ResolutionException {
+    private Outcome resolveDepsAndMakeNode(Queue<Deferral> deferQueue,
+                                           Resolution result,
+                                           InjectionContext newContext) throws ResolutionException {
         DAGNode<Component, Dependency> node;// build up a node with its outgoing edges
         DAGNodeBuilder<Component,Dependency> nodeBuilder = DAGNode.newBuilder();
         nodeBuilder.setLabel(result.makeSatisfaction());
@@ -399,13 +679,12 @@ public class DependencySolver {
             // - the call to resolveFully() is responsible for adding the dependency edges
             //   so we don't need to process the returned node
             logger.debug("Attempting to satisfy dependency {} of {}", d, result.satisfaction);
-            Pair<DAGNode<Component, Dependency>, Dependency> dep;
-            try {
-                dep = resolveFully(d, newContext, deferQueue);
-            } catch (UnresolvableDependencyException ex) {
-                if (!d.equals(ex.getDesireChain().getInitialDesire())) {
+            Outcome dep = resolveFully(d, newContext, deferQueue);
+            Failure failure = dep.failure;
+            if (failure != null) {
+                if (!d.equals(failure.desires.getInitialDesire())) {
                     // this is for some other (deeper) desire, fail
-                    throw ex;
+                    return dep;
                 }
                 // whoops, try to backtrack
                 Resolution back = result.skippable ? result.backtrack() : null;
@@ -416,17 +695,23 @@ public class DependencySolver {
                     return resolveDepsAndMakeNode(deferQueue, back, forked);
                 } else if (result.backtracked || result.skippable) {
                     // the result is the result of backtracking, or could be, so make an error at this dependency
-                    throw new UnresolvableDependencyException(result.desires, newContext.getLeading(), ex);
+                    return Outcome.failed(new Failure(result.desires, newContext.getLeading(), failure));
                 } else {
-                    throw ex;
+                    return dep;
                 }
             }
-            nodeBuilder.addEdge(dep);
+            nodeBuilder.addEdge(dep.node, dep.dependency);
         }
         node = nodeBuilder.build();
-        return Pair.of(node, result.makeDependency());
+        return Outcome.of(node, result.makeDependency());
     }
 
+    /**
+     * Resolve a desire to a satisfaction.
+     *
+     * @return The resolution; its satisfaction is {@code null} if no binding leads from the desire
+     *         to an instantiable satisfaction.
+     */
     private Resolution resolve(Desire desire, InjectionContext context) throws ResolutionException {
         DesireChain chain = DesireChain.singleton(desire);
 
@@ -436,6 +721,9 @@ public class DependencySolver {
 
         while(true) {
             logger.debug("Current desire: {}", chain.getCurrentDesire());
+            if (!recordings.isEmpty()) {
+                recordings.peek().types.add(chain.getCurrentDesire().getDesiredType());
+            }
             
             BindingResult binding = null;
             for (BindingFunction bf: functions) {
@@ -477,13 +765,13 @@ public class DependencySolver {
                 return new Resolution(chain.getCurrentDesire().getSatisfaction(), policy, chain, fixed, defer, skippable, false);
             } else if (binding == null) {
                 // no more desires to process, it cannot be satisfied
-                throw new UnresolvableDependencyException(chain, context);
+                return new Resolution(null, policy, chain, fixed, false, false, false);
             }
         }
     }
     
     /*
-     * Result tuple for resolve(Desire, InjectionContext)
+     * Result tuple for resolve(Desire, InjectionContext); the satisfaction is null if it failed
      */
     private static class Resolution {
         private final Satisfaction satisfaction;
@@ -554,6 +842,116 @@ public class DependencySolver {
         }
     }
     
+    /*
+     * The result of resolving a desire: a node and its dependency, or a failure
+     */
+    private static class Outcome {
+        private final DAGNode<Component, Dependency> node;
+        private final Dependency dependency;
+        private final Failure failure;
+
+        private Outcome(DAGNode<Component, Dependency> node, Dependency dependency,
+                        Failure failure) {
+            this.node = node;
+            this.dependency = dependency;
+            this.failure = failure;
+        }
+
+        public static Outcome of(DAGNode<Component, Dependency> node, Dependency dependency) {
+            return new Outcome(node, dependency, null);
+        }
+
+        public static Outcome failed(Failure failure) {
+            return new Outcome(null, null, failure);
+        }
+    }
+
+    /*
+     * An unresolvable desire chain.  Exceptions are only made for failures that escape the
+     * solver, so backtracking does not pay for stack traces and messages.
+     */
+    private static class Failure {
+        private final DesireChain desires;
+        private final InjectionContext context;
+        @Nullable
+        private final Failure cause;
+
+        public Failure(DesireChain desires, InjectionContext context, @Nullable Failure cause) {
+            this.desires = desires;
+            this.context = context;
+            this.cause = cause;
+        }
+
+        public UnresolvableDependencyException toException() {
+            if (cause == null) {
+                return new UnresolvableDependencyException(desires, context);
+            } else {
+                return new UnresolvableDependencyException(desires, context, cause.toException());
+            }
+        }
+
+        /**
+         * Move a failure from the context it was found in to another one.  The contexts of a
+         * failure and its causes all extend the context of the attempt that failed.
+         * @param from The context of the failed attempt.
+         * @param to The context in which the failure is reused.
+         * @return The failure in the new context.
+         */
+        public Failure relocate(InjectionContext from, InjectionContext to) {
+            if (from.equals(to)) {
+                return this;
+            }
+            InjectionContext ctx = to;
+            Iterator<Pair<Satisfaction, InjectionPoint>> iter = context.iterator();
+            for (int i = 0; iter.hasNext(); i++) {
+                Pair<Satisfaction, InjectionPoint> elt = iter.next();
+                if (i >= from.size()) {
+                    ctx = ctx.extend(elt.getLeft(), elt.getRight());
+                }
+            }
+            return new Failure(desires, ctx, cause == null ? null : cause.relocate(from, to));
+        }
+    }
+
+    /**
+     * A failed attempt to resolve a desire.
+     */
+    private static class FailedAttempt {
+        private final InjectionContext context;
+        private final Failure failure;
+        // how much deeper than its context the attempt reached
+        private final int height;
+        @Nullable
+        private final Recording recording;
+
+        public FailedAttempt(InjectionContext context, Failure failure, int height,
+                             @Nullable Recording recording) {
+            this.context = context;
+            this.failure = failure;
+            this.height = height;
+            this.recording = recording;
+        }
+    }
+
+    /*
+     * The types queried while resolving a subgraph, for the subgraph cache
+     */
+    private static class Recording {
+        private final Set<Class<?>> types = Sets.newHashSet();
+        private boolean deferred;
+        // an upper bound on the height of the subgraph, in nodes
+        private int height = 1;
+
+        /**
+         * Include what a child resolution recorded in this one.
+         */
+        public void include(Recording child) {
+            types.addAll(child.types);
+            deferred |= child.deferred;
+            height = Math.max(height, child.height + 1);
+        }
+    }
+
     /*
      * Deferred results tuple
      */
@@ -23,6 +23,7 @@ import org.grouplens.grapht.CachePolicy;
 import org.grouplens.grapht.util.Preconditions;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.LinkedList;
@@ -40,6 +41,7 @@ public class DependencySolverBuilder {
     private List<BindingFunction> triggerFunctions = new LinkedList<BindingFunction>();
     private CachePolicy defaultPolicy = CachePolicy.NO_PREFERENCE;
     private int maxDepth = 100;
+    private SubgraphCache subgraphCache;
 
     /**
      * Get the current list of binding functions.
@@ -152,11 +154,37 @@ public class DependencySolverBuilder {
         return this;
     }
 
+    /**
+     * Get the subgraph cache.
+     * @return The subgraph cache the solver will use, or {@code null} if it will not cache
+     *         subgraphs.
+     */
+    @Nullable
+    public SubgraphCache getSubgraphCache() {
+        return subgraphCache;
+    }
+
+    /**
+     * Set the subgraph cache for the solver.  Solvers sharing a subgraph cache reuse each
+     * other's resolved subgraphs where their bindings allow.  By default, solvers do not cache
+     * subgraphs.
+     *
+     * @param cache The subgraph cache, such as one from {@link SubgraphCache#create()}, or
+     *              {@code null} to disable subgraph caching.
+     * @return The builder (for chaining).
+     * @since 0.11
+     */
+    public DependencySolverBuilder setSubgraphCache(@Nullable SubgraphCache cache) {
+        subgraphCache = cache;
+        return this;
+    }
+
     /**
      * Build a dependency solver.
      * @return The dependency solver.
      */
     public DependencySolver build() {
-        return new DependencySolver(bindingFunctions, triggerFunctions, defaultPolicy, maxDepth);
+        return new DependencySolver(bindingFunctions, triggerFunctions, defaultPolicy, maxDepth,
+                                    subgraphCache);
     }
 }
@@ -47,17 +47,36 @@ public class DesireChain extends AbstractChain<Desire> {
     private final UUID key;
 
     public static DesireChain singleton(Desire desire) {
-        return new DesireChain(null, desire);
+        return new DesireChain(null, desire, UUID.randomUUID());
+    }
+
+    /**
+     * Reconstruct a desire chain with a particular key, such as a chain read from a stored graph.
+     * @param key The chain's key.
+     * @param desires The desires in the chain, starting with the initial desire.
+     * @return The desire chain.
+     * @since 0.11
+     */
+    public static DesireChain create(@Nonnull UUID key, @Nonnull List<Desire> desires) {
+        if (desires.isEmpty()) {
+            throw new IllegalArgumentException("desire chain cannot be empty");
+        }
+        DesireChain chain = null;
+        for (Desire d: desires) {
+            chain = new DesireChain(chain, d, key);
+        }
+        return chain;
     }
 
     /**
      * Create a new desire chain.
      * @param prev The previous chain.
      * @param d The desire.
+     * @param k The key for a new chain (ignored if {@code prev} is not null).
      */
-    private DesireChain(DesireChain prev, @Nonnull Desire d) {
+    private DesireChain(DesireChain prev, @Nonnull Desire d, UUID k) {
         super(prev, d);
-        key = prev == null ? UUID.randomUUID() : prev.key;
+        key = prev == null ? k : prev.key;
         initialDesire = prev == null ? d : prev.getInitialDesire();
     }
 
@@ -126,6 +145,6 @@ public class DesireChain extends AbstractChain<Desire> {
      */
     @Nonnull
     public DesireChain extend(@Nonnull Desire d) {
-        return new DesireChain(this, d);
+        return new DesireChain(this, d, key);
     }
 }
@@ -88,6 +88,31 @@ public class ProviderBindingFunction implements BindingFunction {
         return null;
     }
 
+    /**
+     * Query whether a satisfaction injects a provider of its dependency, as created by this
+     * binding function.  Its dependency is only instantiated when the provider is invoked.
+     *
+     * @param sat The satisfaction.
+     * @return {@code true} if {@code sat} is a provider injection satisfaction.
+     * @since 0.11
+     */
+    public static boolean isProviderInjection(Satisfaction sat) {
+        return sat instanceof ProviderInjectionSatisfaction;
+    }
+
+    /**
+     * Provider binding functions are stateless, so they are all equal.
+     */
+    @Override
+    public boolean equals(Object o) {
+        return o != null && o.getClass().equals(getClass());
+    }
+
+    @Override
+    public int hashCode() {
+        return getClass().hashCode();
+    }
+
     /**
      * Satisfaction implementation that provides a Provider, and has a single
      * dependency on the provided type.
@@ -19,18 +19,19 @@
  */
 package org.grouplens.grapht.solver;
 
-import com.google.common.collect.ImmutableListMultimap;
-import com.google.common.collect.ListMultimap;
-import com.google.common.collect.Multimap;
+import com.google.common.collect.*;
 import org.apache.commons.lang3.tuple.Pair;
 import org.grouplens.grapht.ResolutionException;
 import org.grouplens.grapht.context.ContextMatch;
 import org.grouplens.grapht.context.ContextMatcher;
+import org.grouplens.grapht.context.ContextPattern;
+import org.grouplens.grapht.reflect.Desire;
 import org.grouplens.grapht.reflect.QualifierMatcher;
 import org.grouplens.grapht.util.Preconditions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import java.util.*;
 
 /**
@@ -61,13 +62,96 @@ public class RuleBasedBindingFunction implements BindingFunction {
             = new WeakHashMap<Object, Set<BindRule>>();
 
     private static final Logger logger = LoggerFactory.getLogger(RuleBasedBindingFunction.class);
+
+    /**
+     * Orders context-free candidates, whose context matches all compare equal, by rule alone.
+     */
+    private static final Comparator<Pair<ContextMatch, BindRule>> RULE_ORDER =
+            new Comparator<Pair<ContextMatch, BindRule>>() {
+                @Override
+                public int compare(Pair<ContextMatch, BindRule> p1, Pair<ContextMatch, BindRule> p2) {
+                    return p1.getRight().compareTo(p2.getRight());
+                }
+            };
     
     private final ImmutableListMultimap<ContextMatcher, BindRule> rules;
+
+    // the analysis of the rules, by the dependency type of the rules
+    private final ImmutableListMultimap<Class<?>, Pair<ContextMatcher, BindRule>> typedRules;
+    private final ImmutableList<Pair<ContextMatcher, BindRule>> untypedRules;
+    private final ImmutableSet<Class<?>> contextSensitiveTypes;
+    private final ImmutableMap<Class<?>, Set<Class<?>>> contextTypes;
+    private final boolean untypedContextFree;
+    @Nullable
+    private final Set<Class<?>> untypedContextTypes;
     
     public RuleBasedBindingFunction(Multimap<ContextMatcher, BindRule> rules) {
         Preconditions.notNull("rules", rules);
         
         this.rules = ImmutableListMultimap.copyOf(rules);
+
+        // Analyze the rules, so that context matching can be skipped for types whose rules are
+        // all context-free.  Rules from BindRuleImpl only match their dependency type; other
+        // rules may match any desire.
+        ImmutableListMultimap.Builder<Class<?>, Pair<ContextMatcher, BindRule>> typed =
+                ImmutableListMultimap.builder();
+        ImmutableList.Builder<Pair<ContextMatcher, BindRule>> untyped = ImmutableList.builder();
+        for (Map.Entry<ContextMatcher, BindRule> e: this.rules.entries()) {
+            Pair<ContextMatcher, BindRule> rule = Pair.of(e.getKey(), e.getValue());
+            if (e.getValue() instanceof BindRuleImpl) {
+                typed.put(((BindRuleImpl) e.getValue()).getDependencyType(), rule);
+            } else {
+                untyped.add(rule);
+            }
+        }
+        typedRules = typed.build();
+        untypedRules = untyped.build();
+        untypedContextTypes = analyzeContextTypes(untypedRules);
+        untypedContextFree = isContextFree(untypedRules);
+
+        ImmutableSet.Builder<Class<?>> sensitive = ImmutableSet.builder();
+        ImmutableMap.Builder<Class<?>, Set<Class<?>>> ctxTypes = ImmutableMap.builder();
+        for (Class<?> type: typedRules.keySet()) {
+            List<Pair<ContextMatcher, BindRule>> typeRules = typedRules.get(type);
+            if (!isContextFree(typeRules)) {
+                sensitive.add(type);
+            }
+            Set<Class<?>> types = analyzeContextTypes(typeRules);
+            if (types != null) {
+                ctxTypes.put(type, types);
+            }
+        }
+        contextSensitiveTypes = sensitive.build();
+        contextTypes = ctxTypes.build();
+        logger.debug("{} of {} bound types are context-sensitive",
+                     contextSensitiveTypes.size(), typedRules.keySet().size());
+    }
+
+    private static boolean isContextFree(List<Pair<ContextMatcher, BindRule>> rules) {
+        for (Pair<ContextMatcher, BindRule> rule: rules) {
+            ContextMatcher matcher = rule.getLeft();
+            if (!(matcher instanceof ContextPattern) || !((ContextPattern) matcher).isUniversal()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Nullable
+    private static Set<Class<?>> analyzeContextTypes(Iterable<Pair<ContextMatcher, BindRule>> rules) {
+        Set<Class<?>> types = Sets.newHashSet();
+        for (Pair<ContextMatcher, BindRule> rule: rules) {
+            ContextMatcher matcher = rule.getLeft();
+            Set<Class<?>> matched = null;
+            if (matcher instanceof ContextPattern) {
+                matched = ((ContextPattern) matcher).getMatchedTypes();
+            }
+            if (matched == null) {
+                return null;
+            }
+            types.addAll(matched);
+        }
+        return ImmutableSet.copyOf(types);
     }
     
     /**
@@ -77,9 +161,70 @@ public class RuleBasedBindingFunction implements BindingFunction {
     public ListMultimap<ContextMatcher, BindRule> getRules() {
         return rules;
     }
+
+    /**
+     * Query whether the bindings this function makes for a type are independent of the context.
+     * This is the case if every rule that can match desires of the type matches all contexts
+     * equally, as rules bound in the root context do.  The function does not match the context for
+     * such desires, and the solver may share their resolutions between contexts.
+     *
+     * @param type The desired type.
+     * @return {@code true} if the function's bindings for {@code type} are context-free.
+     * @since 0.11
+     */
+    public boolean isContextFree(Class<?> type) {
+        return untypedContextFree && !contextSensitiveTypes.contains(type);
+    }
+
+    /**
+     * Get the types of context element that can influence the bindings for a type.  The bindings
+     * for the type can only differ between contexts that differ in elements whose satisfactions
+     * have one of these types or a subtype.
+     *
+     * @param type The desired type.
+     * @return The types of context element matched by the rules for {@code type} (empty if its
+     *         bindings are {@linkplain #isContextFree(Class) context-free}), or {@code null} if
+     *         some of its rules use context matchers that cannot be analyzed.
+     * @since 0.11
+     */
+    @Nullable
+    public Set<Class<?>> getContextTypes(Class<?> type) {
+        if (untypedContextTypes == null) {
+            return null;
+        }
+        Set<Class<?>> types = typedRules.containsKey(type) ? contextTypes.get(type) : ImmutableSet.<Class<?>>of();
+        if (types == null) {
+            return null;
+        } else if (untypedContextTypes.isEmpty()) {
+            return types;
+        } else {
+            return Sets.union(types, untypedContextTypes).immutableCopy();
+        }
+    }
+    
+    /**
+     * Get the types of context element that can influence any of this function's bindings.
+     *
+     * @return The types of context element matched by any of the rules, or {@code null} if some
+     *         rules use context matchers that cannot be analyzed.
+     * @see #getContextTypes(Class)
+     * @since 0.11
+     */
+    @Nullable
+    public Set<Class<?>> getContextTypes() {
+        return analyzeContextTypes(Iterables.concat(typedRules.values(), untypedRules));
+    }
     
     @Override
     public BindingResult bind(InjectionContext context, DesireChain desire) throws ResolutionException {
+        Desire current = desire.getCurrentDesire();
+        Class<?> type = current.getDesiredType();
+        List<Pair<ContextMatcher, BindRule>> typeRules = typedRules.get(type);
+        if (typeRules.isEmpty() && untypedRules.isEmpty()) {
+            // no rule can match this desire
+            return null;
+        }
+
         // FIXME Build a better way to remember the applied rules
         Set<BindRule> appliedRules;
         synchronized (bindRuleMemory) {
@@ -91,25 +236,31 @@ public class RuleBasedBindingFunction implements BindingFunction {
         }
 
         // collect all bind rules that apply to this desire
+        // if they are context-free, all contexts match them equally, so skip matching the context
+        boolean contextFree = isContextFree(type);
         List<Pair<ContextMatch, BindRule>> validRules = new ArrayList<Pair<ContextMatch, BindRule>>();
-        for (ContextMatcher matcher: rules.keySet()) {
-            ContextMatch match = matcher.matches(context);
-            if (match != null) {
-                // the context applies to the current context, so go through all
-                // bind rules within it and record those that match the desire
-                for (BindRule br: rules.get(matcher)) {
-                    if (br.matches(desire.getCurrentDesire()) && !appliedRules.contains(br)) {
-                        validRules.add(Pair.of(match, br));
-                        logger.trace("Matching rule, context: {}, rule: {}", matcher, br);
-                    }
+        for (Pair<ContextMatcher, BindRule> rule: Iterables.concat(typeRules, untypedRules)) {
+            BindRule br = rule.getRight();
+            if (!br.matches(current) || appliedRules.contains(br)) {
+                continue;
+            }
+            ContextMatch match = null;
+            if (!contextFree) {
+                match = rule.getLeft().matches(context);
+                if (match == null) {
+                    continue;
                 }
             }
+            validRules.add(Pair.of(match, br));
+            logger.trace("Matching rule, context: {}, rule: {}", rule.getLeft(), br);
         }
         
         if (!validRules.isEmpty()) {
             // we have a bind rule to apply
             // pair's ordering is suitable for sorting the bind rules
-            Collections.sort(validRules);
+            Comparator<Pair<ContextMatch, BindRule>> order =
+                    contextFree ? RULE_ORDER : Ordering.<Pair<ContextMatch, BindRule>>natural();
+            Collections.sort(validRules, order);
 
             if (validRules.size() > 1) {
                 // must check if other rules are equal to the first
@@ -117,7 +268,7 @@ public class RuleBasedBindingFunction implements BindingFunction {
                 List<BindRule> topRules = new ArrayList<BindRule>();
                 topRules.add(validRules.get(0).getRight());
                 for (int i = 1; i < validRules.size(); i++) {
-                    if (validRules.get(0).compareTo(validRules.get(i)) == 0) {
+                    if (order.compare(validRules.get(0), validRules.get(i)) == 0) {
                         topRules.add(validRules.get(i).getRight());
                     }
                 }
@@ -139,7 +290,7 @@ public class RuleBasedBindingFunction implements BindingFunction {
             
             logger.debug("Applying rule: {} to desire: {}", selectedRule, desire);
             return BindingResult.newBuilder()
-                                .setDesire(selectedRule.apply(desire.getCurrentDesire()))
+                                .setDesire(selectedRule.apply(current))
                                 .setCachePolicy(selectedRule.getCachePolicy())
                                 .setFlags(selectedRule.getFlags())
                                 .build();
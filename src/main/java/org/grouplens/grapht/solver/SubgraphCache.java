@@ -0,0 +1,293 @@
+/*
+ * Grapht, an open source dependency injector.
+ * Copyright 2014-2015 various contributors (see CONTRIBUTORS.txt)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.grapht.solver;
+
+import com.google.common.base.Function;
+import com.google.common.base.Objects;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+import org.grouplens.grapht.Component;
+import org.grouplens.grapht.Dependency;
+import org.grouplens.grapht.graph.DAGNode;
+import org.grouplens.grapht.reflect.Desire;
+
+import javax.annotation.Nullable;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded cache of resolved subgraphs that can be shared between dependency solvers, so that
+ * solvers whose configurations differ in only a few bindings can reuse the parts of their graphs
+ * that those bindings do not affect.
+ *
+ * <p>A subgraph is cached under the desire and context it was resolved for and the parts of the
+ * solver's configuration that apply everywhere (binding functions other than rule-based ones,
+ * default policy and maximum depth).  It is also recorded with the bind rules, for each desired
+ * type queried while resolving it, that the solver's rule-based binding functions had for that
+ * type.  Another solver reuses the subgraph only if its rules for all of those types are the
+ * same, so bindings for unrelated types do not prevent reuse.  Subgraphs whose resolution was
+ * deferred (with provider injection) are not cached.  Subgraphs in which every type's rules are
+ * {@linkplain RuleBasedBindingFunction#isContextFree(Class) context-free} are cached without
+ * their context and shared between all contexts in which they fit within the maximum depth.</p>
+ *
+ * <p>The cache is least-recently-used with a maximum number of desires; several variants of the
+ * subgraph for a desire may be kept under a single entry.  Cached subgraphs refer to the classes
+ * they were resolved with, so a cache keeps their class loaders reachable; there is deliberately
+ * no process-wide cache, and one should be shared only by solvers that use the same class
+ * loaders and discarded with them.</p>
+ *
+ * @see DependencySolverBuilder#setSubgraphCache(SubgraphCache)
+ * @since 0.11
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+public class SubgraphCache {
+    /**
+     * The maximum number of desires cached by a cache from {@link #create()}.
+     */
+    public static final long DEFAULT_MAXIMUM_SIZE = 10000;
+
+    /**
+     * The maximum number of variants cached for a desire.
+     */
+    static final int MAX_VARIANTS = 4;
+
+    private final Cache<Key, List<Entry>> cache;
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    private SubgraphCache(long maxSize) {
+        cache = CacheBuilder.newBuilder()
+                            .maximumSize(maxSize)
+                            .recordStats()
+                            .build();
+    }
+
+    /**
+     * Create a new subgraph cache with the {@linkplain #DEFAULT_MAXIMUM_SIZE default size}.
+     * @return The subgraph cache.
+     */
+    public static SubgraphCache create() {
+        return create(DEFAULT_MAXIMUM_SIZE);
+    }
+
+    /**
+     * Create a new subgraph cache.
+     * @param maxSize The maximum number of desires to cache.
+     * @return The subgraph cache.
+     */
+    public static SubgraphCache create(long maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maximum size must be positive");
+        }
+        return new SubgraphCache(maxSize);
+    }
+
+    /**
+     * Get the statistics of this cache.  Hits and misses count subgraph lookups; a lookup that
+     * finds only variants resolved with different rules is a miss.
+     *
+     * @return The cache statistics.
+     */
+    public CacheStats getStats() {
+        return new CacheStats(hitCount.get(), missCount.get(), 0, 0, 0,
+                              cache.stats().evictionCount());
+    }
+
+    /**
+     * Get the number of desires for which subgraphs are cached.
+     * @return The number of cache entries.
+     */
+    public long size() {
+        return cache.size();
+    }
+
+    /**
+     * Discard all cached subgraphs.
+     */
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * Look up a cached subgraph, falling back to subgraphs shared between contexts.
+     *
+     * @param key The desire key.
+     * @param shared The {@linkplain Key#withoutContext() context-free key} of the desire, or
+     *               {@code null} to only look up subgraphs for the key's context.
+     * @param maxHeight The maximum height of a shared subgraph, in nodes.
+     * @param rules A function returning the solver's rule signature for a type.
+     * @return A cached subgraph whose rule signatures match the solver's, or {@code null}.
+     */
+    @Nullable
+    Entry lookup(Key key, @Nullable Key shared, int maxHeight, Function<Class<?>, Object> rules) {
+        Entry e = find(key, Integer.MAX_VALUE, rules);
+        if (e == null && shared != null) {
+            e = find(shared, maxHeight, rules);
+        }
+        if (e != null) {
+            hitCount.incrementAndGet();
+        } else {
+            missCount.incrementAndGet();
+        }
+        return e;
+    }
+
+    @Nullable
+    private Entry find(Key key, int maxHeight, Function<Class<?>, Object> rules) {
+        List<Entry> variants = cache.getIfPresent(key);
+        if (variants != null) {
+            for (Entry e: variants) {
+                if (e.height <= maxHeight && e.matches(rules)) {
+                    return e;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Add a subgraph to the cache.
+     * @param key The desire key.
+     * @param entry The subgraph and its rule signatures.
+     */
+    void store(Key key, Entry entry) {
+        synchronized (cache) {
+            List<Entry> variants = cache.getIfPresent(key);
+            ImmutableList.Builder<Entry> bld = ImmutableList.builder();
+            bld.add(entry);
+            if (variants != null) {
+                int n = 1;
+                for (Entry e: variants) {
+                    if (n >= MAX_VARIANTS) {
+                        break;
+                    }
+                    if (!e.typeRules.equals(entry.typeRules)) {
+                        bld.add(e);
+                        n += 1;
+                    }
+                }
+            }
+            cache.put(key, bld.build());
+        }
+    }
+
+    /**
+     * The key of a cached subgraph: the desire, its context, and the solver's rule-independent
+     * configuration.  Subgraphs whose bindings are all context-free are cached without a context,
+     * so they are shared between contexts.
+     */
+    static final class Key {
+        private final Object solver;
+        private final Desire desire;
+        @Nullable
+        private final InjectionContext context;
+        private final int hash;
+
+        Key(Object solver, Desire desire, @Nullable InjectionContext context) {
+            this.solver = solver;
+            this.desire = desire;
+            this.context = context;
+            hash = new HashCodeBuilder().append(solver)
+                                        .append(desire)
+                                        .append(context)
+                                        .toHashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o == this) {
+                return true;
+            } else if (o instanceof Key) {
+                Key ok = (Key) o;
+                return hash == ok.hash && desire.equals(ok.desire)
+                        && Objects.equal(context, ok.context) && solver.equals(ok.solver);
+            } else {
+                return false;
+            }
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        /**
+         * Get the key for sharing this key's subgraph between contexts.
+         * @return A key for the same desire and solver without a context.
+         */
+        Key withoutContext() {
+            return new Key(solver, desire, null);
+        }
+    }
+
+    /**
+     * A cached subgraph.
+     */
+    static final class Entry {
+        private final DAGNode<Component, Dependency> node;
+        private final Dependency dependency;
+        private final ImmutableMap<Class<?>, Object> typeRules;
+        private final int height;
+
+        Entry(DAGNode<Component, Dependency> node, Dependency dep,
+              Map<Class<?>, Object> rules, int height) {
+            this.node = node;
+            dependency = dep;
+            typeRules = ImmutableMap.copyOf(rules);
+            this.height = height;
+        }
+
+        DAGNode<Component, Dependency> getNode() {
+            return node;
+        }
+
+        Dependency getDependency() {
+            return dependency;
+        }
+
+        /**
+         * Get an upper bound on the height of the subgraph, in nodes.
+         */
+        int getHeight() {
+            return height;
+        }
+
+        /**
+         * Get the types queried while resolving the subgraph.
+         */
+        Iterable<Class<?>> getTypes() {
+            return typeRules.keySet();
+        }
+
+        boolean matches(Function<Class<?>, Object> rules) {
+            for (Map.Entry<Class<?>, Object> e: typeRules.entrySet()) {
+                if (!e.getValue().equals(rules.apply(e.getKey()))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
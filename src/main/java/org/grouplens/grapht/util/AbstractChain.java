@@ -19,27 +19,41 @@
  */
 package org.grouplens.grapht.util;
 
-import com.google.common.collect.Iterators;
+import com.google.common.collect.UnmodifiableIterator;
 
 import javax.annotation.Nonnull;
 import java.io.Serializable;
 import java.util.AbstractList;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 /**
  * Base class for implementing chains, immutable reverse singly-linked lists.
  *
+ * <p>Chains also keep their elements in arrays for constant-time indexed access and cheap
+ * iteration.  Extending a chain shares the chain's array if no other chain has extended it yet,
+ * so a chain and all its prefixes usually share a single array.  Hash codes are computed once
+ * per chain, from the hash code of the previous chain.</p>
+ *
  * @since 0.7.0
  * @author <a href="http://www.grouplens.org">GroupLens Research</a>
  */
 public abstract class AbstractChain<E extends Serializable> extends AbstractList<E> implements Serializable {
     private static final long serialVersionUID = 1L;
+    private static final int INITIAL_CAPACITY = 4;
 
     protected final AbstractChain<E> previous;
     protected final E tailValue;
     protected final int length;
 
+    /**
+     * The elements, shared with the chain's prefixes.  This is {@code null} in deserialized
+     * chains, which use their links instead.
+     */
+    private final transient Buffer buffer;
+    private transient volatile int hashCode;
+
     /**
      * Construct a new chain node.
      * @param prev The previous node, or {@code null} for a singleton chain.
@@ -50,8 +64,36 @@ public abstract class AbstractChain<E extends Serializable> extends AbstractList
         tailValue = tv;
         if (prev == null) {
             length = 1;
+            buffer = new Buffer(INITIAL_CAPACITY);
+            buffer.elements[0] = tv;
+            buffer.used = 1;
         } else {
             length = prev.length + 1;
+            Buffer pb = prev.buffer;
+            if (pb != null && pb.claim(prev.length)) {
+                // we are the first to extend prev, so we can append to its array
+                buffer = pb;
+            } else {
+                buffer = new Buffer(Math.max(INITIAL_CAPACITY, length * 2));
+                prev.copyInto(buffer.elements);
+                buffer.used = length;
+            }
+            buffer.elements[length - 1] = tv;
+        }
+    }
+
+    /**
+     * Copy this chain's elements into an array.
+     */
+    private void copyInto(Object[] array) {
+        if (buffer != null) {
+            System.arraycopy(buffer.elements, 0, array, 0, length);
+        } else {
+            AbstractChain<E> cur = this;
+            while (cur != null) {
+                array[cur.length - 1] = cur.tailValue;
+                cur = cur.previous;
+            }
         }
     }
 
@@ -65,10 +107,13 @@ public abstract class AbstractChain<E extends Serializable> extends AbstractList
     }
 
     @Override
+    @SuppressWarnings("unchecked")
     public E get(int i) {
         com.google.common.base.Preconditions.checkElementIndex(i, length);
         if (i == length - 1) {
             return tailValue;
+        } else if (buffer != null) {
+            return (E) buffer.elements[i];
         } else {
             assert previous != null;
             return previous.get(i);
@@ -78,12 +123,30 @@ public abstract class AbstractChain<E extends Serializable> extends AbstractList
     @Nonnull
     @Override
     public Iterator<E> iterator() {
-        Iterator<E> current = Iterators.singletonIterator(tailValue);
-        if (previous == null) {
-            return current;
+        final Object[] elements;
+        if (buffer != null) {
+            elements = buffer.elements;
         } else {
-            return Iterators.concat(previous.iterator(), current);
+            elements = new Object[length];
+            copyInto(elements);
         }
+        return new UnmodifiableIterator<E>() {
+            int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < length;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public E next() {
+                if (next >= length) {
+                    throw new NoSuchElementException();
+                }
+                return (E) elements[next++];
+            }
+        };
     }
 
     /**
@@ -124,10 +187,18 @@ public abstract class AbstractChain<E extends Serializable> extends AbstractList
         };
     }
 
+    /**
+     * Compute the list hash code, extending the memoized hash code of the previous chain.
+     */
     @Override
     public int hashCode() {
-        // override hashCode so that lint tools don't complain
-        return super.hashCode();
+        int h = hashCode;
+        if (h == 0) {
+            h = previous == null ? 1 : previous.hashCode();
+            h = 31 * h + (tailValue == null ? 0 : tailValue.hashCode());
+            hashCode = h;
+        }
+        return h;
     }
 
     @Override
@@ -136,10 +207,54 @@ public abstract class AbstractChain<E extends Serializable> extends AbstractList
             return true;
         } else if (o instanceof AbstractChain) {
             // optimize comparing two chains
-            return Iterators.elementsEqual(reverseIterator(),
-                                           ((AbstractChain) o).reverseIterator());
+            AbstractChain<?> cur = this;
+            AbstractChain<?> other = (AbstractChain<?>) o;
+            if (cur.length != other.length || cur.hashCode() != other.hashCode()) {
+                return false;
+            }
+            while (cur != null) {
+                if (cur == other) {
+                    // shared prefix
+                    return true;
+                }
+                Object v = cur.tailValue;
+                Object ov = other.tailValue;
+                if (v == null ? ov != null : !v.equals(ov)) {
+                    return false;
+                }
+                cur = cur.previous;
+                other = other.previous;
+            }
+            return true;
         } else {
             return super.equals(o);
         }
     }
+
+    /**
+     * An element array shared by a chain and its prefixes.
+     */
+    private static final class Buffer {
+        private static final AtomicIntegerFieldUpdater<Buffer> USED =
+                AtomicIntegerFieldUpdater.newUpdater(Buffer.class, "used");
+
+        private final Object[] elements;
+        /**
+         * The number of slots claimed by chains.
+         */
+        private volatile int used;
+
+        Buffer(int capacity) {
+            elements = new Object[capacity];
+        }
+
+        /**
+         * Claim the next slot for a chain extending one of the given length.
+         * @return {@code true} if the slot was free and has been claimed.
+         */
+        boolean claim(int prefixLength) {
+            return prefixLength < elements.length
+                    && USED.compareAndSet(this, prefixLength, prefixLength + 1);
+        }
+    }
 }
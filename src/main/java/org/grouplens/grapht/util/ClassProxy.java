@@ -19,6 +19,10 @@
  */
 package org.grouplens.grapht.util;
 
+import com.google.common.collect.MapMaker;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
 import org.apache.commons.lang3.ClassUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
@@ -37,6 +41,9 @@ import java.nio.charset.Charset;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
 
 /**
  * A serialization proxy for class instances.  This serializable class encapsulates a simple
@@ -79,6 +86,15 @@ public final class ClassProxy implements Serializable {
         return className;
     }
 
+    /**
+     * Get the checksum of the class's injection-relevant members.  Two proxies of a class with
+     * different checksums indicate that the class has changed in a way that may affect injection.
+     * @return The class checksum.
+     */
+    public long getChecksum() {
+        return checksum;
+    }
+
     @Override
     public String toString() {
         return "proxy of " + className;
@@ -129,7 +145,11 @@ public final class ClassProxy implements Serializable {
         return cls;
     }
 
-    private static final Map<Class<?>, ClassProxy> proxyCache = new WeakHashMap<Class<?>, ClassProxy>();
+    // weak keys are compared by identity, which is how classes compare anyway
+    private static final ConcurrentMap<Class<?>, ClassProxy> proxyCache =
+            new MapMaker().weakKeys().makeMap();
+    private static final ConcurrentMap<Class<?>, Long> checksumCache =
+            new MapMaker().weakKeys().makeMap();
 
     /**
      * Construct a class proxy for a class.
@@ -137,16 +157,58 @@ public final class ClassProxy implements Serializable {
      * @param cls The class.
      * @return The class proxy.
      */
-    public static synchronized ClassProxy of(Class<?> cls) {
+    public static ClassProxy of(Class<?> cls) {
         ClassProxy proxy = proxyCache.get(cls);
         if (proxy == null) {
             proxy = new ClassProxy(cls.getName(), checksumClass(cls));
             proxy.theClass = new WeakReference<Class<?>>(cls);
-            proxyCache.put(cls, proxy);
+            ClassProxy prior = proxyCache.putIfAbsent(cls, proxy);
+            if (prior != null) {
+                // another thread got there first
+                proxy = prior;
+            }
         }
         return proxy;
     }
 
+    /**
+     * Get the checksum of a class, as used by its proxies.  Checksums are computed once per class
+     * and cached.
+     *
+     * @param cls The class.
+     * @return The class checksum.
+     * @see #getChecksum()
+     * @since 0.11
+     */
+    public static long checksumOf(Class<?> cls) {
+        return checksumClass(cls);
+    }
+
+    /**
+     * Compute the checksum of a class on an executor.  This allows callers verifying many classes,
+     * such as graph readers, to compute checksums in parallel.  If the checksum is already
+     * cached, the returned future is already complete.
+     *
+     * @param cls The class.
+     * @param executor The executor to compute the checksum.
+     * @return A future for the class checksum.
+     * @since 0.11
+     */
+    public static ListenableFuture<Long> checksumAsync(final Class<?> cls, Executor executor) {
+        Long check = checksumCache.get(cls);
+        if (check != null) {
+            return Futures.immediateFuture(check);
+        }
+        ListenableFutureTask<Long> task = ListenableFutureTask.create(new Callable<Long>() {
+            @Override
+            public Long call() {
+                return checksumClass(cls);
+            }
+        });
+        executor.execute(task);
+        return task;
+    }
+
     private static final Charset UTF8 = Charset.forName("UTF-8");
 
     public static boolean isSerializationPermissive() {
@@ -164,9 +226,24 @@ public final class ClassProxy implements Serializable {
      * </p>
      *
      * @param type The class to checksum.
-     * @return The
+     * @return The checksum.
      */
     private static long checksumClass(Class<?> type) {
+        Long check = checksumCache.get(type);
+        if (check == null) {
+            // racing threads compute the same value, so a duplicate computation is harmless
+            check = computeChecksum(type);
+            checksumCache.put(type, check);
+        }
+        return check;
+    }
+
+    /**
+     * Compute the checksum for a class, bypassing the cache.
+     * @param type The class to checksum.
+     * @return The checksum.
+     */
+    private static long computeChecksum(Class<?> type) {
         MessageDigest digest;
         try {
             digest = MessageDigest.getInstance("MD5");
@@ -0,0 +1,427 @@
+/*
+ * Grapht, an open source dependency injector.
+ * Copyright 2014-2015 various contributors (see CONTRIBUTORS.txt)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.grapht.util;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * Index of the default bindings declared in {@code META-INF}.  A module declares the defaults
+ * of a type {@code com.example.Foo} in {@code META-INF/grapht/defaults/com.example.Foo.properties};
+ * {@link org.grouplens.grapht.annotation.InjectionIndexProcessor} aggregates a module's files
+ * into a single index at {@value #INDEX_PATH}, with each property prefixed by its type name:
+ * <pre>
+ * com.example.Foo.implementation=com.example.FooImpl
+ * com.example.Foo.cachePolicy=MEMOIZE
+ * </pre>
+ *
+ * <p>This class reads the indexes visible to a class loader once, so that looking up defaults
+ * does not search the class path for each type.  Modules are merged in class path order, so
+ * earlier modules shadow later ones whether or not they are indexed.  Modules whose defaults are
+ * not indexed, or whose index names different types than their files or is older than one of
+ * them (a stale index), are listed instead if they are directories or jar files; if some module
+ * can be neither read nor listed, the index is incomplete and callers must also look for the
+ * type's own file.  An index that names the right types and is newer than its files is trusted
+ * without comparing their contents.</p>
+ *
+ * @since 0.11
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+@Immutable
+public final class DefaultsIndex {
+    private static final Logger logger = LoggerFactory.getLogger(DefaultsIndex.class);
+
+    /**
+     * The resource directory containing the per-type defaults files.
+     */
+    public static final String DEFAULTS_PATH = "META-INF/grapht/defaults/";
+
+    /**
+     * The resource path of the aggregated defaults index in each module.
+     */
+    public static final String INDEX_PATH = "META-INF/grapht/defaults-index";
+
+    private static final String SUFFIX = ".properties";
+
+    private static final DefaultsIndex EMPTY =
+            new DefaultsIndex(ImmutableMap.<String, Map<String, String>>of(), true);
+
+    private static final LoadingCache<ClassLoader, DefaultsIndex> indexCache =
+            CacheBuilder.newBuilder()
+                        .weakKeys()
+                        .build(new CacheLoader<ClassLoader, DefaultsIndex>() {
+                            @Override
+                            public DefaultsIndex load(ClassLoader key) {
+                                return read(key);
+                            }
+                        });
+
+    private final Map<String, Map<String, String>> defaults;
+    private final boolean complete;
+
+    private DefaultsIndex(Map<String, Map<String, String>> defaults, boolean complete) {
+        this.defaults = defaults;
+        this.complete = complete;
+    }
+
+    /**
+     * Get the defaults index visible to a class loader.
+     * @param loader The class loader, or {@code null} for the bootstrap class loader (which has no
+     *               defaults).
+     * @return The merged defaults of all modules visible to the class loader.
+     */
+    @Nonnull
+    public static DefaultsIndex forClassLoader(@Nullable ClassLoader loader) {
+        if (loader == null) {
+            return EMPTY;
+        }
+        return indexCache.getUnchecked(loader);
+    }
+
+    /**
+     * Get the default properties of a type.
+     * @param typeName The canonical name of the type.
+     * @return The type's default properties ({@code provider}, {@code implementation},
+     *         {@code skipIfUnusable} and {@code cachePolicy}), or {@code null} if the index has no
+     *         defaults for the type.
+     */
+    @Nullable
+    public Map<String, String> getDefaults(String typeName) {
+        return defaults.get(typeName);
+    }
+
+    /**
+     * Query whether the index has the defaults of every module.
+     * @return {@code true} if every module's defaults were indexed or listed, so types that are
+     *         not in the index have no defaults.
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * Get the number of types with defaults in the index.
+     * @return The number of types in the index.
+     */
+    public int size() {
+        return defaults.size();
+    }
+
+    private static DefaultsIndex read(ClassLoader loader) {
+        Map<String, Map<String, String>> defaults = Maps.newHashMap();
+        boolean complete = true;
+        try {
+            // earlier modules shadow later ones, as with class loading
+            for (Map.Entry<String, URL> module: modules(loader).entrySet()) {
+                String root = module.getKey();
+                URL index = module.getValue();
+                try {
+                    Map<String, Map<String, String>> found = readModule(root, index);
+                    if (found == null) {
+                        logger.debug("cannot list defaults in {}", root);
+                        complete = false;
+                    } else {
+                        merge(defaults, found);
+                    }
+                } catch (IOException e) {
+                    logger.warn("cannot read defaults in " + root, e);
+                    complete = false;
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("cannot find defaults indexes", e);
+            complete = false;
+        }
+        logger.debug("read defaults of {} types for {}", defaults.size(), loader);
+        if (defaults.isEmpty() && complete) {
+            return EMPTY;
+        }
+        return new DefaultsIndex(ImmutableMap.copyOf(defaults), complete);
+    }
+
+    /**
+     * Find the modules with defaults visible to a class loader.
+     * @param loader The class loader.
+     * @return The modules' roots in class path order, each with the URL of its index or
+     *         {@code null} if it is not indexed.
+     */
+    private static Map<String, URL> modules(ClassLoader loader) throws IOException {
+        List<String> indexRoots = Lists.newArrayList();
+        Map<String, URL> indexes = Maps.newHashMap();
+        Enumeration<URL> urls = loader.getResources(INDEX_PATH);
+        while (urls.hasMoreElements()) {
+            URL url = urls.nextElement();
+            String root = moduleRoot(url, INDEX_PATH);
+            indexRoots.add(root);
+            indexes.put(root, url);
+        }
+
+        // Both enumerations follow the class path, so interleave them.  Indexed modules without a
+        // defaults directory entry (jars built without directory entries) go just before the next
+        // indexed module that has one.
+        Map<String, URL> modules = Maps.newLinkedHashMap();
+        Iterator<String> pending = indexRoots.iterator();
+        urls = loader.getResources(DEFAULTS_PATH);
+        while (urls.hasMoreElements()) {
+            String root = moduleRoot(urls.nextElement(), DEFAULTS_PATH);
+            if (indexes.containsKey(root)) {
+                while (pending.hasNext()) {
+                    String ir = pending.next();
+                    modules.put(ir, indexes.get(ir));
+                    if (ir.equals(root)) {
+                        break;
+                    }
+                }
+            } else {
+                modules.put(root, null);
+            }
+        }
+        while (pending.hasNext()) {
+            String ir = pending.next();
+            modules.put(ir, indexes.get(ir));
+        }
+        return modules;
+    }
+
+    /**
+     * Read the defaults of a module.  A module's index is used only if it is current: it must
+     * name the same types as the module's defaults files, and no file may be newer than it.
+     * Otherwise the resources changed without the index being regenerated (or the module was
+     * built without the index processor), so the files themselves are read.  The contents of
+     * the files are not compared with the index.
+     *
+     * @param root The module root.
+     * @param index The URL of the module's index, or {@code null} if it has none.
+     * @return The module's defaults, or {@code null} if it has no usable index and its files
+     *         cannot be listed.
+     * @throws IOException if there is an error reading the defaults.
+     */
+    @Nullable
+    private static Map<String, Map<String, String>> readModule(String root, @Nullable URL index)
+            throws IOException {
+        URL dir = new URL(root + DEFAULTS_PATH);
+        Map<String, Long> files = list(dir);
+        if (index != null) {
+            Map<String, Map<String, String>> indexed;
+            InputStream in = index.openStream();
+            try {
+                indexed = parse(in);
+            } finally {
+                in.close();
+            }
+            if (files == null || isCurrent(indexed, lastModified(index), files)) {
+                return indexed;
+            }
+            logger.debug("defaults index {} is stale, reading its files", index);
+        }
+        if (files == null) {
+            return null;
+        }
+        logger.debug("reading unindexed defaults in {}", dir);
+        Map<String, Map<String, String>> defaults = Maps.newHashMap();
+        for (String type: files.keySet()) {
+            InputStream in = new URL(dir, type + SUFFIX).openStream();
+            try {
+                defaults.put(type, load(in));
+            } finally {
+                in.close();
+            }
+        }
+        return defaults;
+    }
+
+    private static boolean isCurrent(Map<String, Map<String, String>> indexed, long indexTime,
+                                     Map<String, Long> files) {
+        if (!indexed.keySet().equals(files.keySet())) {
+            return false;
+        }
+        if (indexTime > 0) {
+            for (long time: files.values()) {
+                if (time > indexTime) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static void merge(Map<String, Map<String, String>> defaults,
+                              Map<String, Map<String, String>> more) {
+        for (Map.Entry<String, Map<String, String>> e: more.entrySet()) {
+            if (!defaults.containsKey(e.getKey())) {
+                defaults.put(e.getKey(), e.getValue());
+            }
+        }
+    }
+
+    private static String moduleRoot(URL url, String path) {
+        String str = url.toExternalForm();
+        if (str.endsWith(path)) {
+            return str.substring(0, str.length() - path.length());
+        } else {
+            return str;
+        }
+    }
+
+    /**
+     * Parse a defaults index.
+     * @param in The input stream.
+     * @return The defaults, by type name.
+     * @throws IOException if there is an error reading the index.
+     */
+    static Map<String, Map<String, String>> parse(InputStream in) throws IOException {
+        Properties props = new Properties();
+        props.load(in);
+        Map<String, Map<String, String>> builders = Maps.newHashMap();
+        for (String key: props.stringPropertyNames()) {
+            int dot = key.lastIndexOf('.');
+            if (dot <= 0) {
+                logger.warn("invalid defaults index key {}", key);
+                continue;
+            }
+            String type = key.substring(0, dot);
+            Map<String, String> typeProps = builders.get(type);
+            if (typeProps == null) {
+                typeProps = Maps.newHashMap();
+                builders.put(type, typeProps);
+            }
+            typeProps.put(key.substring(dot + 1), props.getProperty(key));
+        }
+        Map<String, Map<String, String>> defaults = Maps.newHashMap();
+        for (Map.Entry<String, Map<String, String>> e: builders.entrySet()) {
+            defaults.put(e.getKey(), ImmutableMap.copyOf(e.getValue()));
+        }
+        return defaults;
+    }
+
+    /**
+     * List the defaults files in a defaults directory.
+     * @param url The URL of the directory.
+     * @return The modification times of the defaults files (or 0 if unknown), by type name, or
+     *         {@code null} if the directory cannot be listed.
+     * @throws IOException if there is an error listing the directory.
+     */
+    @Nullable
+    private static Map<String, Long> list(URL url) throws IOException {
+        Map<String, Long> files = Maps.newHashMap();
+        if (url.getProtocol().equals("file")) {
+            File dir;
+            try {
+                dir = new File(url.toURI());
+            } catch (URISyntaxException e) {
+                return null;
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+            if (!dir.exists()) {
+                return files;
+            }
+            File[] contents = dir.listFiles();
+            if (contents == null) {
+                return null;
+            }
+            for (File file: contents) {
+                String name = file.getName();
+                if (name.endsWith(SUFFIX) && file.isFile()) {
+                    files.put(name.substring(0, name.length() - SUFFIX.length()),
+                              file.lastModified());
+                }
+            }
+            return files;
+        }
+
+        URLConnection conn = url.openConnection();
+        if (!(conn instanceof JarURLConnection)) {
+            return null;
+        }
+        JarFile jar = ((JarURLConnection) conn).getJarFile();
+        Enumeration<JarEntry> entries = jar.entries();
+        while (entries.hasMoreElements()) {
+            JarEntry entry = entries.nextElement();
+            String name = entry.getName();
+            if (name.startsWith(DEFAULTS_PATH) && name.endsWith(SUFFIX)
+                    && name.indexOf('/', DEFAULTS_PATH.length()) < 0) {
+                files.put(name.substring(DEFAULTS_PATH.length(), name.length() - SUFFIX.length()),
+                          Math.max(entry.getTime(), 0));
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Get the modification time of a resource.
+     * @param url The resource URL.
+     * @return The modification time, or 0 if it is unknown.
+     */
+    private static long lastModified(URL url) throws IOException {
+        if (url.getProtocol().equals("file")) {
+            try {
+                return new File(url.toURI()).lastModified();
+            } catch (URISyntaxException e) {
+                return 0;
+            } catch (IllegalArgumentException e) {
+                return 0;
+            }
+        }
+        URLConnection conn = url.openConnection();
+        if (conn instanceof JarURLConnection) {
+            JarEntry entry = ((JarURLConnection) conn).getJarEntry();
+            return entry == null ? 0 : Math.max(entry.getTime(), 0);
+        }
+        return 0;
+    }
+
+    /**
+     * Load the properties of a per-type defaults file.
+     * @param in The input stream.
+     * @return The properties.
+     * @throws IOException if there is an error reading the file.
+     */
+    public static Map<String, String> load(InputStream in) throws IOException {
+        Properties props = new Properties();
+        props.load(in);
+        return ImmutableMap.copyOf(Maps.fromProperties(props));
+    }
+}
@@ -0,0 +1,518 @@
+/*
+ * Grapht, an open source dependency injector.
+ * Copyright 2014-2015 various contributors (see CONTRIBUTORS.txt)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.grapht.util;
+
+import com.google.common.base.Charsets;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import org.apache.commons.lang3.ClassUtils;
+import org.apache.commons.lang3.reflect.MethodUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.concurrent.Immutable;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.net.URL;
+import java.util.*;
+
+/**
+ * Index of the injection metadata of classes, generated at build time by
+ * {@link org.grouplens.grapht.annotation.InjectionIndexProcessor}.  Each module compiled with
+ * the processor contains an index of its classes with injection annotations at
+ * {@value #INDEX_PATH}; this class reads and merges the indexes visible to a class loader.
+ *
+ * <p>Grapht uses the index to find a class's injectable constructors, fields and methods, its
+ * lifecycle methods, and whether it has default annotations, without scanning all of its
+ * members.  Classes that are not indexed, or whose index entries no longer match the class,
+ * are scanned with reflection as usual.  Non-static inner classes are never indexed.  Negative
+ * answers are checked cheaply against the class, since a stale index must not hide injection
+ * points or defaults.</p>
+ *
+ * <p>Qualifier annotations are not indexed; {@link org.grouplens.grapht.reflect.Qualifiers}
+ * already caches their traits per annotation type.</p>
+ *
+ * @since 0.11
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+@Immutable
+public final class InjectionIndex {
+    private static final Logger logger = LoggerFactory.getLogger(InjectionIndex.class);
+
+    /**
+     * The resource path of the injection index in each module.
+     */
+    public static final String INDEX_PATH = "META-INF/grapht/injection-index";
+
+    /**
+     * Flag marking methods annotated with {@link javax.inject.Inject}.
+     */
+    public static final String INJECT = "inject";
+    /**
+     * Flag marking methods annotated with {@link PostConstruct}.
+     */
+    public static final String POST_CONSTRUCT = "post-construct";
+    /**
+     * Flag marking methods annotated with {@link PreDestroy}.
+     */
+    public static final String PRE_DESTROY = "pre-destroy";
+
+    private static final InjectionIndex EMPTY = new InjectionIndex(ImmutableMap.<String, ClassEntry>of());
+
+    // the index holds only names, so it does not keep its class loader alive
+    private static final LoadingCache<ClassLoader, InjectionIndex> indexCache =
+            CacheBuilder.newBuilder()
+                        .weakKeys()
+                        .build(new CacheLoader<ClassLoader, InjectionIndex>() {
+                            @Override
+                            public InjectionIndex load(ClassLoader key) {
+                                return read(key);
+                            }
+                        });
+
+    private final Map<String, ClassEntry> entries;
+
+    private InjectionIndex(Map<String, ClassEntry> entries) {
+        this.entries = entries;
+    }
+
+    /**
+     * Get the injection index visible to a class loader.
+     * @param loader The class loader, or {@code null} for the bootstrap class loader (which has no
+     *               index).
+     * @return The merged index of all modules visible to the class loader.
+     */
+    @Nonnull
+    public static InjectionIndex forClassLoader(@Nullable ClassLoader loader) {
+        if (loader == null) {
+            return EMPTY;
+        }
+        return indexCache.getUnchecked(loader);
+    }
+
+    /**
+     * Look up the index entry for a class.
+     * @param type The class.
+     * @return The class's entry in the index of its class loader, or {@code null} if the class
+     *         is not indexed.
+     */
+    @Nullable
+    public static ClassEntry lookup(Class<?> type) {
+        return forClassLoader(type.getClassLoader()).getEntry(type.getName());
+    }
+
+    private static InjectionIndex read(ClassLoader loader) {
+        Enumeration<URL> urls;
+        try {
+            urls = loader.getResources(INDEX_PATH);
+        } catch (IOException e) {
+            logger.warn("cannot find injection indexes", e);
+            return EMPTY;
+        }
+        Map<String, ClassEntry> entries = Maps.newHashMap();
+        while (urls.hasMoreElements()) {
+            URL url = urls.nextElement();
+            try {
+                InputStream in = url.openStream();
+                try {
+                    Map<String, ClassEntry> parsed = parse(in);
+                    for (Map.Entry<String, ClassEntry> e: parsed.entrySet()) {
+                        // earlier modules shadow later ones, as with class loading
+                        if (!entries.containsKey(e.getKey())) {
+                            entries.put(e.getKey(), e.getValue());
+                        }
+                    }
+                } finally {
+                    in.close();
+                }
+            } catch (IOException e) {
+                logger.warn("cannot read injection index " + url, e);
+            } catch (IllegalArgumentException e) {
+                logger.warn("invalid injection index " + url, e);
+            }
+        }
+        logger.debug("read injection index of {} classes for {}", entries.size(), loader);
+        return entries.isEmpty() ? EMPTY : new InjectionIndex(ImmutableMap.copyOf(entries));
+    }
+
+    /**
+     * Parse an injection index.
+     * @param in The input stream.
+     * @return The index entries, by class name.
+     * @throws IOException if there is an error reading the index.
+     * @throws IllegalArgumentException if the index is malformed.
+     */
+    static Map<String, ClassEntry> parse(InputStream in) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, Charsets.UTF_8));
+        Map<String, ClassEntry> entries = Maps.newLinkedHashMap();
+        ClassEntry.Builder current = null;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] words = line.split("\\s+");
+            String key = words[0];
+            if (key.equals("class")) {
+                if (current != null) {
+                    entries.put(current.className, current.build());
+                }
+                checkWords(line, words, 2, 2);
+                current = new ClassEntry.Builder(words[1]);
+                continue;
+            }
+            if (current == null) {
+                throw new IllegalArgumentException("entry outside class: " + line);
+            }
+            if (key.equals("instantiable")) {
+                current.instantiable = true;
+            } else if (key.equals("defaults")) {
+                current.defaults = true;
+            } else if (key.equals("ctor")) {
+                checkWords(line, words, 2, 2);
+                current.constructors.add(parseParameters(line, words[1]));
+            } else if (key.equals("field")) {
+                checkWords(line, words, 2, 2);
+                current.fields.add(words[1]);
+            } else if (key.equals("method")) {
+                checkWords(line, words, 3, Integer.MAX_VALUE);
+                String sig = words[2];
+                int paren = sig.indexOf('(');
+                if (paren <= 0) {
+                    throw new IllegalArgumentException("invalid method: " + line);
+                }
+                ImmutableSet.Builder<String> flags = ImmutableSet.builder();
+                for (int i = 3; i < words.length; i++) {
+                    flags.add(words[i]);
+                }
+                current.methods.add(new MethodEntry(parseAccess(line, words[1]), sig.substring(0, paren),
+                                                    parseParameters(line, sig.substring(paren)),
+                                                    flags.build()));
+            } else {
+                throw new IllegalArgumentException("unknown entry: " + line);
+            }
+        }
+        if (current != null) {
+            entries.put(current.className, current.build());
+        }
+        return entries;
+    }
+
+    private static void checkWords(String line, String[] words, int min, int max) {
+        if (words.length < min || words.length > max) {
+            throw new IllegalArgumentException("invalid entry: " + line);
+        }
+    }
+
+    private static List<String> parseParameters(String line, String params) {
+        if (!params.startsWith("(") || !params.endsWith(")")) {
+            throw new IllegalArgumentException("invalid parameter list: " + line);
+        }
+        String inner = params.substring(1, params.length() - 1);
+        if (inner.isEmpty()) {
+            return ImmutableList.of();
+        }
+        return ImmutableList.copyOf(inner.split(","));
+    }
+
+    private static int parseAccess(String line, String access) {
+        if (access.equals("public")) {
+            return Modifier.PUBLIC;
+        } else if (access.equals("protected")) {
+            return Modifier.PROTECTED;
+        } else if (access.equals("private")) {
+            return Modifier.PRIVATE;
+        } else if (access.equals("package")) {
+            return 0;
+        } else {
+            throw new IllegalArgumentException("invalid access: " + line);
+        }
+    }
+
+    /**
+     * Get the number of classes in the index.
+     * @return The number of indexed classes.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Get the entry for a class.
+     * @param className The binary name of the class.
+     * @return The class's entry, or {@code null} if it is not indexed.
+     */
+    @Nullable
+    public ClassEntry getEntry(String className) {
+        return entries.get(className);
+    }
+
+    /**
+     * Resolve the parameter types of an indexed constructor or method.
+     * @param owner The class declaring the member; its class loader is used to load the types.
+     * @param names The binary names of the parameter types, with {@code []} suffixes for arrays.
+     * @return The parameter types.
+     * @throws ClassNotFoundException if a type cannot be loaded.
+     */
+    public static Class<?>[] resolveTypes(Class<?> owner, List<String> names) throws ClassNotFoundException {
+        Class<?>[] types = new Class<?>[names.size()];
+        for (int i = 0; i < types.length; i++) {
+            types[i] = ClassUtils.getClass(owner.getClassLoader(), names.get(i), false);
+        }
+        return types;
+    }
+
+    /**
+     * Get the name of a type in the form used by the index: its binary name, with {@code []}
+     * suffixes for arrays.
+     * @param type The type.
+     * @return The type's index name.
+     */
+    public static String typeName(Class<?> type) {
+        if (type.isArray()) {
+            return typeName(type.getComponentType()) + "[]";
+        } else {
+            return type.getName();
+        }
+    }
+
+    /**
+     * Get the public methods of a class annotated with {@link PostConstruct}, as
+     * {@link MethodUtils#getMethodsListWithAnnotation(Class, Class)} would find them.
+     * @param type The class.
+     * @return The post-construct methods.
+     */
+    public static List<Method> getPostConstructMethods(Class<?> type) {
+        return getLifecycleMethods(type, PostConstruct.class, POST_CONSTRUCT);
+    }
+
+    /**
+     * Get the public methods of a class annotated with {@link PreDestroy}, as
+     * {@link MethodUtils#getMethodsListWithAnnotation(Class, Class)} would find them.
+     * @param type The class.
+     * @return The pre-destroy methods.
+     */
+    public static List<Method> getPreDestroyMethods(Class<?> type) {
+        return getLifecycleMethods(type, PreDestroy.class, PRE_DESTROY);
+    }
+
+    private static List<Method> getLifecycleMethods(Class<?> type, Class<? extends Annotation> annot,
+                                                    String flag) {
+        List<Method> methods = new ArrayList<Method>();
+        Set<String> seen = new HashSet<String>();
+        Class<?> cls = type;
+        // the index covers the superclass chain; interface methods must be implemented anyway
+        while (cls != null && cls != Object.class) {
+            ClassEntry entry = lookup(cls);
+            if (entry == null) {
+                return MethodUtils.getMethodsListWithAnnotation(type, annot);
+            }
+            for (MethodEntry me: entry.getMethods()) {
+                if (me.getModifiers() != Modifier.PUBLIC) {
+                    continue;
+                }
+                // public methods are overridden by name and parameter types
+                if (seen.add(me.getName() + me.getParameterTypes()) && me.hasFlag(flag)) {
+                    try {
+                        Method m = cls.getDeclaredMethod(me.getName(), resolveTypes(cls, me.getParameterTypes()));
+                        if (m.getAnnotation(annot) == null) {
+                            logger.debug("stale injection index for {}", cls);
+                            return MethodUtils.getMethodsListWithAnnotation(type, annot);
+                        }
+                        methods.add(m);
+                    } catch (NoSuchMethodException e) {
+                        logger.debug("stale injection index for {}", cls);
+                        return MethodUtils.getMethodsListWithAnnotation(type, annot);
+                    } catch (ClassNotFoundException e) {
+                        logger.debug("stale injection index for {}", cls);
+                        return MethodUtils.getMethodsListWithAnnotation(type, annot);
+                    }
+                }
+            }
+            cls = cls.getSuperclass();
+        }
+        return methods;
+    }
+
+    /**
+     * The indexed metadata of a class.
+     */
+    @Immutable
+    public static final class ClassEntry {
+        private final String className;
+        private final boolean instantiable;
+        private final boolean defaults;
+        private final List<List<String>> constructors;
+        private final List<String> fields;
+        private final List<MethodEntry> methods;
+
+        private ClassEntry(Builder bld) {
+            className = bld.className;
+            instantiable = bld.instantiable;
+            defaults = bld.defaults;
+            constructors = ImmutableList.copyOf(bld.constructors);
+            fields = ImmutableList.copyOf(bld.fields);
+            methods = ImmutableList.copyOf(bld.methods);
+        }
+
+        /**
+         * Get the name of the class.
+         * @return The class's binary name.
+         */
+        public String getClassName() {
+            return className;
+        }
+
+        /**
+         * Query whether the class is instantiable, as defined by
+         * {@link Types#isInstantiable(Class)}.
+         * @return {@code true} if the class is instantiable.
+         */
+        public boolean isInstantiable() {
+            return instantiable;
+        }
+
+        /**
+         * Query whether the class has any of Grapht's {@code Default*} annotations.
+         * @return {@code true} if the class has default annotations.
+         */
+        public boolean hasDefaults() {
+            return defaults;
+        }
+
+        /**
+         * Get the constructors annotated with {@link javax.inject.Inject}.
+         * @return The parameter type names of each injectable constructor.
+         */
+        public List<List<String>> getInjectConstructors() {
+            return constructors;
+        }
+
+        /**
+         * Get the non-static fields annotated with {@link javax.inject.Inject}.
+         * @return The names of the injectable fields.
+         */
+        public List<String> getInjectFields() {
+            return fields;
+        }
+
+        /**
+         * Get all non-static methods declared by the class.
+         * @return The class's methods.
+         */
+        public List<MethodEntry> getMethods() {
+            return methods;
+        }
+
+        @Override
+        public String toString() {
+            return "ClassEntry(" + className + ")";
+        }
+
+        private static class Builder {
+            private final String className;
+            private boolean instantiable;
+            private boolean defaults;
+            private final List<List<String>> constructors = new ArrayList<List<String>>();
+            private final List<String> fields = new ArrayList<String>();
+            private final List<MethodEntry> methods = new ArrayList<MethodEntry>();
+
+            Builder(String name) {
+                className = name;
+            }
+
+            ClassEntry build() {
+                return new ClassEntry(this);
+            }
+        }
+    }
+
+    /**
+     * The indexed metadata of a method.
+     */
+    @Immutable
+    public static final class MethodEntry {
+        private final int modifiers;
+        private final String name;
+        private final List<String> parameterTypes;
+        private final Set<String> flags;
+
+        MethodEntry(int mods, String name, List<String> params, Set<String> flags) {
+            modifiers = mods;
+            this.name = name;
+            parameterTypes = params;
+            this.flags = flags;
+        }
+
+        /**
+         * Get the access modifiers of the method.
+         * @return The method's access modifier ({@link Modifier#PUBLIC}, {@link Modifier#PROTECTED},
+         *         {@link Modifier#PRIVATE}, or 0 for package-private).
+         */
+        public int getModifiers() {
+            return modifiers;
+        }
+
+        /**
+         * Get the method name.
+         * @return The method's name.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Get the method's parameter types.
+         * @return The names of the method's erased parameter types.
+         */
+        public List<String> getParameterTypes() {
+            return parameterTypes;
+        }
+
+        /**
+         * Query whether the method has a flag, such as {@link #INJECT}.
+         * @param flag The flag.
+         * @return {@code true} if the method has the flag.
+         */
+        public boolean hasFlag(String flag) {
+            return flags.contains(flag);
+        }
+
+        @Override
+        public String toString() {
+            return name + parameterTypes + flags;
+        }
+    }
+}
@@ -19,6 +19,7 @@
  */
 package org.grouplens.grapht.util;
 
+import com.google.common.collect.MapMaker;
 import org.apache.commons.lang3.reflect.TypeUtils;
 
 import javax.annotation.Nonnull;
@@ -27,6 +28,7 @@ import javax.inject.Provider;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.*;
 import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Static helper methods for working with types.
@@ -178,9 +180,13 @@ public final class Types {
         }
     }
     
+    // weak keys and values are compared by identity, which is how classes compare anyway
+    private static final ConcurrentMap<Class<?>, Class<?>> providedTypeCache =
+            new MapMaker().weakKeys().weakValues().makeMap();
+
     /**
      * Get the type that is provided by a given implementation of
-     * {@link Provider}.
+     * {@link Provider}.  The result is memoized per provider class.
      * 
      * @param providerClass The provider's class
      * @return The provided class type
@@ -188,6 +194,15 @@ public final class Types {
      *             Provider
      */
     public static Class<?> getProvidedType(Class<? extends Provider<?>> providerClass) {
+        Class<?> type = providedTypeCache.get(providerClass);
+        if (type == null) {
+            type = inferProvidedType(providerClass);
+            providedTypeCache.put(providerClass, type);
+        }
+        return type;
+    }
+
+    private static Class<?> inferProvidedType(Class<? extends Provider<?>> providerClass) {
         com.google.common.base.Preconditions.checkArgument(Provider.class.isAssignableFrom(providerClass),
                                                            "class is not Provider class");
         Map<TypeVariable<?>, Type> bindings = TypeUtils.getTypeArguments(providerClass, Provider.class);
@@ -234,7 +249,14 @@ public final class Types {
      * @return True if the class type is instantiable
      */
     public static boolean isInstantiable(Class<?> type) {
-        if (!Modifier.isAbstract(type.getModifiers()) && !type.isInterface()) {
+        boolean concrete = !Modifier.isAbstract(type.getModifiers()) && !type.isInterface();
+        InjectionIndex.ClassEntry entry = InjectionIndex.lookup(type);
+        if (concrete && entry != null && entry.isInstantiable()) {
+            // trust a positive entry only for a class that is still concrete; a negative one
+            // may be stale, so the class is scanned
+            return true;
+        }
+        if (concrete) {
             // first check for a constructor annotated with @Inject, 
             //  - this doesn't care how many we'll let the injector complain
             //    if there are more than one
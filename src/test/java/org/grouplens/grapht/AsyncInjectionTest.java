@@ -0,0 +1,162 @@
+/*
+ * Grapht, an open source dependency injector.
+ * Copyright 2014-2015 various contributors (see CONTRIBUTORS.txt)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.grapht;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import java.util.concurrent.*;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+/**
+ * Test asynchronous instantiation.
+ */
+public class AsyncInjectionTest {
+    private ExecutorService executor;
+
+    @Before
+    public void createExecutor() {
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @After
+    public void shutdownExecutor() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testGetInstanceAsync() throws Exception {
+        InjectorBuilder b = InjectorBuilder.create();
+        b.bind(CountDownLatch.class).to(new CountDownLatch(0));
+        Injector inj = b.build();
+        ListenableFuture<Root> future = inj.getInstanceAsync(Root.class, executor);
+        Root root = future.get(10, TimeUnit.SECONDS);
+        assertThat(root, notNullValue());
+        // shared components are shared with synchronous injection
+        assertThat(inj.getInstance(Left.class), sameInstance(root.left));
+        assertThat(inj.getInstance(Right.class), sameInstance(root.right));
+    }
+
+    @Test
+    public void testIndependentSubtreesAreConcurrent() throws Exception {
+        // each side blocks until the other has started, so this only completes if they run concurrently
+        CountDownLatch latch = new CountDownLatch(2);
+        InjectorBuilder b = InjectorBuilder.create();
+        b.bind(CountDownLatch.class).to(latch);
+        Injector inj = b.build();
+        Root root = inj.getInstanceAsync(Root.class, executor).get(10, TimeUnit.SECONDS);
+        assertThat(root.left.awaited, equalTo(true));
+        assertThat(root.right.awaited, equalTo(true));
+    }
+
+    @Test
+    public void testConstructionErrorPropagated() throws Exception {
+        Injector inj = InjectorBuilder.create().build();
+        ListenableFuture<Broken> future = inj.getInstanceAsync(Broken.class, executor);
+        try {
+            future.get(10, TimeUnit.SECONDS);
+            fail("construction error not propagated");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(ConstructionException.class));
+        }
+    }
+
+    @Test
+    public void testProviderTargetNotPrebuilt() throws Exception {
+        Injector inj = InjectorBuilder.create().setProviderInjectionEnabled(true).build();
+        // the provider's target is only built when the provider is invoked, as with getInstance
+        BrokenUser user = inj.getInstanceAsync(BrokenUser.class, executor).get(10, TimeUnit.SECONDS);
+        assertThat(user.provider, notNullValue());
+        try {
+            user.provider.get();
+            fail("construction error not propagated");
+        } catch (RuntimeException e) {
+            /* expected */
+        }
+    }
+
+    @Test
+    public void testResolutionErrorPropagated() throws Exception {
+        Injector inj = InjectorBuilder.create().build();
+        ListenableFuture<Runnable> future = inj.getInstanceAsync(Runnable.class, executor);
+        try {
+            future.get(10, TimeUnit.SECONDS);
+            fail("resolution error not propagated");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(InjectionException.class));
+        }
+    }
+
+    public static class Side {
+        final boolean awaited;
+
+        Side(CountDownLatch latch) throws InterruptedException {
+            latch.countDown();
+            awaited = latch.await(5, TimeUnit.SECONDS);
+        }
+    }
+
+    public static class Left extends Side {
+        @Inject
+        public Left(CountDownLatch latch) throws InterruptedException {
+            super(latch);
+        }
+    }
+
+    public static class Right extends Side {
+        @Inject
+        public Right(CountDownLatch latch) throws InterruptedException {
+            super(latch);
+        }
+    }
+
+    public static class Root {
+        final Left left;
+        final Right right;
+
+        @Inject
+        public Root(Left l, Right r) {
+            left = l;
+            right = r;
+        }
+    }
+
+    public static class BrokenUser {
+        final Provider<Broken> provider;
+
+        @Inject
+        public BrokenUser(Provider<Broken> p) {
+            provider = p;
+        }
+    }
+
+    public static class Broken {
+        @Inject
+        public Broken() {
+            throw new IllegalStateException("cannot build");
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Grapht, an open source dependency injector.
+ * Copyright 2014-2015 various contributors (see CONTRIBUTORS.txt)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.grapht;
+
+import org.grouplens.grapht.reflect.Desire;
+import org.grouplens.grapht.reflect.Satisfactions;
+import org.junit.Test;
+
+import javax.annotation.PreDestroy;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+/**
+ * Test soft-referenced and expiring components.
+ */
+public class EvictableComponentTest {
+    @Test
+    public void testSoftComponentIsShared() throws Exception {
+        InjectorBuilder b = InjectorBuilder.create();
+        b.bind(Resource.class).withCachePolicy(CachePolicy.SOFT_MEMOIZE).to(Resource.class);
+        Injector inj = b.build();
+
+        Resource r1 = inj.getInstance(Resource.class);
+        Resource r2 = inj.getInstance(Resource.class);
+        assertThat(r2, sameInstance(r1));
+        assertThat(r1.closed.get(), equalTo(0));
+
+        inj.close();
+        assertThat(r1.closed.get(), equalTo(1));
+    }
+
+    @Test
+    public void testReclaimedSoftComponentIsRebuilt() throws Exception {
+        LifecycleManager mgr = new LifecycleManager();
+        EvictableInstantiator.Soft inst =
+                (EvictableInstantiator.Soft) EvictableInstantiator.soft(
+                        Satisfactions.type(Resource.class),
+                        Collections.<Desire, Instantiator>emptyMap(), mgr);
+
+        Resource r1 = (Resource) inst.instantiate();
+        assertThat(inst.instantiate(), sameInstance((Object) r1));
+
+        // once the collector reclaims it, the instance is torn down and rebuilt
+        inst.reclaim();
+        Resource r2 = (Resource) inst.instantiate();
+        assertThat(r2, not(sameInstance(r1)));
+        assertThat(r1.closed.get(), equalTo(1));
+        assertThat(r2.closed.get(), equalTo(0));
+        assertThat(inst.instantiate(), sameInstance((Object) r2));
+
+        // closing the container tears down only the current instance
+        mgr.close();
+        assertThat(r1.closed.get(), equalTo(1));
+        assertThat(r2.closed.get(), equalTo(1));
+    }
+
+    @Test
+    public void testReclaimedSoftComponentWithoutLifecycle() throws Exception {
+        EvictableInstantiator.Soft inst =
+                (EvictableInstantiator.Soft) EvictableInstantiator.soft(
+                        Satisfactions.type(Plain.class),
+                        Collections.<Desire, Instantiator>emptyMap(), null);
+
+        Object p1 = inst.instantiate();
+        int count = Plain.created.get();
+        assertThat(inst.instantiate(), sameInstance(p1));
+        inst.reclaim();
+        assertThat(inst.instantiate(), not(sameInstance(p1)));
+        assertThat(Plain.created.get(), equalTo(count + 1));
+    }
+
+    @Test
+    public void testExpiringComponentIsRefreshed() throws Exception {
+        InjectorBuilder b = InjectorBuilder.create();
+        b.bind(Resource.class).withCachePolicy(CachePolicy.EXPIRING_MEMOIZE).to(Resource.class);
+        b.setTimeToLive(1, TimeUnit.MILLISECONDS);
+        Injector inj = b.build();
+
+        Resource r1 = inj.getInstance(Resource.class);
+        Resource r2 = r1;
+        long deadline = System.currentTimeMillis() + 5000;
+        // the stale instance is served while a background refresh runs
+        while (r2 == r1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+            r2 = inj.getInstance(Resource.class);
+        }
+        assertThat(r2, not(sameInstance(r1)));
+        // the replaced instance is torn down by the refreshing thread
+        while (r1.closed.get() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertThat(r1.closed.get(), equalTo(1));
+        inj.close();
+    }
+
+    @Test
+    public void testExpiringComponentIsSharedWithinLifetime() throws Exception {
+        InjectorBuilder b = InjectorBuilder.create();
+        b.bind(Resource.class).withCachePolicy(CachePolicy.EXPIRING_MEMOIZE).to(Resource.class);
+        Injector inj = b.build();
+
+        Resource r1 = inj.getInstance(Resource.class);
+        assertThat(inj.getInstance(Resource.class), sameInstance(r1));
+        inj.close();
+        assertThat(r1.closed.get(), equalTo(1));
+    }
+
+    public static class Plain {
+        static final AtomicInteger created = new AtomicInteger();
+
+        public Plain() {
+            created.incrementAndGet();
+        }
+    }
+
+    public static class Resource {
+        static final AtomicInteger created = new AtomicInteger();
+        final AtomicInteger closed = new AtomicInteger();
+
+        public Resource() {
+            created.incrementAndGet();
+        }
+
+        @PreDestroy
+        public void close() {
+            closed.incrementAndGet();
+        }
+    }
+}
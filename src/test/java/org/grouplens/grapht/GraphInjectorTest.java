@@ -0,0 +1,146 @@
+/*
+ * Grapht, an open source dependency injector.
+ * Copyright 2014-2015 various contributors (see CONTRIBUTORS.txt)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.grapht;
+
+import org.grouplens.grapht.annotation.DefaultImplementation;
+import org.grouplens.grapht.io.GraphReader;
+import org.grouplens.grapht.io.GraphWriter;
+import org.grouplens.grapht.graph.DAGNode;
+import org.grouplens.grapht.graph.FrozenGraph;
+import org.grouplens.grapht.solver.DefaultInjector;
+import org.grouplens.grapht.solver.DependencySolver;
+import org.junit.Test;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+/**
+ * Test injecting components from a precomputed graph.
+ */
+public class GraphInjectorTest {
+    private static DependencySolver resolve(Class<?>... types) throws InjectionException {
+        DefaultInjector inj = (DefaultInjector) InjectorBuilder.create()
+                                                             .setProviderInjectionEnabled(true)
+                                                             .build();
+        for (Class<?> type: types) {
+            inj.getInstance(type);
+        }
+        return inj.getSolver();
+    }
+
+    @Test
+    public void testInjectFromSolverGraph() throws Exception {
+        DependencySolver solver = resolve(Service.class);
+        GraphInjector inj = GraphInjector.create(solver, InjectionContainer.create());
+        assertThat(inj.hasComponent(null, Service.class), equalTo(true));
+        Service svc = inj.getInstance(Service.class);
+        assertThat(svc, instanceOf(ServiceImpl.class));
+        assertThat(inj.getInstance(Service.class), sameInstance(svc));
+        assertThat(inj.tryGetInstance(null, Service.class), sameInstance(svc));
+        inj.close();
+    }
+
+    @Test
+    public void testUnknownComponent() throws Exception {
+        GraphInjector inj = GraphInjector.create(resolve(Service.class), InjectionContainer.create());
+        assertThat(inj.hasComponent(null, Cycle.class), equalTo(false));
+        assertThat(inj.tryGetInstance(null, Cycle.class), nullValue());
+        try {
+            inj.getInstance(Cycle.class);
+            fail("unknown component should fail");
+        } catch (ResolutionException e) {
+            /* expected */
+        }
+        ExecutorService exec = Executors.newSingleThreadExecutor();
+        try {
+            inj.getInstanceAsync(Cycle.class, exec).get(10, TimeUnit.SECONDS);
+            fail("unknown component should fail");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(ResolutionException.class));
+        } finally {
+            exec.shutdown();
+        }
+    }
+
+    @Test
+    public void testBackEdges() throws Exception {
+        GraphInjector inj = GraphInjector.create(resolve(Cycle.class), InjectionContainer.create());
+        FrozenGraph<Component, Dependency> graph = inj.getGraph();
+        int backEdges = 0;
+        for (int i = 0; i < graph.size(); i++) {
+            backEdges += graph.getEdgeEnd(i) - graph.getBackEdgeStart(i);
+        }
+        assertThat(backEdges, equalTo(1));
+        Cycle cycle = inj.getInstance(Cycle.class);
+        assertThat(cycle.partner.cycle.get(), sameInstance(cycle));
+    }
+
+    @Test
+    public void testInjectFromSerializedGraph() throws Exception {
+        DependencySolver solver = resolve(Service.class);
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        GraphWriter writer = new GraphWriter(buf);
+        writer.writeGraph(solver.getGraph());
+        writer.close();
+        GraphReader reader = new GraphReader(new ByteArrayInputStream(buf.toByteArray()));
+        DAGNode<Component, Dependency> graph = reader.readGraph();
+        reader.close();
+
+        GraphInjector inj = GraphInjector.create(graph, solver.getBackEdges(), InjectionContainer.create());
+        assertThat(inj.getInstance(Service.class), instanceOf(ServiceImpl.class));
+    }
+
+    @DefaultImplementation(ServiceImpl.class)
+    public static interface Service {}
+
+    public static class ServiceImpl implements Service {
+        @Inject
+        public ServiceImpl(Helper helper) {}
+    }
+
+    public static class Helper {}
+
+    public static class Cycle {
+        final Partner partner;
+
+        @Inject
+        public Cycle(Partner p) {
+            partner = p;
+        }
+    }
+
+    public static class Partner {
+        final Provider<Cycle> cycle;
+
+        @Inject
+        public Partner(Provider<Cycle> c) {
+            cycle = c;
+        }
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Grapht, an open source dependency injector.
+ * Copyright 2014-2015 various contributors (see CONTRIBUTORS.txt)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.grapht;
+
+import org.junit.Test;
+
+import javax.inject.Inject;
+import java.lang.reflect.Proxy;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+/**
+ * Test lazily-instantiated components.
+ */
+public class LazyComponentTest {
+    @Test
+    public void testLazyNotInstantiatedUntilUsed() throws InjectionException {
+        Counter counter = new Counter();
+        InjectorBuilder b = InjectorBuilder.create();
+        b.bind(Counter.class).to(counter);
+        b.bind(Service.class).lazy().to(ExpensiveService.class);
+        Injector inj = b.build();
+
+        Client client = inj.getInstance(Client.class);
+        assertThat(counter.count.get(), equalTo(0));
+        assertThat(Proxy.isProxyClass(client.service.getClass()), equalTo(true));
+
+        assertThat(client.service.getValue(), equalTo(42));
+        assertThat(client.service.getValue(), equalTo(42));
+        assertThat(counter.count.get(), equalTo(1));
+    }
+
+    @Test
+    public void testLazyIsShared() throws InjectionException {
+        Counter counter = new Counter();
+        InjectorBuilder b = InjectorBuilder.create();
+        b.bind(Counter.class).to(counter);
+        b.bind(Service.class).lazy().to(ExpensiveService.class);
+        Injector inj = b.build();
+
+        Client client = inj.getInstance(Client.class);
+        client.service.getValue();
+        // a direct request gets the real instance, which the proxy shares
+        Service svc = inj.getInstance(Service.class);
+        assertThat(svc, instanceOf(ExpensiveService.class));
+        assertThat(svc.getValue(), equalTo(42));
+        assertThat(counter.count.get(), equalTo(1));
+    }
+
+    @Test
+    public void testLazyClassDependencyIsEager() throws InjectionException {
+        Counter counter = new Counter();
+        InjectorBuilder b = InjectorBuilder.create();
+        b.bind(Counter.class).to(counter);
+        b.bind(ExpensiveService.class).lazy().to(ExpensiveService.class);
+        Injector inj = b.build();
+
+        ConcreteClient client = inj.getInstance(ConcreteClient.class);
+        assertThat(client.service, notNullValue());
+        assertThat(counter.count.get(), equalTo(1));
+    }
+
+    @Test
+    public void testObjectMethodsDoNotInstantiate() throws InjectionException {
+        Counter counter = new Counter();
+        InjectorBuilder b = InjectorBuilder.create();
+        b.bind(Counter.class).to(counter);
+        b.bind(Service.class).lazy().to(ExpensiveService.class);
+        Injector inj = b.build();
+
+        Service proxy = inj.getInstance(Client.class).service;
+        Set<Service> set = new HashSet<Service>();
+        set.add(proxy);
+        assertThat(set.contains(proxy), equalTo(true));
+        assertThat(proxy.equals(proxy), equalTo(true));
+        assertThat(proxy.hashCode(), equalTo(System.identityHashCode(proxy)));
+        assertThat(proxy.toString(), containsString(Service.class.getName()));
+        assertThat(counter.count.get(), equalTo(0));
+    }
+
+    @Test
+    public void testLazyFailure() throws InjectionException {
+        InjectorBuilder b = InjectorBuilder.create();
+        b.bind(Service.class).lazy().to(BrokenService.class);
+        Injector inj = b.build();
+
+        Service proxy = inj.getInstance(Client.class).service;
+        try {
+            proxy.getValue();
+            fail("using a lazy component that cannot be built should fail");
+        } catch (LazyInstantiationException ex) {
+            assertThat(ex.getType(), equalTo((Class) Service.class));
+            assertThat(ex.getCause(), instanceOf(ConstructionException.class));
+        }
+    }
+
+    public static interface Service {
+        int getValue();
+    }
+
+    public static class Counter {
+        final AtomicInteger count = new AtomicInteger();
+    }
+
+    public static class ExpensiveService implements Service {
+        @Inject
+        public ExpensiveService(Counter counter) {
+            counter.count.incrementAndGet();
+        }
+
+        @Override
+        public int getValue() {
+            return 42;
+        }
+    }
+
+    public static class BrokenService implements Service {
+        @Inject
+        public BrokenService() {
+            throw new IllegalStateException("broken");
+        }
+
+        @Override
+        public int getValue() {
+            return 0;
+        }
+    }
+
+    public static class Client {
+        final Service service;
+
+        @Inject
+        public Client(Service svc) {
+            service = svc;
+        }
+    }
+
+    public static class ConcreteClient {
+        final ExpensiveService service;
+
+        @Inject
+        public ConcreteClient(ExpensiveService svc) {
+            service = svc;
+        }
+    }
+}
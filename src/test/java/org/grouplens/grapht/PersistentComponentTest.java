@@ -0,0 +1,137 @@
+/*
+ * Grapht, an open source dependency injector.
+ * Copyright 2014-2015 various contributors (see CONTRIBUTORS.txt)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.grapht;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.inject.Inject;
+import java.io.File;
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Test persisting components to disk.
+ */
+public class PersistentComponentTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static Injector build(PersistentInstanceCache cache, int size) {
+        InjectorBuilder b = InjectorBuilder.create().setPersistentCache(cache);
+        b.bind(Model.class).withCachePolicy(CachePolicy.PERSISTENT_MEMOIZE).to(Model.class);
+        b.bind(Integer.class).to(size);
+        return b.build();
+    }
+
+    @Test
+    public void testLoadPersisted() throws Exception {
+        File dir = folder.newFolder("cache");
+        Model.built.set(0);
+        PersistentInstanceCache c1 = PersistentInstanceCache.create(dir, 1 << 20);
+        Injector i1 = build(c1, 10);
+        Model m1 = i1.getInstance(Model.class);
+        assertThat(m1.values.length, equalTo(10));
+        assertThat(i1.getInstance(Model.class), sameInstance(m1));
+        assertThat(Model.built.get(), equalTo(1));
+        assertThat(c1.getStats().missCount(), equalTo(1L));
+        assertThat(c1.getSize(), greaterThan(0L));
+        i1.close();
+
+        // a new cache on the same directory, as a later process would use
+        PersistentInstanceCache c2 = PersistentInstanceCache.create(dir, 1 << 20);
+        Injector i2 = build(c2, 10);
+        Model m2 = i2.getInstance(Model.class);
+        assertThat(m2, not(sameInstance(m1)));
+        assertThat(m2.values.length, equalTo(10));
+        assertThat(Model.built.get(), equalTo(1));
+        assertThat(c2.getStats().hitCount(), equalTo(1L));
+        i2.close();
+    }
+
+    @Test
+    public void testDifferentDependenciesNotLoaded() throws Exception {
+        PersistentInstanceCache cache = PersistentInstanceCache.create(folder.newFolder("cache"), 1 << 20);
+        Model.built.set(0);
+        Injector i1 = build(cache, 10);
+        Injector i2 = build(cache, 20);
+        assertThat(i1.getInstance(Model.class).values.length, equalTo(10));
+        assertThat(i2.getInstance(Model.class).values.length, equalTo(20));
+        assertThat(Model.built.get(), equalTo(2));
+        i1.close();
+        i2.close();
+    }
+
+    @Test
+    public void testEvictOverSize() throws Exception {
+        File dir = folder.newFolder("cache");
+        PersistentInstanceCache cache = PersistentInstanceCache.create(dir, 600);
+        build(cache, 50).getInstance(Model.class);
+        long size = cache.getSize();
+        assertThat(size, allOf(greaterThan(300L), lessThanOrEqualTo(600L)));
+        build(cache, 60).getInstance(Model.class);
+        // the older instance is evicted to make room
+        assertThat(cache.getSize(), lessThanOrEqualTo(600L));
+        assertThat(cache.getStats().evictionCount(), equalTo(1L));
+        assertThat(dir.list().length, equalTo(1));
+
+        cache.clear();
+        assertThat(cache.getSize(), equalTo(0L));
+    }
+
+    @Test
+    public void testTooLargeNotStored() throws Exception {
+        File dir = folder.newFolder("cache");
+        PersistentInstanceCache cache = PersistentInstanceCache.create(dir, 600);
+        Model model = build(cache, 1000).getInstance(Model.class);
+        assertThat(model.values.length, equalTo(1000));
+        assertThat(cache.getSize(), equalTo(0L));
+        assertThat(cache.getStats().loadSuccessCount(), equalTo(0L));
+        // the partly-written temporary file is removed
+        assertThat(dir.list().length, equalTo(0));
+    }
+
+    @Test
+    public void testWithoutCacheMemoizes() throws Exception {
+        InjectorBuilder b = InjectorBuilder.create();
+        b.bind(Model.class).withCachePolicy(CachePolicy.PERSISTENT_MEMOIZE).to(Model.class);
+        b.bind(Integer.class).to(5);
+        Injector inj = b.build();
+        assertThat(inj.getInstance(Model.class), sameInstance(inj.getInstance(Model.class)));
+        inj.close();
+    }
+
+    public static class Model implements Serializable {
+        private static final long serialVersionUID = 1L;
+        static final AtomicInteger built = new AtomicInteger();
+
+        final int[] values;
+
+        @Inject
+        public Model(Integer size) {
+            built.incrementAndGet();
+            values = new int[size];
+        }
+    }
+}
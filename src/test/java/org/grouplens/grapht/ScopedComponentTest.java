@@ -0,0 +1,145 @@
+/*
+ * Grapht, an open source dependency injector.
+ * Copyright 2014-2015 various contributors (see CONTRIBUTORS.txt)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.grapht;
+
+import org.grouplens.grapht.solver.DefaultInjector;
+import org.junit.Test;
+
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+/**
+ * Test scoped components.
+ */
+public class ScopedComponentTest {
+    private DefaultInjector makeInjector() {
+        InjectorBuilder b = InjectorBuilder.create();
+        b.bind(RequestContext.class).withCachePolicy(CachePolicy.SCOPED).to(RequestContext.class);
+        b.bind(Handler.class).unshared().to(Handler.class);
+        return (DefaultInjector) b.build();
+    }
+
+    @Test
+    public void testSharedWithinScope() throws InjectionException {
+        DefaultInjector inj = makeInjector();
+        InjectionScope scope = inj.enterScope();
+        try {
+            Handler h1 = inj.getInstance(Handler.class);
+            Handler h2 = inj.getInstance(Handler.class);
+            assertThat(h2, not(sameInstance(h1)));
+            assertThat(h2.context, sameInstance(h1.context));
+            assertThat(inj.getInstance(RequestContext.class), sameInstance(h1.context));
+        } finally {
+            scope.close();
+        }
+    }
+
+    @Test
+    public void testScopesAreSeparate() throws InjectionException {
+        DefaultInjector inj = makeInjector();
+        RequestContext first;
+        InjectionScope scope = inj.enterScope();
+        try {
+            first = inj.getInstance(RequestContext.class);
+        } finally {
+            scope.close();
+        }
+        assertThat(first.closed, equalTo(true));
+
+        scope = inj.enterScope();
+        try {
+            RequestContext second = inj.getInstance(RequestContext.class);
+            assertThat(second, not(sameInstance(first)));
+            assertThat(second.closed, equalTo(false));
+        } finally {
+            scope.close();
+        }
+    }
+
+    @Test
+    public void testNestedScopes() throws InjectionException {
+        DefaultInjector inj = makeInjector();
+        InjectionScope outer = inj.enterScope();
+        try {
+            RequestContext ctx = inj.getInstance(RequestContext.class);
+            InjectionScope inner = inj.enterScope();
+            try {
+                assertThat(inj.getInstance(RequestContext.class), not(sameInstance(ctx)));
+            } finally {
+                inner.close();
+            }
+            assertThat(inj.getInstance(RequestContext.class), sameInstance(ctx));
+        } finally {
+            outer.close();
+        }
+    }
+
+    @Test
+    public void testCloseOutOfOrder() throws InjectionException {
+        DefaultInjector inj = makeInjector();
+        InjectionScope outer = inj.enterScope();
+        RequestContext ctx = inj.getInstance(RequestContext.class);
+        InjectionScope inner = inj.enterScope();
+        try {
+            outer.close();
+            fail("outer scope closed while inner scope open");
+        } catch (IllegalStateException e) {
+            /* expected */
+        }
+        assertThat(ctx.closed, equalTo(false));
+        inner.close();
+        // the failed close left the outer scope open, so it can still be closed
+        assertThat(inj.getInstance(RequestContext.class), sameInstance(ctx));
+        outer.close();
+        assertThat(ctx.closed, equalTo(true));
+    }
+
+    @Test
+    public void testNoScope() throws InjectionException {
+        DefaultInjector inj = makeInjector();
+        try {
+            inj.getInstance(RequestContext.class);
+            fail("scoped component instantiated without a scope");
+        } catch (ConstructionException e) {
+            /* expected */
+        }
+    }
+
+    public static class RequestContext {
+        boolean closed;
+
+        @PreDestroy
+        public void close() {
+            closed = true;
+        }
+    }
+
+    public static class Handler {
+        final RequestContext context;
+
+        @Inject
+        public Handler(RequestContext ctx) {
+            context = ctx;
+        }
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Grapht, an open source dependency injector.
+ * Copyright 2014-2015 various contributors (see CONTRIBUTORS.txt)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.grapht;
+
+import org.junit.Test;
+
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Test sharing memoized components between injectors.
+ */
+public class SharedComponentTest {
+    private static Injector build(SharedComponentCache cache) {
+        return InjectorBuilder.create()
+                              .setSharedComponentCache(cache)
+                              .build();
+    }
+
+    @Test
+    public void testShareBetweenInjectors() throws Exception {
+        SharedComponentCache cache = SharedComponentCache.create();
+        Injector i1 = build(cache);
+        Injector i2 = build(cache);
+
+        Loader l1 = i1.getInstance(Loader.class);
+        Loader l2 = i2.getInstance(Loader.class);
+        assertThat(l2, sameInstance(l1));
+        assertThat(l1.data, notNullValue());
+        // the loader and its data are both shared
+        assertThat(cache.getLiveCount(), equalTo(2));
+        assertThat(cache.getStats().hitCount(), equalTo(1L));
+        assertThat(cache.getStats().loadCount(), equalTo(2L));
+
+        i1.close();
+        assertThat(l1.closed.get(), equalTo(0));
+        i2.close();
+        assertThat(l1.closed.get(), equalTo(1));
+        assertThat(cache.getLiveCount(), equalTo(0));
+        assertThat(cache.getStats().evictionCount(), equalTo(2L));
+    }
+
+    @Test
+    public void testDifferentDependenciesNotShared() throws Exception {
+        SharedComponentCache cache = SharedComponentCache.create();
+        Injector i1 = build(cache);
+        InjectorBuilder b = InjectorBuilder.create().setSharedComponentCache(cache);
+        b.bind(Data.class).to(BigData.class);
+        Injector i2 = b.build();
+
+        Loader l1 = i1.getInstance(Loader.class);
+        Loader l2 = i2.getInstance(Loader.class);
+        assertThat(l2, not(sameInstance(l1)));
+        assertThat(l2.data, instanceOf(BigData.class));
+        i1.close();
+        i2.close();
+    }
+
+    @Test
+    public void testNewInstanceNotShared() throws Exception {
+        SharedComponentCache cache = SharedComponentCache.create();
+        InjectorBuilder b = InjectorBuilder.create().setSharedComponentCache(cache);
+        b.setDefaultCachePolicy(CachePolicy.NEW_INSTANCE);
+        Injector inj = b.build();
+        assertThat(inj.getInstance(Data.class), not(sameInstance(inj.getInstance(Data.class))));
+        assertThat(cache.getLiveCount(), equalTo(0));
+        inj.close();
+    }
+
+    @Test
+    public void testRetainIdle() throws Exception {
+        SharedComponentCache cache = SharedComponentCache.create(10, 1, TimeUnit.HOURS);
+        Injector i1 = build(cache);
+        Loader l1 = i1.getInstance(Loader.class);
+        i1.close();
+        assertThat(l1.closed.get(), equalTo(0));
+        // the idle loader still holds its data
+        assertThat(cache.getIdleCount(), equalTo(1L));
+        assertThat(cache.getLiveCount(), equalTo(1));
+
+        Injector i2 = build(cache);
+        assertThat(i2.getInstance(Loader.class), sameInstance(l1));
+        assertThat(cache.getIdleCount(), equalTo(0L));
+        i2.close();
+
+        cache.evictIdle();
+        assertThat(l1.closed.get(), equalTo(1));
+        assertThat(cache.getIdleCount(), equalTo(0L));
+        assertThat(cache.getLiveCount(), equalTo(0));
+    }
+
+    @Test
+    public void testTearDownOutsideLock() throws Exception {
+        SharedComponentCache cache = SharedComponentCache.create(1, 1, TimeUnit.HOURS);
+        Guarded.cache = cache;
+        Injector i1 = build(cache);
+        Guarded g1 = i1.getInstance(Guarded.class);
+        i1.close();
+        InjectorBuilder b = InjectorBuilder.create().setSharedComponentCache(cache);
+        b.bind(Data.class).to(BigData.class);
+        Injector i2 = b.build();
+        i2.getInstance(Guarded.class);
+        // releasing the second instance evicts the first from the idle cache
+        i2.close();
+        assertThat(g1.closed.get(), equalTo(1));
+        assertThat(g1.closedUnderLock, equalTo(false));
+        cache.evictIdle();
+    }
+
+    public static class Data {
+        @Inject
+        public Data() {}
+    }
+
+    public static class BigData extends Data {
+        @Inject
+        public BigData() {}
+    }
+
+    public static class Loader {
+        private final Data data;
+        private final AtomicInteger closed = new AtomicInteger();
+
+        @Inject
+        public Loader(Data d) {
+            data = d;
+        }
+
+        @PreDestroy
+        public void close() {
+            closed.incrementAndGet();
+        }
+    }
+
+    public static class Guarded {
+        static SharedComponentCache cache;
+        private final AtomicInteger closed = new AtomicInteger();
+        private volatile boolean closedUnderLock;
+
+        @Inject
+        public Guarded(Data d) {}
+
+        @PreDestroy
+        public void close() {
+            closed.incrementAndGet();
+            closedUnderLock = Thread.holdsLock(cache);
+        }
+    }
+}
@@ -19,9 +19,14 @@
  */
 package org.grouplens.grapht;
 
+import com.google.common.collect.ImmutableListMultimap;
 import org.grouplens.grapht.annotation.DefaultImplementation;
 import org.grouplens.grapht.annotation.DefaultProvider;
-import org.grouplens.grapht.solver.UnresolvableDependencyException;
+import org.grouplens.grapht.context.ContextMatcher;
+import org.grouplens.grapht.context.ContextPattern;
+import org.grouplens.grapht.reflect.Desire;
+import org.grouplens.grapht.reflect.Desires;
+import org.grouplens.grapht.solver.*;
 import org.junit.Test;
 
 import javax.annotation.Nullable;
@@ -159,6 +164,123 @@ public class SkipIfUnusableTest {
         assertThat(obj, nullValue());
     }
 
+    /**
+     * Several optional uses of a skipped default should all be skipped.
+     */
+    @Test
+    public void testSkipSiblings() throws InjectionException {
+        InjectorBuilder bld = InjectorBuilder.create();
+        Injector inj = bld.build();
+        SiblingRequirer obj = inj.getInstance(SiblingRequirer.class);
+        assertThat(obj.first, nullValue());
+        assertThat(obj.second.getDependency(), nullValue());
+        assertThat(obj.third.getDependency(), nullValue());
+    }
+
+    /**
+     * A skipped default's failure should be remembered and reused by its siblings within a
+     * resolution, and forgotten once the resolution finishes.  Every resolution attempt that is
+     * not served by a remembered failure looks up the subgraph cache, so the cache's request
+     * count shows how many desires were actually resolved.
+     */
+    @Test
+    public void testSiblingFailureReused() throws ResolutionException {
+        SubgraphCache cache = SubgraphCache.create(100);
+        DependencySolver solver = DependencySolver.newBuilder()
+                                                  .addBindingFunction(DefaultDesireBindingFunction.create())
+                                                  .setSubgraphCache(cache)
+                                                  .build();
+        solver.resolve(Desires.create(null, OptionalDefaultRequirer.class, false));
+        // the requirer, its skippable dependency and that dependency's unsatisfiable one
+        long single = cache.getStats().requestCount();
+        assertThat(single, equalTo(3L));
+
+        cache.invalidateAll();
+        solver.resolve(Desires.create(null, SiblingRequirer.class, false));
+        // the requirer, then its first dependency and the failure beneath it; the second
+        // dependency's skippable desire reuses that failure instead of resolving it, and the
+        // third reuses the second's (successful, null) subgraph
+        assertThat(cache.getStats().requestCount() - single, equalTo(1L + 2 + 2 + 2));
+
+        long before = cache.getStats().requestCount();
+        try {
+            solver.resolve(Desires.create(null, IfaceWithSkippableDefault.class, false));
+            fail("resolved an unusable default");
+        } catch (UnresolvableDependencyException e) {
+            /* expected */
+        }
+        long failed = cache.getStats().requestCount() - before;
+        try {
+            solver.resolve(Desires.create(null, IfaceWithSkippableDefault.class, false));
+            fail("resolved an unusable default");
+        } catch (UnresolvableDependencyException e) {
+            /* expected */
+        }
+        // the failure was forgotten when the first call finished, so it is resolved again
+        assertThat(cache.getStats().requestCount() - before, equalTo(2 * failed));
+    }
+
+    /**
+     * Without a subgraph cache, a failure should still be reused by siblings in other contexts
+     * when the binding functions do not look at the context, so the binding functions are only
+     * asked once about the unsatisfiable desire in each resolution.
+     */
+    @Test
+    public void testSiblingFailureNotRetried() throws ResolutionException {
+        CountingBindRule rule = new CountingBindRule(Inner.class);
+        DependencySolver solver =
+                DependencySolver.newBuilder()
+                                .addBindingFunction(new RuleBasedBindingFunction(
+                                        ImmutableListMultimap.<ContextMatcher, BindRule>of(ContextPattern.any(), rule)))
+                                .addBindingFunction(DefaultDesireBindingFunction.create())
+                                .build();
+        solver.resolve(Desires.create(null, SiblingRequirer.class, false));
+        // all three siblings need the unsatisfiable Inner; only the first asks for it
+        assertThat(rule.queries, equalTo(1));
+
+        solver.resolve(Desires.create(null, OptionalDefaultRequirer.class, false));
+        // the failure was forgotten when the first call finished, so it is asked for again
+        assertThat(rule.queries, equalTo(2));
+    }
+
+    /**
+     * The failure to resolve a transitive dependency should be reported with its cause.
+     */
+    @Test
+    public void testTransitiveFailureCause() {
+        InjectorBuilder bld = InjectorBuilder.create();
+        bld.bind(Inner.class).to(InnerWithDep.class);
+        Injector inj = bld.build();
+        try {
+            inj.getInstance(DefaultRequirer.class);
+            fail("injecting a default with an uninstantiable transitive dep should fail");
+        } catch (InjectionException ex) {
+            assertThat(ex, instanceOf(UnresolvableDependencyException.class));
+            UnresolvableDependencyException ude = (UnresolvableDependencyException) ex;
+            assertThat(ude.getDesire().getDesiredType(), equalTo((Object) String.class));
+        }
+    }
+
+    /**
+     * A rule that never matches, counting how often it is asked about a type.
+     */
+    private static class CountingBindRule extends MockBindRule {
+        private final Class<?> type;
+        private int queries;
+
+        public CountingBindRule(Class<?> type) {
+            this.type = type;
+        }
+
+        @Override
+        public boolean matches(Desire desire) {
+            if (desire.getDesiredType().equals(type)) {
+                queries++;
+            }
+            return super.matches(desire);
+        }
+    }
+
     /**
      * Interface for dependencies.
      */
@@ -271,6 +393,24 @@ public class SkipIfUnusableTest {
         }
     }
 
+    /**
+     * A component with several optional uses of one of our skippable defaults.
+     */
+    static class SiblingRequirer {
+        private final IfaceWithSkippableDefault first;
+        private final OptionalDefaultRequirer second;
+        private final OptionalDefaultRequirer third;
+
+        @Inject
+        public SiblingRequirer(@Nullable IfaceWithSkippableDefault first,
+                               OptionalDefaultRequirer second,
+                               OptionalDefaultRequirer third) {
+            this.first = first;
+            this.second = second;
+            this.third = third;
+        }
+    }
+
     /**
      * A component that optionally uses an object with one of our skippable defaults.
      */
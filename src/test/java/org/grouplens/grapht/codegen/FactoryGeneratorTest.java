@@ -0,0 +1,205 @@
+/*
+ * Grapht, an open source dependency injector.
+ * Copyright 2014-2015 various contributors (see CONTRIBUTORS.txt)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.grapht.codegen;
+
+import org.grouplens.grapht.*;
+import org.grouplens.grapht.annotation.DefaultString;
+import org.grouplens.grapht.graph.DAGNode;
+import org.grouplens.grapht.reflect.Desire;
+import org.grouplens.grapht.reflect.Desires;
+import org.grouplens.grapht.solver.DefaultDesireBindingFunction;
+import org.grouplens.grapht.solver.DependencySolver;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.inject.Qualifier;
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.Writer;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+/**
+ * Test generating factories from resolved graphs.
+ */
+public class FactoryGeneratorTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private DAGNode<Component, Dependency> resolve(BindingFunctionBuilder config, Class<?> type) throws ResolutionException {
+        DependencySolver solver =
+                DependencySolver.newBuilder()
+                                .addBindingFunction(config.build(BindingFunctionBuilder.RuleSet.EXPLICIT))
+                                .addBindingFunction(config.build(BindingFunctionBuilder.RuleSet.INTERMEDIATE_TYPES))
+                                .addBindingFunction(config.build(BindingFunctionBuilder.RuleSet.SUPER_TYPES))
+                                .addBindingFunction(DefaultDesireBindingFunction.create())
+                                .build();
+        Desire desire = Desires.create(null, type, false);
+        solver.resolve(desire);
+        return solver.getGraph()
+                     .getOutgoingEdgeWithLabel(Dependency.hasInitialDesire(desire))
+                     .getTail();
+    }
+
+    private Class<?> compile(FactoryGenerator gen) throws Exception {
+        File src = folder.newFolder("src");
+        File out = folder.newFolder("classes");
+        File pkg = new File(src, "gen");
+        assertTrue(pkg.mkdirs());
+        File file = new File(pkg, "TestFactory.java");
+        Writer writer = new FileWriter(file);
+        try {
+            gen.writeTo(writer);
+        } finally {
+            writer.close();
+        }
+        JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+        int rc = javac.run(null, null, null,
+                           "-classpath", System.getProperty("java.class.path"),
+                           "-d", out.getAbsolutePath(), file.getAbsolutePath());
+        assertThat("compile failed:\n" + gen.generate(), rc, equalTo(0));
+        ClassLoader loader = new URLClassLoader(new URL[]{out.toURI().toURL()},
+                                                getClass().getClassLoader());
+        return loader.loadClass("gen.TestFactory");
+    }
+
+    @Test
+    public void testGenerateFactory() throws Exception {
+        BindingFunctionBuilder config = new BindingFunctionBuilder();
+        config.getRootContext().bind(Service.class).to(ServiceImpl.class);
+        config.getRootContext().bind(Helper.class).unshared().to(Helper.class);
+        config.getRootContext().bind(String.class).withQualifier(Label.class).to("hello \"world\"");
+        config.getRootContext().bind(Integer.class).toProvider(SizeProvider.class);
+
+        FactoryGenerator gen = FactoryGenerator.create("gen.TestFactory")
+                                               .addRoot("getClient", resolve(config, Client.class));
+        Class<?> factoryClass = compile(gen);
+        Object factory = factoryClass.newInstance();
+        Method getClient = factoryClass.getMethod("getClient");
+
+        Client client = (Client) getClient.invoke(factory);
+        assertThat(client.service, instanceOf(ServiceImpl.class));
+        ServiceImpl svc = (ServiceImpl) client.service;
+        assertThat(svc.label, equalTo("hello \"world\""));
+        assertThat(svc.size, equalTo(42));
+        // setter and shared components
+        assertThat(client.helper, notNullValue());
+        assertThat(client.helper, not(sameInstance(svc.helper)));
+        // post-construct methods run after setter injection
+        assertThat(client.initialized, equalTo(true));
+        assertThat(getClient.invoke(factory), sameInstance((Object) client));
+        assertThat((Boolean) factoryClass.getMethod("isUpToDate").invoke(null), equalTo(true));
+    }
+
+    @Test
+    public void testGeneratedSource() throws Exception {
+        BindingFunctionBuilder config = new BindingFunctionBuilder();
+        config.getRootContext().bind(Service.class).to(ServiceImpl.class);
+        config.getRootContext().bind(Integer.class).toProvider(SizeProvider.class);
+        FactoryGenerator gen = FactoryGenerator.create("gen.TestFactory")
+                                               .addRoot("getClient", resolve(config, Client.class));
+        String source = gen.generate();
+        assertThat(source, containsString("package gen;"));
+        assertThat(source, containsString("public synchronized " + Client.class.getCanonicalName() + " getClient()"));
+        assertThat(source, containsString("\"default label\""));
+        assertThat(source, not(containsString("getDeclaredConstructor")));
+    }
+
+    @Test
+    public void testUnsupportedComponent() throws Exception {
+        BindingFunctionBuilder config = new BindingFunctionBuilder();
+        config.getRootContext().bind(Service.class).to(HiddenService.class);
+        FactoryGenerator gen = FactoryGenerator.create("gen.TestFactory")
+                                               .addRoot("getService", resolve(config, Service.class));
+        try {
+            gen.generate();
+            fail("generated code for inaccessible class");
+        } catch (IllegalArgumentException e) {
+            /* expected */
+        }
+    }
+
+    @Qualifier
+    @Retention(RetentionPolicy.RUNTIME)
+    @DefaultString("default label")
+    public static @interface Label {}
+
+    public static interface Service {}
+
+    public static class Helper {}
+
+    public static class SizeProvider implements Provider<Integer> {
+        @Override
+        public Integer get() {
+            return 42;
+        }
+    }
+
+    public static class ServiceImpl implements Service {
+        final String label;
+        final int size;
+        final Helper helper;
+
+        @Inject
+        public ServiceImpl(@Label String label, Integer size, Helper helper) {
+            this.label = label;
+            this.size = size;
+            this.helper = helper;
+        }
+    }
+
+    static class HiddenService implements Service {
+        @Inject
+        public HiddenService() {}
+    }
+
+    public static class Client {
+        final Service service;
+        Helper helper;
+        boolean initialized;
+
+        @Inject
+        public Client(Service svc) {
+            service = svc;
+        }
+
+        @Inject
+        public void setHelper(Helper h) {
+            helper = h;
+        }
+
+        @PostConstruct
+        public void init() {
+            initialized = helper != null;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Grapht, an open source dependency injector.
+ * Copyright 2014-2015 various contributors (see CONTRIBUTORS.txt)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.grapht.graph;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.SetMultimap;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Test freezing graphs.
+ */
+public class FrozenGraphTest {
+    @Test
+    public void testSingleton() {
+        FrozenGraph<String,String> graph = FrozenGraph.freeze(DAGNode.<String,String>singleton("foo"));
+        assertThat(graph.size(), equalTo(1));
+        assertThat(graph.getEdgeCount(), equalTo(0));
+        assertThat(graph.getLabel(graph.getRoot()), equalTo("foo"));
+        assertThat(graph.getEdgeStart(0), equalTo(graph.getEdgeEnd(0)));
+    }
+
+    @Test
+    public void testDiamond() {
+        DAGNode<String,String> bottom = DAGNode.singleton("bottom");
+        DAGNode<String,String> left = DAGNode.<String,String>newBuilder("left")
+                                             .addEdge(bottom, "lb")
+                                             .build();
+        DAGNode<String,String> right = DAGNode.<String,String>newBuilder("right")
+                                              .addEdge(bottom, "rb")
+                                              .build();
+        DAGNode<String,String> top = DAGNode.<String,String>newBuilder("top")
+                                            .addEdge(left, "tl")
+                                            .addEdge(right, "tr")
+                                            .build();
+        FrozenGraph<String,String> graph = FrozenGraph.freeze(top);
+        assertThat(graph.size(), equalTo(4));
+        assertThat(graph.getEdgeCount(), equalTo(4));
+        int root = graph.getRoot();
+        assertThat(graph.getLabel(root), equalTo("top"));
+        assertThat(graph.getEdgeEnd(root) - graph.getEdgeStart(root), equalTo(2));
+        for (int i = 0; i < graph.size(); i++) {
+            assertThat(graph.getBackEdgeStart(i), equalTo(graph.getEdgeEnd(i)));
+            for (int e = graph.getEdgeStart(i); e < graph.getEdgeEnd(i); e++) {
+                // topological order
+                assertThat(graph.getEdgeTarget(e), lessThan(i));
+            }
+        }
+        // both middle nodes point to the same bottom node
+        int l = graph.getEdgeTarget(graph.getEdgeStart(root));
+        int r = graph.getEdgeTarget(graph.getEdgeStart(root) + 1);
+        assertThat(graph.getEdgeTarget(graph.getEdgeStart(l)),
+                   equalTo(graph.getEdgeTarget(graph.getEdgeStart(r))));
+
+        DAGNode<String,String> thawed = graph.toNode(root);
+        assertThat(thawed.getLabel(), equalTo("top"));
+        assertThat(thawed.getReachableNodes(), hasSize(4));
+        assertThat(thawed.getOutgoingEdgeWithLabel("tl").getTail().getLabel(), equalTo("left"));
+    }
+
+    @Test
+    public void testBackEdges() {
+        DAGNode<String,String> leaf = DAGNode.singleton("leaf");
+        DAGNode<String,String> other = DAGNode.singleton("other");
+        DAGNode<String,String> root = DAGNode.<String,String>newBuilder("root")
+                                             .addEdge(leaf, "rl")
+                                             .build();
+        SetMultimap<DAGNode<String,String>,DAGEdge<String,String>> back = HashMultimap.create();
+        back.put(leaf, DAGEdge.create(leaf, root, "back"));
+        back.put(leaf, DAGEdge.create(leaf, other, "other"));
+        FrozenGraph<String,String> graph = FrozenGraph.freeze(root, back);
+        // the node reachable only by a back edge is included
+        assertThat(graph.size(), equalTo(3));
+        assertThat(graph.getEdgeCount(), equalTo(3));
+        int l = graph.getEdgeTarget(graph.getEdgeStart(graph.getRoot()));
+        assertThat(graph.getLabel(l), equalTo("leaf"));
+        assertThat(graph.getBackEdgeStart(l), equalTo(graph.getEdgeStart(l)));
+        assertThat(graph.getEdgeEnd(l) - graph.getBackEdgeStart(l), equalTo(2));
+        // back edges are left out when thawing
+        assertThat(graph.toNode(graph.getRoot()).getReachableNodes(), hasSize(2));
+    }
+}
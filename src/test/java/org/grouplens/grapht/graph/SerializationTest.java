@@ -38,9 +38,9 @@ import org.junit.Test;
 
 import javax.inject.Named;
 import java.io.*;
+import java.util.List;
 
-import static org.hamcrest.Matchers.contains;
-import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.assertThat;
 
 public class SerializationTest {
@@ -74,6 +74,98 @@ public class SerializationTest {
                    hasSize(2));
     }
     
+    @Test
+    public void testDeepGraph() throws Exception {
+        DAGNode<Integer, String> node = DAGNode.singleton(0);
+        for (int i = 1; i < 50000; i++) {
+            DAGNodeBuilder<Integer, String> bld = DAGNode.newBuilder(i);
+            bld.addEdge(node, "next");
+            node = bld.build();
+        }
+        write(node);
+        DAGNode<Integer, String> read = read();
+
+        assertThat(read.getLabel(), equalTo(49999));
+        List<DAGNode<Integer, String>> nodes = read.getSortedNodes();
+        assertThat(nodes, hasSize(50000));
+        assertThat(nodes.get(0).getLabel(), equalTo(0));
+        assertThat(nodes.get(0).getOutgoingEdges(), hasSize(0));
+    }
+
+    @Test
+    public void testDiamondSharesNode() throws Exception {
+        DAGNode<String, String> bottom = DAGNode.singleton("bottom");
+        DAGNode<String, String> left = DAGNode.<String,String>newBuilder("left").addEdge(bottom, "l").build();
+        DAGNode<String, String> right = DAGNode.<String,String>newBuilder("right").addEdge(bottom, "r").build();
+        DAGNode<String, String> top = DAGNode.<String,String>newBuilder("top")
+                                             .addEdge(left, "a")
+                                             .addEdge(right, "b")
+                                             .build();
+        write(top);
+        DAGNode<String, String> read = read();
+
+        assertThat(read.getReachableNodes(), hasSize(4));
+        DAGNode<String, String> readLeft = read.getOutgoingEdgeWithLabel("a").getTail();
+        DAGNode<String, String> readRight = read.getOutgoingEdgeWithLabel("b").getTail();
+        assertThat(readLeft.getLabel(), equalTo("left"));
+        assertThat(readLeft.getOutgoingEdgeWithLabel("l").getTail(),
+                   sameInstance(readRight.getOutgoingEdgeWithLabel("r").getTail()));
+    }
+
+    @Test
+    public void testSeparateObjectsShareNodes() throws Exception {
+        DAGNode<String, String> bottom = DAGNode.singleton("bottom");
+        DAGNode<String, String> mid = DAGNode.<String,String>newBuilder("mid").addEdge(bottom, "m").build();
+        DAGNode<String, String> top = DAGNode.<String,String>newBuilder("top").addEdge(mid, "t").build();
+        DAGEdge<String, String> back = DAGEdge.create(bottom, top, "back");
+
+        ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(GRAPH_FILE));
+        try {
+            out.writeObject(top);
+            out.writeObject(back);
+            out.writeObject(mid.getOutgoingEdgeWithLabel("m"));
+        } finally {
+            out.close();
+        }
+
+        ObjectInputStream in = new ObjectInputStream(new FileInputStream(GRAPH_FILE));
+        try {
+            DAGNode<String, String> readTop = (DAGNode<String, String>) in.readObject();
+            DAGEdge<String, String> readBack = (DAGEdge<String, String>) in.readObject();
+            DAGEdge<String, String> readEdge = (DAGEdge<String, String>) in.readObject();
+            DAGNode<String, String> readMid = readTop.getOutgoingEdgeWithLabel("t").getTail();
+            DAGNode<String, String> readBottom = readMid.getOutgoingEdgeWithLabel("m").getTail();
+
+            // nodes written with separate objects in one stream are read back once
+            assertThat(readBack.getHead(), sameInstance(readBottom));
+            assertThat(readBack.getTail(), sameInstance(readTop));
+            assertThat(readEdge.getHead(), sameInstance(readMid));
+            assertThat(readEdge.getTail(), sameInstance(readBottom));
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void testReadLegacyGraph() throws Exception {
+        // a diamond graph serialized by a release prior to 0.11
+        ObjectInputStream in = new ObjectInputStream(getClass().getResourceAsStream("legacy-graph.ser"));
+        DAGNode<String, String> read;
+        try {
+            read = (DAGNode<String, String>) in.readObject();
+        } finally {
+            in.close();
+        }
+
+        assertThat(read.getLabel(), equalTo("top"));
+        assertThat(read.getReachableNodes(), hasSize(4));
+        DAGNode<String, String> readLeft = read.getOutgoingEdgeWithLabel("a").getTail();
+        DAGNode<String, String> readRight = read.getOutgoingEdgeWithLabel("b").getTail();
+        assertThat(readLeft.getOutgoingEdgeWithLabel("l").getTail(),
+                   sameInstance(readRight.getOutgoingEdgeWithLabel("r").getTail()));
+        assertThat(read.getSortedNodes(), hasSize(4));
+    }
+
     @Test
     public void testDependencySolverSerialization() throws Exception {
         BindingFunctionBuilder b = new BindingFunctionBuilder();
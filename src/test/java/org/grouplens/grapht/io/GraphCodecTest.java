@@ -0,0 +1,231 @@
+/*
+ * Grapht, an open source dependency injector.
+ * Copyright 2014-2015 various contributors (see CONTRIBUTORS.txt)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.grapht.io;
+
+import org.apache.commons.lang3.StringUtils;
+import org.grouplens.grapht.BindingFunctionBuilder;
+import org.grouplens.grapht.BindingFunctionBuilder.RuleSet;
+import org.grouplens.grapht.CachePolicy;
+import org.grouplens.grapht.Component;
+import org.grouplens.grapht.Dependency;
+import org.grouplens.grapht.annotation.AnnotationBuilder;
+import org.grouplens.grapht.graph.DAGEdge;
+import org.grouplens.grapht.graph.DAGNode;
+import org.grouplens.grapht.graph.DAGNodeBuilder;
+import org.grouplens.grapht.reflect.Desires;
+import org.grouplens.grapht.reflect.Satisfactions;
+import org.grouplens.grapht.reflect.internal.InstanceSatisfaction;
+import org.grouplens.grapht.reflect.internal.types.NamedType;
+import org.grouplens.grapht.solver.DefaultDesireBindingFunction;
+import org.grouplens.grapht.solver.DependencySolver;
+import org.grouplens.grapht.solver.DesireChain;
+import org.junit.Test;
+
+import javax.inject.Named;
+import java.io.*;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Test the binary graph codec, with the graphs from the serialization tests.
+ */
+public class GraphCodecTest {
+    @Test
+    public void testEmptyGraph() throws Exception {
+        DAGNode<Component, Dependency> g = DAGNode.singleton(DependencySolver.ROOT_SATISFACTION);
+        DAGNode<Component, Dependency> read = roundTrip(g);
+
+        assertThat(read.getReachableNodes(), contains(read));
+        assertThat(read.getLabel(), equalTo(DependencySolver.ROOT_SATISFACTION));
+    }
+
+    @Test
+    public void testSharedNodesGraph() throws Exception {
+        Component s1 = Component.create(Satisfactions.type(Object.class), CachePolicy.NEW_INSTANCE);
+        Component s2 = Component.create(Satisfactions.type(Object.class), CachePolicy.MEMOIZE);
+
+        DAGNode<Component, Dependency> n2 = DAGNode.singleton(s2);
+        DAGNodeBuilder<Component, Dependency> bld = DAGNode.newBuilder(s1);
+        bld.addEdge(n2, makeDependency("wombat"));
+        bld.addEdge(n2, makeDependency("foobar"));
+        DAGNode<Component, Dependency> g = bld.build();
+        DAGNode<Component, Dependency> read = roundTrip(g);
+
+        assertThat(read.getReachableNodes(), hasSize(2));
+        assertThat(read.getOutgoingEdges(), hasSize(2));
+        assertEquivalent(read, g);
+    }
+
+    @Test
+    public void testLongStringValue() throws Exception {
+        // longer than writeUTF allows, and not all ASCII
+        String name = StringUtils.repeat("w\u00f6mbat", 20000);
+        Component s1 = Component.create(Satisfactions.type(Object.class), CachePolicy.NEW_INSTANCE);
+        Component s2 = Component.create(Satisfactions.type(Object.class), CachePolicy.MEMOIZE);
+        DAGNode<Component, Dependency> g =
+                DAGNode.<Component, Dependency>newBuilder(s1)
+                       .addEdge(DAGNode.<Component, Dependency>singleton(s2), makeDependency(name))
+                       .build();
+        DAGNode<Component, Dependency> read = roundTrip(g);
+
+        Named qual = (Named) read.getOutgoingEdges().iterator().next()
+                                 .getLabel().getInitialDesire().getInjectionPoint().getQualifier();
+        assertThat(qual.value(), equalTo(name));
+        assertEquivalent(read, g);
+    }
+
+    @Test
+    public void testDependencySolverGraph() throws Exception {
+        DAGNode<Component, Dependency> g = resolveNamedType();
+        DAGNode<Component, Dependency> root = roundTrip(g);
+        assertEquivalent(root, g);
+
+        assertThat(root.getOutgoingEdges(), hasSize(1));
+        DAGEdge<Component, Dependency> rootEdge = root.getOutgoingEdges().iterator().next();
+        DAGNode<Component, Dependency> namedType = rootEdge.getTail();
+        assertThat(namedType.getLabel().getSatisfaction().getErasedType(),
+                   equalTo((Class) NamedType.class));
+
+        DAGEdge<Component, Dependency> nameEdge = namedType.getOutgoingEdges().iterator().next();
+        assertThat(nameEdge.getLabel().getInitialDesire().getInjectionPoint().getQualifier(),
+                   equalTo((Object) AnnotationBuilder.of(Named.class).setValue("test1").build()));
+        DAGNode<Component, Dependency> string = nameEdge.getTail();
+        assertThat(string.getLabel().getSatisfaction(), instanceOf(InstanceSatisfaction.class));
+        assertThat(((InstanceSatisfaction) string.getLabel().getSatisfaction()).getInstance(),
+                   equalTo((Object) "hello world"));
+    }
+
+    @Test
+    public void testMultipleGraphsShareNodes() throws Exception {
+        DAGNode<Component, Dependency> g = resolveNamedType();
+        DAGNode<Component, Dependency> child = g.getOutgoingEdges().iterator().next().getTail();
+
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        GraphWriter writer = new GraphWriter(buf);
+        writer.writeGraph(child);
+        writer.writeGraph(g);
+        writer.close();
+
+        GraphReader reader = new GraphReader(new ByteArrayInputStream(buf.toByteArray()));
+        DAGNode<Component, Dependency> child2 = reader.readGraph();
+        DAGNode<Component, Dependency> g2 = reader.readGraph();
+        assertThat(reader.readGraph(), nullValue());
+        reader.close();
+
+        assertEquivalent(g2, g);
+        assertThat(g2.getOutgoingEdges().iterator().next().getTail(), sameInstance(child2));
+    }
+
+    @Test
+    public void testParallelChecksums() throws Exception {
+        DAGNode<Component, Dependency> g = resolveNamedType();
+        ExecutorService exec = Executors.newFixedThreadPool(4);
+        try {
+            GraphReader reader = new GraphReader(new ByteArrayInputStream(encode(g)),
+                                                 getClass().getClassLoader(), exec);
+            DAGNode<Component, Dependency> g2 = reader.readGraph();
+            reader.close();
+            assertEquivalent(g2, g);
+        } finally {
+            exec.shutdown();
+        }
+    }
+
+    @Test
+    public void testSmallerThanSerialization() throws Exception {
+        DAGNode<Component, Dependency> g = resolveNamedType();
+        ByteArrayOutputStream java = new ByteArrayOutputStream();
+        ObjectOutputStream oos = new ObjectOutputStream(java);
+        oos.writeObject(g);
+        oos.close();
+
+        assertThat(encode(g).length, lessThan(java.size()));
+    }
+
+    @Test(expected = StreamCorruptedException.class)
+    public void testRejectNonGraphStream() throws Exception {
+        new GraphReader(new ByteArrayInputStream(new byte[]{1, 2, 3, 4, 5}));
+    }
+
+    private static Dependency makeDependency(String name) {
+        Named qual = AnnotationBuilder.of(Named.class).setValue(name).build();
+        return Dependency.create(DesireChain.singleton(Desires.create(qual, Object.class, false)),
+                                 Dependency.Flag.emptySet());
+    }
+
+    private static DAGNode<Component, Dependency> resolveNamedType() throws Exception {
+        BindingFunctionBuilder b = new BindingFunctionBuilder();
+        b.getRootContext().bind(String.class).withQualifier(new AnnotationBuilder<Named>(Named.class).set("value", "unused").build()).to("shouldn't see this"); // extra binding to make sure it's skipped
+        b.getRootContext().bind(String.class).withQualifier(new AnnotationBuilder<Named>(Named.class).set("value", "test1").build()).to("hello world");
+
+        DependencySolver solver = DependencySolver.newBuilder()
+                                                  .addBindingFunction(b.build(RuleSet.EXPLICIT))
+                                                  .addBindingFunction(b.build(RuleSet.INTERMEDIATE_TYPES))
+                                                  .addBindingFunction(b.build(RuleSet.SUPER_TYPES))
+                                                  .addBindingFunction(DefaultDesireBindingFunction.create())
+                                                  .build();
+        solver.resolve(Desires.create(null, NamedType.class, false));
+        return solver.getGraph();
+    }
+
+    private static byte[] encode(DAGNode<Component, Dependency> g) throws IOException {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        GraphWriter writer = new GraphWriter(buf);
+        writer.writeGraph(g);
+        writer.close();
+        return buf.toByteArray();
+    }
+
+    private static DAGNode<Component, Dependency> roundTrip(DAGNode<Component, Dependency> g) throws IOException {
+        GraphReader reader = new GraphReader(new ByteArrayInputStream(encode(g)));
+        try {
+            return reader.readGraph();
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Assert that two graphs have the same structure and labels, including desire chain keys.
+     */
+    private static void assertEquivalent(DAGNode<Component, Dependency> actual,
+                                         DAGNode<Component, Dependency> expected) {
+        List<DAGNode<Component, Dependency>> anodes = actual.getSortedNodes();
+        List<DAGNode<Component, Dependency>> enodes = expected.getSortedNodes();
+        assertThat(anodes, hasSize(enodes.size()));
+        for (int i = 0; i < anodes.size(); i++) {
+            DAGNode<Component, Dependency> an = anodes.get(i);
+            DAGNode<Component, Dependency> en = enodes.get(i);
+            assertThat(an.getLabel(), equalTo(en.getLabel()));
+            assertThat(an.getOutgoingEdges(), hasSize(en.getOutgoingEdges().size()));
+            for (DAGEdge<Component, Dependency> ee: en.getOutgoingEdges()) {
+                DAGEdge<Component, Dependency> ae = an.getOutgoingEdgeWithLabel(ee.getLabel());
+                assertThat(ae, notNullValue());
+                assertThat(ae.getLabel().getDesireChain().getKey(),
+                           equalTo(ee.getLabel().getDesireChain().getKey()));
+                assertThat(anodes.indexOf(ae.getTail()), equalTo(enodes.indexOf(ee.getTail())));
+            }
+        }
+    }
+}
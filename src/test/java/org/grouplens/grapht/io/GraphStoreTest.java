@@ -0,0 +1,128 @@
+/*
+ * Grapht, an open source dependency injector.
+ * Copyright 2014-2015 various contributors (see CONTRIBUTORS.txt)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.grapht.io;
+
+import org.grouplens.grapht.CachePolicy;
+import org.grouplens.grapht.Component;
+import org.grouplens.grapht.Dependency;
+import org.grouplens.grapht.graph.DAGEdge;
+import org.grouplens.grapht.graph.DAGNode;
+import org.grouplens.grapht.graph.DAGNodeBuilder;
+import org.grouplens.grapht.reflect.Desires;
+import org.grouplens.grapht.reflect.Satisfactions;
+import org.grouplens.grapht.solver.DesireChain;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class GraphStoreTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static Dependency makeDependency() {
+        return Dependency.create(DesireChain.singleton(Desires.create(null, String.class, false)),
+                                 Dependency.Flag.emptySet());
+    }
+
+    private static DAGNode<Component, Dependency> leaf() {
+        return DAGNode.singleton(Component.create(Satisfactions.type(Object.class), CachePolicy.MEMOIZE));
+    }
+
+    private static DAGNode<Component, Dependency> config(CachePolicy policy,
+                                                         DAGNode<Component, Dependency> shared) {
+        DAGNodeBuilder<Component, Dependency> bld =
+                DAGNode.newBuilder(Component.create(Satisfactions.instance("config"), policy));
+        bld.addEdge(shared, makeDependency());
+        return bld.build();
+    }
+
+    @Test
+    public void testLoadGraphs() throws Exception {
+        DAGNode<Component, Dependency> shared = leaf();
+        DAGNode<Component, Dependency> a = config(CachePolicy.NEW_INSTANCE, shared);
+        DAGNode<Component, Dependency> b = config(CachePolicy.MEMOIZE, shared);
+        File file = folder.newFile("graphs.dat");
+        GraphStoreWriter writer = new GraphStoreWriter();
+        writer.addGraph("b", b)
+              .addGraph("a", a)
+              .addGraph("leaf", shared);
+        assertThat(writer.getNodeCount(), equalTo(3));
+        writer.write(file);
+
+        GraphStore store = GraphStore.open(file);
+        try {
+            assertThat(store.size(), equalTo(3));
+            assertThat(store.containsGraph("a"), equalTo(true));
+            assertThat(store.containsGraph("c"), equalTo(false));
+            assertThat(store.getGraph("c"), nullValue());
+
+            DAGNode<Component, Dependency> a2 = store.getGraph("a");
+            assertThat(a2.getLabel(), equalTo(a.getLabel()));
+            assertThat(a2.getOutgoingEdges(), hasSize(1));
+            DAGEdge<Component, Dependency> edge = a2.getOutgoingEdges().iterator().next();
+            assertThat(edge.getTail().getLabel(), equalTo(shared.getLabel()));
+            assertThat(edge.getLabel().getDesireChain().getKey(),
+                       equalTo(a.getOutgoingEdges().iterator().next().getLabel().getDesireChain().getKey()));
+
+            // loading another graph reuses the materialized shared node
+            DAGNode<Component, Dependency> b2 = store.getGraph("b");
+            assertThat(b2.getLabel(), equalTo(b.getLabel()));
+            assertThat(b2.getOutgoingEdges().iterator().next().getTail(),
+                       sameInstance(edge.getTail()));
+            assertThat(store.getGraph("leaf"), sameInstance(edge.getTail()));
+            assertThat(store.getGraph("a"), sameInstance(a2));
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void testIdenticalNodesStoredOnce() throws Exception {
+        GraphStoreWriter writer = new GraphStoreWriter();
+        writer.addGraph("one", leaf())
+              .addGraph("two", leaf());
+        assertThat(writer.getNodeCount(), equalTo(1));
+
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        writer.write(buf);
+        GraphStore store = GraphStore.wrap(ByteBuffer.wrap(buf.toByteArray()),
+                                           getClass().getClassLoader());
+        assertThat(store.getGraph("one"), sameInstance(store.getGraph("two")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectDuplicateId() throws Exception {
+        new GraphStoreWriter().addGraph("one", leaf())
+                              .addGraph("one", leaf());
+    }
+
+    @Test(expected = StreamCorruptedException.class)
+    public void testRejectNonStore() throws Exception {
+        GraphStore.wrap(ByteBuffer.wrap(new byte[32]), getClass().getClassLoader());
+    }
+}
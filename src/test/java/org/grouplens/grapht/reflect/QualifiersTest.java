@@ -138,6 +138,32 @@ public class QualifiersTest {
         }
     }
 
+    @Test
+    public void testRejectBadAliasRepeatedly() {
+        // resolution failures are cached, but must still be reported on every call
+        for (int i = 0; i < 2; i++) {
+            try {
+                Qualifiers.resolveAliases(BadAlias.class);
+                fail("resolving a bad alias should throw an exception");
+            } catch (IllegalArgumentException ex) {
+                assertThat(ex.getMessage(), equalTo("aliased qualifier cannot have parameters"));
+            }
+        }
+    }
+
+    @Test
+    public void testMatchClassAliases() {
+        QualifierMatcher m = Qualifiers.match(Qual.class);
+        assertThat(m.apply(AnnotationBuilder.of(AQual.class).build()),
+                   equalTo(true));
+        assertThat(m.apply(AnnotationBuilder.of(AAQual.class).build()),
+                   equalTo(true));
+        assertThat(Qualifiers.match(AAQual.class).apply(makeQual()),
+                   equalTo(true));
+        assertThat(Qualifiers.match(AQual.class).apply(makeDftQual()),
+                   equalTo(false));
+    }
+
     @Test
     public void testMatchAny() throws Exception {
         assertThat(Qualifiers.matchAny().matches(null),
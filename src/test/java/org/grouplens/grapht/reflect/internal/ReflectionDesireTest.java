@@ -19,8 +19,10 @@
  */
 package org.grouplens.grapht.reflect.internal;
 
+import org.grouplens.grapht.InvalidBindingException;
 import org.grouplens.grapht.ResolutionException;
 import org.grouplens.grapht.reflect.Desire;
+import org.grouplens.grapht.reflect.Desires;
 import org.grouplens.grapht.reflect.InjectionPoint;
 import org.grouplens.grapht.reflect.MockInjectionPoint;
 import org.grouplens.grapht.reflect.internal.types.*;
@@ -128,6 +130,45 @@ public class ReflectionDesireTest {
         Assert.assertNotNull(restricted);
     }
     
+    @Test
+    public void testDesiresCached() {
+        List<Desire> desires = ReflectionDesire.getDesires(ReqB.class);
+        Assert.assertSame(desires, ReflectionDesire.getDesires(ReqB.class));
+        InjectionPoint ip = desires.get(0).getInjectionPoint();
+        Assert.assertTrue(ip.isNullable());
+        Assert.assertEquals(InterfaceB.class, ip.getErasedType());
+        Assert.assertEquals(InterfaceB.class, ip.getType());
+    }
+
+    @Test
+    public void testDesiresInterned() throws Exception {
+        Desire d1 = Desires.create(null, InterfaceB.class, false);
+        Desire d2 = Desires.create(null, InterfaceB.class, false);
+        Assert.assertSame(d1, d2);
+        Assert.assertSame(d1.restrict(TypeB.class), d2.restrict(TypeB.class));
+        Assert.assertSame(d1.getInjectionPoint(), d1.restrict(TypeB.class).getInjectionPoint());
+
+        // desires created directly are equal, and intern to the canonical instance
+        ReflectionDesire direct = new ReflectionDesire(Desires.createInjectionPoint(null, InterfaceB.class, false));
+        Assert.assertNotSame(d1, direct);
+        Assert.assertEquals(d1, direct);
+        Assert.assertEquals(d1.hashCode(), direct.hashCode());
+        Assert.assertSame(d1.getInjectionPoint(), direct.getInjectionPoint());
+        Assert.assertSame(d1, ReflectionDesire.intern(direct));
+    }
+
+    @Test
+    public void testInvalidClassNotCached() {
+        for (int i = 0; i < 2; i++) {
+            try {
+                ReflectionDesire.getDesires(TwoCtors.class);
+                Assert.fail("multiple injectable constructors should fail");
+            } catch (InvalidBindingException e) {
+                /* expected */
+            }
+        }
+    }
+
     private ReflectionDesire getDefaultDesire(Object methodOrCtorParam, List<Desire> desires) throws ResolutionException {
         BindingResult result = null;
         for (Desire d: desires) {
@@ -163,6 +204,14 @@ public class ReflectionDesireTest {
     
     public static class C { }
 
+    public static class TwoCtors {
+        @Inject
+        public TwoCtors() {}
+
+        @Inject
+        public TwoCtors(A a) {}
+    }
+
     public static class ReqB {
         @Inject
         public void setB(@Nullable InterfaceB foo) {
@@ -0,0 +1,90 @@
+/*
+ * Grapht, an open source dependency injector.
+ * Copyright 2014-2015 various contributors (see CONTRIBUTORS.txt)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.grapht.solver;
+
+import org.grouplens.grapht.BindingFunctionBuilder;
+import org.grouplens.grapht.BindingFunctionBuilder.RuleSet;
+import org.grouplens.grapht.reflect.Desires;
+import org.junit.Test;
+
+import javax.inject.Inject;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class RuleBasedBindingFunctionTest {
+    private static RuleBasedBindingFunction build(BindingFunctionBuilder bld) {
+        return (RuleBasedBindingFunction) bld.build(RuleSet.EXPLICIT);
+    }
+
+    @Test
+    public void testRootBindingsContextFree() {
+        BindingFunctionBuilder bld = new BindingFunctionBuilder(false);
+        bld.getRootContext().bind(Plugin.class).to(PluginA.class);
+        RuleBasedBindingFunction fn = build(bld);
+        assertThat(fn.isContextFree(Plugin.class), equalTo(true));
+        assertThat(fn.isContextFree(String.class), equalTo(true));
+        assertThat(fn.getContextTypes(Plugin.class), empty());
+    }
+
+    @Test
+    public void testContextSensitiveType() {
+        BindingFunctionBuilder bld = new BindingFunctionBuilder(false);
+        bld.getRootContext().bind(Plugin.class).to(PluginA.class);
+        bld.getRootContext().within(Host.class).bind(Plugin.class).to(PluginB.class);
+        bld.getRootContext().bind(Host.class).to(Host.class);
+        RuleBasedBindingFunction fn = build(bld);
+        assertThat(fn.isContextFree(Plugin.class), equalTo(false));
+        assertThat(fn.getContextTypes(Plugin.class), contains((Object) Host.class));
+        // other types are not affected
+        assertThat(fn.isContextFree(Host.class), equalTo(true));
+    }
+
+    @Test
+    public void testContextFreeBindingSkipsContext() throws Exception {
+        BindingFunctionBuilder bld = new BindingFunctionBuilder(false);
+        bld.getRootContext().bind(Plugin.class).to(PluginA.class);
+        RuleBasedBindingFunction fn = build(bld);
+        // the context is not consulted, so a null context is fine
+        BindingResult result = fn.bind(null, DesireChain.singleton(Desires.create(null, Plugin.class, false)));
+        assertThat(result, notNullValue());
+        assertThat(result.getDesire().getDesiredType(), equalTo((Object) PluginA.class));
+    }
+
+    @Test
+    public void testContextSensitiveBinding() throws Exception {
+        BindingFunctionBuilder bld = new BindingFunctionBuilder(false);
+        bld.getRootContext().bind(Plugin.class).to(PluginA.class);
+        bld.getRootContext().within(Host.class).bind(Plugin.class).to(PluginB.class);
+        RuleBasedBindingFunction fn = build(bld);
+        InjectionContext root = DependencySolver.initialContext();
+        BindingResult result = fn.bind(root, DesireChain.singleton(Desires.create(null, Plugin.class, false)));
+        assertThat(result.getDesire().getDesiredType(), equalTo((Object) PluginA.class));
+    }
+
+    public static interface Plugin {}
+    public static class PluginA implements Plugin {}
+    public static class PluginB implements Plugin {}
+
+    public static class Host {
+        @Inject
+        public Host(Plugin p) {}
+    }
+}
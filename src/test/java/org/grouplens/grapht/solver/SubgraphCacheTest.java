@@ -0,0 +1,183 @@
+/*
+ * Grapht, an open source dependency injector.
+ * Copyright 2014-2015 various contributors (see CONTRIBUTORS.txt)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.grapht.solver;
+
+import org.grouplens.grapht.Component;
+import org.grouplens.grapht.Dependency;
+import org.grouplens.grapht.Injector;
+import org.grouplens.grapht.InjectorBuilder;
+import org.grouplens.grapht.graph.DAGEdge;
+import org.grouplens.grapht.graph.DAGNode;
+import org.grouplens.grapht.reflect.Desires;
+import org.junit.Test;
+
+import javax.inject.Inject;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class SubgraphCacheTest {
+    private static DAGNode<Component, Dependency> resolve(SubgraphCache cache,
+                                                          Class<? extends Plugin> impl) throws Exception {
+        InjectorBuilder bld = InjectorBuilder.create().setSubgraphCache(cache);
+        bld.bind(Plugin.class).to(impl);
+        DefaultInjector inj = (DefaultInjector) bld.build();
+        Root root = inj.getInstance(Root.class);
+        assertThat(root.host.plugin, instanceOf(impl));
+        DependencySolver solver = inj.getSolver();
+        DAGNode<Component, Dependency> graph = solver.getGraph();
+        return graph.getOutgoingEdges().iterator().next().getTail();
+    }
+
+    private static DAGNode<Component, Dependency> child(DAGNode<Component, Dependency> node,
+                                                        Class<?> type) {
+        for (DAGEdge<Component, Dependency> e: node.getOutgoingEdges()) {
+            if (e.getTail().getLabel().getSatisfaction().getErasedType().equals(type)) {
+                return e.getTail();
+            }
+        }
+        throw new AssertionError("no child of type " + type);
+    }
+
+    @Test
+    public void testReuseIdenticalConfiguration() throws Exception {
+        SubgraphCache cache = SubgraphCache.create(100);
+        DAGNode<Component, Dependency> first = resolve(cache, PluginA.class);
+        long misses = cache.getStats().missCount();
+        DAGNode<Component, Dependency> second = resolve(cache, PluginA.class);
+        assertThat(second, sameInstance(first));
+        assertThat(cache.getStats().missCount(), equalTo(misses));
+        assertThat(cache.getStats().hitCount(), equalTo(1L));
+    }
+
+    @Test
+    public void testReuseUnaffectedSubgraph() throws Exception {
+        SubgraphCache cache = SubgraphCache.create(100);
+        DAGNode<Component, Dependency> first = resolve(cache, PluginA.class);
+        DAGNode<Component, Dependency> second = resolve(cache, PluginB.class);
+        assertThat(second, not(sameInstance(first)));
+        // the database does not depend on the plugin binding, so it is shared
+        assertThat(child(second, Database.class), sameInstance(child(first, Database.class)));
+        assertThat(child(child(second, Host.class), PluginB.class), notNullValue());
+        assertThat(cache.getStats().hitCount(), greaterThan(0L));
+
+        // and each variant is now cached
+        assertThat(resolve(cache, PluginA.class), sameInstance(first));
+        assertThat(resolve(cache, PluginB.class), sameInstance(second));
+    }
+
+    @Test
+    public void testNoCacheByDefault() throws Exception {
+        DependencySolver solver = DependencySolver.newBuilder()
+                                                  .addBindingFunction(DefaultDesireBindingFunction.create())
+                                                  .build();
+        assertThat(DependencySolver.newBuilder().getSubgraphCache(), nullValue());
+        solver.resolve(Desires.create(null, Database.class, false));
+        assertThat(solver.getGraph().getOutgoingEdges(), hasSize(1));
+    }
+
+    @Test
+    public void testDefaultSizeCacheInjector() throws Exception {
+        InjectorBuilder bld = InjectorBuilder.create().setSubgraphCache(SubgraphCache.create());
+        bld.bind(Plugin.class).to(PluginB.class);
+        Injector inj = bld.build();
+        assertThat(inj.getInstance(Root.class).host.plugin, instanceOf(PluginB.class));
+    }
+
+    @Test
+    public void testShareContextFreeSubgraph() throws Exception {
+        SubgraphCache cache = SubgraphCache.create(100);
+        InjectorBuilder bld = InjectorBuilder.create().setSubgraphCache(cache);
+        bld.bind(Plugin.class).to(PluginA.class);
+        Injector inj = bld.build();
+        inj.getInstance(TwoUsers.class);
+        // the host subgraph is resolved under one user and reused under the other
+        assertThat(cache.getStats().hitCount(), greaterThan(0L));
+    }
+
+    @Test
+    public void testNoSharingForContextSensitiveSubgraph() throws Exception {
+        SubgraphCache cache = SubgraphCache.create(100);
+        InjectorBuilder bld = InjectorBuilder.create().setSubgraphCache(cache);
+        bld.bind(Plugin.class).to(PluginA.class);
+        bld.within(UserB.class).bind(Plugin.class).to(PluginB.class);
+        Injector inj = bld.build();
+        TwoUsers users = inj.getInstance(TwoUsers.class);
+        assertThat(users.a.host.plugin, instanceOf(PluginA.class));
+        assertThat(users.b.host.plugin, instanceOf(PluginB.class));
+        assertThat(cache.getStats().hitCount(), equalTo(0L));
+    }
+
+    public static interface Plugin {}
+    public static class PluginA implements Plugin {}
+    public static class PluginB implements Plugin {}
+
+    public static class Database {
+        @Inject
+        public Database() {}
+    }
+
+    public static class Host {
+        private final Plugin plugin;
+
+        @Inject
+        public Host(Plugin p) {
+            plugin = p;
+        }
+    }
+
+    public static class Root {
+        private final Host host;
+
+        @Inject
+        public Root(Host h, Database db) {
+            host = h;
+        }
+    }
+
+    public static class UserA {
+        private final Host host;
+
+        @Inject
+        public UserA(Host h) {
+            host = h;
+        }
+    }
+
+    public static class UserB {
+        private final Host host;
+
+        @Inject
+        public UserB(Host h) {
+            host = h;
+        }
+    }
+
+    public static class TwoUsers {
+        private final UserA a;
+        private final UserB b;
+
+        @Inject
+        public TwoUsers(UserA a, UserB b) {
+            this.a = a;
+            this.b = b;
+        }
+    }
+}
@@ -19,9 +19,12 @@
  */
 package org.grouplens.grapht.util;
 
+import com.google.common.collect.Lists;
+import org.apache.commons.lang3.SerializationUtils;
 import org.junit.Test;
 
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
 
 import static org.hamcrest.Matchers.*;
@@ -125,4 +128,46 @@ public class AbstractChainTest {
         assertThat(base.equals(chend), equalTo(false));
         assertThat(base.equals(chstart), equalTo(false));
     }
+
+    @Test
+    public void testBranchesDoNotShareTails() {
+        TestChain base = chain("foo", "bar");
+        TestChain left = base.extend("left");
+        TestChain right = base.extend("right");
+        assertThat(left, contains("foo", "bar", "left"));
+        assertThat(right, contains("foo", "bar", "right"));
+        assertThat(left.get(2), equalTo("left"));
+        assertThat(right.get(2), equalTo("right"));
+        assertThat(base, contains("foo", "bar"));
+        assertThat(left.extend("more").get(2), equalTo("left"));
+        assertThat(right.extend("more").get(2), equalTo("right"));
+    }
+
+    @Test
+    public void testLongChain() {
+        TestChain chain = singleton("0");
+        List<String> expected = Lists.newArrayList("0");
+        for (int i = 1; i < 100; i++) {
+            chain = chain.extend(Integer.toString(i));
+            expected.add(Integer.toString(i));
+        }
+        assertThat(chain, hasSize(100));
+        assertThat(chain.get(42), equalTo("42"));
+        assertThat(Lists.newArrayList(chain), equalTo(expected));
+        assertThat(chain.hashCode(), equalTo(expected.hashCode()));
+        assertThat(chain.equals(expected), equalTo(true));
+    }
+
+    @Test
+    public void testSerializedChain() {
+        TestChain chain = chain("foo", "bar", "blatz");
+        TestChain copy = SerializationUtils.clone(chain);
+        assertThat(copy, equalTo(chain));
+        assertThat(copy.hashCode(), equalTo(chain.hashCode()));
+        assertThat(copy.get(1), equalTo("bar"));
+        assertThat(copy, contains("foo", "bar", "blatz"));
+        TestChain ext = copy.extend("blam");
+        assertThat(ext, contains("foo", "bar", "blatz", "blam"));
+        assertThat(ext.get(0), equalTo("foo"));
+    }
 }
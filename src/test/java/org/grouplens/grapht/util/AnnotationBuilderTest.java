@@ -20,11 +20,13 @@
 package org.grouplens.grapht.util;
 
 import com.sun.tools.javac.code.Attribute;
+import org.apache.commons.lang3.SerializationUtils;
 import org.grouplens.grapht.annotation.AnnotationBuilder;
 import org.grouplens.grapht.reflect.internal.types.InterfaceA;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.Serializable;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 
@@ -231,6 +233,39 @@ public class AnnotationBuilderTest {
         Assert.assertFalse(jvmA4a1.hashCode() == notEqual.hashCode());
     }
     
+    @Test
+    public void testEqualProxiesInterned() {
+        // verify that builders with equal attributes produce the same proxy
+        A3 first = new AnnotationBuilder<A3>(A3.class).set("value", "world")
+                                                      .set("otherValue", new double[] { 1.0, 2.0 })
+                                                      .build();
+        A3 second = new AnnotationBuilder<A3>(A3.class).set("otherValue", new double[] { 1.0, 2.0 })
+                                                       .setValue("world")
+                                                       .build();
+        A3 other = new AnnotationBuilder<A3>(A3.class).set("otherValue", new double[] { 1.0, 2.0 })
+                                                      .build();
+
+        Assert.assertSame(first, second);
+        Assert.assertNotSame(first, other);
+        Assert.assertFalse(first.equals(other));
+        Assert.assertEquals(first.toString(), second.toString());
+    }
+
+    @Test
+    public void testSerializedProxy() {
+        A4 built = new AnnotationBuilder<A4>(A4.class).set("arrays", new A3[] {
+            new AnnotationBuilder<A3>(A3.class).set("otherValue", new double[] { 0.5 }).build(),
+            new AnnotationBuilder<A3>(A3.class).set("otherValue", new double[] { 0.0 })
+                                               .set("value", "george").build()
+        }).build();
+        A4 copy = (A4) SerializationUtils.clone((Serializable) built);
+
+        Assert.assertEquals(built, copy);
+        Assert.assertEquals(copy, jvmA4a1);
+        Assert.assertEquals(jvmA4a1.hashCode(), copy.hashCode());
+        Assert.assertEquals("george", copy.arrays()[1].value());
+    }
+
     private static final A1 jvmA1a1;
     private static final A2 jvmA2a1;
     private static final A3 jvmA3a1;
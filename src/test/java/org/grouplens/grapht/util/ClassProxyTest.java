@@ -25,6 +25,8 @@ import org.junit.Test;
 import java.io.IOException;
 import java.lang.reflect.Array;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import static org.hamcrest.Matchers.equalTo;
 import static org.junit.Assert.assertThat;
@@ -108,4 +110,20 @@ public class ClassProxyTest {
         // and test the hash code
         assertThat(equal.hashCode(), equalTo(proxy.hashCode()));
     }
+
+    @Test
+    public void testChecksumCached() throws Exception {
+        long sum = ClassProxy.checksumOf(ClassProxyTest.class);
+        assertThat(ClassProxy.of(ClassProxyTest.class).getChecksum(), equalTo(sum));
+        assertThat(ClassProxy.checksumOf(ClassProxyTest.class), equalTo(sum));
+        ExecutorService exec = Executors.newFixedThreadPool(2);
+        try {
+            assertThat(ClassProxy.checksumAsync(ClassProxyTest.class, exec).get(),
+                       equalTo(sum));
+            assertThat(ClassProxy.checksumAsync(ClassLoadersTest.class, exec).get(),
+                       equalTo(ClassProxy.checksumOf(ClassLoadersTest.class)));
+        } finally {
+            exec.shutdown();
+        }
+    }
 }
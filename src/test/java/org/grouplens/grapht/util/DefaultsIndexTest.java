@@ -0,0 +1,181 @@
+/*
+ * Grapht, an open source dependency injector.
+ * Copyright 2014-2015 various contributors (see CONTRIBUTORS.txt)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.grapht.util;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import org.grouplens.grapht.types.dft.IPropDftImplNoCache;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Test the defaults index.  The test resources' defaults are indexed by the index processor.
+ */
+public class DefaultsIndexTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testParse() throws Exception {
+        String text = "# comment\n"
+                + "com.example.Foo.implementation=com.example.FooImpl\n"
+                + "com.example.Foo.cachePolicy=MEMOIZE\n"
+                + "com.example.Outer.Bar.provider=com.example.BarProvider\n";
+        Map<String, Map<String, String>> defaults =
+                DefaultsIndex.parse(new ByteArrayInputStream(text.getBytes("ISO-8859-1")));
+        assertThat(defaults.keySet(), containsInAnyOrder("com.example.Foo", "com.example.Outer.Bar"));
+        assertThat(defaults.get("com.example.Foo"),
+                   allOf(hasEntry("implementation", "com.example.FooImpl"),
+                         hasEntry("cachePolicy", "MEMOIZE")));
+        assertThat(defaults.get("com.example.Outer.Bar").size(), equalTo(1));
+    }
+
+    @Test
+    public void testTestResourcesIndexed() throws Exception {
+        DefaultsIndex index = DefaultsIndex.forClassLoader(getClass().getClassLoader());
+        assertThat(index.isComplete(), equalTo(true));
+        assertThat(getClass().getClassLoader().getResource(DefaultsIndex.INDEX_PATH),
+                   notNullValue());
+        Map<String, String> props = index.getDefaults(IPropDftImplNoCache.class.getCanonicalName());
+        assertThat(props, notNullValue());
+        assertThat(props, hasEntry("cachePolicy", "NEW_INSTANCE"));
+        assertThat(index.getDefaults(String.class.getCanonicalName()), nullValue());
+        assertThat(DefaultsIndex.forClassLoader(getClass().getClassLoader()),
+                   sameInstance(index));
+    }
+
+    @Test
+    public void testListUnindexedDirectory() throws Exception {
+        File root = folder.newFolder("unindexed");
+        File dir = new File(root, DefaultsIndex.DEFAULTS_PATH);
+        dir.mkdirs();
+        Files.write("implementation=com.example.FooImpl\n",
+                    new File(dir, "com.example.Foo.properties"), Charsets.ISO_8859_1);
+
+        URLClassLoader loader = new URLClassLoader(new URL[]{root.toURI().toURL()}, null);
+        DefaultsIndex index = DefaultsIndex.forClassLoader(loader);
+        assertThat(index.isComplete(), equalTo(true));
+        assertThat(index.size(), equalTo(1));
+        assertThat(index.getDefaults("com.example.Foo"),
+                   hasEntry("implementation", "com.example.FooImpl"));
+    }
+
+    @Test
+    public void testIndexShadowsFiles() throws Exception {
+        File root = folder.newFolder("indexed");
+        File dir = new File(root, DefaultsIndex.DEFAULTS_PATH);
+        dir.mkdirs();
+        // a stale file that the index supersedes
+        Files.write("implementation=com.example.OldImpl\n",
+                    new File(dir, "com.example.Foo.properties"), Charsets.ISO_8859_1);
+        Files.write("com.example.Foo.implementation=com.example.FooImpl\n",
+                    new File(root, DefaultsIndex.INDEX_PATH), Charsets.ISO_8859_1);
+        new File(dir, "com.example.Foo.properties").setLastModified(1000000000000L);
+
+        URLClassLoader loader = new URLClassLoader(new URL[]{root.toURI().toURL()}, null);
+        DefaultsIndex index = DefaultsIndex.forClassLoader(loader);
+        assertThat(index.isComplete(), equalTo(true));
+        assertThat(index.getDefaults("com.example.Foo"),
+                   hasEntry("implementation", "com.example.FooImpl"));
+    }
+
+    @Test
+    public void testStaleIndex() throws Exception {
+        File root = folder.newFolder("stale");
+        File dir = new File(root, DefaultsIndex.DEFAULTS_PATH);
+        dir.mkdirs();
+        File index = new File(root, DefaultsIndex.INDEX_PATH);
+        Files.write("com.example.Foo.implementation=com.example.OldImpl\n",
+                    index, Charsets.ISO_8859_1);
+        index.setLastModified(1000000000000L);
+        // the file was changed after the index was generated
+        Files.write("implementation=com.example.FooImpl\n",
+                    new File(dir, "com.example.Foo.properties"), Charsets.ISO_8859_1);
+
+        URLClassLoader loader = new URLClassLoader(new URL[]{root.toURI().toURL()}, null);
+        DefaultsIndex defaults = DefaultsIndex.forClassLoader(loader);
+        assertThat(defaults.isComplete(), equalTo(true));
+        assertThat(defaults.getDefaults("com.example.Foo"),
+                   hasEntry("implementation", "com.example.FooImpl"));
+    }
+
+    @Test
+    public void testIndexMissingType() throws Exception {
+        File root = folder.newFolder("missing");
+        File dir = new File(root, DefaultsIndex.DEFAULTS_PATH);
+        dir.mkdirs();
+        Files.write("implementation=com.example.FooImpl\n",
+                    new File(dir, "com.example.Foo.properties"), Charsets.ISO_8859_1);
+        Files.write("implementation=com.example.BarImpl\n",
+                    new File(dir, "com.example.Bar.properties"), Charsets.ISO_8859_1);
+        Files.write("com.example.Foo.implementation=com.example.FooImpl\n",
+                    new File(root, DefaultsIndex.INDEX_PATH), Charsets.ISO_8859_1);
+        new File(dir, "com.example.Foo.properties").setLastModified(1000000000000L);
+        new File(dir, "com.example.Bar.properties").setLastModified(1000000000000L);
+
+        URLClassLoader loader = new URLClassLoader(new URL[]{root.toURI().toURL()}, null);
+        DefaultsIndex index = DefaultsIndex.forClassLoader(loader);
+        assertThat(index.size(), equalTo(2));
+        assertThat(index.getDefaults("com.example.Bar"),
+                   hasEntry("implementation", "com.example.BarImpl"));
+    }
+
+    @Test
+    public void testClassPathOrder() throws Exception {
+        // an unindexed module ahead of an indexed one shadows its defaults
+        File first = folder.newFolder("first");
+        File dir = new File(first, DefaultsIndex.DEFAULTS_PATH);
+        dir.mkdirs();
+        Files.write("implementation=com.example.FirstImpl\n",
+                    new File(dir, "com.example.Foo.properties"), Charsets.ISO_8859_1);
+
+        File second = folder.newFolder("second");
+        dir = new File(second, DefaultsIndex.DEFAULTS_PATH);
+        dir.mkdirs();
+        Files.write("implementation=com.example.SecondImpl\n",
+                    new File(dir, "com.example.Foo.properties"), Charsets.ISO_8859_1);
+        new File(dir, "com.example.Foo.properties").setLastModified(1000000000000L);
+        Files.write("com.example.Foo.implementation=com.example.SecondImpl\n",
+                    new File(second, DefaultsIndex.INDEX_PATH), Charsets.ISO_8859_1);
+
+        URLClassLoader loader = new URLClassLoader(new URL[]{first.toURI().toURL(),
+                                                             second.toURI().toURL()}, null);
+        DefaultsIndex index = DefaultsIndex.forClassLoader(loader);
+        assertThat(index.getDefaults("com.example.Foo"),
+                   hasEntry("implementation", "com.example.FirstImpl"));
+    }
+
+    @Test
+    public void testBootstrapLoader() {
+        DefaultsIndex index = DefaultsIndex.forClassLoader(null);
+        assertThat(index.isComplete(), equalTo(true));
+        assertThat(index.size(), equalTo(0));
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Grapht, an open source dependency injector.
+ * Copyright 2014-2015 various contributors (see CONTRIBUTORS.txt)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.grapht.util;
+
+import org.grouplens.grapht.annotation.DefaultImplementation;
+import org.grouplens.grapht.reflect.Desire;
+import org.grouplens.grapht.reflect.internal.ReflectionDesire;
+import org.junit.Test;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import java.io.ByteArrayInputStream;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Test the injection index.  The test classes are compiled with the index processor, so the
+ * classes here are indexed.
+ */
+public class InjectionIndexTest {
+    @Test
+    public void testParse() throws Exception {
+        String text = "# comment\n"
+                + "class com.example.Impl\n"
+                + "instantiable\n"
+                + "ctor (java.lang.String,int[])\n"
+                + "field name\n"
+                + "method public setFoo(com.example.Foo$Bar) inject\n"
+                + "method package init() post-construct\n"
+                + "class com.example.Iface\n"
+                + "defaults\n";
+        Map<String, InjectionIndex.ClassEntry> entries =
+                InjectionIndex.parse(new ByteArrayInputStream(text.getBytes("UTF-8")));
+        assertThat(entries.keySet(), contains("com.example.Impl", "com.example.Iface"));
+
+        InjectionIndex.ClassEntry impl = entries.get("com.example.Impl");
+        assertThat(impl.isInstantiable(), equalTo(true));
+        assertThat(impl.hasDefaults(), equalTo(false));
+        assertThat(impl.getInjectConstructors(), hasSize(1));
+        assertThat(impl.getInjectConstructors().get(0), contains("java.lang.String", "int[]"));
+        assertThat(impl.getInjectFields(), contains("name"));
+        assertThat(impl.getMethods(), hasSize(2));
+        InjectionIndex.MethodEntry setter = impl.getMethods().get(0);
+        assertThat(setter.getName(), equalTo("setFoo"));
+        assertThat(setter.getModifiers(), equalTo(Modifier.PUBLIC));
+        assertThat(setter.getParameterTypes(), contains("com.example.Foo$Bar"));
+        assertThat(setter.hasFlag(InjectionIndex.INJECT), equalTo(true));
+        InjectionIndex.MethodEntry init = impl.getMethods().get(1);
+        assertThat(init.getModifiers(), equalTo(0));
+        assertThat(init.getParameterTypes(), hasSize(0));
+        assertThat(init.hasFlag(InjectionIndex.POST_CONSTRUCT), equalTo(true));
+
+        InjectionIndex.ClassEntry iface = entries.get("com.example.Iface");
+        assertThat(iface.isInstantiable(), equalTo(false));
+        assertThat(iface.hasDefaults(), equalTo(true));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParseInvalid() throws Exception {
+        InjectionIndex.parse(new ByteArrayInputStream("field outside\n".getBytes("UTF-8")));
+    }
+
+    @Test
+    public void testResolveTypes() throws Exception {
+        assertThat(InjectionIndex.typeName(String[][].class), equalTo("java.lang.String[][]"));
+        Class<?>[] types = InjectionIndex.resolveTypes(getClass(),
+                                                       java.util.Arrays.asList("int", "java.lang.String[][]",
+                                                                               InjectionIndex.typeName(Sub.class)));
+        assertThat(types[0], equalTo((Class) int.class));
+        assertThat(types[1], equalTo((Class) String[][].class));
+        assertThat(types[2], equalTo((Class) Sub.class));
+    }
+
+    @Test
+    public void testIndexedClass() {
+        InjectionIndex.ClassEntry entry = InjectionIndex.lookup(Sub.class);
+        assertThat(entry, notNullValue());
+        assertThat(entry.isInstantiable(), equalTo(true));
+        assertThat(Types.isInstantiable(Sub.class), equalTo(true));
+        assertThat(InjectionIndex.lookup(Iface.class).hasDefaults(), equalTo(true));
+        // JDK classes are not indexed
+        assertThat(InjectionIndex.lookup(String.class), nullValue());
+    }
+
+    @Test
+    public void testIndexedDesires() {
+        List<Desire> desires = ReflectionDesire.getDesires(Sub.class);
+        // constructor, then the base field, then the subclass setter; the overridden
+        // setter without @Inject is not injected
+        assertThat(desires, hasSize(3));
+        assertThat(desires.get(0).getDesiredType(), equalTo((Class) String.class));
+        assertThat(desires.get(1).getInjectionPoint().getMember().getName(), equalTo("field"));
+        assertThat(desires.get(2).getInjectionPoint().getMember().getName(), equalTo("setOther"));
+    }
+
+    @Test
+    public void testLifecycleMethods() throws Exception {
+        List<Method> post = InjectionIndex.getPostConstructMethods(Sub.class);
+        assertThat(post, contains(Base.class.getMethod("init")));
+        // the overriding destroy method is not annotated, so it is not a pre-destroy method
+        assertThat(InjectionIndex.getPreDestroyMethods(Sub.class), hasSize(0));
+        assertThat(InjectionIndex.getPreDestroyMethods(Base.class),
+                   contains(Base.class.getMethod("destroy")));
+    }
+
+    @Test
+    public void testInnerClassNotIndexed() {
+        assertThat(InjectionIndex.lookup(Inner.class), nullValue());
+        // inner classes need their outer instance, so they are not instantiable
+        assertThat(Types.isInstantiable(Inner.class), equalTo(false));
+        // but reflection still finds their injection points
+        assertThat(ReflectionDesire.getDesires(Inner.class), not(empty()));
+    }
+
+    public class Inner {
+        @Inject
+        public void setName(String name) {}
+    }
+
+    @DefaultImplementation(Sub.class)
+    public static interface Iface {}
+
+    public static class Base {
+        @Inject
+        Integer field;
+
+        @Inject
+        public void setValue(Double value) {}
+
+        @PostConstruct
+        public void init() {}
+
+        @PreDestroy
+        public void destroy() {}
+    }
+
+    public static class Sub extends Base implements Iface {
+        @Inject
+        public Sub(String name) {}
+
+        @Override
+        public void setValue(Double value) {}
+
+        @Inject
+        public void setOther(Long other) {}
+
+        @Override
+        public void destroy() {}
+    }
+}
@@ -118,6 +118,23 @@ public class TypesTest {
         }
     }
 
+    @Test
+    public void testProvidedTypeRepeated(){
+        // inferred types are memoized, but failures must be reported every time
+        for (int i = 0; i < 2; i++) {
+            assertThat(Types.getProvidedType(TestingProviders.SubtypedProvider.class),
+                       equalTo((Class) TestingProviders.Target.class));
+            Class<?> cls = new TestingProviders.UnboundedProvider<TestingProviders.Target>().getClass();
+            try{
+                Types.getProvidedType((Class<? extends Provider<?>>) cls);
+                fail("getProvidedType didn't throw an IllegalArgumentException");
+            }
+            catch (IllegalArgumentException e){
+                // This is the correct behavior
+            }
+        }
+    }
+
     @Test
     public void testMultiBoundProvider(){
         Class<?> cls = new TestingProviders.MultiBoundProvider<TestingProviders.Target>().getClass();